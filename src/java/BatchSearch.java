@@ -0,0 +1,251 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-interactive batch mode: searches the queries of a JSONL file in parallel against a loaded
+ * index and writes one JSONL result per query.
+ * <p>
+ * Each line of the input is a JSON object with the text of the query and, optionally, its
+ * model ({@code boolean}, {@code vector} or {@code probabilistic}, or their code; boolean by
+ * default), the number of documents to return (at most {@value SearchServer#MAX_K}, as over
+ * HTTP) and an ID copied to the result (the line number
+ * by default):
+ * <pre>
+ * {"id":"q1","query":"pool parking","model":"vector","k":10}
+ * </pre>
+ * Each result line, in the order of the queries, holds the number of matching documents, the
+ * time spent searching and the ranked documents:
+ * <pre>
+ * {"id":"q1","query":"pool parking","model":"vector","k":10,"totalHits":473,"totalHitsExact":false,
+ *  "latencyMs":0.412,"results":[{"id":302,"score":1.0}, …]}
+ * </pre>
+ * A line that cannot be read or searched gives a result with an {@code error} message instead,
+ * and does not stop the batch. Blank lines are skipped. A query with {@code "explain":true}
+ * also gives its {@link QueryProfile} in a {@code profile} member. With a {@link ResultCache}, a query
+ * repeated in the batch is only searched once, its latency being the time to read the cache.
+ */
+public class BatchSearch {
+
+    /** Number of documents returned when a query does not give {@code k}. */
+    static final int DEFAULT_K = 10;
+
+    /** The engine of each model, shared by every worker. */
+    private final Map<SearchType, SearchEngine> engines;
+
+    /** The index searched. */
+    private final Index index;
+
+    /** Number of queries searched at the same time. */
+    private final int nbThreads;
+
+    /**
+     * Constructs a batch over an index.
+     *
+     * @param index the index to search
+     * @param nbThreads the number of queries searched at the same time, at least 1
+     */
+    public BatchSearch(Index index, int nbThreads) {
+        this(index, nbThreads, null);
+    }
+
+    /**
+     * Constructs a batch over an index, answering from a cache the queries already searched.
+     *
+     * @param index the index to search
+     * @param nbThreads the number of queries searched at the same time, at least 1
+     * @param cache the cache of the results, or {@code null} for no cache
+     */
+    public BatchSearch(Index index, int nbThreads, ResultCache cache) {
+        this(index, nbThreads, cache, null);
+    }
+
+    /**
+     * Constructs a batch over an index, answering from a cache the queries already searched and
+     * logging the slow queries.
+     *
+     * @param index the index to search
+     * @param nbThreads the number of queries searched at the same time, at least 1
+     * @param cache the cache of the results, or {@code null} for no cache
+     * @param log the log of the slow queries, or {@code null} for no log
+     */
+    public BatchSearch(Index index, int nbThreads, ResultCache cache, SlowQueryLog log) {
+        if (nbThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required: " + nbThreads);
+        }
+        this.nbThreads = nbThreads;
+        this.index = index;
+        this.engines = new EnumMap<>(SearchType.class);
+        for (SearchType type : SearchType.values()) {
+            engines.put(type, type.newEngine(index, cache, log));
+        }
+    }
+
+    /**
+     * Searches every query of a JSONL file and writes their results.
+     *
+     * @param entree the JSONL file of the queries
+     * @param sortie the JSONL file the results are written to, replaced if it exists
+     * @return the number of queries searched, including the ones in error
+     * @throws IOException if a file cannot be read or written
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public int run(Path entree, Path sortie) throws IOException, InterruptedException {
+        long debut = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(nbThreads);
+        List<Future<String>> resultats = new ArrayList<>();
+        AtomicInteger erreurs = new AtomicInteger();
+
+        try {
+            try (BufferedReader in = Files.newBufferedReader(entree, StandardCharsets.UTF_8)) {
+                String ligne;
+                int numero = 0;
+                while ((ligne = in.readLine()) != null) {
+                    numero++;
+                    if (!ligne.isBlank()) {
+                        String texte = ligne;
+                        int n = numero;
+                        resultats.add(pool.submit(() -> executer(texte, n, erreurs)));
+                    }
+                }
+            }
+
+            try (BufferedWriter out = Files.newBufferedWriter(sortie, StandardCharsets.UTF_8)) {
+                for (Future<String> f : resultats) {
+                    out.write(f.get());
+                    out.newLine();
+                }
+            }
+            catch (ExecutionException e) {
+                throw new IllegalStateException("Batch search failed", e.getCause());
+            }
+
+            double secondes = (System.nanoTime() - debut) / 1e9;
+            System.out.printf("Searched %d queries in %.2f s (%.0f queries/s, %d thread(s)), %d error(s)%n",
+                    resultats.size(), secondes, resultats.size() / secondes, nbThreads, erreurs.get());
+            return resultats.size();
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Searches the query of a line and writes its result.
+     *
+     * @param ligne the JSON object of the query
+     * @param numero the number of the line, the ID of the query if it has none
+     * @param erreurs the number of queries in error, incremented if this one is
+     * @return the JSON object of the result
+     */
+    private String executer(String ligne, int numero, AtomicInteger erreurs) {
+        Object id = numero;
+        StringBuilder json = new StringBuilder(512);
+
+        try {
+            Object valeur = Json.parse(ligne);
+            if (!(valeur instanceof Map)) {
+                throw new IllegalArgumentException("A query must be a JSON object");
+            }
+            Map<?, ?> requete = (Map<?, ?>) valeur;
+            if (requete.get("id") instanceof String || requete.get("id") instanceof Double) {
+                id = requete.get("id");
+            }
+
+            Object texte = requete.get("query");
+            if (!(texte instanceof String) || ((String) texte).isBlank()) {
+                throw new IllegalArgumentException("Missing member \"query\"");
+            }
+            Object modele = requete.get("model");
+            SearchType type = modele == null ? SearchType.BOOLEAN : SearchType.fromName(nombre(modele));
+            int k = requete.get("k") == null ? DEFAULT_K : k(requete.get("k"));
+
+            boolean explain = Boolean.TRUE.equals(requete.get("explain"));
+
+            long debut = System.nanoTime();
+            Query q = new Query((String) texte);
+            QueryProfile profile = explain ? QueryProfile.explain(engines.get(type), type, index, q, k) : null;
+            TopDocs resultats = explain ? profile.getResults() : engines.get(type).search(q, k);
+            long nanos = System.nanoTime() - debut;
+
+            json.append("{\"id\":");
+            id(json, id);
+            json.append(",\"query\":");
+            Json.string(json, (String) texte);
+            json.append(",\"model\":");
+            Json.string(json, type.name().toLowerCase(Locale.ROOT));
+            json.append(",\"k\":").append(k);
+            json.append(",\"totalHits\":").append(resultats.getTotalHits());
+            json.append(",\"totalHitsExact\":").append(resultats.isTotalHitsExact());
+            json.append(",\"latencyMs\":").append(String.format(Locale.ROOT, "%.3f", nanos / 1e6));
+            json.append(",\"results\":[");
+            for (int i = 0; i < resultats.getScoreDocs().size(); i++) {
+                ScoredDoc sd = resultats.getScoreDocs().get(i);
+                json.append(i == 0 ? "" : ",").append("{\"id\":").append(sd.getDocId());
+                json.append(",\"score\":").append(Double.isFinite(sd.getScore()) ? sd.getScore() : 0.0).append('}');
+            }
+            json.append(']');
+            if (profile != null) {
+                json.append(",\"profile\":");
+                profile.json(json);
+            }
+            return json.append('}').toString();
+        }
+        catch (IllegalArgumentException e) {
+            erreurs.incrementAndGet();
+            json.setLength(0);
+            json.append("{\"error\":");
+            Json.string(json, e.getMessage());
+            json.append(",\"id\":");
+            id(json, id);
+            return json.append(",\"line\":").append(numero).append('}').toString();
+        }
+    }
+
+    /**
+     * Reads the number of documents asked for by a query, bounded like the requests of the
+     * {@link SearchServer} so that one line cannot make the collector allocate for any {@code k}.
+     */
+    private static int k(Object valeur) {
+        if (!(valeur instanceof Double) || (Double) valeur < 1 || (Double) valeur > SearchServer.MAX_K
+                || (Double) valeur != Math.floor((Double) valeur)) {
+            throw new IllegalArgumentException("Member \"k\" must be an integer between 1 and " + SearchServer.MAX_K + ": " + nombre(valeur));
+        }
+        return ((Double) valeur).intValue();
+    }
+
+    /**
+     * Returns a model given by name or by code as text.
+     */
+    private static String nombre(Object valeur) {
+        if (valeur instanceof Double && (Double) valeur == Math.floor((Double) valeur)) {
+            return String.valueOf(((Double) valeur).intValue());
+        }
+        return String.valueOf(valeur);
+    }
+
+    /**
+     * Appends the ID of a query: a string, or an integer when it is a whole number.
+     */
+    private static void id(StringBuilder json, Object id) {
+        if (id instanceof String) {
+            Json.string(json, (String) id);
+        }
+        else {
+            json.append(nombre(id));
+        }
+    }
+}
@@ -0,0 +1,600 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ * Node of a parsed boolean query: a term, a phrase, or the conjunction, disjunction or negation
+ * of sub-queries.
+ * <p>
+ * A query is compiled into a plan of {@link DocIdIterator} over the postings of its terms by
+ * {@link #iterator(Index)}: a conjunction leads with its rarest clause and advances the others
+ * to its candidates, its negated clauses become exclusions, and a negation on its own is the
+ * complement over every document. The postings of frequent terms are read as compressed
+ * bitmaps ({@link RoaringDocIdSet}): when every operand of an operator is a bitmap, the operator
+ * is evaluated by set algebra on the bitmaps instead of merging iterators. With a
+ * {@link ClauseCache}, the documents of the operators used often are kept as bitmaps, and reused
+ * by the later queries sharing them. A phrase, or terms within a distance of each other, is
+ * evaluated on the positions of its terms ({@link PhraseIterator}), which the index must hold.
+ * <p>
+ * A query also gives the weight of a matching document: the frequency of a term, the minimum
+ * over the clauses of a conjunction and the maximum over the clauses of a disjunction.
+ * <p>
+ * Queries are immutable.
+ */
+public abstract class BooleanQuery {
+
+    /**
+     * A term whose postings hold at least one document in {@value} of the index is read as a
+     * bitmap: from there, a bitmap container is no bigger than the array of its IDs.
+     */
+    static final int BITMAP_DENSITY = 16;
+
+    /**
+     * Compiles the query into an iterator over the IDs of the matching documents.
+     *
+     * @param index the index to search
+     * @return the iterator, positioned before the first document
+     */
+    public DocIdIterator iterator(Index index) {
+        return iterator(index, null);
+    }
+
+    /**
+     * Compiles the query into an iterator over the IDs of the matching documents, reading the
+     * documents of its operators from a cache when they are there. An operator missing from the
+     * cache is evaluated into a bitmap and offered to it once it is used often enough.
+     *
+     * @param index the index to search
+     * @param cache the cache of the documents of the operators, or {@code null} for no cache
+     * @return the iterator, positioned before the first document
+     */
+    public DocIdIterator iterator(Index index, ClauseCache cache) {
+        if (cache == null || this instanceof Term) {
+            // The bitmap of a term is already kept by its keyword
+            return compile(index, cache);
+        }
+
+        String key = key();
+        RoaringDocIdSet set = cache.get(key);
+        if (set != null) {
+            return set.iterator();
+        }
+
+        long generation = cache.generation();
+        DocIdIterator it = compile(index, cache);
+        if (!cache.wants(key)) {
+            return it;
+        }
+        set = it instanceof RoaringDocIdSet.SetIterator ? ((RoaringDocIdSet.SetIterator) it).getSet() : RoaringDocIdSet.of(it);
+        cache.put(key, set, generation);
+        return set.iterator();
+    }
+
+    /**
+     * Compiles the query into an iterator, its operands being compiled with
+     * {@link #iterator(Index, ClauseCache)}.
+     *
+     * @param index the index to search
+     * @param cache the cache of the documents of the operators, or {@code null}
+     * @return the iterator, positioned before the first document
+     */
+    protected abstract DocIdIterator compile(Index index, ClauseCache cache);
+
+    /**
+     * Returns the canonical form of the query: its text, the clauses of its operators sorted,
+     * so that the same clauses in any order give the same key.
+     *
+     * @return the key of the query in a {@link ClauseCache}
+     */
+    public String key() {
+        return toString();
+    }
+
+    /**
+     * Returns the canonical form of clauses joined by an operator.
+     */
+    static String key(List<BooleanQuery> clauses, String operateur) {
+        List<String> cles = new ArrayList<>(clauses.size());
+        for (BooleanQuery c : clauses) {
+            cles.add(c.key());
+        }
+        Collections.sort(cles);
+        return "(" + String.join(operateur, cles) + ")";
+    }
+
+    /**
+     * Returns the query with the ID of each of its terms looked up in an index, so that
+     * weighting the matching documents does not look the terms up for every document.
+     *
+     * @param index the index to search
+     * @return the query bound to the term IDs of the index
+     */
+    public abstract BooleanQuery resolve(Index index);
+
+    /**
+     * Computes the weight of a document matching the query.
+     *
+     * @param doc the document
+     * @param index the index holding the document
+     * @return the weight of the document
+     */
+    public abstract double poids(Document doc, Index index);
+
+    /**
+     * Returns the conjunction of clauses, merging the clauses that are conjunctions themselves.
+     *
+     * @param clauses the clauses, at least one
+     * @return the conjunction, or the clause itself if there is only one
+     */
+    public static BooleanQuery and(List<BooleanQuery> clauses) {
+        List<BooleanQuery> plat = new ArrayList<>();
+        for (BooleanQuery c : clauses) {
+            if (c instanceof And) {
+                plat.addAll(((And) c).clauses);
+            }
+            else {
+                plat.add(c);
+            }
+        }
+        return plat.size() == 1 ? plat.get(0) : new And(plat);
+    }
+
+    /**
+     * Returns the disjunction of clauses, merging the clauses that are disjunctions themselves.
+     *
+     * @param clauses the clauses, at least one
+     * @return the disjunction, or the clause itself if there is only one
+     */
+    public static BooleanQuery or(List<BooleanQuery> clauses) {
+        List<BooleanQuery> plat = new ArrayList<>();
+        for (BooleanQuery c : clauses) {
+            if (c instanceof Or) {
+                plat.addAll(((Or) c).clauses);
+            }
+            else {
+                plat.add(c);
+            }
+        }
+        return plat.size() == 1 ? plat.get(0) : new Or(plat);
+    }
+
+    /**
+     * Returns the negation of a query; a double negation is removed.
+     *
+     * @param clause the query to negate
+     * @return the negation
+     */
+    public static BooleanQuery not(BooleanQuery clause) {
+        return clause instanceof Not ? ((Not) clause).clause : new Not(clause);
+    }
+
+    /**
+     * Returns the query of the terms of a quoted text: the terms following each other as in the
+     * text, or all of them within a distance of each other. The stop words of the text are not
+     * searched, but keep their place between the terms of a phrase.
+     *
+     * @param texte the quoted text
+     * @param distance the number of other words allowed between the terms, in any order, or
+     *        {@link PhraseIterator#EXACT} for the phrase itself
+     * @return the phrase, or the term itself if the text has only one
+     * @throws IllegalArgumentException if the text only holds stop words
+     */
+    public static BooleanQuery phrase(String texte, int distance) {
+        List<String> termes = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+
+        Tokenizer.getDefault().tokenizeWithPositions(texte, (terme, position) -> {
+            // Within a distance, the order does not matter: a repeated term is only searched once
+            if (distance == PhraseIterator.EXACT || !termes.contains(terme)) {
+                termes.add(terme);
+                positions.add(position);
+            }
+        });
+
+        if (termes.isEmpty()) {
+            throw new IllegalArgumentException("No term to search in \"" + texte + "\"");
+        }
+        if (termes.size() == 1) {
+            return new Term(termes.get(0));
+        }
+
+        int[] offsets = new int[termes.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = positions.get(i) - positions.get(0);
+        }
+        return new Phrase(String.join(" ", Phrase.TOUS_LES_TOKENS.tokenize(texte)), termes.toArray(new String[0]), offsets, distance, null);
+    }
+
+    /**
+     * Returns the bitmaps behind iterators that were just compiled.
+     *
+     * @param iterators the iterators, positioned before their first document
+     * @return their bitmaps, or {@code null} if one of them is not backed by a bitmap
+     */
+    static List<RoaringDocIdSet> bitmaps(List<DocIdIterator> iterators) {
+        List<RoaringDocIdSet> bitmaps = new ArrayList<>(iterators.size());
+        for (DocIdIterator it : iterators) {
+            if (!(it instanceof RoaringDocIdSet.SetIterator)) {
+                return null;
+            }
+            bitmaps.add(((RoaringDocIdSet.SetIterator) it).getSet());
+        }
+        return bitmaps;
+    }
+
+    /**
+     * A single term.
+     */
+    public static class Term extends BooleanQuery {
+
+        /** The term, lowercased. */
+        private final String terme;
+
+        /** ID of the term once resolved, {@link TermDictionary#NOT_FOUND} if it is not indexed. */
+        private final int termId;
+
+        /** Whether {@link #termId} was looked up. */
+        private final boolean resolu;
+
+        /**
+         * Constructs a term query.
+         *
+         * @param terme the term, lowercased
+         */
+        public Term(String terme) {
+            this(terme, TermDictionary.NOT_FOUND, false);
+        }
+
+        private Term(String terme, int termId, boolean resolu) {
+            this.terme = terme;
+            this.termId = termId;
+            this.resolu = resolu;
+        }
+
+        @Override
+        public BooleanQuery resolve(Index index) {
+            return new Term(terme, index.getTermId(terme), true);
+        }
+
+        /** @return the term */
+        public String getTerme() {
+            return terme;
+        }
+
+        @Override
+        protected DocIdIterator compile(Index index, ClauseCache cache) {
+            Keyword k = !resolu ? index.getKeyword(terme)
+                    : termId == TermDictionary.NOT_FOUND ? null : index.getKeyword(termId);
+
+            if (k == null) {
+                return DocIdIterator.empty();
+            }
+            if ((long) k.size() * BITMAP_DENSITY >= index.getDocuments().size()) {
+                return k.docIdSet().iterator();
+            }
+            return k.cursor();
+        }
+
+        @Override
+        public double poids(Document doc, Index index) {
+            Double freq = doc.get1Freq(resolu ? termId : index.getTermId(terme));
+            return freq == null ? 0 : freq;
+        }
+
+        @Override
+        public String toString() {
+            return terme;
+        }
+    }
+
+    /**
+     * Documents where terms appear as a phrase, or within a distance of each other.
+     */
+    public static class Phrase extends BooleanQuery {
+
+        /** Tokenizer keeping stop words, to show the phrase as it was written. */
+        static final Tokenizer TOUS_LES_TOKENS = new Tokenizer(null);
+
+        /** The tokens of the quoted text, stop words included, separated by spaces. */
+        private final String texte;
+
+        /** The terms, lowercased, in the order of the text. */
+        private final String[] termes;
+
+        /** Offset of each term from the first one in the text. */
+        private final int[] offsets;
+
+        /** Number of other words allowed between the terms, or {@link PhraseIterator#EXACT}. */
+        private final int distance;
+
+        /** IDs of the terms once resolved, {@code null} before. */
+        private final int[] termIds;
+
+        private Phrase(String texte, String[] termes, int[] offsets, int distance, int[] termIds) {
+            this.texte = texte;
+            this.termes = termes;
+            this.offsets = offsets;
+            this.distance = distance;
+            this.termIds = termIds;
+        }
+
+        @Override
+        public BooleanQuery resolve(Index index) {
+            int[] ids = new int[termes.length];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = index.getTermId(termes[i]);
+            }
+            return new Phrase(texte, termes, offsets, distance, ids);
+        }
+
+        @Override
+        protected DocIdIterator compile(Index index, ClauseCache cache) {
+            Positions positions = index.getPositions();
+            if (positions == null) {
+                throw new IllegalArgumentException("Phrase and proximity queries need an index built with positions (--positions)");
+            }
+
+            PostingsCursor[] postings = new PostingsCursor[termes.length];
+            PositionsCursor[] lecteurs = new PositionsCursor[termes.length];
+            for (int i = 0; i < termes.length; i++) {
+                int termId = termIds == null ? index.getTermId(termes[i]) : termIds[i];
+                if (termId == TermDictionary.NOT_FOUND) {
+                    return DocIdIterator.empty();
+                }
+
+                Keyword k = index.getKeyword(termId);
+                TermPositions tp = positions.get(termId);
+                if (k.size() == 0 || tp == null) {
+                    return DocIdIterator.empty();
+                }
+                postings[i] = k.cursor();
+                lecteurs[i] = tp.cursor(k);
+            }
+            return new PhraseIterator(new ConjunctionIterator(Arrays.asList(postings)), postings, lecteurs, offsets, distance);
+        }
+
+        @Override
+        public double poids(Document doc, Index index) {
+            double poids = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < termes.length; i++) {
+                Double freq = doc.get1Freq(termIds == null ? index.getTermId(termes[i]) : termIds[i]);
+                poids = Math.min(poids, freq == null ? 0 : freq);
+            }
+            return poids;
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + texte + "\"" + (distance == PhraseIterator.EXACT ? "" : "~" + distance);
+        }
+    }
+
+    /**
+     * Documents matching every clause.
+     */
+    public static class And extends BooleanQuery {
+
+        /** The clauses, two or more. */
+        private final List<BooleanQuery> clauses;
+
+        private And(List<BooleanQuery> clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        public BooleanQuery resolve(Index index) {
+            List<BooleanQuery> resolues = new ArrayList<>(clauses.size());
+            for (BooleanQuery c : clauses) {
+                resolues.add(c.resolve(index));
+            }
+            return new And(resolues);
+        }
+
+        @Override
+        protected DocIdIterator compile(Index index, ClauseCache cache) {
+            List<DocIdIterator> requis = new ArrayList<>();
+            List<DocIdIterator> exclus = new ArrayList<>();
+
+            for (BooleanQuery c : clauses) {
+                if (c instanceof Not) {
+                    exclus.add(((Not) c).clause.iterator(index, cache));
+                }
+                else {
+                    DocIdIterator it = c.iterator(index, cache);
+                    if (it.cost() == 0) {
+                        return DocIdIterator.empty();
+                    }
+                    requis.add(it);
+                }
+            }
+
+            RoaringDocIdSet bitmap = and(requis, exclus, index);
+            if (bitmap != null) {
+                return bitmap.iterator();
+            }
+
+            DocIdIterator candidats;
+            if (requis.isEmpty()) {
+                candidats = DocIdIterator.all(index);
+            }
+            else if (requis.size() == 1) {
+                candidats = requis.get(0);
+            }
+            else {
+                candidats = new ConjunctionIterator(requis);
+            }
+
+            if (exclus.isEmpty()) {
+                return candidats;
+            }
+            return new ExclusionIterator(candidats, exclus.size() == 1 ? exclus.get(0) : new DisjunctionIterator(exclus));
+        }
+
+        /**
+         * Evaluates the conjunction by set algebra, if every operand is a bitmap.
+         *
+         * @return the matching documents, or {@code null} if an operand is not a bitmap
+         */
+        private static RoaringDocIdSet and(List<DocIdIterator> requis, List<DocIdIterator> exclus, Index index) {
+            List<RoaringDocIdSet> positifs = bitmaps(requis);
+            List<RoaringDocIdSet> negatifs = bitmaps(exclus);
+
+            if (positifs == null || negatifs == null) {
+                return null;
+            }
+
+            positifs.sort(Comparator.comparingInt(RoaringDocIdSet::cardinality));
+            RoaringDocIdSet resultat = positifs.isEmpty() ? RoaringDocIdSet.of(DocIdIterator.all(index)) : positifs.get(0);
+            for (int i = 1; i < positifs.size() && resultat.cardinality() > 0; i++) {
+                resultat = resultat.and(positifs.get(i));
+            }
+            for (RoaringDocIdSet n : negatifs) {
+                resultat = resultat.andNot(n);
+            }
+            return resultat;
+        }
+
+        @Override
+        public double poids(Document doc, Index index) {
+            double poids = Double.POSITIVE_INFINITY;
+            for (BooleanQuery c : clauses) {
+                if (!(c instanceof Not)) {
+                    poids = Math.min(poids, c.poids(doc, index));
+                }
+            }
+            return poids == Double.POSITIVE_INFINITY ? 0 : poids;
+        }
+
+        @Override
+        public String key() {
+            return key(clauses, " and ");
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner s = new StringJoiner(" and ", "(", ")");
+            for (BooleanQuery c : clauses) {
+                s.add(c.toString());
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * Documents matching at least one clause.
+     */
+    public static class Or extends BooleanQuery {
+
+        /** The clauses, two or more. */
+        private final List<BooleanQuery> clauses;
+
+        private Or(List<BooleanQuery> clauses) {
+            this.clauses = clauses;
+        }
+
+        @Override
+        public BooleanQuery resolve(Index index) {
+            List<BooleanQuery> resolues = new ArrayList<>(clauses.size());
+            for (BooleanQuery c : clauses) {
+                resolues.add(c.resolve(index));
+            }
+            return new Or(resolues);
+        }
+
+        @Override
+        protected DocIdIterator compile(Index index, ClauseCache cache) {
+            List<DocIdIterator> iterators = new ArrayList<>();
+
+            for (BooleanQuery c : clauses) {
+                DocIdIterator it = c.iterator(index, cache);
+                if (it.cost() > 0) {
+                    iterators.add(it);
+                }
+            }
+
+            if (iterators.isEmpty()) {
+                return DocIdIterator.empty();
+            }
+
+            List<RoaringDocIdSet> bitmaps = bitmaps(iterators);
+            if (bitmaps != null && bitmaps.size() > 1) {
+                RoaringDocIdSet union = bitmaps.get(0);
+                for (int i = 1; i < bitmaps.size(); i++) {
+                    union = union.or(bitmaps.get(i));
+                }
+                return union.iterator();
+            }
+            return iterators.size() == 1 ? iterators.get(0) : new DisjunctionIterator(iterators);
+        }
+
+        @Override
+        public double poids(Document doc, Index index) {
+            double poids = 0;
+            for (BooleanQuery c : clauses) {
+                poids = Math.max(poids, c.poids(doc, index));
+            }
+            return poids;
+        }
+
+        @Override
+        public String key() {
+            return key(clauses, " or ");
+        }
+
+        @Override
+        public String toString() {
+            StringJoiner s = new StringJoiner(" or ", "(", ")");
+            for (BooleanQuery c : clauses) {
+                s.add(c.toString());
+            }
+            return s.toString();
+        }
+    }
+
+    /**
+     * Documents not matching a query.
+     */
+    public static class Not extends BooleanQuery {
+
+        /** The negated query. */
+        private final BooleanQuery clause;
+
+        private Not(BooleanQuery clause) {
+            this.clause = clause;
+        }
+
+        @Override
+        public BooleanQuery resolve(Index index) {
+            return new Not(clause.resolve(index));
+        }
+
+        @Override
+        protected DocIdIterator compile(Index index, ClauseCache cache) {
+            DocIdIterator exclus = clause.iterator(index, cache);
+
+            if (exclus instanceof RoaringDocIdSet.SetIterator) {
+                RoaringDocIdSet tous = RoaringDocIdSet.of(DocIdIterator.all(index));
+                return tous.andNot(((RoaringDocIdSet.SetIterator) exclus).getSet()).iterator();
+            }
+            return new ExclusionIterator(DocIdIterator.all(index), exclus);
+        }
+
+        @Override
+        public double poids(Document doc, Index index) {
+            return 0;
+        }
+
+        @Override
+        public String key() {
+            return "not " + clause.key();
+        }
+
+        @Override
+        public String toString() {
+            return "not " + clause;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Recursive descent parser of the boolean query language.
+ * <p>
+ * A query combines terms with the operators {@code not}, {@code and} and {@code or}, by
+ * decreasing precedence, and parentheses. Two terms without an operator between them are
+ * joined by {@code and}, and {@code a not b} is read as {@code a and not b}. A quoted text is a
+ * phrase, such as {@code "front desk"}; followed by {@code ~N}, as in {@code "quiet room"~3}, its
+ * terms are searched in any order with at most {@code N} other words between them
+ * ({@link BooleanQuery#phrase(String, int)}):
+ * <pre>
+ * requete := ou
+ * ou      := et ("or" et)*
+ * et      := unaire (["and"] unaire | "not" unaire)*
+ * unaire  := "not" unaire | "(" ou ")" | phrase | terme
+ * phrase  := '"' texte '"' ["~" distance]
+ * </pre>
+ * Terms are split and lowercased by the same {@link Tokenizer} as the indexation, keeping stop
+ * words: operators are recognized whatever their case.
+ */
+public class BooleanQueryParser {
+
+    /** Tokenizer keeping stop words, so that operators remain visible. */
+    private static final Tokenizer TOUS_LES_TOKENS = new Tokenizer(null);
+
+    /** Tokens of the query: terms, operators, parentheses and quoted texts, with their quotes. */
+    private final List<String> tokens;
+
+    /** Position of the next token to read. */
+    private int position;
+
+    private BooleanQueryParser(List<String> tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Parses a boolean query.
+     *
+     * @param text the text of the query
+     * @return the parsed query
+     * @throws IllegalArgumentException if the query is empty or malformed
+     */
+    public static BooleanQuery parse(String text) {
+        BooleanQueryParser parser = new BooleanQueryParser(lex(text));
+
+        if (parser.tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        BooleanQuery requete = parser.ou();
+
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected \"" + parser.tokens.get(parser.position) + "\" at token " + (parser.position + 1));
+        }
+        return requete;
+    }
+
+    /**
+     * Splits a query into tokens: parentheses, quoted texts with their distance, and the terms of
+     * the text between them.
+     */
+    private static List<String> lex(String text) {
+        List<String> tokens = new ArrayList<>();
+        int debut = 0;
+
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ')';
+
+            if (c == '(' || c == ')' || c == '"') {
+                TOUS_LES_TOKENS.tokenize(text.subSequence(debut, i), tokens::add);
+                if (c == '"') {
+                    i = citation(text, i, tokens);
+                }
+                else if (i < text.length()) {
+                    tokens.add(String.valueOf(c));
+                }
+                debut = i + 1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Reads a quoted text and its distance as a single token.
+     *
+     * @param debut the offset of the opening quote
+     * @return the offset of the last character of the token
+     */
+    private static int citation(String text, int debut, List<String> tokens) {
+        int fin = text.indexOf('"', debut + 1);
+        if (fin < 0) {
+            throw new IllegalArgumentException("Missing closing quote");
+        }
+
+        if (fin + 1 < text.length() && text.charAt(fin + 1) == '~') {
+            fin++;
+            while (fin + 1 < text.length() && Character.isDigit(text.charAt(fin + 1))) {
+                fin++;
+            }
+            if (text.charAt(fin) == '~') {
+                throw new IllegalArgumentException("Missing distance after \"~\"");
+            }
+        }
+        tokens.add(text.substring(debut, fin + 1));
+        return fin;
+    }
+
+    /**
+     * Parses a disjunction.
+     */
+    private BooleanQuery ou() {
+        List<BooleanQuery> clauses = new ArrayList<>();
+        clauses.add(et());
+
+        while (accept("or")) {
+            clauses.add(et());
+        }
+        return BooleanQuery.or(clauses);
+    }
+
+    /**
+     * Parses a conjunction, with its excluded clauses.
+     */
+    private BooleanQuery et() {
+        List<BooleanQuery> clauses = new ArrayList<>();
+        clauses.add(unaire());
+
+        while (position < tokens.size()) {
+            String token = tokens.get(position);
+
+            if (token.equals("or") || token.equals(")")) {
+                break;
+            }
+            if (accept("not")) {
+                clauses.add(BooleanQuery.not(unaire()));
+            }
+            else {
+                accept("and");
+                clauses.add(unaire());
+            }
+        }
+        return BooleanQuery.and(clauses);
+    }
+
+    /**
+     * Parses a negation, a parenthesized query, a phrase or a term.
+     */
+    private BooleanQuery unaire() {
+        if (position == tokens.size()) {
+            throw new IllegalArgumentException("Unexpected end of query");
+        }
+        if (accept("not")) {
+            return BooleanQuery.not(unaire());
+        }
+        if (accept("(")) {
+            BooleanQuery requete = ou();
+            if (!accept(")")) {
+                throw new IllegalArgumentException("Missing \")\"");
+            }
+            return requete;
+        }
+
+        String token = tokens.get(position);
+        if (token.startsWith("\"")) {
+            position++;
+            int fin = token.lastIndexOf('"');
+            int distance = fin == token.length() - 1 ? PhraseIterator.EXACT : Integer.parseInt(token.substring(fin + 2));
+            return BooleanQuery.phrase(token.substring(1, fin), distance);
+        }
+        if (token.equals(")") || token.equals("and") || token.equals("or")) {
+            throw new IllegalArgumentException("Unexpected \"" + token + "\" at token " + (position + 1));
+        }
+        position++;
+        return new BooleanQuery.Term(token);
+    }
+
+    /**
+     * Consumes the next token if it is the expected one.
+     */
+    private boolean accept(String attendu) {
+        if (position < tokens.size() && tokens.get(position).equals(attendu)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+}
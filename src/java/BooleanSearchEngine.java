@@ -1,129 +1,101 @@
-import java.util.HashSet;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.Arrays;
 
 /**
- * Implements a boolean search engine that supports basic boolean queries
- * ("and", "or", "not") over a collection of documents using indexed keywords.
+ * Implements a boolean search engine over a collection of documents using indexed keywords.
  *
- * The engine returns the documents matching the boolean expression and sorts
- * them according to a custom weight comparator.
+ * Queries combine terms with "and", "or", "not" and parentheses (see {@link BooleanQueryParser}).
+ * A query is compiled into a plan of iterators over the postings of its terms, which intersects
+ * the postings from the rarest term and skips over the others instead of building sets of
+ * document IDs. The matching documents are ranked by their weight for the query.
+ *
+ * The documents of the sub-expressions used often, such as "not smoking", are kept as bitmaps in
+ * a {@link ClauseCache}, so that the later queries sharing them do not walk their postings again.
  */
 public class BooleanSearchEngine implements SearchEngine {
 
 	/**
-	 * A map of all keywords in the corpus, each associated with frequency data
-	 * across documents.
+	 * The index holding the term dictionary, the keywords and the documents.
 	 */
-	private final TreeMap<String, Keyword> keywords;
+	private final Index index;
 
 	/**
-	 * A map of all documents indexed by their unique integer ID.
+	 * The cache of the documents of the sub-expressions, or {@code null}.
 	 */
-	private final TreeMap<Integer, Document> documents;
+	private final ClauseCache clauses;
 
 	/**
-	 * Constructs a BooleanSearchEngine using provided keyword and document maps.
+	 * Constructs a BooleanSearchEngine over an index, with a cache of the sub-expressions of
+	 * {@link ClauseCache#DEFAULT_BUDGET} bytes.
 	 *
-	 * @param keywords  a map of keyword strings to {@link Keyword} objects
-	 * @param documents a map of document IDs to {@link Document} objects
+	 * @param index the index to search
 	 */
-	public BooleanSearchEngine(TreeMap<String, Keyword> keywords, TreeMap<Integer, Document> documents) {
-		this.keywords = keywords;
-		this.documents = documents;
+	public BooleanSearchEngine(Index index) {
+		this(index, new ClauseCache(index, ClauseCache.DEFAULT_BUDGET));
 	}
 
 	/**
-	 * Performs a boolean search over the indexed documents using a {@link Query}.
+	 * Constructs a BooleanSearchEngine over an index.
 	 *
-	 * Supports queries of the form "keyword1 and keyword2", "keyword1 or keyword2",
-	 * and "keyword1 not keyword2". Returns a sorted set of documents that match the query,
-	 * using a custom comparator that evaluates document weight with respect to the query.
-	 *
-	 * @param requete the query to process
-	 * @return a {@link TreeSet} of matching documents sorted by weight
+	 * @param index the index to search
+	 * @param clauses the cache of the documents of the sub-expressions, which may be shared by
+	 *        several engines over the index, or {@code null} for no cache
 	 */
-	@Override
-	public TreeSet<Document> search(Query requete) {
-
-		TreeSet<Document> listeDocument = new TreeSet<>(new ComparatorPoid(requete, this));
-		Set<Integer> listeId = new TreeSet<>();
-
-		String texteReq = requete.getTextRequete();
-		String[] mot = texteReq.split(" ");
-		String operator = mot[1];
-
-		Set<Integer> docMot1 = new HashSet<>();
-		Set<Integer> docMot2 = new HashSet<>();
-
-		if (keywords.get(mot[0]) != null) {
-			docMot1 = keywords.get(mot[0]).getFrequences().keySet();
-		}
-
-		if (keywords.get(mot[2]) != null) {
-			docMot2 = keywords.get(mot[2]).getFrequences().keySet();
-		}
-
-		switch (operator) {
-			case "and":
-				listeId.addAll(docMot1);
-				listeId.retainAll(docMot2);
-				break;
-			case "or":
-				listeId.addAll(docMot1);
-				listeId.addAll(docMot2);
-				break;
-			case "not":
-				listeId.addAll(docMot1);
-				listeId.removeAll(docMot2);
-				break;
-		}
-
-		for (int id : listeId) {
-			listeDocument.add(documents.get(id));
-		}
+	public BooleanSearchEngine(Index index, ClauseCache clauses) {
+		this.index = index;
+		this.clauses = clauses;
+	}
 
-		return listeDocument;
+	/**
+	 * @return the cache of the documents of the sub-expressions, or {@code null}
+	 */
+	public ClauseCache getClauseCache() {
+		return clauses;
 	}
 
 	/**
-	 * Calculates the weight of a document with respect to a given query.
-	 * <p>
-	 * For a simple query (single word), returns the word frequency in the document.
-	 * For a boolean query, recursively evaluates sub-queries using min (for "and")
-	 * or max (for "not") of the sub-query weights.
+	 * Performs a boolean search over the indexed documents using a {@link Query}.
+	 *
+	 * The text of the query is parsed into a {@link BooleanQuery}, such as
+	 * "(pool or spa) and parking not smoking". Every matching document is weighted once with
+	 * respect to the query, and the {@code k} heaviest are kept.
 	 *
-	 * @param doc the document to evaluate
-	 * @param req the query to evaluate against
-	 * @return the computed weight (or -1 if query is invalid)
+	 * @param requete the query to process
+	 * @param k the maximum number of documents to return
+	 * @return the matching documents with the highest weights
+	 * @throws IllegalArgumentException if the query is malformed
 	 */
-	public double calculePoidDoc(Document doc, Query req) {
-
-		String[] tab = req.getTextRequete().split(" ");
-		double poids = -1;
-
-		if (tab.length == 1) {
-			if (doc.get1Freq(tab[0]) == null) {
-				poids = 0;
-			}
-			else {
-				poids = doc.get1Freq(tab[0]);
-			}
+	@Override
+	public TopDocs search(Query requete, int k) {
+
+		SearchMetrics.Timer timer = SearchMetrics.getDefault().start(requete);
+		BooleanQuery arbre = BooleanQueryParser.parse(requete.getTextRequete());
+		timer.lap(SearchMetrics.Phase.PARSE);
+		BooleanQuery plan = arbre.resolve(index);
+		timer.lap(SearchMetrics.Phase.LOOKUP);
+		if (requete.getProfile() != null) {
+			requete.getProfile().setPlan(plan + (clauses == null ? "" : ", clause cache"));
 		}
 
-		if (tab[1].equals("and")) {
-			Query q0 = new Query(tab[0]);
-			Query q2 = new Query(tab[2]);
-			poids = Math.min(calculePoidDoc(doc, q0), calculePoidDoc(doc, q2));
+		// Matching documents, then their weights
+		DocIdIterator it = plan.iterator(index, clauses);
+		int[] docs = new int[(int) Math.min(Math.max(it.cost(), 16), index.getDocuments().size() + 1L)];
+		int n = 0;
+		for (int id = it.nextDoc(); id != DocIdIterator.NO_MORE_DOCS; id = it.nextDoc()) {
+			if (n == docs.length) {
+				docs = Arrays.copyOf(docs, 2 * n);
+			}
+			docs[n++] = id;
 		}
+		timer.lap(SearchMetrics.Phase.POSTINGS);
 
-		if (tab[1].equals("not")) {
-			Query q0 = new Query(tab[0]);
-			Query q2 = new Query(tab[2]);
-			poids = Math.max(calculePoidDoc(doc, q0), calculePoidDoc(doc, q2));
+		TopKCollector resultats = new TopKCollector(k);
+		for (int i = 0; i < n; i++) {
+			resultats.collect(docs[i], plan.poids(index.getDocument(docs[i]), index));
 		}
-
-		return poids;
+		timer.lap(SearchMetrics.Phase.SCORING);
+		TopDocs topDocs = resultats.topDocs();
+		timer.lap(SearchMetrics.Phase.RANKING);
+		timer.stop(n);
+		return topDocs;
 	}
 }
@@ -0,0 +1,50 @@
+/**
+ * Search engine answering from a {@link ResultCache} the queries it already searched, and
+ * delegating the others to the engine of their model.
+ * <p>
+ * The cache can be shared by the engines of every model: its keys hold the model. Like the
+ * engine it wraps, this engine is thread-safe; two threads missing the same query at the same
+ * time both search it.
+ */
+public class CachingSearchEngine implements SearchEngine {
+
+    private final SearchEngine engine;
+
+    private final SearchType type;
+
+    private final ResultCache cache;
+
+    /**
+     * Constructs an engine caching the results of another.
+     *
+     * @param engine the engine searching the queries not cached
+     * @param type the model of this engine
+     * @param cache the cache of the results
+     */
+    public CachingSearchEngine(SearchEngine engine, SearchType type, ResultCache cache) {
+        this.engine = engine;
+        this.type = type;
+        this.cache = cache;
+    }
+
+    @Override
+    public TopDocs search(Query q, int k) {
+        String texte = q.getTextRequete();
+        TopDocs resultats = cache.get(type, texte, k);
+        if (q.getProfile() != null) {
+            q.getProfile().setResultCacheHit(resultats != null);
+        }
+        if (resultats == null) {
+            // Read before the search, so that a result computed on an index being updated is dropped
+            long generation = cache.generation();
+            resultats = engine.search(q, k);
+            cache.put(type, texte, k, resultats, generation);
+        }
+        return resultats;
+    }
+
+    @Override
+    public void displayResults(TopDocs results, Index index) {
+        engine.displayResults(results, index);
+    }
+}
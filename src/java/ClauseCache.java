@@ -0,0 +1,226 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded cache of the documents matching boolean sub-expressions, such as
+ * {@code not smoking} or {@code (pool or spa)}, kept as compressed bitmaps so that the queries
+ * sharing a clause do not walk its postings again (see
+ * {@link BooleanQuery#iterator(Index, ClauseCache)}).
+ * <p>
+ * A clause is keyed by its canonical form ({@link BooleanQuery#key()}), so that
+ * {@code spa or pool} reuses the documents of {@code pool or spa}. Materializing a clause costs
+ * a full walk of its postings, where a conjunction may only have skipped through them: a clause
+ * is only admitted once it was used {@value #MIN_USES} times recently, as estimated by a
+ * {@link FrequencySketch}, and, when the cache is full, only if it was used more often than the
+ * least recently used clauses it evicts. The bitmaps are held within a budget of bytes.
+ * <p>
+ * The documents of a clause are only valid for one generation of the index
+ * ({@link Index#getGeneration()}): once the index changes, the whole cache is dropped. The cache
+ * is thread-safe; the clauses are evaluated outside of its lock.
+ */
+public class ClauseCache {
+
+    /** Default budget of the cache of a boolean engine, in bytes. */
+    static final long DEFAULT_BUDGET = 16L * 1024 * 1024;
+
+    /** Number of recent uses from which a clause is admitted. */
+    static final int MIN_USES = 2;
+
+    /** Estimated size of an entry without its bitmap, in bytes. */
+    static final int ENTRY_OVERHEAD = 120;
+
+    /** Estimated size of a cached bitmap, to size the frequency sketch. */
+    private static final int AVERAGE_ENTRY_SIZE = 4096;
+
+    /** The index whose clauses are cached. */
+    private final Index index;
+
+    /** Budget of the cache, in bytes. */
+    private final long budget;
+
+    /** Frequency of the recently used clauses, cached or not. */
+    private final FrequencySketch sketch;
+
+    /** The documents of each cached clause, from the least to the most recently used. */
+    private final LinkedHashMap<String, RoaringDocIdSet> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Estimated size of the cached clauses, in bytes. */
+    private long bytes;
+
+    /** Generation of the index the cached clauses were evaluated at. */
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long admissions;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param index the index whose clauses are cached
+     * @param budget the size of the cache, in bytes
+     */
+    public ClauseCache(Index index, long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The budget of the cache must be positive: " + budget);
+        }
+        this.index = index;
+        this.budget = budget;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(64, budget / AVERAGE_ENTRY_SIZE)));
+        this.generation = index.getGeneration();
+    }
+
+    /**
+     * Returns the cached documents of a clause, and records that it was used.
+     *
+     * @param key the canonical form of the clause
+     * @return the documents, or {@code null} if the clause is not cached
+     */
+    public synchronized RoaringDocIdSet get(String key) {
+        checkGeneration();
+        sketch.increment(hash(key));
+
+        RoaringDocIdSet set = entries.get(key);
+        SearchMetrics.Reads reads = SearchMetrics.reads();
+        if (set == null) {
+            misses++;
+            reads.clauseMisses++;
+        }
+        else {
+            hits++;
+            reads.clauseHits++;
+        }
+        return set;
+    }
+
+    /**
+     * Tells whether a clause just missed was used often enough to be evaluated into a bitmap
+     * and {@link #put}.
+     *
+     * @param key the canonical form of the clause
+     * @return {@code true} if the clause would be admitted
+     */
+    public synchronized boolean wants(String key) {
+        return sketch.frequency(hash(key)) >= MIN_USES;
+    }
+
+    /**
+     * Offers the documents of a clause to the cache.
+     *
+     * @param key the canonical form of the clause
+     * @param set the documents matching the clause
+     * @param generation the generation of the index the clause was evaluated at; the documents
+     *        are ignored if the index changed since
+     */
+    public synchronized void put(String key, RoaringDocIdSet set, long generation) {
+        checkGeneration();
+        long taille = size(key, set);
+        if (generation != this.generation || taille > budget || entries.containsKey(key)) {
+            return;
+        }
+
+        // Evicts the least recently used clauses, as long as they were used less often
+        int frequence = sketch.frequency(hash(key));
+        long libere = 0;
+        int victimes = 0;
+        for (Iterator<Map.Entry<String, RoaringDocIdSet>> it = entries.entrySet().iterator(); bytes - libere + taille > budget; victimes++) {
+            Map.Entry<String, RoaringDocIdSet> victime = it.next();
+            if (frequence <= sketch.frequency(hash(victime.getKey()))) {
+                return;
+            }
+            libere += size(victime.getKey(), victime.getValue());
+        }
+
+        Iterator<Map.Entry<String, RoaringDocIdSet>> it = entries.entrySet().iterator();
+        for (int i = 0; i < victimes; i++) {
+            it.next();
+            it.remove();
+        }
+        evictions += victimes;
+        bytes -= libere;
+
+        entries.put(key, set);
+        bytes += taille;
+        admissions++;
+    }
+
+    /**
+     * Drops every clause if the index changed since they were evaluated.
+     */
+    private void checkGeneration() {
+        long courante = index.getGeneration();
+        if (courante != generation) {
+            invalidations += entries.size();
+            entries.clear();
+            bytes = 0;
+            generation = courante;
+        }
+    }
+
+    /**
+     * Drops every cached clause; the counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /** @return the generation of the index, to be given to {@link #put} with a clause evaluated from now */
+    public long generation() {
+        return index.getGeneration();
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static long size(String key, RoaringDocIdSet set) {
+        return ENTRY_OVERHEAD + 2L * key.length() + set.sizeInBytes();
+    }
+
+    /** @return the number of clauses read from the cache */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /** @return the number of clauses not found in the cache */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** @return the number of clauses evaluated into the cache */
+    public synchronized long getAdmissions() {
+        return admissions;
+    }
+
+    /** @return the number of clauses dropped to stay within the budget */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /** @return the number of clauses dropped because the index changed */
+    public synchronized long getInvalidations() {
+        return invalidations;
+    }
+
+    /** @return the number of cached clauses */
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    /** @return the estimated size of the cached clauses, in bytes */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.ROOT, "hits=%d misses=%d admissions=%d evictions=%d invalidations=%d entries=%d bytes=%d/%d",
+                hits, misses, admissions, evictions, invalidations, entries.size(), bytes, budget);
+    }
+}
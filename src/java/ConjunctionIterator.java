@@ -0,0 +1,77 @@
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Intersection of several iterators.
+ * <p>
+ * The sub-iterators are sorted by cost: the cheapest one leads, and every other one is only
+ * {@linkplain DocIdIterator#advance(int) advanced} to the candidate of the leader. When a
+ * sub-iterator goes past the candidate, the leader is advanced to that document in turn. The
+ * number of candidates is bounded by the shortest sub-iterator, and the longer ones skip over
+ * the documents in between instead of visiting them.
+ */
+public class ConjunctionIterator extends DocIdIterator {
+
+    /** Sub-iterators, by ascending cost; the first one leads. */
+    private final DocIdIterator[] iterators;
+
+    /** Current document ID. */
+    private int doc;
+
+    /**
+     * Constructs the intersection of several iterators.
+     *
+     * @param iterators the sub-iterators, at least one
+     */
+    public ConjunctionIterator(List<DocIdIterator> iterators) {
+        this.iterators = iterators.toArray(new DocIdIterator[0]);
+        Arrays.sort(this.iterators, Comparator.comparingLong(DocIdIterator::cost));
+        this.doc = -1;
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc = align(iterators[0].nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        return doc = align(iterators[0].advance(target));
+    }
+
+    @Override
+    public long cost() {
+        return iterators[0].cost();
+    }
+
+    /**
+     * Advances the other sub-iterators to a candidate of the leader, until they all agree.
+     *
+     * @param candidate the current document of the leader
+     * @return the first document common to every sub-iterator, or {@link #NO_MORE_DOCS}
+     */
+    private int align(int candidate) {
+        boucle:
+        while (candidate != NO_MORE_DOCS) {
+            for (int i = 1; i < iterators.length; i++) {
+                int suivant = iterators[i].advance(candidate);
+
+                if (suivant > candidate) {
+                    candidate = iterators[0].advance(suivant);
+                    continue boucle;
+                }
+            }
+            return candidate;
+        }
+        return NO_MORE_DOCS;
+    }
+}
@@ -0,0 +1,155 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sequential reader over the review records of a corpus file, built on a memory-mapped
+ * {@link FileChannel}. Each line of the file is a record made of tab-separated fields,
+ * either {@code date, text} or {@code date, title, text}.
+ * <p>
+ * Lines and fields are split directly in the mapped bytes, and a field is only decoded to a
+ * {@code String} when it is requested, so there is no intermediate line buffer nor
+ * {@code split} array. The corpus was scraped as Windows-1252, a single-byte charset, hence the
+ * default {@link #CHARSET}.
+ * <p>
+ * Instances are not thread-safe; each indexation worker uses its own reader.
+ */
+public class CorpusReader implements Closeable {
+
+    /** Charset of the corpus files. */
+    public static final Charset CHARSET = Charset.forName("windows-1252");
+
+    /** Maximum number of fields recorded per line. */
+    private static final int MAX_FIELDS = 4;
+
+    /** Mapped content of the file. */
+    private final MappedByteBuffer buffer;
+
+    /** Charset used to decode the fields. */
+    private final Charset charset;
+
+    /** Start (inclusive) and end (exclusive) offsets of the fields of the current record. */
+    private final int[] debuts = new int[MAX_FIELDS];
+    private final int[] fins = new int[MAX_FIELDS];
+
+    /** Number of fields of the current record, trailing empty fields excluded. */
+    private int nbChamps;
+
+    /** Offset of the beginning of the next line. */
+    private int position;
+
+    /** Reusable buffer into which a field is copied before being decoded. */
+    private byte[] scratch = new byte[1024];
+
+    /**
+     * Opens and maps a corpus file, decoded with {@link #CHARSET}.
+     *
+     * @param file the file to read
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public CorpusReader(File file) throws IOException {
+        this(file, CHARSET);
+    }
+
+    /**
+     * Opens and maps a corpus file.
+     *
+     * @param file the file to read
+     * @param charset the charset of the file, which must be ASCII-compatible
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public CorpusReader(File file, Charset charset) throws IOException {
+        this.charset = charset;
+
+        // The mapping stays valid once the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Moves to the next record. Lines with fewer than two fields are skipped.
+     *
+     * @return {@code false} when the end of the file is reached
+     */
+    public boolean next() {
+        int limite = buffer.limit();
+
+        while (position < limite) {
+            int debut = position;
+            int fin = debut;
+            nbChamps = 0;
+            debuts[0] = debut;
+
+            while (fin < limite) {
+                byte b = buffer.get(fin);
+
+                if (b == '\n') {
+                    break;
+                }
+                if (b == '\t' && nbChamps < MAX_FIELDS - 1) {
+                    fins[nbChamps++] = fin;
+                    debuts[nbChamps] = fin + 1;
+                }
+                fin++;
+            }
+            position = fin + 1;
+
+            if (fin > debut && buffer.get(fin - 1) == '\r') {
+                fin--;
+            }
+            fins[nbChamps] = Math.max(fin, debuts[nbChamps]);
+            nbChamps++;
+
+            // Trailing empty fields are ignored, like String.split does
+            while (nbChamps > 0 && debuts[nbChamps - 1] >= fins[nbChamps - 1]) {
+                nbChamps--;
+            }
+
+            if (nbChamps >= 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the date of the current record */
+    public String getDate() {
+        return decode(0);
+    }
+
+    /** @return the title of the current record, or {@code null} if it has none */
+    public String getTitle() {
+        return nbChamps == 2 ? null : decode(1);
+    }
+
+    /** @return the review text of the current record */
+    public String getText() {
+        return decode(nbChamps == 2 ? 1 : 2);
+    }
+
+    /**
+     * Decodes a field of the current record.
+     *
+     * @param champ the index of the field
+     * @return the decoded field
+     */
+    private String decode(int champ) {
+        int length = fins[champ] - debuts[champ];
+
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(debuts[champ], scratch, 0, length);
+        return new String(scratch, 0, length, charset);
+    }
+
+    @Override
+    public void close() {
+        // The mapping is released when the buffer is garbage collected
+    }
+}
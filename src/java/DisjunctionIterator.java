@@ -0,0 +1,75 @@
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Union of several iterators.
+ * <p>
+ * The sub-iterators that are not exhausted are kept in a heap ordered by their current
+ * document: the current document of the union is the top of the heap, and moving forward only
+ * advances the sub-iterators positioned before the target.
+ */
+public class DisjunctionIterator extends DocIdIterator {
+
+    /** Sub-iterators. */
+    private final List<DocIdIterator> iterators;
+
+    /** Sub-iterators not exhausted, by current document. */
+    private final PriorityQueue<DocIdIterator> heap;
+
+    /** Total cost of the sub-iterators. */
+    private final long cost;
+
+    /** Current document ID. */
+    private int doc;
+
+    /**
+     * Constructs the union of several iterators.
+     *
+     * @param iterators the sub-iterators
+     */
+    public DisjunctionIterator(List<DocIdIterator> iterators) {
+        this.iterators = iterators;
+        this.heap = new PriorityQueue<>(Math.max(1, iterators.size()), (a, b) -> Integer.compare(a.docID(), b.docID()));
+        this.cost = iterators.stream().mapToLong(DocIdIterator::cost).sum();
+        this.doc = -1;
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+
+        if (doc == -1) {
+            for (DocIdIterator it : iterators) {
+                if (it.advance(target) != NO_MORE_DOCS) {
+                    heap.add(it);
+                }
+            }
+        }
+        else {
+            while (!heap.isEmpty() && heap.peek().docID() < target) {
+                DocIdIterator it = heap.poll();
+                if (it.advance(target) != NO_MORE_DOCS) {
+                    heap.add(it);
+                }
+            }
+        }
+        return doc = heap.isEmpty() ? NO_MORE_DOCS : heap.peek().docID();
+    }
+
+    @Override
+    public long cost() {
+        return cost;
+    }
+}
@@ -0,0 +1,106 @@
+import java.util.Iterator;
+
+/**
+ * Forward-only iterator over a set of document IDs, in ascending order.
+ * <p>
+ * It is the common interface of the postings of a term ({@link PostingsCursor}) and of the
+ * operators of a compiled boolean query, which combine their sub-iterators with
+ * {@link #advance(int)} instead of materializing sets of document IDs.
+ */
+public abstract class DocIdIterator {
+
+    /** Document ID returned once the iterator is exhausted. */
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /** @return the current document ID, -1 before the first document, or {@link #NO_MORE_DOCS} */
+    public abstract int docID();
+
+    /**
+     * Moves to the next document.
+     *
+     * @return the new current document ID, or {@link #NO_MORE_DOCS}
+     */
+    public abstract int nextDoc();
+
+    /**
+     * Moves to the first document whose ID is greater than or equal to {@code target}.
+     * Does nothing if the current document already satisfies it.
+     *
+     * @param target the document ID to reach
+     * @return the new current document ID, or {@link #NO_MORE_DOCS}
+     */
+    public abstract int advance(int target);
+
+    /** @return an upper bound on the number of documents the iterator visits */
+    public abstract long cost();
+
+    /**
+     * Returns an iterator over no document.
+     *
+     * @return the empty iterator
+     */
+    public static DocIdIterator empty() {
+        return new DocIdIterator() {
+            private int doc = -1;
+
+            @Override
+            public int docID() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public int advance(int target) {
+                return doc = NO_MORE_DOCS;
+            }
+
+            @Override
+            public long cost() {
+                return 0;
+            }
+        };
+    }
+
+    /**
+     * Returns an iterator over every document of an index, used to evaluate a negation on its
+     * own.
+     *
+     * @param index the index
+     * @return the iterator over the IDs of the documents, in ascending order
+     */
+    public static DocIdIterator all(Index index) {
+        Iterator<Integer> ids = index.getDocuments().keySet().iterator();
+        long size = index.getDocuments().size();
+
+        return new DocIdIterator() {
+            private int doc = -1;
+
+            @Override
+            public int docID() {
+                return doc;
+            }
+
+            @Override
+            public int nextDoc() {
+                return doc = ids.hasNext() ? ids.next() : NO_MORE_DOCS;
+            }
+
+            @Override
+            public int advance(int target) {
+                while (doc < target) {
+                    nextDoc();
+                }
+                return doc;
+            }
+
+            @Override
+            public long cost() {
+                return size;
+            }
+        };
+    }
+}
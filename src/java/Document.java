@@ -1,63 +1,66 @@
-import java.io.Serializable;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.TreeMap;
-
-
-import java.io.Serializable;
-import java.util.TreeMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 
 /**
  * The {@code Document} class represents a textual document with metadata (ID, title, date)
- * and frequency-based representations used for various information retrieval models.
- * It supports raw word occurrences, normalized frequencies, TF-IDF scores, and
- * probabilistic term frequencies.
- *
- * Implements {@code Serializable} to allow serialization of document objects.
+ * and the raw word occurrences and normalized frequencies of its terms, keyed by the term IDs
+ * of the {@link TermDictionary}. The weights of the retrieval models are derived from these
+ * frequencies and the {@link TermWeights} of the index.
+ * <p>
+ * The frequencies form the forward index of the document: parallel primitive arrays sorted by
+ * term ID, looked up by binary search. Once the index is saved, the text, title and date are
+ * no longer kept in memory: they are read on demand from the {@link StoredFields} file.
  */
-public class Document implements Serializable {
+public class Document {
 
     /** Unique identifier for the document. */
     private Integer id;
 
-    /** Raw text content of the document. */
+    /** Raw text content of the document, while it is not in a stored fields file. */
     private String text;
 
-    /** Title of the document. */
+    /** Title of the document, while it is not in a stored fields file. */
     private String title;
 
-    /** Date associated with the document. */
+    /** Date associated with the document, while it is not in a stored fields file. */
     private String date;
 
-    /** Map of word occurrences in the document. */
-    private TreeMap<String, Integer> occurrences;
+    /** Offset of the record of the document in its stored fields file, or -1. */
+    private long storedOffset;
 
-    /** Normalized term frequencies for the document. */
-    private TreeMap<String, Double> frequences;
+    /** Stored fields file holding the text, title and date, or {@code null} if they are in memory. */
+    private StoredFields storedFields;
+
+    /** Number of distinct terms in the document. */
+    private int size;
 
-    /** TF-IDF weighted frequencies for terms in the document. */
-    private TreeMap<String, Double> TFIDFfrequences;
+    /** IDs of the terms of the document, in ascending order. */
+    private int[] termIds;
 
-    /** Probabilistic frequencies of terms (e.g., for probabilistic models). */
-    private TreeMap<String, Double> frequencesProb;
+    /** Word occurrences in the document, by position of the term. */
+    private int[] occurrences;
+
+    /** Normalized term frequencies for the document. */
+    private float[] frequences;
 
     /**
      * Constructs a new {@code Document} with the given ID.
-     * Initializes all frequency maps.
+     * Initializes all frequency arrays.
      *
      * @param id the unique identifier of the document
      */
     public Document(Integer id){
         this.id = id;
-        occurrences = new TreeMap<>();
-        frequences = new TreeMap<>();
-        TFIDFfrequences = new TreeMap<>();
-        frequencesProb = new TreeMap<>();
+        this.storedOffset = -1;
+        termIds = new int[8];
+        occurrences = new int[8];
+        frequences = new float[8];
     }
 
     /** @return the raw text of the document */
     public String getText() {
-        return text;
+        return storedFields == null ? text : readStoredField(StoredFields.TEXT);
     }
 
     /**
@@ -70,7 +73,7 @@ public class Document implements Serializable {
 
     /** @return the title of the document */
     public String getTitle() {
-        return title;
+        return storedFields == null ? title : readStoredField(StoredFields.TITLE);
     }
 
     /**
@@ -83,7 +86,7 @@ public class Document implements Serializable {
 
     /** @return the date of the document */
     public String getDate() {
-        return date;
+        return storedFields == null ? date : readStoredField(StoredFields.DATE);
     }
 
     /**
@@ -96,126 +99,198 @@ public class Document implements Serializable {
 
     /**
      * Adds or updates the number of occurrences of a given word in the document.
-     * @param mot the word
+     * @param termId the term ID
      * @param occurr the number of occurrences
      */
-    public void add1Occur(String mot, Integer occurr){
-        occurrences.put(mot, occurr);
+    public void add1Occur(Integer termId, Integer occurr){
+        int i = slot(termId);
+        occurrences[i] = occurr;
     }
 
     /**
-     * @param mot the word
+     * @param termId the term ID
      * @return the number of occurrences of the word, or {@code null} if not present
      */
-    public Integer get1Occur(String mot){
-        return occurrences.get(mot);
+    public Integer get1Occur(Integer termId){
+        int i = position(termId);
+        return i < 0 ? null : occurrences[i];
     }
 
     /**
-     * @param mot the word
-     * @return {@code true} if the word exists in the occurrence map
+     * @param termId the term ID
+     * @return {@code true} if the word exists in the document
      */
-    public boolean existsOccur(String mot){
-        return occurrences.containsKey(mot);
+    public boolean existsOccur(Integer termId){
+        return position(termId) >= 0;
     }
 
     /**
      * Adds or updates the normalized frequency of a word.
-     * @param mot the word
+     * @param termId the term ID
      * @param frequence the frequency value
      */
-    public void add1Freq(String mot, Double frequence){
-        frequences.put(mot, frequence);
+    public void add1Freq(Integer termId, Double frequence){
+        int i = slot(termId);
+        frequences[i] = frequence.floatValue();
     }
 
     /**
-     * @param mot the word
+     * @param termId the term ID
      * @return the normalized frequency of the word, or {@code null} if not present
      */
-    public Double get1Freq(String mot){
-        return frequences.get(mot);
+    public Double get1Freq(Integer termId){
+        int i = position(termId);
+        return i < 0 ? null : (double) frequences[i];
     }
 
     /**
-     * @param mot the word
+     * @param termId the term ID
      * @return {@code true} if the frequency is defined for this word
      */
-    public boolean existsFreq(String mot){
-        return frequences.containsKey(mot);
+    public boolean existsFreq(Integer termId){
+        return position(termId) >= 0;
+    }
+
+    /** @return the number of distinct terms in the document */
+    public int size() {
+        return size;
     }
 
     /**
-     * Adds or updates the TF-IDF frequency of a word.
-     * @param mot the word
-     * @param frequence the TF-IDF score
+     * @param i position of the term, between 0 and {@link #size()}
+     * @return the ID of the i-th term of the document, in ascending order
      */
-    public void add1TFIDFFreq(String mot, Double frequence){
-        TFIDFfrequences.put(mot, frequence);
+    public int getTermId(int i) {
+        return termIds[i];
     }
 
     /**
-     * @param mot the word
-     * @return the TF-IDF frequency of the word, or {@code null} if not present
+     * @param i position of the term, between 0 and {@link #size()}
+     * @return the normalized frequency of the i-th term of the document
      */
-    public Double get1TFIDFFreq(String mot){
-        return TFIDFfrequences.get(mot);
+    public float getFrequence(int i) {
+        return frequences[i];
     }
 
     /**
-     * @param mot the word
-     * @return {@code true} if the word has a TF-IDF frequency value
+     * Shrinks the frequency arrays to their used size, once every term has been added.
      */
-    public boolean existsTFIDFFreq(String mot){
-        return TFIDFfrequences.containsKey(mot);
+    public void trim() {
+        termIds = Arrays.copyOf(termIds, size);
+        occurrences = Arrays.copyOf(occurrences, size);
+        frequences = Arrays.copyOf(frequences, size);
+    }
+
+    /** @return the unique ID of the document */
+    public int getId(){
+        return this.id;
     }
 
     /**
-     * Adds or updates the probabilistic frequency of a word.
-     * @param mot the word
-     * @param frequence the probabilistic frequency
+     * Sets the ID of the document, used when a partial index is merged into the global one.
+     * @param id the new document ID
      */
-    public void add1TFreqProb(String mot, Double frequence){
-        frequencesProb.put(mot, frequence);
+    void setId(Integer id){
+        this.id = id;
     }
 
     /**
-     * @param mot the word
-     * @return the probabilistic frequency of the word, or {@code null} if not present
+     * Writes the ID, the stored fields offset and the forward index of the document to an
+     * index file.
+     * @param out the file to write to
+     * @throws IOException if an I/O error occurs
      */
-    public Double get1FreqProb(String mot){
-        return frequencesProb.get(mot);
+    void write(IndexOutput out) throws IOException {
+        out.writeInt(id);
+        out.writeLong(storedOffset);
+        out.writeInt(size);
+        out.writeInts(termIds, size);
+        out.writeInts(occurrences, size);
+        out.writeFloats(frequences, size);
     }
 
     /**
-     * @param mot the word
-     * @return {@code true} if the word has a probabilistic frequency
+     * Reads a document written by {@link #write(IndexOutput)}. Its stored fields are not
+     * attached yet.
+     * @param in the file to read from
+     * @return the document
+     * @throws IOException if an I/O error occurs
      */
-    public boolean existsFreqProb(String mot){
-        return frequencesProb.containsKey(mot);
+    static Document read(IndexInput in) throws IOException {
+        Document doc = new Document(in.readInt());
+        doc.storedOffset = in.readLong();
+        doc.size = in.readInt();
+        doc.termIds = in.readInts(doc.size);
+        doc.occurrences = in.readInts(doc.size);
+        doc.frequences = in.readFloats(doc.size);
+        return doc;
     }
 
-    /** @return the map of normalized frequencies for all terms in the document */
-    public TreeMap<String, Double> getFrequences() {
-        return frequences;
+    /** @return the offset of the record of the document in its stored fields file, or -1 */
+    long getStoredOffset() {
+        return storedOffset;
     }
 
-    /** @return the map of word occurrences in the document */
-    public TreeMap<String, Integer> getOccurrences() {
-        return occurrences;
+    /**
+     * Moves the text, title and date of the document to a stored fields file, releasing their
+     * in-memory copy.
+     * @param fields the stored fields file holding the record of the document
+     * @param offset the offset of the record in the file
+     */
+    void setStoredFields(StoredFields fields, long offset) {
+        this.storedFields = fields;
+        this.storedOffset = offset;
+        this.text = null;
+        this.title = null;
+        this.date = null;
     }
 
-    /** @return the map of TF-IDF scores for all terms in the document */
-    public TreeMap<String, Double> getTFIDFFrequences() {
-        return TFIDFfrequences;
+    /**
+     * Reads one field of the record of the document from its stored fields file.
+     */
+    private String readStoredField(int field) {
+        try {
+            return storedFields.read(storedOffset)[field];
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    /** @return the map of probabilistic frequencies for all terms in the document */
-    public TreeMap<String, Double> getFrequencesProb() {
-        return frequencesProb;
+    /**
+     * @return the position of a term in the arrays, or a negative value if it is absent
+     */
+    private int position(int termId) {
+        return Arrays.binarySearch(termIds, 0, size, termId);
     }
 
-    /** @return the unique ID of the document */
-    public int getId(){
-        return this.id;
+    /**
+     * Returns the position of a term in the arrays, inserting it if it is absent.
+     */
+    private int slot(int termId) {
+        int i = position(termId);
+
+        if (i >= 0) {
+            return i;
+        }
+        i = -i - 1;
+
+        if (size == termIds.length) {
+            int capacity = Math.max(8, size * 2);
+            termIds = Arrays.copyOf(termIds, capacity);
+            occurrences = Arrays.copyOf(occurrences, capacity);
+            frequences = Arrays.copyOf(frequences, capacity);
+        }
+
+        int n = size - i;
+        System.arraycopy(termIds, i, termIds, i + 1, n);
+        System.arraycopy(occurrences, i, occurrences, i + 1, n);
+        System.arraycopy(frequences, i, frequences, i + 1, n);
+
+        termIds[i] = termId;
+        occurrences[i] = 0;
+        frequences[i] = 0;
+        size++;
+        return i;
     }
 }
@@ -0,0 +1,65 @@
+/**
+ * Documents of an iterator that are not in another one, the evaluation of {@code a not b}.
+ * <p>
+ * The excluded iterator is only advanced to the candidates of the included one, so it is
+ * never read beyond them.
+ */
+public class ExclusionIterator extends DocIdIterator {
+
+    /** Iterator of the candidate documents. */
+    private final DocIdIterator include;
+
+    /** Iterator of the documents to reject. */
+    private final DocIdIterator exclude;
+
+    /** Current document ID. */
+    private int doc;
+
+    /**
+     * Constructs the difference of two iterators.
+     *
+     * @param include the iterator of the candidate documents
+     * @param exclude the iterator of the documents to reject
+     */
+    public ExclusionIterator(DocIdIterator include, DocIdIterator exclude) {
+        this.include = include;
+        this.exclude = exclude;
+        this.doc = -1;
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc = filter(include.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        return doc = filter(include.advance(target));
+    }
+
+    @Override
+    public long cost() {
+        return include.cost();
+    }
+
+    /**
+     * Skips the candidates that are excluded.
+     *
+     * @param candidate the current document of the included iterator
+     * @return the first candidate that is not excluded, or {@link #NO_MORE_DOCS}
+     */
+    private int filter(int candidate) {
+        while (candidate != NO_MORE_DOCS && exclude.advance(candidate) == candidate) {
+            candidate = include.nextDoc();
+        }
+        return candidate;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Count-min sketch of the frequency of recently used keys, such as queries or clauses, with
+ * four 4-bit counters per key, identified by its hash code. Once ten times as many uses as
+ * counters per row were recorded, every counter is halved, so that the frequencies follow the
+ * recent traffic. It decides which entries are admitted into the caches ({@link ResultCache},
+ * {@link ClauseCache}).
+ */
+final class FrequencySketch {
+
+    /** Seeds of the four hash functions. */
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /** Mask halving the sixteen 4-bit counters of a word. */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** Sixteen 4-bit counters per word. */
+    private final long[] table;
+
+    private final int tableMask;
+
+    /** Number of recorded uses after which the counters are halved. */
+    private final int sampleSize;
+
+    private int size;
+
+    /**
+     * Constructs a sketch sized for a number of cached entries.
+     *
+     * @param entries the expected number of entries of the cache
+     */
+    FrequencySketch(int entries) {
+        int longueur = Integer.highestOneBit(Math.max(entries, 16) - 1) << 1;
+        table = new long[longueur];
+        tableMask = longueur - 1;
+        sampleSize = 10 * longueur;
+    }
+
+    /**
+     * Returns the estimated number of recent uses of a key, at most 15.
+     */
+    int frequency(int hash) {
+        int start = (hash & 3) << 2;
+        int frequence = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int compte = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequence = Math.min(frequence, compte);
+        }
+        return frequence;
+    }
+
+    /**
+     * Records a use of a key.
+     */
+    void increment(int hash) {
+        int start = (hash & 3) << 2;
+        boolean ajoute = false;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int offset = (start + i) << 2;
+            long masque = 0xfL << offset;
+            if ((table[index] & masque) != masque) {
+                table[index] += 1L << offset;
+                ajoute = true;
+            }
+        }
+        if (ajoute && ++size == sampleSize) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size /= 2;
+        }
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return (int) h & tableMask;
+    }
+}
@@ -1,32 +1,123 @@
-import java.io.*;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
 /**
- * The {@code Index} class manages an inverted index structure consisting of keywords and documents.
- * It allows adding, retrieving, and serializing/deserializing the index data.
+ * The {@code Index} class manages an inverted index structure consisting of a term dictionary,
+ * keywords indexed by term ID, and documents.
+ * It allows adding, retrieving, and saving/loading the index data.
+ * <p>
+ * The index is saved in three binary files, each with a versioned header and a CRC32 footer
+ * (see {@link IndexOutput}): the vocabulary file (dictionary, weights and postings sections), the
+ * documents file (forward index of every document) and the stored fields file.
+ * A file written in another version is rebuilt from the corpus. When the index was built with
+ * positions, they are saved with the vocabulary in a fourth, optional file ({@link Positions}).
+ * <p>
+ * Once built, loaded or opened, an index is only read by the engines: any number of threads
+ * can search it at the same time, each query keeping its own state. Building it, applying
+ * deltas and saving it must be done by a single thread, before it is searched.
  */
-public class Index {
+public class Index implements Closeable {
 
-    /** Path to the serialized documents file. */
-    static final String pathDocs = "../resources/documents.data";
+    /** Path to the documents file (forward index of every document). */
+    static final String pathDocs = "../resources/documents.bin";
 
-    /** Path to the serialized vocabulary file. */
-    static final String pathVoc = "../resources/vocabulary.data";
+    /** Path to the vocabulary file (dictionary, weights and postings sections). */
+    static final String pathVoc = "../resources/vocabulary.bin";
 
-    /** Map of keywords, where the key is a word and the value is its associated {@code Keyword} object. */
-    static TreeMap<String, Keyword> keywords;
+    /** Path to the stored fields file holding the text, title and date of the documents. */
+    static final String pathStored = "../resources/stored.bin";
 
-    /** Map of documents, where the key is a document ID and the value is the {@code Document} object. */
-    static TreeMap<Integer, Document> documents;
+    /** Name of the content of the documents file, in its header. */
+    static final String DOCUMENTS_CODEC = "documents";
+
+    /** Name of the content of the vocabulary file, in its header. */
+    static final String VOCABULARY_CODEC = "vocabulary";
+
+    /** Version of the format of the documents and vocabulary files. */
+    static final int VERSION = 3;
+
+    /** Dictionary mapping every term to its dense term ID. */
+    private TermDictionary dictionary;
+
+    /** Keywords indexed by term ID. */
+    private List<Keyword> keywords;
+
+    /**
+     * Map of documents, where the key is a document ID and the value is the {@code Document} object,
+     * iterated in ascending ID order.
+     */
+    private Map<Integer, Document> documents;
+
+    /** Stored fields file the documents read their text, title and date from. */
+    private StoredFields storedFields;
+
+    /** Model weights of every term, indexed by term ID. */
+    private TermWeights weights;
+
+    /** Positions of every term in the documents of its postings, or {@code null} without positions. */
+    private Positions positions;
+
+    /** Number of changes made to the index, so that results computed before a change are not reused. */
+    private volatile long generation;
 
     /**
      * Constructs an empty {@code Index} with initialized maps.
      */
     public Index() {
-        keywords = new TreeMap<String, Keyword>();
+        dictionary = new TermDictionary();
+        keywords = new ArrayList<Keyword>();
         documents = new TreeMap<Integer, Document>();
     }
 
+    /**
+     * Constructs an {@code Index} over already loaded structures.
+     *
+     * @param dictionary the loaded term dictionary
+     * @param keywords the loaded keywords, indexed by term ID
+     * @param documents the loaded documents map
+     */
+    public Index(TermDictionary dictionary, List<Keyword> keywords, Map<Integer, Document> documents) {
+        this.dictionary = dictionary;
+        this.keywords = keywords;
+        this.documents = documents;
+    }
+
+    /**
+     * Retrieves the ID of a term.
+     *
+     * @param term the term to look up
+     * @return the term ID, or {@link TermDictionary#NOT_FOUND} if the term is not indexed
+     */
+    public int getTermId(String term) {
+        return dictionary.getId(term);
+    }
+
+    /**
+     * Retrieves the {@code Keyword} object associated with a term ID.
+     *
+     * @param termId the term ID
+     * @return the corresponding {@code Keyword} object
+     */
+    public Keyword getKeyword(int termId) {
+        return keywords.get(termId);
+    }
+
     /**
      * Retrieves the {@code Keyword} object associated with a specific word.
      *
@@ -34,17 +125,83 @@ public class Index {
      * @return the corresponding {@code Keyword} object, or {@code null} if not found
      */
     public Keyword getKeyword(String key) {
-        return keywords.get(key);
+        int termId = dictionary.getId(key);
+        return termId == TermDictionary.NOT_FOUND ? null : keywords.get(termId);
+    }
+
+    /**
+     * Adds terms to the dictionary in a single batch and creates an empty {@code Keyword}
+     * for each new term. Terms already indexed are ignored.
+     *
+     * @param terms the terms to add
+     */
+    public void addTerms(Collection<String> terms) {
+        generation++;
+        dictionary = dictionary.withTerms(terms);
+
+        while (keywords.size() < dictionary.size()) {
+            keywords.add(new Keyword(keywords.size()));
+        }
+    }
+
+    /** @return the term dictionary */
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /** @return the keywords, indexed by term ID */
+    public List<Keyword> getKeywords() {
+        return keywords;
+    }
+
+    /** @return the model weights of every term, indexed by term ID */
+    public TermWeights getWeights() {
+        return weights;
+    }
+
+    /**
+     * Computes the model weights of every term from the postings, once the index is built.
+     */
+    public void computeWeights() {
+        generation++;
+        weights = TermWeights.compute(keywords, documents.size());
     }
 
     /**
-     * Adds a {@code Keyword} object to the index.
+     * Returns the generation of the index: the number of changes made to its terms, documents
+     * or weights. Results computed at one generation are no longer valid at another one.
      *
-     * @param key the word to associate with the keyword
-     * @param keyword the {@code Keyword} object to add
+     * @return the generation of the index
      */
-    public void addKeyword(String key, Keyword keyword) {
-        keywords.put(key, keyword);
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the positions of the terms, which phrase and proximity queries need. An index
+     * only has positions if it was built with them. They are updated with the postings when
+     * documents are removed or delta segments applied, and only dropped if postings recorded
+     * without positions are merged into the index.
+     *
+     * @return the positions, or {@code null} if the index has none
+     */
+    public Positions getPositions() {
+        return positions;
+    }
+
+    /**
+     * Sets the positions of the terms, before postings with positions are merged into the index.
+     *
+     * @param positions the positions, or {@code null} to drop them
+     */
+    public void setPositions(Positions positions) {
+        generation++;
+        this.positions = positions;
+    }
+
+    /** @return the documents, keyed by document ID, in ascending ID order */
+    public Map<Integer, Document> getDocuments() {
+        return documents;
     }
 
     /**
@@ -64,45 +221,367 @@ public class Index {
      * @param doc the {@code Document} object to add
      */
     public void addDocument(Integer id, Document doc) {
+        generation++;
         documents.put(id, doc);
     }
 
     /**
-     * Saves the current vocabulary map to disk.
+     * Removes a document and its postings from the index.
+     * Terms left without any posting stay in the dictionary with an empty keyword.
+     *
+     * @param id the document ID
      */
-    public static void saveVocabulary() {
-        try {
-            File fileTemp = new File(pathVoc);
-            if (fileTemp.exists()) {
-                fileTemp.delete();
+    public void removeDocument(Integer id) {
+        RoaringDocIdSet.Builder ids = new RoaringDocIdSet.Builder();
+        ids.add(id);
+        removeDocuments(ids.build());
+    }
+
+    /**
+     * Removes documents and their postings from the index. The postings of each term of the
+     * removed documents are rebuilt once, without all of those documents, and so are their
+     * positions.
+     * Terms left without any posting stay in the dictionary with an empty keyword.
+     *
+     * @param ids the IDs of the documents
+     * @return the IDs of the terms whose postings changed
+     */
+    public Set<Integer> removeDocuments(RoaringDocIdSet ids) {
+        generation++;
+        Set<Integer> termes = new HashSet<>();
+
+        DocIdIterator it = ids.iterator();
+        for (int id = it.nextDoc(); id != DocIdIterator.NO_MORE_DOCS; id = it.nextDoc()) {
+            Document doc = documents.remove(id);
+            if (doc != null) {
+                for (int i = 0; i < doc.size(); i++) {
+                    termes.add(doc.getTermId(i));
+                }
+            }
+        }
+
+        for (int termId : termes) {
+            Keyword k = keywords.get(termId);
+            TermPositions tp = positions == null ? null : positions.get(termId);
+            if (tp != null) {
+                // Before the keyword, whose postings they follow
+                tp.remove(k, ids);
+            }
+            k.remove(ids);
+        }
+        return termes;
+    }
+
+    /**
+     * Applies the incremental changes recorded in a manifest on top of the loaded index:
+     * the delta segments are loaded, then the deleted documents are removed, the postings of each
+     * of their terms being rebuilt once for all of them. The model weights
+     * are then updated from the document frequencies of the modified terms only. The positions of
+     * the index are updated too, and dropped if a segment was written without positions.
+     *
+     * @param manifest the manifest of the index
+     * @throws IOException if a delta segment cannot be read
+     */
+    public void applyDeltas(Manifest manifest) throws IOException {
+        Set<Integer> modifies = new HashSet<>();
+        boolean avaitPositions = positions != null;
+
+        for (String delta : manifest.getDeltas()) {
+            PartialIndex partiel = new Segment(delta).read();
+            partiel.mergeInto(this, 0);
+            for (String term : partiel.getPostings().keySet()) {
+                modifies.add(getTermId(term));
+            }
+        }
+
+        if (!manifest.getDeletedRanges().isEmpty()) {
+            modifies.addAll(removeDocuments(deletedIds(manifest.getDeletedRanges())));
+        }
+
+        if (!manifest.getDeltas().isEmpty() || !manifest.getDeletedRanges().isEmpty()) {
+            generation++;
+            weights = weights.update(keywords, modifies, documents.size());
+        }
+        if (avaitPositions && positions == null) {
+            System.err.println("Positions dropped, a delta segment does not hold any: phrase queries need a reindexation with positions");
+        }
+    }
+
+    /**
+     * Returns the set of the IDs of ranges of deleted documents, given in any order.
+     */
+    private static RoaringDocIdSet deletedIds(List<int[]> ranges) {
+        List<int[]> triees = new ArrayList<>(ranges);
+        triees.sort(Comparator.comparingInt(r -> r[0]));
+
+        RoaringDocIdSet.Builder ids = new RoaringDocIdSet.Builder();
+        int dernier = -1;
+        for (int[] range : triees) {
+            for (int id = Math.max(range[0], dernier + 1); id < range[0] + range[1]; id++) {
+                ids.add(id);
+                dernier = id;
+            }
+        }
+        return ids.build();
+    }
+
+    /**
+     * Saves the current dictionary and keywords to disk, and the positions of the terms if the
+     * index has some. A positions file left by a previous index is deleted otherwise, since it no
+     * longer follows the postings.
+     */
+    public void saveVocabulary() {
+        saveVocabulary(pathVoc, Positions.pathPositions);
+    }
+
+    /**
+     * Saves the current dictionary and keywords to a vocabulary file, and the positions of the
+     * terms to a positions file, which is deleted if the index has none.
+     *
+     * @param path the path of the vocabulary file
+     * @param pathPositions the path of the positions file
+     */
+    private void saveVocabulary(String path, String pathPositions) {
+        try (IndexOutput out = create(path)) {
+            out.writeHeader(VOCABULARY_CODEC, VERSION);
+
+            // Dictionary section
+            dictionary.write(out);
+
+            // Weights section
+            weights.write(out);
+
+            // Postings section, then the offset of each keyword
+            long[] offsets = new long[keywords.size()];
+            out.writeInt(keywords.size());
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = out.getFilePointer();
+                keywords.get(i).write(out);
             }
+            writeTable(out, null, offsets);
+            out.writeFooter();
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        commit(path);
+        savePositions(pathPositions);
+    }
 
-            FileOutputStream f_out = new FileOutputStream(pathVoc);
-            ObjectOutputStream obj_out = new ObjectOutputStream(f_out);
-            obj_out.writeObject(keywords);
+    /**
+     * Saves the positions of the terms, or deletes the positions file if the index has none.
+     */
+    private void savePositions(String path) {
+        if (positions == null) {
+            new File(path).delete();
+            return;
+        }
 
+        try (IndexOutput out = create(path)) {
+            positions.write(out, keywords.size(), documents.size());
         }
         catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }
+        commit(path);
+    }
+
+    /**
+     * Saves the current documents map to disk. The text, title and date of the documents are
+     * written to the stored fields file first, so that the documents file only holds their
+     * forward index.
+     */
+    public void saveDocuments() {
+        saveDocuments(pathDocs, pathStored);
     }
 
     /**
-     * Saves the current documents map to disk.
+     * Saves the current documents map to a documents file, and their text, title and date to a
+     * stored fields file, which the documents read from afterwards.
+     *
+     * @param path the path of the documents file
+     * @param pathStoredFields the path of the stored fields file
      */
-    public static void saveDocuments() {
+    private void saveDocuments(String path, String pathStoredFields) {
         try {
-            File fileTemp = new File(pathDocs);
+            StoredFields previous = storedFields;
+            storedFields = StoredFields.write(documents.values(), pathStoredFields);
+            if (previous != null) {
+                previous.close();
+            }
+
+            try (IndexOutput out = create(path)) {
+                out.writeHeader(DOCUMENTS_CODEC, VERSION);
 
-            if (fileTemp.exists()) {
-                fileTemp.delete();
+                // Forward index of each document, then the ID and offset of each document
+                int[] ids = new int[documents.size()];
+                long[] offsets = new long[ids.length];
+                int i = 0;
+                out.writeInt(ids.length);
+                for (Document doc : documents.values()) {
+                    ids[i] = doc.getId();
+                    offsets[i++] = out.getFilePointer();
+                    doc.write(out);
+                }
+                writeTable(out, ids, offsets);
+                out.writeFooter();
             }
+        }
+        catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        commit(path);
+    }
+
+    /**
+     * Saves the index files to another directory than {@code src/resources}, under the same
+     * names, leaving the index files in place untouched. The documents then read their text,
+     * title and date from the stored fields file of that directory.
+     *
+     * @param directory the directory of the files
+     */
+    public void saveTo(File directory) {
+        saveDocuments(new File(directory, new File(pathDocs).getName()).getPath(),
+                new File(directory, new File(pathStored).getName()).getPath());
+        saveVocabulary(new File(directory, new File(pathVoc).getName()).getPath(),
+                new File(directory, new File(Positions.pathPositions).getName()).getPath());
+    }
+
+    /**
+     * Writes the index files directly from a segment, such as the one merged by a bounded-memory
+     * indexation, without building the index in memory: only the dictionary, the weights and the
+     * tables of the files are kept, with one document or one keyword at a time. The documents
+     * file is written from the forward index of the segment, and the positions file from its
+     * positions, if it has some; a positions file left by a previous index is deleted otherwise.
+     *
+     * @param segment the segment, with a forward index
+     * @throws IOException if the segment cannot be read or a file cannot be written
+     */
+    public static void save(Segment segment) throws IOException {
+        // Terms and document frequencies: the terms get their IDs in the order of the segment
+        List<String> termes = new ArrayList<>();
+        int[] df = new int[1024];
+        try (Segment.TermReader reader = segment.terms()) {
+            while (reader.next()) {
+                if (termes.size() == df.length) {
+                    df = Arrays.copyOf(df, 2 * df.length);
+                }
+                df[termes.size()] = reader.getDf();
+                termes.add(reader.getTerm());
+                reader.skipPostings();
+            }
+        }
+        TermDictionary dictionary = new TermDictionary().withTerms(termes);
+        df = Arrays.copyOf(df, termes.size());
+
+        // Stored fields and forward index of each document, then the ID and offset of each document
+        int nbDocuments;
+        try (Segment.DocumentReader reader = segment.documents();
+                IndexOutput stored = create(pathStored);
+                IndexOutput out = create(pathDocs)) {
+            stored.writeHeader(StoredFields.CODEC, StoredFields.VERSION);
+            out.writeHeader(DOCUMENTS_CODEC, VERSION);
+
+            nbDocuments = reader.size();
+            int[] ids = new int[nbDocuments];
+            long[] offsets = new long[nbDocuments];
+            out.writeInt(nbDocuments);
+            for (int i = 0; i < nbDocuments; i++) {
+                Document doc = reader.next(dictionary);
+                long offset = stored.getFilePointer();
+                StoredFields.writeRecord(stored, doc);
+                doc.setStoredFields(null, offset);
+
+                ids[i] = doc.getId();
+                offsets[i] = out.getFilePointer();
+                doc.write(out);
+            }
+            stored.writeFooter();
+            writeTable(out, ids, offsets);
+            out.writeFooter();
+        }
+        commit(pathStored);
+        commit(pathDocs);
+
+        // Vocabulary file and positions, one keyword at a time
+        boolean avecPositions = segment.hasPositions();
+        TermWeights weights = TermWeights.fromDf(df, nbDocuments);
+        try (Segment.TermReader reader = segment.terms();
+                IndexOutput out = create(pathVoc);
+                IndexOutput pos = avecPositions ? create(Positions.pathPositions) : null) {
+            out.writeHeader(VOCABULARY_CODEC, VERSION);
+            dictionary.write(out);
+            weights.write(out);
+            if (pos != null) {
+                Positions.writeHeader(pos, df.length, nbDocuments);
+            }
+
+            long[] offsets = new long[df.length];
+            long[] positions = new long[df.length];
+            out.writeInt(df.length);
+            for (int termId = 0; reader.next(); termId++) {
+                Keyword k = new Keyword(termId);
+                TermPositions tp = pos == null ? null : new TermPositions();
+                reader.readPostings(k, tp);
+                k.trim();
+
+                offsets[termId] = out.getFilePointer();
+                k.write(out);
+                if (pos != null) {
+                    tp.trim();
+                    positions[termId] = pos.getFilePointer();
+                    tp.write(pos);
+                }
+            }
+            writeTable(out, null, offsets);
+            out.writeFooter();
+            if (pos != null) {
+                Positions.writeTable(pos, positions);
+            }
+        }
+        commit(pathVoc);
+        if (avecPositions) {
+            commit(Positions.pathPositions);
+        }
+        else {
+            new File(Positions.pathPositions).delete();
+        }
+    }
+
+    /**
+     * Writes the table of an index file that locates its records, followed by the offset of the
+     * table itself, just before the footer: a file can then be opened without being scanned.
+     *
+     * @param out the file to write to
+     * @param ids the ID of each record, or {@code null} if records are indexed by position
+     * @param offsets the offset of each record
+     */
+    private static void writeTable(IndexOutput out, int[] ids, long[] offsets) throws IOException {
+        long table = out.getFilePointer();
+        if (ids != null) {
+            out.writeInts(ids, ids.length);
+        }
+        out.writeLongs(offsets, offsets.length);
+        out.writeLong(table);
+    }
 
-            FileOutputStream f_out = new FileOutputStream(pathDocs);
-            ObjectOutputStream obj_out = new ObjectOutputStream(f_out);
-            obj_out.writeObject(documents);
+    /**
+     * Opens the temporary file an index file is written to before it replaces the previous one.
+     */
+    private static IndexOutput create(String path) throws IOException {
+        return new IndexOutput(new File(path + ".tmp").toPath());
+    }
 
+    /**
+     * Replaces an index file with its complete temporary file.
+     */
+    private static void commit(String path) {
+        try {
+            Files.move(new File(path + ".tmp").toPath(), new File(path).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
         }
         catch (IOException e) {
             e.printStackTrace();
@@ -111,83 +590,274 @@ public class Index {
     }
 
     /**
-     * Generic method to load a {@code TreeMap} from a serialized file.
+     * Loads the documents map from disk and attaches them to the stored fields file.
      *
-     * @param <K> the key type of the map
-     * @param <V> the value type of the map
-     * @param path the file path to load from
-     * @param description a description used for logging
-     * @return the loaded {@code TreeMap}
      * @throws IOException if an I/O error occurs
-     * @throws ClassNotFoundException if the class of a serialized object cannot be found
      */
-    private static <K, V> TreeMap<K, V> loadMap(String path, String description) throws IOException, ClassNotFoundException {
-
-        File file = new File(path);
-        if (!file.exists()) {
-            throw new FileNotFoundException(description + " not found at: " + file.getAbsolutePath());
+    private void loadDocuments() throws IOException {
+        try {
+            readDocuments();
         }
+        catch (IndexFormatException e) {
+            System.err.println("Outdated files detected, reindexing required: " + e.getMessage());
+            reindex();
+            readDocuments();
+        }
+    }
 
-        System.out.println("Loading " + description + " from \"" + path + "\" …");
-        try (FileInputStream fis = new FileInputStream(file);
-             ObjectInputStream ois = new ObjectInputStream(fis)) {
+    /**
+     * Reads the documents from the documents file and opens the stored fields file.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    private void readDocuments() throws IOException {
+        System.out.println("Loading Documents from \"" + pathDocs + "\" …");
+        TreeMap<Integer, Document> lus = new TreeMap<>();
+
+        try (IndexInput in = new IndexInput(pathDocs)) {
+            in.checkHeader(DOCUMENTS_CODEC, VERSION);
+            int n = in.readInt();
+            for (int i = 0; i < n; i++) {
+                Document doc = Document.read(in);
+                lus.put(doc.getId(), doc);
+            }
+            in.readInts(n);
+            in.readLongs(n);
+            in.readLong();
+            in.checkFooter();
+        }
 
-            TreeMap<K, V> map = (TreeMap<K, V>) ois.readObject();
-            System.out.printf("Done: %s (%d entries)%n", description, map.size());
-            return map;
+        if (storedFields != null) {
+            storedFields.close();
+        }
+        storedFields = new StoredFields(pathStored);
+        for (Document doc : lus.values()) {
+            doc.setStoredFields(storedFields, doc.getStoredOffset());
         }
+        documents = lus;
+        System.out.printf("Done: Documents (%d entries)%n", documents.size());
     }
 
     /**
-     * Loads the serialized documents map from disk.
+     * Loads the dictionary and keywords from disk.
      *
-     * @return the loaded documents map
      * @throws IOException if an I/O error occurs
-     * @throws ClassNotFoundException if the class cannot be found
      */
-    public static TreeMap<Integer, Document> loadDocuments() throws IOException, ClassNotFoundException {
+    private void loadVocabulary() throws IOException {
         try {
-            documents = loadMap(pathDocs, "Documents");
+            loadKeywords();
         }
-        catch (InvalidClassException e) {
-            System.err.println("Outdated files detected, reindexing required.");
-            new File(pathDocs).delete();
-            new Indexation().indexer("hotels/data/chicago");
-            saveDocuments();
-            documents = loadMap(pathDocs, "Documents");
+        catch (IndexFormatException e) {
+            System.err.println("Outdated files detected, reindexing required: " + e.getMessage());
+            reindex();
+            loadKeywords();
         }
-        return documents;
     }
 
     /**
-     * Loads the serialized vocabulary map from disk.
+     * Reads the dictionary and the keywords from the vocabulary file.
      *
-     * @return the loaded vocabulary map
      * @throws IOException if an I/O error occurs
-     * @throws ClassNotFoundException if the class cannot be found
      */
-    public static TreeMap<String, Keyword> loadVocabulary() throws IOException, ClassNotFoundException {
+    private void loadKeywords() throws IOException {
+        System.out.println("Loading Vocabulary from \"" + pathVoc + "\" …");
+
+        try (IndexInput in = new IndexInput(pathVoc)) {
+            in.checkHeader(VOCABULARY_CODEC, VERSION);
+            TermDictionary dict = TermDictionary.read(in);
+            TermWeights poids = TermWeights.read(in);
+
+            int n = in.readInt();
+            ArrayList<Keyword> lus = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                lus.add(Keyword.read(in));
+            }
+            in.readLongs(n);
+            in.readLong();
+            in.checkFooter();
+
+            dictionary = dict;
+            weights = poids;
+            keywords = lus;
+            System.out.printf("Done: Vocabulary (%d entries)%n", keywords.size());
+        }
+    }
+
+    /**
+     * Loads the positions of the terms from disk, if the index was saved with positions. They
+     * are ignored if they were not written for the loaded vocabulary and documents.
+     *
+     * @param mapped whether to map the positions file rather than read it
+     * @throws IOException if an I/O error occurs
+     */
+    private void loadPositions(boolean mapped) throws IOException {
+        positions = null;
+        if (!new File(Positions.pathPositions).exists()) {
+            return;
+        }
+
+        if (mapped && !mappable(Positions.pathPositions)) {
+            System.err.println("Positions file too large to be mapped, reading it in memory instead");
+            mapped = false;
+        }
+
+        Positions lues;
         try {
-            keywords = loadMap(pathVoc, "Vocabulary");
+            lues = mapped ? Positions.map(Positions.pathPositions) : Positions.read(Positions.pathPositions);
         }
-        catch (InvalidClassException e) {
-            System.err.println("Outdated files detected, reindexing required.");
-            new File(pathDocs).delete();
-            new Indexation().indexer("hotels/data/chicago");
-            saveDocuments();
-            keywords = loadMap(pathVoc, "Vocabulary");
+        catch (IndexFormatException e) {
+            System.err.println("Outdated positions ignored, phrase queries need a reindexation with positions: " + e.getMessage());
+            return;
+        }
+        if (lues.size() != keywords.size() || lues.getDocuments() != documents.size()) {
+            System.err.println("Positions written for another index ignored, phrase queries need a reindexation with positions");
+            return;
+        }
+
+        positions = lues;
+        long voc = new File(pathVoc).length();
+        long pos = new File(Positions.pathPositions).length();
+        System.out.printf("Done: Positions (%,d bytes, +%.0f%% over the vocabulary file)%n", pos, 100.0 * pos / voc);
+    }
+
+    /**
+     * Rebuilds the index files from the corpus, when the files on disk cannot be read. The
+     * positions are recorded again if there were some.
+     *
+     * @throws IOException if the corpus cannot be indexed
+     */
+    private static void reindex() throws IOException {
+        Indexation indexation = new Indexation(new File(Positions.pathPositions).exists());
+        indexation.indexer(Main.CORPUS, Runtime.getRuntime().availableProcessors());
+        indexation.getManifest().save();
+        try (Index index = indexation.getIndex()) {
+            index.saveDocuments();
+            index.saveVocabulary();
         }
-        return keywords;
+    }
+
+    /**
+     * Loads the documents and the vocabulary from disk.
+     *
+     * @return the loaded index
+     * @throws IOException if an I/O error occurs
+     */
+    public static Index load() throws IOException {
+        Index index = new Index();
+        index.loadDocuments();
+        index.loadVocabulary();
+        index.loadPositions(false);
+        return index;
+    }
+
+    /**
+     * Opens the index files in place: they are memory-mapped and only their headers and tables
+     * are read. Dictionary lookups read the mapped bytes, and a keyword or a document is decoded
+     * the first time it is requested, so the time to open does not depend on the size of the
+     * corpus and the mapped pages stay in the page cache across restarts. The checksums are not
+     * verified, since that would read the whole files.
+     * <p>
+     * A file of 2 GB or more cannot be mapped as a single buffer: the index is then
+     * {@linkplain #load() loaded} in memory instead, and positions that large are read rather
+     * than mapped.
+     *
+     * @return the opened index
+     * @throws IOException if a file cannot be opened or is not in the expected format
+     */
+    public static Index open() throws IOException {
+        for (String path : new String[] {pathVoc, pathDocs}) {
+            if (!mappable(path)) {
+                System.err.println("Index file too large to be mapped, loading the index in memory instead: " + path);
+                return load();
+            }
+        }
+
+        ByteBuffer voc = map(pathVoc);
+        checkHeader(voc, VOCABULARY_CODEC);
+        TermDictionary dictionary = TermDictionary.map(voc);
+        TermWeights weights = TermWeights.map(voc);
+        int nbKeywords = voc.getInt();
+        int table = (int) voc.getLong(voc.limit() - 16);
+        List<Keyword> keywords = new MappedKeywords(voc, voc.slice(table, 8 * nbKeywords).asLongBuffer());
+
+        StoredFields storedFields = new StoredFields(pathStored);
+
+        ByteBuffer docs = map(pathDocs);
+        checkHeader(docs, DOCUMENTS_CODEC);
+        int nbDocuments = docs.getInt();
+        table = (int) docs.getLong(docs.limit() - 16);
+        Map<Integer, Document> documents = new MappedDocuments(docs,
+                docs.slice(table, 4 * nbDocuments).asIntBuffer(),
+                docs.slice(table + 4 * nbDocuments, 8 * nbDocuments).asLongBuffer(),
+                storedFields);
+
+        System.out.printf("Opened index in place: %d documents, %d terms%n", nbDocuments, nbKeywords);
+        Index index = new Index(dictionary, keywords, documents);
+        index.weights = weights;
+        index.storedFields = storedFields;
+        index.loadPositions(true);
+        return index;
+    }
+
+    /**
+     * Closes the stored fields file the documents read their text, title and date from.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (storedFields != null) {
+            storedFields.close();
+        }
+    }
+
+    /**
+     * Tells whether an index file fits in a single mapped buffer.
+     */
+    private static boolean mappable(String path) {
+        return new File(path).length() <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Maps an index file in memory, read-only.
+     */
+    static ByteBuffer map(String path) throws IOException {
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Index file not found at: " + file.getAbsolutePath());
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Index file too large to be mapped: " + path);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Checks the header of a mapped index file and moves past it.
+     */
+    private static void checkHeader(ByteBuffer buffer, String codec) throws IOException {
+        IndexInput in = new IndexInput(buffer.duplicate());
+        in.checkHeader(codec, VERSION);
+        buffer.position(buffer.limit() - in.remaining());
     }
 
     /**
      * Retrieves the term frequencies for all words in a given document.
      *
      * @param id the document ID
-     * @return a map of words to their frequencies in the document
+     * @return a map of term IDs to their frequencies in the document
      */
-    public TreeMap<String, Double> getMotFrequence(int id) {
-        return documents.get(id).getFrequences();
+    public TreeMap<Integer, Double> getMotFrequence(int id) {
+        TreeMap<Integer, Double> frequences = new TreeMap<>();
+        Document doc = documents.get(id);
+
+        for (int i = 0; i < doc.size(); i++) {
+            frequences.put(doc.getTermId(i), (double) doc.getFrequence(i));
+        }
+        return frequences;
     }
 
     /**
@@ -197,6 +867,12 @@ public class Index {
      * @return a map of document IDs to frequency values
      */
     public TreeMap<Integer, Double> getDocFrequence(String mot) {
-        return keywords.get(mot).getFrequences();
+        TreeMap<Integer, Double> frequences = new TreeMap<>();
+        PostingsCursor c = getKeyword(mot).cursor();
+
+        while (c.nextDoc() != PostingsCursor.NO_MORE_DOCS) {
+            frequences.put(c.docID(), (double) c.frequence());
+        }
+        return frequences;
     }
 }
@@ -0,0 +1,19 @@
+import java.io.IOException;
+
+/**
+ * Thrown when an index file is not in the expected format: wrong magic number, unknown codec,
+ * unsupported version or checksum mismatch. The index must then be rebuilt.
+ */
+public class IndexFormatException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs an exception with a message.
+     *
+     * @param message the description of the problem, including the file
+     */
+    public IndexFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Buffered sequential reader of an index file written by {@link IndexOutput}.
+ * <p>
+ * The CRC32 of the bytes consumed is computed while reading, and compared with the footer by
+ * {@link #checkFooter()}. An input can also decode a region of a memory-mapped index file in
+ * place, in which case no checksum is computed.
+ */
+public class IndexInput implements Closeable {
+
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Path of the file, used in error messages. */
+    private final String path;
+
+    /** Channel of the file being read. */
+    private final FileChannel channel;
+
+    /** Bytes read from the channel; the position is the next byte to consume. */
+    private final ByteBuffer buffer;
+
+    /** Checksum of the bytes consumed. */
+    private final CRC32 crc;
+
+    /** Position in the buffer of the first consumed byte not yet in the checksum. */
+    private int crcMark;
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file does not exist or cannot be opened
+     */
+    public IndexInput(String path) throws IOException {
+        File file = new File(path);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Index file not found at: " + file.getAbsolutePath());
+        }
+        this.path = path;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.limit(0);
+        crc = new CRC32();
+    }
+
+    /**
+     * Reads a region of a buffer, typically a slice of a memory-mapped index file.
+     *
+     * @param buffer the bytes to read, from its position to its limit
+     */
+    public IndexInput(ByteBuffer buffer) {
+        this.path = "mapped region";
+        this.channel = null;
+        this.buffer = buffer;
+        this.crc = new CRC32();
+    }
+
+    /**
+     * Reads and checks the header of the file.
+     *
+     * @param codec the expected name of the content of the file
+     * @param version the expected version of the format
+     * @throws IndexFormatException if the header does not match
+     * @throws IOException if an I/O error occurs
+     */
+    public void checkHeader(String codec, int version) throws IOException {
+        if (channel != null && channel.size() < 4 || readInt() != IndexOutput.MAGIC) {
+            throw new IndexFormatException("Not an index file: " + path);
+        }
+        String actual = readString();
+        if (!codec.equals(actual)) {
+            throw new IndexFormatException("Unexpected content \"" + actual + "\" in " + path + ", expected \"" + codec + "\"");
+        }
+        int actualVersion = readInt();
+        if (actualVersion != version) {
+            throw new IndexFormatException("Unsupported version " + actualVersion + " of " + path + ", expected " + version);
+        }
+    }
+
+    /**
+     * Reads the footer and checks it against the checksum of every byte consumed.
+     *
+     * @throws IndexFormatException if the checksum does not match or bytes follow the footer
+     * @throws IOException if an I/O error occurs
+     */
+    public void checkFooter() throws IOException {
+        ensure(8);
+        crc.update(buffer.array(), crcMark, buffer.position() - crcMark);
+        long expected = crc.getValue();
+        long actual = buffer.getLong();
+        crcMark = buffer.position();
+
+        if (actual != expected) {
+            throw new IndexFormatException("Checksum mismatch in " + path);
+        }
+        if (buffer.hasRemaining() || channel.position() != channel.size()) {
+            throw new IndexFormatException("Unexpected data after the footer of " + path);
+        }
+    }
+
+    /** @return the number of bytes left to read in the buffer */
+    int remaining() {
+        return buffer.remaining();
+    }
+
+    /** Reads a byte. */
+    public byte readByte() throws IOException {
+        ensure(1);
+        return buffer.get();
+    }
+
+    /** Reads a big-endian int. */
+    public int readInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    /** Reads a big-endian long. */
+    public long readLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    /** Reads a big-endian float. */
+    public float readFloat() throws IOException {
+        ensure(4);
+        return buffer.getFloat();
+    }
+
+    /**
+     * Reads bytes into an array.
+     *
+     * @param b the array
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public void readBytes(byte[] b, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(b, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Reads an array of int values.
+     *
+     * @param length the number of values
+     * @return the values
+     * @throws IOException if an I/O error occurs
+     */
+    public int[] readInts(int length) throws IOException {
+        int[] values = new int[length];
+        int offset = 0;
+
+        while (offset < length) {
+            ensure(4);
+            int n = Math.min(length - offset, buffer.remaining() / 4);
+            buffer.asIntBuffer().get(values, offset, n);
+            buffer.position(buffer.position() + n * 4);
+            offset += n;
+        }
+        return values;
+    }
+
+    /**
+     * Reads an array of float values.
+     *
+     * @param length the number of values
+     * @return the values
+     * @throws IOException if an I/O error occurs
+     */
+    public float[] readFloats(int length) throws IOException {
+        float[] values = new float[length];
+        int offset = 0;
+
+        while (offset < length) {
+            ensure(4);
+            int n = Math.min(length - offset, buffer.remaining() / 4);
+            buffer.asFloatBuffer().get(values, offset, n);
+            buffer.position(buffer.position() + n * 4);
+            offset += n;
+        }
+        return values;
+    }
+
+    /**
+     * Reads an array of long values.
+     *
+     * @param length the number of values
+     * @return the values
+     * @throws IOException if an I/O error occurs
+     */
+    public long[] readLongs(int length) throws IOException {
+        long[] values = new long[length];
+        int offset = 0;
+
+        while (offset < length) {
+            ensure(8);
+            int n = Math.min(length - offset, buffer.remaining() / 8);
+            buffer.asLongBuffer().get(values, offset, n);
+            buffer.position(buffer.position() + n * 8);
+            offset += n;
+        }
+        return values;
+    }
+
+    /**
+     * Reads a string written by {@link IndexOutput#writeString(String)}.
+     *
+     * @return the string, or {@code null}
+     * @throws IOException if an I/O error occurs
+     */
+    public String readString() throws IOException {
+        int length = readInt();
+
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        readBytes(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Makes at least {@code n} bytes available in the buffer, reading from the channel.
+     */
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() >= n) {
+            return;
+        }
+        if (channel == null) {
+            throw new EOFException("Unexpected end of " + path);
+        }
+
+        crc.update(buffer.array(), crcMark, buffer.position() - crcMark);
+        buffer.compact();
+        crcMark = 0;
+
+        while (buffer.position() < n) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+        }
+        buffer.flip();
+    }
+}
@@ -0,0 +1,224 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Buffered writer of an index file over a {@link FileChannel}.
+ * <p>
+ * Every index file starts with a header (magic number, codec name and version) and ends with a
+ * footer holding the CRC32 of all the bytes before it, checked by {@link IndexInput}.
+ * Numbers are written big-endian; arrays are written in bulk through the buffer.
+ */
+public class IndexOutput implements Closeable {
+
+    /** Magic number at the start of every index file. */
+    static final int MAGIC = 0x53454958;
+
+    /** Size of the write buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Channel of the file being written. */
+    private final FileChannel channel;
+
+    /** Bytes not yet written to the channel. */
+    private final ByteBuffer buffer;
+
+    /** Checksum of the bytes written to the channel. */
+    private final CRC32 crc;
+
+    /** Number of bytes written to the channel. */
+    private long flushed;
+
+    /**
+     * Creates or truncates a file for writing.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public IndexOutput(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        crc = new CRC32();
+    }
+
+    /**
+     * Writes the header of the file.
+     *
+     * @param codec the name of the content of the file
+     * @param version the version of the format of the content
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeHeader(String codec, int version) throws IOException {
+        writeInt(MAGIC);
+        writeString(codec);
+        writeInt(version);
+    }
+
+    /**
+     * Writes the footer of the file: the CRC32 of every byte written so far.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeFooter() throws IOException {
+        flush();
+        writeLong(crc.getValue());
+        flush();
+    }
+
+    /** @return the number of bytes written since the start of the file */
+    public long getFilePointer() {
+        return flushed + buffer.position();
+    }
+
+    /** Writes a byte. */
+    public void writeByte(byte b) throws IOException {
+        ensure(1);
+        buffer.put(b);
+    }
+
+    /** Writes a big-endian int. */
+    public void writeInt(int v) throws IOException {
+        ensure(4);
+        buffer.putInt(v);
+    }
+
+    /** Writes a big-endian long. */
+    public void writeLong(long v) throws IOException {
+        ensure(8);
+        buffer.putLong(v);
+    }
+
+    /** Writes a big-endian float. */
+    public void writeFloat(float v) throws IOException {
+        ensure(4);
+        buffer.putFloat(v);
+    }
+
+    /**
+     * Writes bytes of an array.
+     *
+     * @param b the array
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeBytes(byte[] b, int offset, int length) throws IOException {
+        while (length > 0) {
+            ensure(1);
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(b, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Writes the first {@code length} values of an array.
+     *
+     * @param values the array
+     * @param length the number of values
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeInts(int[] values, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            ensure(4);
+            int n = Math.min(length - offset, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + n * 4);
+            offset += n;
+        }
+    }
+
+    /**
+     * Writes the first {@code length} values of an array.
+     *
+     * @param values the array
+     * @param length the number of values
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeFloats(float[] values, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            ensure(4);
+            int n = Math.min(length - offset, buffer.remaining() / 4);
+            buffer.asFloatBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + n * 4);
+            offset += n;
+        }
+    }
+
+    /**
+     * Writes the first {@code length} values of an array.
+     *
+     * @param values the array
+     * @param length the number of values
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeLongs(long[] values, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            ensure(8);
+            int n = Math.min(length - offset, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(values, offset, n);
+            buffer.position(buffer.position() + n * 8);
+            offset += n;
+        }
+    }
+
+    /**
+     * Writes a nullable string as its UTF-8 length followed by its bytes, -1 for {@code null}.
+     *
+     * @param s the string
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeString(String s) throws IOException {
+        if (s == null) {
+            writeInt(-1);
+        }
+        else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            writeBytes(bytes, 0, bytes.length);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            channel.force(false);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Makes room for {@code n} bytes in the buffer.
+     */
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        crc.update(buffer.array(), 0, buffer.limit());
+        flushed += buffer.limit();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -1,5 +1,13 @@
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * Class responsible for indexing documents by processing text files,
@@ -8,7 +16,7 @@ import java.util.ArrayList;
 public class Indexation {
 
 	/**
-	 * Index containing all keywords and documents.
+	 * Index containing all keywords and documents, created on the first full indexation.
 	 */
 	private Index index;
 
@@ -17,118 +25,349 @@ public class Indexation {
 	 */
 	private int id;
 
+	/**
+	 * Manifest of the indexed files, filled as files are indexed.
+	 */
+	private Manifest manifest;
+
 	/**
 	 * List of keywords extracted from documents (not used in current code).
 	 */
 	private ArrayList<String> motCle;
 
 	/**
-	 * List of stop words to be ignored during indexing.
+	 * Tokenizer splitting texts into lowercased terms and skipping stop words.
 	 */
-	private ArrayList<String> motStopWord;
+	private final Tokenizer tokenizer;
 
 	/**
-	 * Constructs a new Indexation instance.
-	 * Initializes the index and loads the stop words from the file "stopwords.txt".
-	 * If the file cannot be opened, prints an error message.
+	 * Whether the positions of the terms in the documents are recorded, for phrase queries.
+	 */
+	private final boolean positions;
+
+	/**
+	 * Constructs a new Indexation instance, which does not record the positions of the terms.
+	 * Uses the shared tokenizer, which loads the stop words from the file "stopwords.txt".
 	 */
 	public Indexation() {
-		index = new Index();
+		this(false);
+	}
+
+	/**
+	 * Constructs a new Indexation instance.
+	 * Uses the shared tokenizer, which loads the stop words from the file "stopwords.txt".
+	 *
+	 * @param positions whether to record the positions of the terms in the documents, into the
+	 *        {@link Positions} of the index built by {@link #indexer(String, int)}, or into the
+	 *        segments written by the other indexations
+	 */
+	public Indexation(boolean positions) {
 		this.id = 0;
+		this.manifest = new Manifest();
+		this.tokenizer = Tokenizer.getDefault();
+		this.positions = positions;
+	}
+
+	/**
+	 * Indexes all documents found in the directory specified by the given URL (path)
+	 * on the calling thread.
+	 *
+	 * @param url the path to the directory containing files to be indexed
+	 */
+	public void indexer(String url) {
+		indexer(url, 1);
+	}
 
-		File repertoire = new File("../resources/stopwords.txt");
-		motStopWord = new ArrayList<String>();
+	/**
+	 * Indexes all documents found in the directory specified by the given URL (path).
+	 * Each file is indexed by a worker of a fork-join pool into a private {@link PartialIndex};
+	 * the partials are then merged in file order so that document IDs are the same
+	 * whatever the number of threads.
+	 *
+	 * @param url the path to the directory containing files to be indexed
+	 * @param nbThreads the number of worker threads to use
+	 */
+	public void indexer(String url, int nbThreads) {
 
-		// Load stop words from file into motStopWord list
-		InputStream st;
+		File repertoire = new File(url);
+		File[] fichiers = repertoire.listFiles();
 
-		try {
-			st = new FileInputStream(repertoire);
-			InputStreamReader str = new InputStreamReader(st);
-			BufferedReader bf = new BufferedReader(str);
+		if (fichiers == null) {
+			System.out.println("Error opening directory " + url);
+			return;
+		}
+		Arrays.sort(fichiers);
 
-			String ligne;
-			while ((ligne = bf.readLine()) != null) {
-				motStopWord.add(ligne);
+		long debut = System.nanoTime();
+		List<PartialIndex> partiels;
+
+		if (nbThreads <= 1) {
+			partiels = new ArrayList<>();
+			for (File file : fichiers) {
+				partiels.add(indexerFichier(file));
 			}
 		}
-		catch (IOException e) {
-			System.out.println("Error opening stopwords file");
+		else {
+			ForkJoinPool pool = new ForkJoinPool(nbThreads);
+			try {
+				partiels = pool.submit(() -> Arrays.stream(fichiers)
+						.parallel()
+						.map(this::indexerFichier)
+						.collect(Collectors.toList())).get();
+			}
+			catch (InterruptedException | ExecutionException e) {
+				throw new IllegalStateException("Parallel indexation failed", e);
+			}
+			finally {
+				pool.shutdown();
+			}
+		}
+
+		if (index == null) {
+			index = new Index();
+			if (positions) {
+				index.setPositions(new Positions());
+			}
+		}
+
+		// Partials are concatenated first so that the dictionary is extended only once
+		PartialIndex global = new PartialIndex();
+		int debutId = this.id;
+		for (int i = 0; i < fichiers.length; i++) {
+			PartialIndex partiel = partiels.get(i);
+			global.absorb(partiel, this.id);
+			enregistrer(fichiers[i], partiel);
+		}
+		global.mergeInto(index, 0);
+		index.computeWeights();
+		int nbDocs = this.id - debutId;
+
+		double secondes = (System.nanoTime() - debut) / 1e9;
+		System.out.printf("Indexed %d documents in %.2f s (%.0f docs/s, %d thread(s))%n",
+				nbDocs, secondes, nbDocs / secondes, Math.max(1, nbThreads));
+		if (index.getPositions() != null) {
+			System.out.printf("Recorded positions: %,d bytes%n", index.getPositions().sizeInBytes());
 		}
 	}
 
 	/**
-	 * Indexes all documents found in the directory specified by the given URL (path).
-	 * For each file, reads its contents line by line, extracts document metadata
-	 * (date, title, text), splits text into words, filters out stop words,
-	 * and updates the index with keywords and frequencies.
+	 * Indexes all documents found in the directory specified by the given URL (path)
+	 * with a bounded amount of memory. Documents are accumulated in memory until the
+	 * estimated size of the buffer reaches {@code budget}; the buffer is then flushed as an
+	 * immutable {@link Segment} on disk. Once every file is read, the segments are merged
+	 * into a single one with a k-way merge and deleted.
 	 *
 	 * @param url the path to the directory containing files to be indexed
+	 * @param budget the RAM budget of the in-memory buffer, in bytes
+	 * @param dossier the directory where segments are written
+	 * @return the merged segment, whose prefix is {@code dossier/index}
+	 * @throws IOException if a segment cannot be written or merged
 	 */
-	public void indexer(String url) {
+	public Segment indexerParSegments(String url, long budget, String dossier) throws IOException {
 
-		File repertoire = new File(url);
-		File[] fichiers = repertoire.listFiles();
+		File[] fichiers = new File(url).listFiles();
+
+		if (fichiers == null) {
+			throw new FileNotFoundException("Directory not found: " + url);
+		}
+		Arrays.sort(fichiers);
+		new File(dossier).mkdirs();
 
-		String ligne;
+		long debut = System.nanoTime();
+		List<Segment> segments = new ArrayList<>();
+		PartialIndex tampon = new PartialIndex();
+		int debutId = this.id;
 
 		for (File file : fichiers) {
-			try {
-				InputStream st = new FileInputStream(file);
-				InputStreamReader str = new InputStreamReader(st);
-				BufferedReader bf = new BufferedReader(str);
+			PartialIndex partiel = indexerFichier(file);
+			tampon.absorb(partiel, this.id);
+			enregistrer(file, partiel);
+
+			if (tampon.getEstimatedBytes() >= budget) {
+				segments.add(Segment.write(tampon, dossier + File.separator + "seg_" + segments.size()));
+				tampon = new PartialIndex();
+			}
+		}
 
-				while ((ligne = bf.readLine()) != null) {
-					Document doc = new Document(id);
-					String[] phrase = ligne.split("\t");
-					String[] com;
+		if (tampon.size() > 0 || segments.isEmpty()) {
+			segments.add(Segment.write(tampon, dossier + File.separator + "seg_" + segments.size()));
+		}
 
-					if (phrase.length == 2) {
-						doc.setDate(phrase[0]);
-						doc.setText(phrase[1]);
+		Segment fusion = Segment.merge(segments, dossier + File.separator + "index");
+		for (Segment segment : segments) {
+			segment.delete();
+		}
 
-						com = phrase[1].split(" ");
+		int nbDocs = this.id - debutId;
+		double secondes = (System.nanoTime() - debut) / 1e9;
+		System.out.printf("Indexed %d documents in %.2f s (%.0f docs/s, %d segment(s) merged)%n",
+				nbDocs, secondes, nbDocs / secondes, segments.size());
+		return fusion;
+	}
+
+	/**
+	 * Indexes only the files of the directory that are new or have changed since the index
+	 * described by {@code manifest} was built. The documents of changed or deleted files are
+	 * marked as deleted in the manifest, and the new documents are written as a delta
+	 * {@link Segment} registered in the manifest, with IDs following the existing ones.
+	 * The cost is proportional to the changed files, not to the corpus.
+	 *
+	 * @param url the path to the directory containing files to be indexed
+	 * @param manifest the manifest of the existing index, updated in place
+	 * @param dossier the directory where delta segments are written
+	 * @return the delta segment, or {@code null} if nothing has changed
+	 * @throws IOException if a file cannot be read or the delta cannot be written
+	 */
+	public Segment indexerIncremental(String url, Manifest manifest, String dossier) throws IOException {
+
+		File[] fichiers = new File(url).listFiles();
+
+		if (fichiers == null) {
+			throw new FileNotFoundException("Directory not found: " + url);
+		}
+		Arrays.sort(fichiers);
+
+		this.manifest = manifest;
+		this.id = manifest.getNextId();
+		int debutId = this.id;
+
+		// Files that disappeared from the corpus
+		Set<String> presents = new HashSet<>();
+		for (File file : fichiers) {
+			presents.add(file.getName());
+		}
+		for (String name : manifest.getFileNames()) {
+			if (!presents.contains(name)) {
+				manifest.removeFile(name);
+			}
+		}
+
+		PartialIndex delta = new PartialIndex();
+		int nbFichiers = 0;
+
+		for (File file : fichiers) {
+			if (manifest.isModified(file)) {
+				manifest.removeFile(file.getName());
+
+				PartialIndex partiel = indexerFichier(file);
+				delta.absorb(partiel, this.id);
+				enregistrer(file, partiel);
+				nbFichiers++;
+			}
+		}
+
+		if (delta.size() == 0) {
+			return null;
+		}
+
+		new File(dossier).mkdirs();
+		String prefix = dossier + File.separator + "delta_" + debutId;
+		Segment segment = Segment.write(delta, prefix);
+		manifest.addDelta(prefix);
+
+		System.out.printf("Indexed %d new document(s) from %d new or changed file(s)%n", delta.size(), nbFichiers);
+		return segment;
+	}
+
+	/**
+	 * Returns the index built by {@link #indexer(String, int)}.
+	 *
+	 * @return the index, or {@code null} if nothing was indexed yet
+	 */
+	public Index getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the manifest of the files indexed by this instance.
+	 *
+	 * @return the manifest
+	 */
+	public Manifest getManifest() {
+		return manifest;
+	}
+
+	/**
+	 * Records an indexed file in the manifest and moves the document ID counter past its documents.
+	 *
+	 * @param file the indexed file
+	 * @param partiel the partial index of the file
+	 */
+	private void enregistrer(File file, PartialIndex partiel) {
+		try {
+			manifest.addFile(file, this.id, partiel.size());
+		}
+		catch (IOException e) {
+			System.out.println("Error reading file");
+		}
+		this.id += partiel.size();
+	}
+
+	/**
+	 * Indexes a single file into a private partial index.
+	 * Reads its records through a memory-mapped {@link CorpusReader}, extracts document metadata
+	 * (date, title, text), tokenizes the text into lowercased terms without stop words,
+	 * and updates the partial index with keywords and frequencies, and positions if they are recorded.
+	 * Document IDs are local to the file and start at 0.
+	 *
+	 * @param file the file to index
+	 * @return the partial index of the file
+	 */
+	private PartialIndex indexerFichier(File file) {
+		PartialIndex partiel = new PartialIndex();
+		int idLocal = 0;
+
+		try (CorpusReader lecteur = new CorpusReader(file)) {
+
+			while (lecteur.next()) {
+				Document doc = new Document(idLocal);
+				String texte = lecteur.getText();
+
+				doc.setDate(lecteur.getDate());
+				doc.setTitle(lecteur.getTitle());
+				doc.setText(texte);
+
+				HashMap<String, Integer> occurrences = new HashMap<>();
+				HashMap<String, Double> frequences = new HashMap<>();
+				HashMap<String, int[]> positionsParTerme = positions ? new HashMap<>() : null;
+
+				tokenizer.tokenizeWithPositions(texte, (s, position) -> {
+					if (!occurrences.containsKey(s)) {
+						occurrences.put(s, 1);
+						frequences.put(s, 1.0);
 					}
 					else {
-						doc.setDate(phrase[0]);
-						doc.setTitle(phrase[1]);
-						doc.setText(phrase[2]);
-
-						com = phrase[2].split(" ");
+						occurrences.put(s, occurrences.get(s) + 1);
+						frequences.put(s, (frequences.get(s) + 1.0 / frequences.size()));
 					}
 
-					for (String s : com) {
-						s.toLowerCase();
-
-						if (!motStopWord.contains(s)) {
-							Keyword k;
-
-							if (!doc.getOccurrences().containsKey(s)) {
-								k = new Keyword(s);
-								doc.add1Occur(s, 1);
-								doc.add1Freq(s, 1.0);
-								k.add1Occur(id, 1);
-								k.add1Freq(id, 1.0);
-
-							}
-							else {
-								k = index.getKeyword(s);
-								doc.add1Occur(s, doc.get1Occur(s) + 1);
-								doc.add1Freq(s, (doc.get1Freq(s) + 1.0 / doc.getFrequences().size()));
-								k.add1Occur(id, k.get1Occur(id) + 1);
-								k.add1Freq(id, k.get1Freq(id) + 1.0 / k.getFrequences().size());
-							}
-							index.addKeyword(s, k);
+					if (positionsParTerme != null) {
+						int n = occurrences.get(s);
+						int[] p = positionsParTerme.get(s);
+						if (p == null || n > p.length) {
+							p = p == null ? new int[2] : Arrays.copyOf(p, 2 * p.length);
+							positionsParTerme.put(s, p);
 						}
+						p[n - 1] = position;
 					}
+				});
 
-					index.addDocument(id, doc);
-					this.id += 1;
+				for (String s : occurrences.keySet()) {
+					if (positionsParTerme == null) {
+						partiel.addPosting(s, idLocal, occurrences.get(s), frequences.get(s));
+					}
+					else {
+						partiel.addPosting(s, idLocal, occurrences.get(s), frequences.get(s), positionsParTerme.get(s));
+					}
 				}
+
+				partiel.addDocument(doc);
+				idLocal += 1;
 			}
-			catch (IOException e) {
-				System.out.println("Error reading file");
-			}
 		}
+		catch (IOException e) {
+			System.out.println("Error reading file");
+		}
+		return partiel;
 	}
 }
@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON support for the search server and the batch mode: escaping of the strings
+ * written, and parsing of one JSON value, such as a line of a JSONL file.
+ * <p>
+ * Parsed objects are {@code Map<String, Object>} (in the order of their members), arrays
+ * {@code List<Object>}, numbers {@code Double}, and {@code true}, {@code false} and
+ * {@code null} their Java counterparts.
+ */
+public final class Json {
+
+    /** The text parsed. */
+    private final String texte;
+
+    /** Position of the next character to read. */
+    private int position;
+
+    private Json(String texte) {
+        this.texte = texte;
+    }
+
+    /**
+     * Parses a JSON value.
+     *
+     * @param texte the JSON text, holding a single value
+     * @return the value
+     * @throws IllegalArgumentException if the text is not valid JSON
+     */
+    public static Object parse(String texte) {
+        Json parser = new Json(texte);
+        Object valeur = parser.valeur();
+        parser.espaces();
+        if (parser.position < texte.length()) {
+            throw parser.erreur("Unexpected content after the value");
+        }
+        return valeur;
+    }
+
+    /**
+     * Appends a JSON string, escaping the quotes, backslashes and control characters.
+     *
+     * @param json the JSON text being written
+     * @param s the string, or {@code null}
+     */
+    public static void string(StringBuilder json, String s) {
+        if (s == null) {
+            json.append("null");
+            return;
+        }
+
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    }
+                    else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private Object valeur() {
+        espaces();
+        if (position == texte.length()) {
+            throw erreur("Unexpected end of JSON");
+        }
+
+        char c = texte.charAt(position);
+        switch (c) {
+            case '{':
+                return objet();
+            case '[':
+                return tableau();
+            case '"':
+                return chaine();
+            case 't':
+                return litteral("true", Boolean.TRUE);
+            case 'f':
+                return litteral("false", Boolean.FALSE);
+            case 'n':
+                return litteral("null", null);
+            default:
+                if (c == '-' || c >= '0' && c <= '9') {
+                    return nombre();
+                }
+                throw erreur("Unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> objet() {
+        Map<String, Object> membres = new LinkedHashMap<>();
+        position++;
+        espaces();
+        if (accept('}')) {
+            return membres;
+        }
+
+        do {
+            espaces();
+            if (position == texte.length() || texte.charAt(position) != '"') {
+                throw erreur("Expected a member name");
+            }
+            String nom = chaine();
+            espaces();
+            if (!accept(':')) {
+                throw erreur("Expected ':'");
+            }
+            membres.put(nom, valeur());
+            espaces();
+        } while (accept(','));
+
+        if (!accept('}')) {
+            throw erreur("Expected ',' or '}'");
+        }
+        return membres;
+    }
+
+    private List<Object> tableau() {
+        List<Object> elements = new ArrayList<>();
+        position++;
+        espaces();
+        if (accept(']')) {
+            return elements;
+        }
+
+        do {
+            elements.add(valeur());
+            espaces();
+        } while (accept(','));
+
+        if (!accept(']')) {
+            throw erreur("Expected ',' or ']'");
+        }
+        return elements;
+    }
+
+    private String chaine() {
+        StringBuilder s = new StringBuilder();
+        position++;
+
+        while (position < texte.length()) {
+            char c = texte.charAt(position++);
+            if (c == '"') {
+                return s.toString();
+            }
+            if (c != '\\') {
+                s.append(c);
+                continue;
+            }
+            if (position == texte.length()) {
+                break;
+            }
+
+            char e = texte.charAt(position++);
+            switch (e) {
+                case 'b':
+                    s.append('\b');
+                    break;
+                case 'f':
+                    s.append('\f');
+                    break;
+                case 'n':
+                    s.append('\n');
+                    break;
+                case 'r':
+                    s.append('\r');
+                    break;
+                case 't':
+                    s.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > texte.length()) {
+                        throw erreur("Truncated unicode escape");
+                    }
+                    try {
+                        s.append((char) Integer.parseInt(texte.substring(position, position + 4), 16));
+                    }
+                    catch (NumberFormatException ex) {
+                        throw erreur("Invalid unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    s.append(e);
+            }
+        }
+        throw erreur("Unterminated string");
+    }
+
+    private Double nombre() {
+        int debut = position;
+        while (position < texte.length() && "+-0123456789.eE".indexOf(texte.charAt(position)) >= 0) {
+            position++;
+        }
+        try {
+            return Double.valueOf(texte.substring(debut, position));
+        }
+        catch (NumberFormatException e) {
+            throw erreur("Invalid number");
+        }
+    }
+
+    private Object litteral(String mot, Object valeur) {
+        if (!texte.startsWith(mot, position)) {
+            throw erreur("Unexpected character '" + texte.charAt(position) + "'");
+        }
+        position += mot.length();
+        return valeur;
+    }
+
+    private boolean accept(char c) {
+        if (position < texte.length() && texte.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void espaces() {
+        while (position < texte.length() && Character.isWhitespace(texte.charAt(position))) {
+            position++;
+        }
+    }
+
+    private IllegalArgumentException erreur(String message) {
+        return new IllegalArgumentException(message + " at character " + position);
+    }
+}
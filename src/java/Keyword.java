@@ -1,194 +1,253 @@
-import java.io.Serializable;
-import java.util.TreeMap;
+import java.io.IOException;
+import java.util.Arrays;
 
 /**
- * Represents a keyword and stores its statistics across documents.
- * Includes occurrences, frequencies, TF-IDF frequencies, and probabilistic frequencies.
+ * Represents a keyword and stores its postings: the documents containing the term, with the
+ * occurrences and frequency of the term in each. Model weights are kept in {@link TermWeights}.
+ * <p>
+ * Document IDs are stored in ascending order as variable-length deltas in a byte array, with a
+ * skip entry every {@value #SKIP_INTERVAL} postings so that a {@link PostingsCursor} can jump
+ * forward without decoding every delta. Statistics are kept in parallel primitive arrays
+ * indexed by the position of the posting. Postings are appended in ascending document order.
  */
-public class Keyword implements Serializable {
+public class Keyword {
 
-    private String terme;
-    private TreeMap<Integer,Integer> occurrences;
-    private TreeMap<Integer,Double> frequences;
-    private TreeMap<Integer,Double> TFIDFfrequences;
-    private TreeMap<Integer,Double> frequencesProb;
+    /** Number of postings between two skip entries. */
+    static final int SKIP_INTERVAL = 64;
 
-    /**
-     * Constructs a Keyword object with the specified term.
-     * Initializes the maps for occurrences and different types of frequencies.
-     *
-     * @param mot the term (keyword) this object represents
-     */
-    public Keyword(String mot){
-        occurrences = new  TreeMap<Integer,Integer>();
-        frequences = new  TreeMap<Integer,Double>();
-        TFIDFfrequences = new  TreeMap<Integer,Double>();
-        frequencesProb = new  TreeMap<Integer,Double>();
-        this.terme = mot;
-    }
+    private int termId;
 
-    /**
-     * Returns the number of occurrences of the keyword in the given document.
-     *
-     * @param idDoc document ID
-     * @return number of occurrences or null if not present
-     */
-    public Integer get1Occur(Integer  idDoc) {
-        return occurrences.get(idDoc);
-    }
+    /** Number of postings (document frequency). */
+    private int size;
 
-    /**
-     * Checks whether occurrences exist for the specified document.
-     *
-     * @param idDoc document ID
-     * @return true if occurrences exist, false otherwise
-     */
-    public boolean existsOccur(Integer  idDoc) {
-        return occurrences.containsKey(idDoc);
-    }
+    /** Document IDs encoded as variable-length deltas from the previous document. */
+    byte[] docs;
 
-    /**
-     * Adds or updates the number of occurrences for a document.
-     *
-     * @param idDoc document ID
-     * @param occur number of occurrences
-     */
-    public void add1Occur(Integer idDoc, Integer occur){
-        occurrences.put(idDoc,occur);
-    }
+    /** Number of bytes used in {@link #docs}. */
+    private int docsLength;
 
-    /**
-     * Returns the frequency of the keyword in the given document.
-     *
-     * @param idDoc document ID
-     * @return frequency or null if not present
-     */
-    public Double get1Freq(Integer  idDoc) {
-        return frequences.get(idDoc);
-    }
+    /** Last document ID appended, or -1. */
+    private int lastDoc;
 
-    /**
-     * Adds or updates the frequency for a document.
-     *
-     * @param idDoc document ID
-     * @param freq frequency value
-     */
-    public void add1Freq(Integer idDoc, Double freq){
-        frequences.put(idDoc,freq);
-    }
+    /** Document ID of every {@value #SKIP_INTERVAL}-th posting. */
+    int[] skipDocs;
+
+    /** Offset in {@link #docs} just after the delta of every {@value #SKIP_INTERVAL}-th posting. */
+    int[] skipOffsets;
+
+    private int[] occurrences;
+    private float[] frequences;
+
+    /** Document IDs as a compressed bitmap, built on demand; reset when the postings change. */
+    private volatile RoaringDocIdSet docIdSet;
 
     /**
-     * Checks whether frequency exists for the specified document.
+     * Constructs a Keyword object for the specified term, without any posting.
      *
-     * @param idDoc document ID
-     * @return true if frequency exists, false otherwise
+     * @param termId the ID in the {@link TermDictionary} of the term this object represents
      */
-    public boolean existsFreq(Integer  idDoc) {
-        return occurrences.containsKey(idDoc);
+    public Keyword(int termId){
+        this.termId = termId;
+        this.lastDoc = -1;
+        docs = new byte[4];
+        skipDocs = new int[1];
+        skipOffsets = new int[1];
+        occurrences = new int[2];
+        frequences = new float[2];
     }
 
     /**
-     * Returns the TF-IDF frequency of the keyword in the given document.
+     * Appends a posting. Documents must be added in ascending ID order.
      *
-     * @param idDoc document ID
-     * @return TF-IDF frequency or null if not present
+     * @param idDoc document ID, greater than every document already added
+     * @param occur number of occurrences of the term in the document
+     * @param freq frequency of the term in the document
      */
-    public Double get1TFIDFFreq(Integer  idDoc) {
-        return TFIDFfrequences.get(idDoc);
+    public void add(int idDoc, int occur, double freq) {
+        if (idDoc <= lastDoc) {
+            throw new IllegalArgumentException("Postings must be added in ascending order: " + idDoc + " after " + lastDoc);
+        }
+
+        if (size == occurrences.length) {
+            // The arrays of a trimmed keyword without postings are empty
+            int capacity = Math.max(2, size * 2);
+            occurrences = Arrays.copyOf(occurrences, capacity);
+            frequences = Arrays.copyOf(frequences, capacity);
+        }
+        if (docsLength + 5 > docs.length) {
+            docs = Arrays.copyOf(docs, Math.max(docs.length * 2, docsLength + 5));
+        }
+
+        int delta = idDoc - (lastDoc < 0 ? 0 : lastDoc);
+        while ((delta & ~0x7F) != 0) {
+            docs[docsLength++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        docs[docsLength++] = (byte) delta;
+
+        if (size % SKIP_INTERVAL == 0) {
+            int skip = size / SKIP_INTERVAL;
+
+            if (skip == skipDocs.length) {
+                skipDocs = Arrays.copyOf(skipDocs, Math.max(1, skip * 2));
+                skipOffsets = Arrays.copyOf(skipOffsets, Math.max(1, skip * 2));
+            }
+            skipDocs[skip] = idDoc;
+            skipOffsets[skip] = docsLength;
+        }
+
+        occurrences[size] = occur;
+        frequences[size] = (float) freq;
+        size++;
+        lastDoc = idDoc;
+        docIdSet = null;
     }
 
     /**
-     * Adds or updates the TF-IDF frequency for a document.
+     * Removes the postings of a set of documents, if present. The postings are rebuilt once,
+     * whatever the number of documents removed.
      *
-     * @param idDoc document ID
-     * @param freq TF-IDF frequency value
+     * @param idDocs the IDs of the documents
      */
-    public void add1TFIDFFreq(Integer idDoc, Double freq){
-        TFIDFfrequences.put(idDoc,freq);
+    public void remove(RoaringDocIdSet idDocs) {
+        Keyword copie = new Keyword(termId);
+        PostingsCursor c = cursor();
+
+        while (c.nextDoc() != PostingsCursor.NO_MORE_DOCS) {
+            if (!idDocs.contains(c.docID())) {
+                copie.add(c.docID(), c.occurrences(), c.frequence());
+            }
+        }
+
+        if (copie.size != size) {
+            copie.trim();
+            size = copie.size;
+            docs = copie.docs;
+            docsLength = copie.docsLength;
+            lastDoc = copie.lastDoc;
+            skipDocs = copie.skipDocs;
+            skipOffsets = copie.skipOffsets;
+            occurrences = copie.occurrences;
+            frequences = copie.frequences;
+            docIdSet = null;
+        }
     }
 
     /**
-     * Checks whether TF-IDF frequency exists for the specified document.
-     *
-     * @param idDoc document ID
-     * @return true if TF-IDF frequency exists, false otherwise
+     * Shrinks the internal arrays to their used size, once the postings are complete.
      */
-    public boolean existsTFIDFreq(Integer  idDoc) {
-        return TFIDFfrequences.containsKey(idDoc);
+    public void trim() {
+        docs = Arrays.copyOf(docs, docsLength);
+        int skips = (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+        skipDocs = Arrays.copyOf(skipDocs, skips);
+        skipOffsets = Arrays.copyOf(skipOffsets, skips);
+        occurrences = Arrays.copyOf(occurrences, size);
+        frequences = Arrays.copyOf(frequences, size);
     }
 
     /**
-     * Returns the probabilistic frequency of the keyword in the given document.
+     * Writes the postings of the keyword to an index file.
      *
-     * @param idDoc document ID
-     * @return probabilistic frequency or null if not present
+     * @param out the file to write to
+     * @throws IOException if an I/O error occurs
      */
-    public Double get1FreqProb(Integer  idDoc) {
-        return frequencesProb.get(idDoc);
+    void write(IndexOutput out) throws IOException {
+        int skips = (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+
+        out.writeInt(termId);
+        out.writeInt(size);
+        out.writeInt(lastDoc);
+        out.writeInt(docsLength);
+        out.writeBytes(docs, 0, docsLength);
+        out.writeInts(skipDocs, skips);
+        out.writeInts(skipOffsets, skips);
+        out.writeInts(occurrences, size);
+        out.writeFloats(frequences, size);
     }
 
     /**
-     * Adds or updates the probabilistic frequency for a document.
+     * Reads the postings of a keyword written by {@link #write(IndexOutput)}.
      *
-     * @param idDoc document ID
-     * @param freq probabilistic frequency value
+     * @param in the file to read from
+     * @return the keyword
+     * @throws IOException if an I/O error occurs
      */
-    public void add1FreqProb(Integer idDoc, Double freq){
-        frequencesProb.put(idDoc,freq);
+    static Keyword read(IndexInput in) throws IOException {
+        Keyword k = new Keyword(in.readInt());
+        k.size = in.readInt();
+        k.lastDoc = in.readInt();
+        k.docsLength = in.readInt();
+        k.docs = new byte[k.docsLength];
+        in.readBytes(k.docs, 0, k.docsLength);
+
+        int skips = (k.size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+        k.skipDocs = in.readInts(skips);
+        k.skipOffsets = in.readInts(skips);
+        k.occurrences = in.readInts(k.size);
+        k.frequences = in.readFloats(k.size);
+        return k;
     }
 
     /**
-     * Checks whether probabilistic frequency exists for the specified document.
+     * Returns a new cursor positioned before the first posting.
      *
-     * @param idDoc document ID
-     * @return true if probabilistic frequency exists, false otherwise
+     * @return a cursor over the postings of this keyword
      */
-    public boolean existsFreqProb(Integer  idDoc) {
-        return frequencesProb.containsKey(idDoc);
+    public PostingsCursor cursor() {
+        return new PostingsCursor(this);
     }
 
     /**
-     * Returns the map of frequencies (relative) for all documents.
+     * Returns the document IDs of the postings as a compressed bitmap. The bitmap is built on
+     * the first call and kept until the postings change, so it is only worth asking for the
+     * keywords of frequent terms.
      *
-     * @return map of document ID to frequency
+     * @return the set of the documents containing the term
      */
-    public TreeMap<Integer, Double> getFrequences() {
-        return frequences;
+    public RoaringDocIdSet docIdSet() {
+        RoaringDocIdSet set = docIdSet;
+        if (set == null) {
+            set = RoaringDocIdSet.of(cursor());
+            docIdSet = set;
+        }
+        return set;
     }
 
     /**
-     * Returns the map of occurrences for all documents.
+     * Returns the number of documents containing the keyword.
      *
-     * @return map of document ID to occurrences count
+     * @return the document frequency
      */
-    public TreeMap<Integer, Integer> getOccurrences() {
-        return occurrences;
+    public int size() {
+        return size;
     }
 
     /**
-     * Returns the map of TF-IDF frequencies for all documents.
+     * Returns the number of occurrences of the keyword in the i-th posting.
      *
-     * @return map of document ID to TF-IDF frequency
+     * @param index position of the posting
+     * @return number of occurrences
      */
-    public TreeMap<Integer, Double> getTFIDFFrequences() {
-        return TFIDFfrequences;
+    public int getOccurrence(int index) {
+        return occurrences[index];
     }
 
     /**
-     * Returns the map of probabilistic frequencies for all documents.
+     * Returns the frequency of the keyword in the i-th posting.
      *
-     * @return map of document ID to probabilistic frequency
+     * @param index position of the posting
+     * @return frequency
      */
-    public TreeMap<Integer, Double> getFrequencesProb() {
-        return frequencesProb;
+    public float getFrequence(int index) {
+        return frequences[index];
     }
 
     /**
-     * Returns the term (keyword) represented by this object.
+     * Returns the ID of the term (keyword) represented by this object.
      *
-     * @return the term as a string
+     * @return the term ID
      */
-    public String getTerm() {
-        return terme;
+    public int getTermId() {
+        return termId;
     }
 }
@@ -0,0 +1,124 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of latencies in nanoseconds, recorded by any number of threads without locking.
+ * <p>
+ * The buckets are log-linear: the values below {@code 2 * }{@value #SUB_BUCKETS} have a bucket
+ * each, then every power of two is split into {@value #SUB_BUCKETS} buckets of equal width, so
+ * that a percentile is known within about 3% of its value, from nanoseconds to hours, with 1,888
+ * counters. Recording a value costs a few arithmetic operations and an atomic increment.
+ */
+public class LatencyHistogram {
+
+    /** Number of buckets per power of two. */
+    static final int SUB_BUCKETS = 32;
+
+    /** log2 of {@link #SUB_BUCKETS}. */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** Number of buckets, up to {@link Long#MAX_VALUE}. */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency, in nanoseconds; negative values count as 0
+     */
+    public void record(long nanos) {
+        long v = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(v));
+        count.increment();
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /** @return the number of recorded latencies */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /** @return the mean of the recorded latencies, in nanoseconds, or 0 if there are none */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /** @return the highest recorded latency, in nanoseconds */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns a percentile of the recorded latencies.
+     *
+     * @param q the fraction of the latencies below the percentile, such as 0.99
+     * @return the highest value of the bucket holding the percentile, in nanoseconds, at most
+     *         the highest recorded latency; 0 if there are none
+     */
+    public long percentile(double q) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rang = Math.max(1, (long) Math.ceil(q * total));
+        long cumul = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumul += counts.get(i);
+            if (cumul >= rang) {
+                return Math.min(highestValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets every recorded latency. Latencies recorded at the same time may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Returns the bucket of a value.
+     */
+    static int bucket(long v) {
+        if (v < 2 * SUB_BUCKETS) {
+            return (int) v;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (v >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the highest value of a bucket.
+     */
+    static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
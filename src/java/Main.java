@@ -1,55 +1,254 @@
 import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Scanner;
-import java.util.Set;
-import java.util.TreeMap;
+
+import javax.management.JMException;
 
 public class Main {
 
+	/** Répertoire du corpus à indexer. */
+	static final String CORPUS = "../../hotels/data/chicago";
+
+	/** Nombre de segments delta au-delà duquel ils sont fusionnés dans l'index principal. */
+	private static final int MAX_DELTAS = 8;
+
+	/** Nombre de résultats affichés par défaut, modifiable avec l'option {@code --top=K}. */
+	private static final int TOP_K = 10;
+
+	/** Délai en secondes laissé aux recherches en cours à l'arrêt du serveur. */
+	private static final int SHUTDOWN_DELAY = 5;
+
+	/** Taille par défaut du cache des résultats en Mo, modifiable avec l'option {@code --cache=MO} (0 le désactive). */
+	private static final int CACHE_MB = 64;
+
+	/** Fichier du journal des requêtes lentes, activé avec l'option {@code --slow-query-ms=MS}. */
+	private static final String SLOW_QUERY_LOG = "slow-queries.jsonl";
+
 	public static void main(String[] args) {
 
-		// 1) Si pas de fichiers sérialisés -> indexer puis sauvegarder
+		// 1) Si pas de fichiers d'index -> indexer puis sauvegarder
 		File docsFile = new File(Index.pathDocs);
 		File vocFile = new File(Index.pathVoc);
+		File storedFile = new File(Index.pathStored);
 
-		if (!docsFile.exists() || !vocFile.exists()) {
-			System.out.println("Fichiers sérialisés introuvables, lancement de l'indexation...");
-			new Indexation().indexer("../../hotels/data/chicago");
+		// Avec --positions, l'index enregistre la position des termes pour les requêtes "phrase"
+		boolean positions = Arrays.asList(args).contains("--positions");
+		File positionsFile = new File(Positions.pathPositions);
 
-			Index.saveDocuments();
-			Index.saveVocabulary();
+		if (!docsFile.exists() || !vocFile.exists() || !storedFile.exists() || positions && !positionsFile.exists()) {
+			System.out.println("Fichiers d'index introuvables, lancement de l'indexation...");
+			String budget = readOption(args, "ram-budget");
+			Indexation indexation = new Indexation(positions);
+
+			try {
+				if (budget == null) {
+					indexation.indexer(CORPUS, Runtime.getRuntime().availableProcessors());
+					Index index = indexation.getIndex();
+					index.saveDocuments();
+					index.saveVocabulary();
+					index.close();
+				}
+				else {
+					// Indexation en mémoire bornée : segments sur disque, fusion, puis écriture
+					// des fichiers d'index depuis le segment fusionné sans charger les documents
+					Segment segment = indexation.indexerParSegments(CORPUS,
+							Long.parseLong(budget) * 1024 * 1024, "../resources/segments");
+					Index.save(segment);
+					segment.delete();
+				}
+				indexation.getManifest().save();
+
+				if (positions) {
+					long voc = vocFile.length();
+					long pos = positionsFile.length();
+					System.out.printf("Positions : %,d octets, soit +%.0f %% par rapport au vocabulaire (%,d octets)%n",
+							pos, 100.0 * pos / voc, voc);
+				}
+			}
+			catch (IOException e) {
+				System.err.println("Échec de l'indexation: " + e.getMessage());
+				System.exit(1);
+			}
 			System.out.println("Indexation et sauvegarde terminées.");
 		}
 		else {
 			System.out.println("Fichiers déjà présents, on passe au chargement.");
 		}
 
-		// 2) Chargement des données
+		// 2) Chargement des données, ou ouverture en place des fichiers projetés en mémoire
 		try {
-			TreeMap<Integer, Document> documents = Index.loadDocuments();
-			TreeMap<String, Keyword> vocabulary = Index.loadVocabulary();
+			Index index = Arrays.asList(args).contains("--mmap") ? Index.open() : Index.load();
+
+			// Prise en compte des fichiers nouveaux ou modifiés depuis l'indexation
+			refresh(index, args);
+
+			// Cache des résultats, partagé par les trois moteurs
+			String taille = readOption(args, "cache");
+			long mo = taille == null ? CACHE_MB : Long.parseLong(taille);
+			ResultCache cache = mo > 0 ? new ResultCache(index, mo * 1024 * 1024) : null;
+
+			// Mesures du chemin de recherche, consultables par JMX (jconsole, VisualVM)
+			try {
+				SearchMetrics.getDefault().register();
+			}
+			catch (JMException e) {
+				System.err.println("Impossible d'exposer les mesures par JMX : " + e.getMessage());
+			}
+
+			// Journal des requêtes plus lentes que le seuil, avec leur profil
+			String seuil = readOption(args, "slow-query-ms");
+			String journal = readOption(args, "slow-query-log");
+			SlowQueryLog lentes = seuil == null ? null
+					: new SlowQueryLog(Paths.get(journal == null ? SLOW_QUERY_LOG : journal), Long.parseLong(seuil));
+
+			// Mode batch : les requêtes sont lues dans un fichier JSONL et exécutées en parallèle
+			String batch = readOption(args, "batch");
+			if (batch != null) {
+				String sortie = readOption(args, "output");
+				String threads = readOption(args, "threads");
+				new BatchSearch(index, threads == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads), cache, lentes)
+						.run(Paths.get(batch), Paths.get(sortie == null ? batch.replaceFirst("(\\.jsonl)?$", ".results.jsonl") : sortie));
+				System.out.println(SearchMetrics.getDefault().dump());
+				if (cache != null) {
+					System.out.println("Cache : " + cache.getStats());
+				}
+				if (lentes != null) {
+					System.out.println(lentes.getCount() + " requête(s) lente(s) journalisée(s)");
+					lentes.close();
+				}
+				return;
+			}
+
+			// Mode serveur : les requêtes arrivent par HTTP au lieu de l'entrée standard. Le serveur
+			// n'écoute que sur l'adresse de bouclage, sauf si --bind=ADRESSE en donne une autre
+			String port = readOption(args, "serve");
+			if (port != null) {
+				String max = readOption(args, "max-concurrent");
+				String adresse = readOption(args, "bind");
+				serve(index, adresse == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(adresse), Integer.parseInt(port),
+						max == null ? SearchServer.DEFAULT_MAX_CONCURRENT : Integer.parseInt(max), cache, lentes);
+				return;
+			}
 
 			// 3) Choix du moteur
-			SearchEngine engine = chooseEngine(vocabulary, documents);
+			SearchType type = chooseType();
+			SearchEngine engine = type.newEngine(index, cache, lentes);
 
 			// 4) Boucle de requêtes
-			runInteractiveLoop(engine);
+			String top = readOption(args, "top");
+			runInteractiveLoop(engine, type, index, top == null ? TOP_K : Integer.parseInt(top));
+			if (lentes != null) {
+				lentes.close();
+			}
 
 		}
-		catch (IOException | ClassNotFoundException e) {
+		catch (IOException e) {
 			System.err.println("Impossible de charger les données: " + e.getMessage());
 			e.printStackTrace();
 		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 	}
 
 	/**
-	 * Affiche le menu pour choisir un moteur de recherche et retourne le moteur sélectionné.
+	 * Indexe les fichiers du corpus nouveaux ou modifiés dans un segment delta, puis applique
+	 * les deltas à l'index chargé. Les deltas sont fusionnés dans les fichiers d'index
+	 * avec l'option {@code --compact} ou lorsqu'ils deviennent trop nombreux.
 	 *
-	 * @param vocab le vocabulaire (mots-clés) indexé
-	 * @param docs  la collection des documents indexés
-	 * @return une instance de SearchEngine correspondant au choix utilisateur
+	 * @param index l'index chargé
+	 * @param args  les arguments de la ligne de commande
+	 * @throws IOException si le manifeste ou un delta ne peut pas être lu ou écrit
 	 */
-	private static SearchEngine chooseEngine(TreeMap<String, Keyword> vocab, TreeMap<Integer, Document> docs) {
+	private static void refresh(Index index, String[] args) throws IOException {
+		if (!new File(Manifest.pathManifest).exists()) {
+			System.out.println("Manifeste introuvable, mise à jour incrémentale impossible.");
+			return;
+		}
+
+		Manifest manifest = Manifest.load();
+		// Les deltas enregistrent les positions si l'index en a, pour qu'il les garde
+		new Indexation(index.getPositions() != null).indexerIncremental(CORPUS, manifest, "../resources/deltas");
+		manifest.save();
+		index.applyDeltas(manifest);
+
+		boolean compact = Arrays.asList(args).contains("--compact") || manifest.getDeltas().size() > MAX_DELTAS;
+		if (compact && (!manifest.getDeltas().isEmpty() || !manifest.getDeletedRanges().isEmpty())) {
+			index.saveDocuments();
+			index.saveVocabulary();
+
+			for (String delta : manifest.getDeltas()) {
+				new Segment(delta).delete();
+			}
+			manifest.clearDeltas();
+			manifest.save();
+			System.out.println("Deltas fusionnés dans l'index principal.");
+		}
+	}
+
+	/**
+	 * Démarre le serveur de recherche HTTP sur l'index chargé. Il est arrêté proprement à
+	 * l'arrêt de la JVM (Ctrl-C) : les recherches en cours se terminent avant la fermeture de
+	 * l'index.
+	 *
+	 * @param index         l'index chargé
+	 * @param adresse       l'adresse d'écoute
+	 * @param port          le port d'écoute
+	 * @param maxConcurrent le nombre de recherches exécutées en même temps
+	 * @param cache         le cache des résultats, ou {@code null}
+	 * @param lentes        le journal des requêtes lentes, ou {@code null}
+	 * @throws IOException si le port ne peut pas être ouvert
+	 */
+	private static void serve(Index index, InetAddress adresse, int port, int maxConcurrent, ResultCache cache, SlowQueryLog lentes)
+			throws IOException {
+		SearchServer server = new SearchServer(index, adresse, port, maxConcurrent, cache, lentes);
+
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			System.out.println("Arrêt du serveur...");
+			server.stop(SHUTDOWN_DELAY);
+			try {
+				if (lentes != null) {
+					lentes.close();
+				}
+				index.close();
+			}
+			catch (IOException e) {
+				System.err.println("Impossible de fermer l'index: " + e.getMessage());
+			}
+		}));
+
+		server.start();
+		System.out.printf("Serveur de recherche sur http://%s:%d/search?model=vector&k=%d&q=... (%d recherches simultanées au plus)%n",
+				adresse.isLoopbackAddress() ? "localhost" : adresse.getHostAddress(), server.getPort(), TOP_K, maxConcurrent);
+	}
+
+	/**
+	 * Lit une option de la forme {@code --nom=valeur} parmi les arguments de la ligne de commande.
+	 *
+	 * @param args les arguments de la ligne de commande
+	 * @param nom  le nom de l'option, sans les tirets
+	 * @return la valeur de l'option, ou {@code null} si elle est absente
+	 */
+	private static String readOption(String[] args, String nom) {
+		String prefixe = "--" + nom + "=";
+
+		for (String arg : args) {
+			if (arg.startsWith(prefixe)) {
+				return arg.substring(prefixe.length());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Affiche le menu pour choisir un moteur de recherche et retourne le type sélectionné.
+	 *
+	 * @return le type de recherche correspondant au choix utilisateur
+	 */
+	private static SearchType chooseType() {
 		Scanner sc = new Scanner(System.in);
 
 		System.out.println("\nQuel type de recherche souhaitez-vous utiliser ?");
@@ -57,21 +256,11 @@ public class Main {
 		int code = readInt(sc, "Votre choix (1-3) : ");
 
 		SearchType type = SearchType.fromCode(code);
-		SearchEngine engine = null;
-
-		switch (type) {
-			case VECTOR:
-				engine = new VectorSearchEngine(vocab, docs);
-				break;
-			case PROBABILISTIC:
-				engine = new ProbabilisticSearchEngine(vocab, docs);
-				break;
-			case BOOLEAN:
-			default:
-				System.out.println("Moteur booléen : utilisez les opérateurs AND, OR, NOT pour formuler vos requêtes.");
-				engine = new BooleanSearchEngine(vocab, docs);
+		if (type == SearchType.BOOLEAN) {
+			System.out.println("Moteur booléen : utilisez les opérateurs AND, OR, NOT et des parenthèses pour formuler vos requêtes,");
+			System.out.println("des guillemets pour une phrase (\"front desk\") et ~N pour des termes à N mots au plus (\"quiet room\"~3).");
 		}
-		return engine;
+		return type;
 	}
 
 	/**
@@ -99,16 +288,21 @@ public class Main {
 	/**
 	 * Boucle interactive principale qui invite l'utilisateur à saisir des requêtes,
 	 * exécute la recherche correspondante et affiche les résultats.
-	 * La boucle continue jusqu'à ce que l'utilisateur saisisse 'quit'.
+	 * La boucle continue jusqu'à ce que l'utilisateur saisisse 'quit' ; 'stats' affiche les
+	 * latences de chaque phase des recherches ({@link SearchMetrics}) et 'explain requête'
+	 * recherche la requête en affichant son profil ({@link QueryProfile}).
 	 *
 	 * @param engine moteur de recherche utilisé pour traiter les requêtes
+	 * @param type   le type du moteur
+	 * @param index  l'index interrogé, pour afficher les documents trouvés
+	 * @param k      nombre maximal de résultats affichés par requête
 	 */
-	private static void runInteractiveLoop(SearchEngine engine) {
+	private static void runInteractiveLoop(SearchEngine engine, SearchType type, Index index, int k) {
 		Scanner sc = new Scanner(System.in);
 		String line;
 
 		do {
-			System.out.print("\nTapez 'quit' pour quitter le moteur de recherche ou entrez votre requête: ");
+			System.out.print("\nTapez 'quit' pour quitter le moteur de recherche, 'stats' pour les mesures ou entrez votre requête: ");
 			line = sc.nextLine().trim();
 
 			if (line.isEmpty()) {
@@ -116,10 +310,27 @@ public class Main {
 				continue;
 			}
 
-			if (!"quit".equalsIgnoreCase(line)) {
-				Query query = new Query(line);
-				Set<Document> results = engine.search(query);
-				engine.displayResults(results);
+			if ("stats".equalsIgnoreCase(line)) {
+				System.out.println(SearchMetrics.getDefault().dump());
+			}
+			else if (line.toLowerCase().startsWith("explain ")) {
+				try {
+					QueryProfile profile = QueryProfile.explain(engine, type, index, new Query(line.substring(8)), k);
+					System.out.println(profile);
+				}
+				catch (IllegalArgumentException e) {
+					System.out.println("Requête invalide : " + e.getMessage());
+				}
+			}
+			else if (!"quit".equalsIgnoreCase(line)) {
+				try {
+					Query query = new Query(line);
+					TopDocs results = engine.search(query, k);
+					engine.displayResults(results, index);
+				}
+				catch (IllegalArgumentException e) {
+					System.out.println("Requête invalide : " + e.getMessage());
+				}
 			}
 
 		} while (!"quit".equalsIgnoreCase(line));
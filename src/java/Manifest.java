@@ -0,0 +1,226 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code Manifest} class records which corpus files are covered by the index, so that a
+ * refresh only has to index new or changed files. For each file it keeps its modification
+ * time, size, content checksum and the range of document IDs it produced.
+ * It also lists the delta segments added since the last full indexation and the ranges of
+ * document IDs that are no longer valid because their file changed or disappeared.
+ * <p>
+ * The manifest is stored as a tab-separated text file, one record per line.
+ */
+public class Manifest {
+
+    /** Path to the manifest file. */
+    static final String pathManifest = "../resources/manifest.txt";
+
+    /** Indexed files, keyed by file name. */
+    private final TreeMap<String, Entry> fichiers;
+
+    /** Ranges of deleted document IDs, as {@code {firstId, count}} pairs. */
+    private final List<int[]> supprimes;
+
+    /** Path prefixes of the delta segments, in the order they were written. */
+    private final List<String> deltas;
+
+    /** Next free document ID. */
+    private int nextId;
+
+    /**
+     * Describes an indexed file.
+     */
+    public static class Entry {
+        final long mtime;
+        final long size;
+        final long checksum;
+        final int firstId;
+        final int count;
+
+        Entry(long mtime, long size, long checksum, int firstId, int count) {
+            this.mtime = mtime;
+            this.size = size;
+            this.checksum = checksum;
+            this.firstId = firstId;
+            this.count = count;
+        }
+    }
+
+    /**
+     * Constructs an empty manifest.
+     */
+    public Manifest() {
+        fichiers = new TreeMap<>();
+        supprimes = new ArrayList<>();
+        deltas = new ArrayList<>();
+    }
+
+    /**
+     * Records that a file has been indexed.
+     *
+     * @param file the indexed file
+     * @param firstId the ID of the first document of the file
+     * @param count the number of documents of the file
+     * @throws IOException if the file cannot be read to compute its checksum
+     */
+    public void addFile(File file, int firstId, int count) throws IOException {
+        fichiers.put(file.getName(), new Entry(file.lastModified(), file.length(), checksum(file), firstId, count));
+        nextId = Math.max(nextId, firstId + count);
+    }
+
+    /**
+     * Marks the documents of a previously indexed file as deleted and forgets the file.
+     *
+     * @param name the name of the file
+     */
+    public void removeFile(String name) {
+        Entry e = fichiers.remove(name);
+
+        if (e != null && e.count > 0) {
+            supprimes.add(new int[]{e.firstId, e.count});
+        }
+    }
+
+    /**
+     * Tells whether a file is new or has changed since it was indexed.
+     * The checksum is only computed when the modification time or the size differ,
+     * so an unchanged corpus is checked without reading any file.
+     *
+     * @param file the file to check
+     * @return {@code true} if the file must be (re)indexed
+     * @throws IOException if the file cannot be read
+     */
+    public boolean isModified(File file) throws IOException {
+        Entry e = fichiers.get(file.getName());
+
+        if (e == null) {
+            return true;
+        }
+        if (e.mtime == file.lastModified() && e.size == file.length()) {
+            return false;
+        }
+        return e.checksum != checksum(file);
+    }
+
+    /** @return the names of the indexed files */
+    public List<String> getFileNames() {
+        return new ArrayList<>(fichiers.keySet());
+    }
+
+    /** @return the ranges of deleted document IDs, as {@code {firstId, count}} pairs */
+    public List<int[]> getDeletedRanges() {
+        return supprimes;
+    }
+
+    /** @return the path prefixes of the delta segments, in the order they were written */
+    public List<String> getDeltas() {
+        return deltas;
+    }
+
+    /**
+     * Registers a new delta segment.
+     *
+     * @param prefix the path prefix of the segment
+     */
+    public void addDelta(String prefix) {
+        deltas.add(prefix);
+    }
+
+    /**
+     * Forgets the delta segments and deleted ranges, once they have been compacted into the main index.
+     */
+    public void clearDeltas() {
+        deltas.clear();
+        supprimes.clear();
+    }
+
+    /** @return the next free document ID */
+    public int getNextId() {
+        return nextId;
+    }
+
+    /**
+     * Saves the manifest to disk.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void save() throws IOException {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(pathManifest), StandardCharsets.UTF_8))) {
+            out.println("N\t" + nextId);
+
+            for (String name : fichiers.keySet()) {
+                Entry e = fichiers.get(name);
+                out.println("F\t" + name + "\t" + e.mtime + "\t" + e.size + "\t" + e.checksum + "\t" + e.firstId + "\t" + e.count);
+            }
+            for (int[] range : supprimes) {
+                out.println("D\t" + range[0] + "\t" + range[1]);
+            }
+            for (String delta : deltas) {
+                out.println("S\t" + delta);
+            }
+        }
+    }
+
+    /**
+     * Loads the manifest from disk.
+     *
+     * @return the loaded manifest
+     * @throws IOException if an I/O error occurs
+     */
+    public static Manifest load() throws IOException {
+        File file = new File(pathManifest);
+        if (!file.exists()) {
+            throw new FileNotFoundException("Manifest not found at: " + file.getAbsolutePath());
+        }
+
+        Manifest manifest = new Manifest();
+        try (BufferedReader bf = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String ligne;
+
+            while ((ligne = bf.readLine()) != null) {
+                String[] champs = ligne.split("\t");
+
+                switch (champs[0]) {
+                    case "N":
+                        manifest.nextId = Integer.parseInt(champs[1]);
+                        break;
+                    case "F":
+                        manifest.fichiers.put(champs[1], new Entry(Long.parseLong(champs[2]), Long.parseLong(champs[3]),
+                                Long.parseLong(champs[4]), Integer.parseInt(champs[5]), Integer.parseInt(champs[6])));
+                        break;
+                    case "D":
+                        manifest.supprimes.add(new int[]{Integer.parseInt(champs[1]), Integer.parseInt(champs[2])});
+                        break;
+                    case "S":
+                        manifest.deltas.add(champs[1]);
+                        break;
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Computes the CRC32 checksum of the content of a file.
+     *
+     * @param file the file to read
+     * @return the checksum
+     * @throws IOException if an I/O error occurs
+     */
+    private static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
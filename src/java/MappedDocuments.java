@@ -0,0 +1,199 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Documents of a memory-mapped documents file, keyed by document ID.
+ * <p>
+ * Nothing is decoded when the file is opened: a document is decoded from the mapped bytes the
+ * first time it is requested, then kept. Documents added afterwards are held in memory, and
+ * removed documents are only marked. Iteration is in ascending ID order, the documents of the
+ * file first, then the added ones (new documents always get IDs above the indexed ones).
+ * <p>
+ * Documents may be requested from several threads searching the index: a document decoded by
+ * two threads at once is kept only once, and is safely published to the others. Adding and
+ * removing documents is only done while the index is not searched.
+ */
+public class MappedDocuments extends AbstractMap<Integer, Document> {
+
+    /** Mapped documents file. */
+    private final ByteBuffer buffer;
+
+    /** IDs of the documents of the file, in ascending order. */
+    private final IntBuffer ids;
+
+    /** Offset in the file of the record of each document, by position in {@link #ids}. */
+    private final LongBuffer offsets;
+
+    /** Stored fields file the documents are attached to. */
+    private final StoredFields storedFields;
+
+    /** Documents already decoded, by position. */
+    private final AtomicReferenceArray<Document> decoded;
+
+    /** Positions of the documents of the file that were removed. */
+    private final BitSet removed;
+
+    /** Documents added after the file was opened. */
+    private final TreeMap<Integer, Document> added;
+
+    /**
+     * Constructs the documents of a mapped documents file.
+     *
+     * @param buffer the mapped file
+     * @param ids the IDs of the documents, in ascending order
+     * @param offsets the offset of the record of each document
+     * @param storedFields the stored fields file of the documents
+     */
+    public MappedDocuments(ByteBuffer buffer, IntBuffer ids, LongBuffer offsets, StoredFields storedFields) {
+        this.buffer = buffer;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.storedFields = storedFields;
+        this.decoded = new AtomicReferenceArray<>(ids.limit());
+        this.removed = new BitSet();
+        this.added = new TreeMap<>();
+    }
+
+    @Override
+    public Document get(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int i = position((Integer) key);
+        return i < 0 ? added.get(key) : document(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Document put(Integer key, Document doc) {
+        int i = position(key);
+
+        if (i < 0) {
+            return added.put(key, doc);
+        }
+        Document precedent = document(i);
+        decoded.set(i, doc);
+        return precedent;
+    }
+
+    @Override
+    public Document remove(Object key) {
+        if (!(key instanceof Integer)) {
+            return null;
+        }
+        int i = position((Integer) key);
+
+        if (i < 0) {
+            return added.remove(key);
+        }
+        Document doc = document(i);
+        removed.set(i);
+        decoded.set(i, null);
+        return doc;
+    }
+
+    @Override
+    public int size() {
+        return decoded.length() - removed.cardinality() + added.size();
+    }
+
+    @Override
+    public Set<Entry<Integer, Document>> entrySet() {
+        return new AbstractSet<Entry<Integer, Document>>() {
+
+            @Override
+            public Iterator<Entry<Integer, Document>> iterator() {
+                Iterator<Entry<Integer, Document>> suite = added.entrySet().iterator();
+
+                return new Iterator<Entry<Integer, Document>>() {
+                    private int i = removed.nextClearBit(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return i < decoded.length() || suite.hasNext();
+                    }
+
+                    @Override
+                    public Entry<Integer, Document> next() {
+                        if (i < decoded.length()) {
+                            Entry<Integer, Document> e = new SimpleImmutableEntry<>(ids.get(i), document(i));
+                            i = removed.nextClearBit(i + 1);
+                            return e;
+                        }
+                        if (!suite.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return suite.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return MappedDocuments.this.size();
+            }
+        };
+    }
+
+    /**
+     * Returns the position of a document of the file, or -1 if it is not in the file or was
+     * removed.
+     */
+    private int position(int id) {
+        int lo = 0;
+        int hi = decoded.length() - 1;
+
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int courant = ids.get(mid);
+
+            if (courant < id) {
+                lo = mid + 1;
+            }
+            else if (courant > id) {
+                hi = mid - 1;
+            }
+            else {
+                return removed.get(mid) ? -1 : mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the document at a position, decoding it on first access.
+     */
+    private Document document(int i) {
+        Document doc = decoded.get(i);
+
+        if (doc == null) {
+            try {
+                int offset = (int) offsets.get(i);
+                doc = Document.read(new IndexInput(buffer.slice(offset, buffer.limit() - offset)));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            doc.setStoredFields(storedFields, doc.getStoredOffset());
+            if (!decoded.compareAndSet(i, null, doc)) {
+                doc = decoded.get(i);
+            }
+        }
+        return doc;
+    }
+}
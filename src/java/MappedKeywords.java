@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keywords of a memory-mapped vocabulary file, indexed by term ID.
+ * <p>
+ * Nothing is decoded when the file is opened: the postings of a keyword are decoded from the
+ * mapped bytes the first time it is requested, then kept, so that changes made by the engines
+ * or by deltas are not lost. Keywords added afterwards (new terms of a delta) are held in memory.
+ * <p>
+ * Keywords may be requested from several threads searching the index: a keyword decoded by two
+ * threads at once is kept only once, and is safely published to the others.
+ */
+public class MappedKeywords extends AbstractList<Keyword> {
+
+    /** Mapped vocabulary file. */
+    private final ByteBuffer buffer;
+
+    /** Offset in the file of the record of each mapped keyword. */
+    private final LongBuffer offsets;
+
+    /** Keywords already decoded, by term ID. */
+    private final AtomicReferenceArray<Keyword> decoded;
+
+    /** Keywords added after the file was opened. */
+    private final ArrayList<Keyword> added;
+
+    /**
+     * Constructs the keywords of a mapped vocabulary file.
+     *
+     * @param buffer the mapped file
+     * @param offsets the offset of the record of each keyword, by term ID
+     */
+    public MappedKeywords(ByteBuffer buffer, LongBuffer offsets) {
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.decoded = new AtomicReferenceArray<>(offsets.limit());
+        this.added = new ArrayList<>();
+    }
+
+    @Override
+    public Keyword get(int termId) {
+        if (termId >= decoded.length()) {
+            return added.get(termId - decoded.length());
+        }
+
+        Keyword k = decoded.get(termId);
+        if (k == null) {
+            try {
+                int offset = (int) offsets.get(termId);
+                k = Keyword.read(new IndexInput(buffer.slice(offset, buffer.limit() - offset)));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!decoded.compareAndSet(termId, null, k)) {
+                k = decoded.get(termId);
+            }
+        }
+        return k;
+    }
+
+    @Override
+    public boolean add(Keyword k) {
+        return added.add(k);
+    }
+
+    @Override
+    public int size() {
+        return decoded.length() + added.size();
+    }
+}
@@ -0,0 +1,313 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@code PartialIndex} class holds the private index built by one worker for a single file
+ * during a parallel indexation, or the buffer of the streaming indexer. Terms are still plain
+ * strings at this stage: term IDs are only assigned when the partial is merged into the global
+ * {@link Index}. Document IDs are local (starting at 0) until the partial is merged, at which
+ * point they are shifted by a base offset.
+ * <p>
+ * The postings may carry the positions of their term in the document, when the indexation
+ * records them: they are then merged into the {@link Positions} of the index along with the
+ * postings.
+ */
+public class PartialIndex {
+
+    /** Postings of the terms found in the file, keyed by term. */
+    private final TreeMap<String, Postings> postings;
+
+    /** Map of documents found in the file, keyed by local document ID. */
+    private final TreeMap<Integer, Document> documents;
+
+    /** Rough estimate of the heap used by this partial index, in bytes. */
+    private long estimatedBytes;
+
+    /** Whether a posting was added without its positions. */
+    private boolean sansPositions;
+
+    /**
+     * Append-only postings of a term: parallel arrays of document IDs, occurrences and
+     * frequencies, in ascending document order, and the positions of the term in each document,
+     * one after the other, as many as its occurrences.
+     */
+    public static class Postings {
+
+        /** Number of postings. */
+        private int size;
+
+        /** Document IDs. */
+        private int[] docs = new int[4];
+
+        /** Occurrences of the term in each document. */
+        private int[] occurrences = new int[4];
+
+        /** Frequency of the term in each document. */
+        private double[] frequences = new double[4];
+
+        /** Positions of the term in the documents, {@code null} if none were given. */
+        private int[] positions;
+
+        /** Number of positions used in {@link #positions}. */
+        private int nbPositions;
+
+        /**
+         * Appends a posting; documents must be added in ascending order.
+         *
+         * @param doc the document ID
+         * @param occurrence the occurrences of the term in the document
+         * @param frequence the frequency of the term in the document
+         * @param positions the array holding the positions of the term in the document, or
+         *        {@code null}
+         * @param from the index in {@code positions} of the first of the {@code occurrence} positions
+         */
+        void add(int doc, int occurrence, double frequence, int[] positions, int from) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                occurrences = Arrays.copyOf(occurrences, size * 2);
+                frequences = Arrays.copyOf(frequences, size * 2);
+            }
+            docs[size] = doc;
+            occurrences[size] = occurrence;
+            frequences[size] = frequence;
+            size++;
+
+            if (positions != null) {
+                if (this.positions == null) {
+                    this.positions = new int[Math.max(4, occurrence)];
+                }
+                else if (nbPositions + occurrence > this.positions.length) {
+                    this.positions = Arrays.copyOf(this.positions, Math.max(2 * this.positions.length, nbPositions + occurrence));
+                }
+                System.arraycopy(positions, from, this.positions, nbPositions, occurrence);
+                nbPositions += occurrence;
+            }
+        }
+
+        /** @return the number of postings */
+        public int size() {
+            return size;
+        }
+
+        /** @return the document ID of the i-th posting */
+        public int getDoc(int i) {
+            return docs[i];
+        }
+
+        /** @return the occurrences of the i-th posting */
+        public int getOccurrence(int i) {
+            return occurrences[i];
+        }
+
+        /** @return the frequency of the i-th posting */
+        public double getFrequence(int i) {
+            return frequences[i];
+        }
+
+        /**
+         * Returns the positions of every posting, those of a posting following those of the
+         * previous one.
+         *
+         * @return the positions, or {@code null} if the postings were added without positions
+         */
+        public int[] getPositions() {
+            return positions;
+        }
+    }
+
+    /**
+     * Constructs an empty {@code PartialIndex}.
+     */
+    public PartialIndex() {
+        postings = new TreeMap<>();
+        documents = new TreeMap<>();
+    }
+
+    /**
+     * Adds the posting of a term in a document.
+     * Postings of a term must be added in ascending document order.
+     *
+     * @param term the term
+     * @param doc the document ID
+     * @param occurrence the occurrences of the term in the document
+     * @param frequence the frequency of the term in the document
+     */
+    public void addPosting(String term, int doc, int occurrence, double frequence) {
+        addPosting(term, doc, occurrence, frequence, null, 0);
+    }
+
+    /**
+     * Adds the posting of a term in a document, with the positions of the term in the document.
+     * Postings of a term must be added in ascending document order.
+     *
+     * @param term the term
+     * @param doc the document ID
+     * @param occurrence the occurrences of the term in the document
+     * @param frequence the frequency of the term in the document
+     * @param positions the positions of the term in the document, in ascending order, of which
+     *        the first {@code occurrence} are read
+     */
+    public void addPosting(String term, int doc, int occurrence, double frequence, int[] positions) {
+        addPosting(term, doc, occurrence, frequence, positions, 0);
+    }
+
+    private void addPosting(String term, int doc, int occurrence, double frequence, int[] positions, int from) {
+        Postings p = postings.get(term);
+
+        if (p == null) {
+            p = new Postings();
+            postings.put(term, p);
+            estimatedBytes += TERM_BYTES + 2L * term.length();
+        }
+        p.add(doc, occurrence, frequence, positions, from);
+        estimatedBytes += POSTING_BYTES;
+
+        if (positions == null) {
+            sansPositions = true;
+        }
+        else {
+            estimatedBytes += POSITION_BYTES * occurrence;
+        }
+    }
+
+    /**
+     * Adds a document to the partial index.
+     *
+     * @param doc the document to add, whose ID is its local ID
+     */
+    public void addDocument(Document doc) {
+        documents.put(doc.getId(), doc);
+        estimatedBytes += estimateBytes(doc);
+    }
+
+    /**
+     * Moves every document and posting of another partial index into this one,
+     * shifting their IDs by {@code base}.
+     *
+     * @param other the partial index to absorb, which must not be used afterwards
+     * @param base the ID in this partial of the first document of {@code other}
+     */
+    public void absorb(PartialIndex other, int base) {
+        for (Map.Entry<String, Postings> e : other.postings.entrySet()) {
+            Postings p = e.getValue();
+            int position = 0;
+
+            for (int i = 0; i < p.size(); i++) {
+                addPosting(e.getKey(), base + p.getDoc(i), p.getOccurrence(i), p.getFrequence(i), p.getPositions(), position);
+                position += p.getOccurrence(i);
+            }
+        }
+
+        for (Document doc : other.documents.values()) {
+            doc.setId(base + doc.getId());
+            addDocument(doc);
+        }
+    }
+
+    /** @return the number of documents held by this partial index */
+    public int size() {
+        return documents.size();
+    }
+
+    /** @return whether this partial index has postings, all of them carrying their positions */
+    public boolean hasPositions() {
+        return !postings.isEmpty() && !sansPositions;
+    }
+
+    /** @return a rough estimate of the heap used by this partial index, in bytes */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /** @return the postings of this partial index, sorted by term */
+    public TreeMap<String, Postings> getPostings() {
+        return postings;
+    }
+
+    /** @return the documents of this partial index, sorted by ID */
+    public TreeMap<Integer, Document> getDocuments() {
+        return documents;
+    }
+
+    /** Approximate heap cost of a term entry and its empty postings. */
+    private static final long TERM_BYTES = 200;
+
+    /**
+     * Approximate heap cost of a posting once merged: a compressed entry in a {@code Keyword}
+     * and in the forward index of a {@code Document}, plus the primitive arrays of this partial.
+     */
+    private static final long POSTING_BYTES = 20 + 28 + 16;
+
+    /** Approximate heap cost of a position: an int in this partial and about a byte once merged. */
+    private static final long POSITION_BYTES = 4 + 1;
+
+    /**
+     * Estimates the heap used by the stored fields of a document.
+     *
+     * @param doc the document to estimate
+     * @return the estimated size in bytes
+     */
+    private static long estimateBytes(Document doc) {
+        long bytes = 400;
+        bytes += doc.getText() == null ? 0 : 40 + doc.getText().length();
+        bytes += doc.getTitle() == null ? 0 : 40 + doc.getTitle().length();
+        bytes += doc.getDate() == null ? 0 : 40 + doc.getDate().length();
+        return bytes;
+    }
+
+    /**
+     * Merges this partial index into the global index, shifting every local document ID by
+     * {@code base}. New terms are added to the dictionary of the index in a single batch, then
+     * the postings are copied both into the keywords and into the documents, keyed by term ID.
+     * Their positions are copied into the positions of the index, which are dropped if the
+     * postings of this partial have none.
+     *
+     * @param index the global index to merge into
+     * @param base the global ID of the first document of this partial
+     */
+    public void mergeInto(Index index, int base) {
+        index.addTerms(postings.keySet());
+
+        Positions positions = index.getPositions();
+        if (positions != null && !hasPositions() && !postings.isEmpty()) {
+            // Postings recorded without positions, by an indexation that did not ask for them
+            index.setPositions(null);
+            positions = null;
+        }
+
+        for (Document doc : documents.values()) {
+            doc.setId(base + doc.getId());
+            index.addDocument(doc.getId(), doc);
+        }
+
+        for (Map.Entry<String, Postings> e : postings.entrySet()) {
+            int termId = index.getTermId(e.getKey());
+            Keyword k = index.getKeyword(termId);
+            Postings p = e.getValue();
+            TermPositions tp = positions == null ? null : positions.forTerm(termId);
+            int position = 0;
+
+            for (int i = 0; i < p.size(); i++) {
+                int id = base + p.getDoc(i);
+                k.add(id, p.getOccurrence(i), p.getFrequence(i));
+                if (tp != null) {
+                    tp.add(p.getPositions(), position, p.getOccurrence(i));
+                    position += p.getOccurrence(i);
+                }
+
+                Document doc = index.getDocument(id);
+                doc.add1Occur(termId, p.getOccurrence(i));
+                doc.add1Freq(termId, p.getFrequence(i));
+            }
+            k.trim();
+            if (tp != null) {
+                tp.trim();
+            }
+        }
+
+        for (Document doc : documents.values()) {
+            doc.trim();
+        }
+    }
+}
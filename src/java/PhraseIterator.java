@@ -0,0 +1,170 @@
+import java.util.Arrays;
+
+/**
+ * Documents where terms appear as a phrase, or within a few words of each other: the intersection
+ * of the postings of the terms, whose candidates are checked on the positions of the terms.
+ * <p>
+ * The candidates are the documents of a {@link ConjunctionIterator} over the cursors of the
+ * postings of the terms, so that each cursor stands on the posting of the candidate, and the
+ * positions of that posting are read by a {@link PositionsCursor} following the cursor. A phrase
+ * costs the conjunction of the postings of its terms, plus the decoding of their positions in
+ * the documents containing all of them; unlike a plain conjunction, it cannot use the bitmaps of
+ * the frequent terms nor a {@link ClauseCache}, which do not tell where a document lies in the
+ * postings.
+ * <p>
+ * For a phrase, the terms must appear at their offset from the first one, as in the query.
+ * Within a distance, the terms must all appear in a window where at most that many other words
+ * lie between them, in any order: a window of {@code n} terms and {@code d} other words spans
+ * {@code n + d} positions.
+ */
+public class PhraseIterator extends DocIdIterator {
+
+    /** Distance of a phrase: the terms follow each other, in order. */
+    static final int EXACT = -1;
+
+    /** Documents containing every term. */
+    private final DocIdIterator conjonction;
+
+    /** Postings of each term, on the current candidate of {@link #conjonction}. */
+    private final PostingsCursor[] postings;
+
+    /** Positions of each term, following its postings. */
+    private final PositionsCursor[] positions;
+
+    /** Offset of each term from the first one in a phrase. */
+    private final int[] offsets;
+
+    /** Number of other words allowed between the terms, or {@link #EXACT}. */
+    private final int distance;
+
+    /** Rank of the position of each term reached while checking a candidate. */
+    private final int[] rangs;
+
+    /** Current document ID. */
+    private int doc;
+
+    /**
+     * Constructs the iterator over the documents where terms appear together.
+     *
+     * @param conjonction the conjunction of {@code postings}, before its first document
+     * @param postings the postings of each term
+     * @param positions the positions of each term, over the same postings
+     * @param offsets the offset of each term from the first one, for a phrase
+     * @param distance the number of other words allowed between the terms, or {@link #EXACT}
+     *        for a phrase
+     */
+    public PhraseIterator(DocIdIterator conjonction, PostingsCursor[] postings, PositionsCursor[] positions, int[] offsets, int distance) {
+        this.conjonction = conjonction;
+        this.postings = postings;
+        this.positions = positions;
+        this.offsets = offsets;
+        this.distance = distance;
+        this.rangs = new int[postings.length];
+        this.doc = -1;
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return doc = confirmer(conjonction.nextDoc());
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+        return doc = confirmer(conjonction.advance(target));
+    }
+
+    @Override
+    public long cost() {
+        return conjonction.cost();
+    }
+
+    /**
+     * Moves from a candidate to the first candidate whose positions match.
+     *
+     * @param candidat a document containing every term
+     * @return the first matching document from the candidate, or {@link #NO_MORE_DOCS}
+     */
+    private int confirmer(int candidat) {
+        while (candidat != NO_MORE_DOCS) {
+            for (int i = 0; i < postings.length; i++) {
+                positions[i].read(postings[i].index());
+            }
+            Arrays.fill(rangs, 0);
+
+            if (distance == EXACT ? phrase() : fenetre()) {
+                return candidat;
+            }
+            candidat = conjonction.nextDoc();
+        }
+        return NO_MORE_DOCS;
+    }
+
+    /**
+     * Checks that the terms follow each other, from one of the positions of the first term.
+     */
+    private boolean phrase() {
+        PositionsCursor premier = positions[0];
+
+        boucle:
+        for (int j = 0; j < premier.count(); j++) {
+            int debut = premier.position(j) - offsets[0];
+
+            for (int i = 1; i < positions.length; i++) {
+                PositionsCursor c = positions[i];
+                int cible = debut + offsets[i];
+                int r = rangs[i];
+
+                while (r < c.count() && c.position(r) < cible) {
+                    r++;
+                }
+                rangs[i] = r;
+                if (r == c.count()) {
+                    return false;
+                }
+                if (c.position(r) != cible) {
+                    continue boucle;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks that a position of each term lies in a window of at most {@link #distance} other
+     * words, by sliding the smallest position of the window forward.
+     */
+    private boolean fenetre() {
+        int n = positions.length;
+
+        while (true) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            int premier = 0;
+
+            for (int i = 0; i < n; i++) {
+                int p = positions[i].position(rangs[i]);
+                if (p < min) {
+                    min = p;
+                    premier = i;
+                }
+                max = Math.max(max, p);
+            }
+
+            if (max - min - (n - 1) <= distance) {
+                return true;
+            }
+            if (++rangs[premier] == positions[premier].count()) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Optional positional index: the {@link TermPositions} of every term, indexed by term ID, which
+ * phrase and proximity queries ({@link BooleanQuery.Phrase}) are evaluated on.
+ * <p>
+ * The positions are built by an {@link Indexation} asked to record them, and saved next to the
+ * vocabulary in their own file, with a versioned header and a CRC32 footer (see
+ * {@link IndexOutput}): the number of documents and of terms of the index, the positions of each
+ * term, then the table of their offsets. The positions follow the postings of the keywords, and
+ * change with them when delta segments are applied or documents removed
+ * ({@link Index#getPositions()}).
+ * <p>
+ * A file read with {@link #read(String)} is decoded at once; a file opened with
+ * {@link #map(String)} is memory-mapped, and the positions of a term are decoded the first time
+ * they are requested, then kept. Positions may be requested from several threads searching the
+ * index; they are only extended or changed before, by a single thread.
+ */
+public class Positions {
+
+    /** Path to the positions file. */
+    static final String pathPositions = "../resources/positions.bin";
+
+    /** Name of the content of the positions file, in its header. */
+    static final String CODEC = "positions";
+
+    /** Version of the format of the positions file. */
+    static final int VERSION = 1;
+
+    /** Number of documents of the index the positions were written for, -1 while building. */
+    private final int nbDocuments;
+
+    /**
+     * Positions of every term, by term ID; if the file is mapped, only those of the terms
+     * extended since it was opened, the others being {@code null}.
+     */
+    private final ArrayList<TermPositions> termes;
+
+    /** Mapped positions file, or {@code null}. */
+    private final ByteBuffer buffer;
+
+    /** Offset in the mapped file of the positions of each term. */
+    private final LongBuffer offsets;
+
+    /** Positions already decoded from the mapped file, by term ID. */
+    private final AtomicReferenceArray<TermPositions> decoded;
+
+    /**
+     * Constructs empty positions, to be filled while indexing.
+     */
+    public Positions() {
+        this(-1, new ArrayList<>());
+    }
+
+    private Positions(int nbDocuments, ArrayList<TermPositions> termes) {
+        this.nbDocuments = nbDocuments;
+        this.termes = termes;
+        this.buffer = null;
+        this.offsets = null;
+        this.decoded = null;
+    }
+
+    private Positions(int nbDocuments, ByteBuffer buffer, LongBuffer offsets) {
+        this.nbDocuments = nbDocuments;
+        this.termes = new ArrayList<>();
+        this.buffer = buffer;
+        this.offsets = offsets;
+        this.decoded = new AtomicReferenceArray<>(offsets.limit());
+    }
+
+    /**
+     * Returns the positions of a term.
+     *
+     * @param termId the ID of the term
+     * @return its positions, or {@code null} if none were recorded
+     */
+    public TermPositions get(int termId) {
+        TermPositions p = termId < termes.size() ? termes.get(termId) : null;
+        if (p != null || buffer == null || termId >= decoded.length()) {
+            return p;
+        }
+
+        p = decoded.get(termId);
+        if (p == null) {
+            try {
+                int offset = (int) offsets.get(termId);
+                p = TermPositions.read(new IndexInput(buffer.slice(offset, buffer.limit() - offset)));
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (!decoded.compareAndSet(termId, null, p)) {
+                p = decoded.get(termId);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Returns the positions of a term being indexed, creating them if needed. The positions of a
+     * term of a mapped file are decoded, then kept in memory with those of the new terms.
+     *
+     * @param termId the ID of the term
+     * @return its positions
+     */
+    TermPositions forTerm(int termId) {
+        TermPositions p = get(termId);
+        if (p == null) {
+            p = new TermPositions();
+        }
+        while (termes.size() <= termId) {
+            termes.add(null);
+        }
+        termes.set(termId, p);
+        return p;
+    }
+
+    /** @return the number of terms whose positions may be recorded */
+    public int size() {
+        return buffer == null ? termes.size() : Math.max(termes.size(), decoded.length());
+    }
+
+    /** @return the number of documents of the index the positions were read for, or -1 if they were built */
+    public int getDocuments() {
+        return nbDocuments;
+    }
+
+    /**
+     * @return the size of the positions, in bytes: if the file is mapped, its size plus the size
+     *         of the positions extended since
+     */
+    public long sizeInBytes() {
+        long bytes = buffer == null ? 0 : buffer.limit();
+        for (TermPositions p : termes) {
+            bytes += p == null ? 0 : p.sizeInBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the positions of every term to a positions file.
+     *
+     * @param out the file to write to
+     * @param nbTerms the number of terms of the index
+     * @param nbDocuments the number of documents of the index
+     * @throws IOException if an I/O error occurs
+     */
+    void write(IndexOutput out, int nbTerms, int nbDocuments) throws IOException {
+        writeHeader(out, nbTerms, nbDocuments);
+
+        TermPositions vide = new TermPositions();
+        long[] offsets = new long[nbTerms];
+        for (int i = 0; i < nbTerms; i++) {
+            TermPositions p = get(i);
+            offsets[i] = out.getFilePointer();
+            (p == null ? vide : p).write(out);
+        }
+        writeTable(out, offsets);
+    }
+
+    /**
+     * Writes the header of a positions file, before the positions of its terms.
+     *
+     * @param out the file to write to
+     * @param nbTerms the number of terms of the index
+     * @param nbDocuments the number of documents of the index
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeHeader(IndexOutput out, int nbTerms, int nbDocuments) throws IOException {
+        out.writeHeader(CODEC, VERSION);
+        out.writeInt(nbDocuments);
+        out.writeInt(nbTerms);
+    }
+
+    /**
+     * Writes the end of a positions file, after the positions of its terms: the table of their
+     * offsets, the offset of the table and the footer.
+     *
+     * @param out the file to write to
+     * @param offsets the offset of the positions of each term
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeTable(IndexOutput out, long[] offsets) throws IOException {
+        long table = out.getFilePointer();
+        out.writeLongs(offsets, offsets.length);
+        out.writeLong(table);
+        out.writeFooter();
+    }
+
+    /**
+     * Reads a whole positions file, checking its checksum.
+     *
+     * @param path the path of the file
+     * @return the positions
+     * @throws IOException if the file cannot be read
+     * @throws IndexFormatException if the file was written in another format
+     */
+    static Positions read(String path) throws IOException {
+        try (IndexInput in = new IndexInput(path)) {
+            in.checkHeader(CODEC, VERSION);
+            int nbDocuments = in.readInt();
+            int n = in.readInt();
+
+            ArrayList<TermPositions> lus = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                lus.add(TermPositions.read(in));
+            }
+            in.readLongs(n);
+            in.readLong();
+            in.checkFooter();
+            return new Positions(nbDocuments, lus);
+        }
+    }
+
+    /**
+     * Opens a positions file in place: only its header and table are read.
+     *
+     * @param path the path of the file
+     * @return the positions
+     * @throws IOException if the file cannot be opened
+     * @throws IndexFormatException if the file was written in another format
+     */
+    static Positions map(String path) throws IOException {
+        ByteBuffer buffer = Index.map(path);
+        IndexInput in = new IndexInput(buffer.duplicate());
+        in.checkHeader(CODEC, VERSION);
+        int nbDocuments = in.readInt();
+        int n = in.readInt();
+
+        int table = (int) buffer.getLong(buffer.limit() - 16);
+        return new Positions(nbDocuments, buffer, buffer.slice(table, 8 * n).asLongBuffer());
+    }
+}
@@ -0,0 +1,134 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Forward-only reader of the positions of a term, posting by posting, following a
+ * {@link PostingsCursor} over the same keyword.
+ * <p>
+ * {@link #read(int)} decodes the positions of a posting at or after the last one read. A posting
+ * of another block is reached from the skip entry of its block; within a block, the positions of
+ * the postings in between are skipped by counting the bytes ending a delta, eight bytes at a
+ * time, their number being the sum of the occurrences of those postings. Positions of postings
+ * that are not read are thus never decoded.
+ */
+public class PositionsCursor {
+
+    /** View of the encoded positions as longs, to count the bytes ending a delta eight at a time. */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    /** The positions of the term. */
+    private final TermPositions termPositions;
+
+    /** The keyword of the term, giving the number of positions of each posting. */
+    private final Keyword keyword;
+
+    /** Posting whose positions start at {@link #offset}. */
+    private int index;
+
+    /** Offset in the encoded positions of the first position of the posting {@link #index}. */
+    private int offset;
+
+    /** Positions of the last posting read. */
+    private int[] positions;
+
+    /** Number of positions of the last posting read. */
+    private int count;
+
+    /**
+     * Constructs a cursor positioned before the positions of the first posting.
+     *
+     * @param termPositions the positions of the term
+     * @param keyword the keyword of the term
+     */
+    PositionsCursor(TermPositions termPositions, Keyword keyword) {
+        this.termPositions = termPositions;
+        this.keyword = keyword;
+        this.positions = new int[8];
+    }
+
+    /**
+     * Decodes the positions of a posting.
+     *
+     * @param posting the position of the posting in the keyword, not before the last one read
+     * @return the number of positions, available through {@link #position(int)}
+     */
+    public int read(int posting) {
+        byte[] data = termPositions.data;
+
+        int bloc = posting / TermPositions.SKIP_INTERVAL;
+        if (bloc > index / TermPositions.SKIP_INTERVAL) {
+            index = bloc * TermPositions.SKIP_INTERVAL;
+            offset = termPositions.skipOffsets[bloc];
+        }
+
+        int sautees = 0;
+        for (int i = index; i < posting; i++) {
+            sautees += keyword.getOccurrence(i);
+        }
+        offset = skip(data, offset, sautees);
+
+        count = keyword.getOccurrence(posting);
+        if (count > positions.length) {
+            positions = new int[Math.max(count, 2 * positions.length)];
+        }
+
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+
+            do {
+                b = data[offset++];
+                delta |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+
+            position += delta;
+            positions[i] = position;
+        }
+        index = posting + 1;
+        return count;
+    }
+
+    /**
+     * Moves past a number of encoded positions, by counting the bytes ending a delta (whose high
+     * bit is clear) eight at a time, then one at a time.
+     *
+     * @return the offset of the first byte after those positions
+     */
+    private static int skip(byte[] data, int offset, int nombre) {
+        while (nombre > 0 && offset + 8 <= data.length) {
+            long mot = (long) LONGS.get(data, offset);
+            int fins = 8 - Long.bitCount(mot & 0x8080808080808080L);
+            if (fins >= nombre) {
+                // The last of them may be followed by the first bytes of the next position
+                break;
+            }
+            nombre -= fins;
+            offset += 8;
+        }
+        while (nombre > 0) {
+            if (data[offset++] >= 0) {
+                nombre--;
+            }
+        }
+        return offset;
+    }
+
+    /**
+     * Returns a position of the last posting read.
+     *
+     * @param i the rank of the position, less than the number returned by {@link #read(int)}
+     * @return the position, in ascending order of {@code i}
+     */
+    public int position(int i) {
+        return positions[i];
+    }
+
+    /** @return the number of positions of the last posting read */
+    public int count() {
+        return count;
+    }
+}
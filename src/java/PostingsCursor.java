@@ -0,0 +1,156 @@
+/**
+ * Forward-only cursor over the postings of a {@link Keyword}, in ascending document order.
+ * <p>
+ * {@link #nextDoc()} decodes the next delta; {@link #advance(int)} first gallops over the skip
+ * entries of the keyword, from the current block, to the last block that can contain the target,
+ * then decodes from there. Reaching a target {@code d} postings ahead costs {@code O(log d)}
+ * skip entries plus at most one block, so intersecting a short list with a long one does not
+ * decode the whole long list.
+ * The statistics of the current posting are read from the parallel arrays of the keyword.
+ * A cursor is used by the thread that created it, whose decoded postings it counts for the
+ * {@link SearchMetrics}.
+ */
+public class PostingsCursor extends DocIdIterator {
+
+    /** The keyword whose postings are iterated. */
+    private final Keyword keyword;
+
+    /** Position of the current posting, -1 before the first call to {@link #nextDoc()}. */
+    private int index;
+
+    /** Current document ID. */
+    private int doc;
+
+    /** Offset in the encoded document IDs of the next delta to decode. */
+    private int offset;
+
+    /** Counter of the postings decoded by the thread that created the cursor. */
+    private final SearchMetrics.Reads lectures;
+
+    /**
+     * Constructs a cursor positioned before the first posting.
+     *
+     * @param keyword the keyword whose postings are iterated
+     */
+    PostingsCursor(Keyword keyword) {
+        this.keyword = keyword;
+        this.index = -1;
+        this.doc = -1;
+        this.lectures = SearchMetrics.reads();
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        if (index + 1 >= keyword.size()) {
+            index = keyword.size();
+            doc = NO_MORE_DOCS;
+            return doc;
+        }
+
+        byte[] docs = keyword.docs;
+        int delta = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = docs[offset++];
+            delta |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        index++;
+        lectures.postings++;
+        doc = (index == 0 ? 0 : doc) + delta;
+        return doc;
+    }
+
+    @Override
+    public int advance(int target) {
+        if (doc >= target) {
+            return doc;
+        }
+
+        // Gallop from the next block to bracket the last skip entry before the target,
+        // then binary search inside the bracket
+        int[] skipDocs = keyword.skipDocs;
+        int skips = (keyword.size() + Keyword.SKIP_INTERVAL - 1) / Keyword.SKIP_INTERVAL;
+        int lo = index < 0 ? 0 : index / Keyword.SKIP_INTERVAL + 1;
+        int best = -1;
+
+        if (lo < skips && skipDocs[lo] <= target) {
+            int step = 1;
+            while (lo + step < skips && skipDocs[lo + step] <= target) {
+                lo += step;
+                step <<= 1;
+            }
+
+            int hi = Math.min(lo + step, skips) - 1;
+            best = lo;
+            lo++;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (skipDocs[mid] <= target) {
+                    best = mid;
+                    lo = mid + 1;
+                }
+                else {
+                    hi = mid - 1;
+                }
+            }
+        }
+
+        if (best >= 0) {
+            index = best * Keyword.SKIP_INTERVAL;
+            doc = skipDocs[best];
+            offset = keyword.skipOffsets[best];
+        }
+
+        while (doc < target) {
+            nextDoc();
+        }
+        return doc;
+    }
+
+    /** @return the position of the current posting in the keyword */
+    public int index() {
+        return index;
+    }
+
+    /** @return the number of occurrences of the term in the current document */
+    public int occurrences() {
+        return keyword.getOccurrence(index);
+    }
+
+    /** @return the frequency of the term in the current document */
+    public float frequence() {
+        return keyword.getFrequence(index);
+    }
+
+    /** @return the total number of postings */
+    @Override
+    public long cost() {
+        return keyword.size();
+    }
+
+    /**
+     * Returns the smallest current document of several cursors, to walk them together one
+     * document at a time.
+     *
+     * @param cursors the cursors, some of which may be {@code null}
+     * @return the smallest current document ID, or {@link #NO_MORE_DOCS} if they are all exhausted
+     */
+    public static int minDoc(PostingsCursor[] cursors) {
+        int doc = NO_MORE_DOCS;
+        for (PostingsCursor c : cursors) {
+            if (c != null && c.docID() < doc) {
+                doc = c.docID();
+            }
+        }
+        return doc;
+    }
+}
@@ -1,6 +1,5 @@
-import java.util.ArrayList;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * Implementation of a probabilistic search engine.
@@ -8,119 +7,321 @@ import java.util.TreeSet;
  */
 public class ProbabilisticSearchEngine implements SearchEngine {
 
-	private final double pi = 0.1;
+	/** Maximum number of indexed query terms. */
+	static final int MAX_TERMS = 63;
 
-	TreeSet<Document> listeDoc;
-	TreeMap<String, Keyword> keywords;
-	TreeMap<Integer, Document> documents;
-	private ArrayList<double[]> vector;
-	private double[] VectorRequete;
+	/** Maximum number of indexed query terms for which the scores are tabulated to prune the evaluation. */
+	static final int MAX_PRUNED_TERMS = 12;
+
+	private final Index index;
 
 	/**
-	 * Constructs a probabilistic search engine with given keywords and documents.
-	 * Initializes probabilistic frequencies for all documents and keywords.
+	 * Constructs a probabilistic search engine over an index.
+	 * The BIR weight of each term is read from the {@link TermWeights} of the index.
 	 *
-	 * @param keywords map of keyword terms to Keyword objects
-	 * @param documents map of document IDs to Document objects
+	 * @param index the index holding the term dictionary, the keywords and the documents
 	 */
-	public ProbabilisticSearchEngine(TreeMap<String, Keyword> keywords, TreeMap<Integer, Document> documents){
-		this.keywords = keywords;
-		this.documents = documents;
-		vector = new ArrayList<>();
-
-		remplirFrequenceProb();
+	public ProbabilisticSearchEngine(Index index){
+		this.index = index;
 	}
 
 	/**
-	 * Calculates the probability Q_i of a term occurring in documents.
+	 * Calculates the probability Q_i of a term occurring in documents:
+	 * the fraction of the documents that contain it.
 	 *
-	 * @param mot the term (keyword)
+	 * @param termId the ID of the term (keyword)
 	 * @param idDoc document ID
 	 * @return probability Q_i for the term
 	 */
-	public double calculeQI(String mot, int idDoc){
-		int nbDoc = keywords.get(mot).getFrequencesProb().keySet().size();
-		return (double)(nbDoc) / (double)(documents.size());
+	public double calculeQI(int termId, int idDoc){
+		TermWeights poids = index.getWeights();
+		return (double) poids.getDf(termId) / (double) poids.getNbDocuments();
 	}
 
 	/**
-	 * Fills probabilistic frequencies for all keywords in all documents.
-	 * Uses formula involving pi and Q_i to compute values.
+	 * Searches documents matching the query using probabilistic model.
+	 * <p>
+	 * The query is evaluated term at a time, from the term with the shortest postings to the
+	 * longest: each term merges its postings into sorted accumulators, which record the query
+	 * terms each document contains. The score of a document, the cosine similarity of its BIR
+	 * vector with the query vector, only depends on this set of terms. Once every term is read,
+	 * each accumulator is scored once and the {@code k} most similar documents are kept.
+	 * <p>
+	 * With up to {@value #MAX_PRUNED_TERMS} query terms, the evaluation is pruned (MaxScore):
+	 * the bounds of the score of a document, given the terms it has and the terms still to be
+	 * read, are tabulated for every set of terms. Before each term, the {@code k}-th best lower
+	 * bound among the accumulators is a threshold that the results will reach: the accumulators
+	 * whose upper bound is below it are dropped, and once a document containing only the
+	 * remaining terms cannot reach it either, no accumulator is created any more and the
+	 * postings of the remaining terms are only advanced to the accumulated documents.
+	 *
+	 * @param requete query object containing the search terms
+	 * @param k the maximum number of documents to return
+	 * @return the documents most similar to the query
+	 * @throws IllegalArgumentException if the query has more than {@value #MAX_TERMS} indexed terms
 	 */
-	public void remplirFrequenceProb(){
-		double qi, val;
+	@Override
+	public TopDocs search(Query requete, int k){
+		SearchMetrics.Timer timer = SearchMetrics.getDefault().start(requete);
+		int[] motReq = termIds(requete);
+		timer.lap(SearchMetrics.Phase.LOOKUP);
+		TopKCollector resultats = new TopKCollector(k);
+
+		// Indexed query terms, by position in the query
+		int[] mots = new int[motReq.length];
+		int t = 0;
+		for (int mot : motReq) {
+			if (mot != TermDictionary.NOT_FOUND) {
+				mots[t++] = mot;
+			}
+		}
+		if (t == 0) {
+			timer.stop(0);
+			return resultats.topDocs();
+		}
+		if (t > MAX_TERMS) {
+			throw new IllegalArgumentException("Too many query terms: " + t + " indexed terms, at most " + MAX_TERMS);
+		}
+
+		// Terms read by ascending document frequency
+		Integer[] ordre = new Integer[t];
+		for (int i = 0; i < t; i++) {
+			ordre[i] = i;
+		}
+		Arrays.sort(ordre, Comparator.comparingInt(i -> index.getKeyword(mots[i]).size()));
+
+		boolean elague = t <= MAX_PRUNED_TERMS;
+		double[] scores = elague ? scores(mots, t, motReq.length) : null;
+		timer.lap(SearchMetrics.Phase.SCORING);
+		if (requete.getProfile() != null) {
+			requete.getProfile().setPlan("term at a time over " + t + " indexed term(s), "
+					+ (elague ? "MaxScore" : "no pruning (more than " + MAX_PRUNED_TERMS + " terms)"));
+		}
+
+		// Accumulators, sorted by document, and the buffers they are merged into
+		long total = 0;
+		for (int i = 0; i < t; i++) {
+			total += index.getKeyword(mots[i]).size();
+		}
+		int[] docs = new int[(int) total];
+		long[] masques = new long[docs.length];
+		int[] fusionDocs = new int[docs.length];
+		long[] fusionMasques = new long[docs.length];
+		int taille = 0;
+		long restants = (1L << t) - 1;
 
-		for (Integer idDoc : documents.keySet()) {
-			for (String mot : documents.get(idDoc).getOccurrences().keySet()) {
+		for (int j : ordre) {
+			PostingsCursor c = index.getKeyword(mots[j]).cursor();
+			long bit = 1L << j;
 
-				qi = calculeQI(mot, idDoc);
-				val = Math.log(((double)(pi * (1 - qi))) / (double)((1 - pi) * qi));
+			boolean nouveaux = true;
+			if (elague && taille >= k) {
+				// Threshold reached by the k best accumulators, whatever the remaining terms
+				int[] compte = new int[scores.length];
+				for (int i = 0; i < taille; i++) {
+					compte[(int) masques[i]]++;
+				}
+				double theta = seuil(bornes(scores, t, restants, false), compte, k);
 
-				documents.get(idDoc).add1TFreqProb(mot, val);
-				keywords.get(mot).add1FreqProb(idDoc, val);
+				double[] max = bornes(scores, t, restants, true);
+				int gardes = 0;
+				for (int i = 0; i < taille; i++) {
+					if (max[(int) masques[i]] >= theta) {
+						docs[gardes] = docs[i];
+						masques[gardes++] = masques[i];
+					}
+				}
+				if (gardes < taille) {
+					resultats.setPruned();
+				}
+				taille = gardes;
+				nouveaux = maxNouveau(scores, restants) >= theta;
 			}
+
+			if (nouveaux) {
+				// Merge the postings of the term into the accumulators
+				int n = 0;
+				int i = 0;
+				int doc = c.nextDoc();
+
+				while (i < taille || doc != PostingsCursor.NO_MORE_DOCS) {
+					if (doc == PostingsCursor.NO_MORE_DOCS || i < taille && docs[i] < doc) {
+						fusionDocs[n] = docs[i];
+						fusionMasques[n++] = masques[i++];
+					}
+					else if (i == taille || docs[i] > doc) {
+						fusionDocs[n] = doc;
+						fusionMasques[n++] = bit;
+						doc = c.nextDoc();
+					}
+					else {
+						fusionDocs[n] = doc;
+						fusionMasques[n++] = masques[i++] | bit;
+						doc = c.nextDoc();
+					}
+				}
+
+				int[] d = docs;
+				docs = fusionDocs;
+				fusionDocs = d;
+				long[] m = masques;
+				masques = fusionMasques;
+				fusionMasques = m;
+				taille = n;
+			}
+			else {
+				// Only the accumulated documents can still reach the results
+				resultats.setPruned();
+				for (int i = 0; i < taille; i++) {
+					if (c.advance(docs[i]) == docs[i]) {
+						masques[i] |= bit;
+					}
+				}
+			}
+			restants &= ~bit;
+		}
+		timer.lap(SearchMetrics.Phase.POSTINGS);
+
+		double[] vecteur = new double[motReq.length];
+		double[] vectorRequete = new double[motReq.length];
+		Arrays.fill(vectorRequete, 1);
+
+		for (int i = 0; i < taille; i++) {
+			resultats.collect(docs[i], elague ? scores[(int) masques[i]] : score(mots, t, masques[i], vecteur, vectorRequete));
 		}
+		timer.lap(SearchMetrics.Phase.SCORING);
+
+		TopDocs topDocs = resultats.topDocs();
+		timer.lap(SearchMetrics.Phase.RANKING);
+		timer.stop(taille);
+		return topDocs;
 	}
 
 	/**
-	 * Searches documents matching the query using probabilistic model.
-	 * Returns a sorted set of documents based on similarity.
+	 * Computes the score of a document for every set of indexed query terms it may contain.
 	 *
-	 * @param requete query object containing the search terms
-	 * @return sorted set of matching documents
+	 * @param mots the IDs of the indexed query terms
+	 * @param t the number of indexed query terms
+	 * @param n the number of query terms, indexed or not
+	 * @return the score of each set of terms, by bit mask of their positions in {@code mots}
 	 */
-	@Override
-	public TreeSet<Document> search(Query requete){
-		vector.clear();
-		String textReq = (requete.getTextRequete()).toLowerCase();
-		String[] motReq = textReq.split(" ");
+	private double[] scores(int[] mots, int t, int n) {
+		double[] scores = new double[1 << t];
+		double[] vecteur = new double[n];
+		double[] vectorRequete = new double[n];
+		Arrays.fill(vectorRequete, 1);
 
-		this.VectorRequete = new double[motReq.length];
+		for (int m = 1; m < scores.length; m++) {
+			scores[m] = score(mots, t, m, vecteur, vectorRequete);
+		}
+		return scores;
+	}
 
-		for (int i = 0; i < motReq.length; i++) {
-			this.VectorRequete[i] = 1;
+	/**
+	 * Computes the cosine similarity with the query of a document containing a set of terms.
+	 *
+	 * @param mots the IDs of the indexed query terms
+	 * @param t the number of indexed query terms
+	 * @param masque the bit mask of the positions in {@code mots} of the terms of the document
+	 * @param vecteur a buffer for the vector of the document, as long as the query
+	 * @param vectorRequete the query vector
+	 * @return the score of the document
+	 */
+	private double score(int[] mots, int t, long masque, double[] vecteur, double[] vectorRequete) {
+		Arrays.fill(vecteur, 0.0);
+		for (int i = 0; i < t; i++) {
+			if ((masque & 1L << i) != 0) {
+				vecteur[i] = index.getWeights().getBir(mots[i]);
+			}
 		}
+		return cosineSimilarity(vecteur, vectorRequete);
+	}
 
-		this.listeDoc = new TreeSet<Document>(new ComparatorProba(VectorRequete, this, requete));
+	/**
+	 * Tabulates the bounds of the final score of a document from the terms read so far.
+	 *
+	 * @param scores the score of every set of terms
+	 * @param t the number of indexed query terms
+	 * @param restants the bit mask of the terms not read yet
+	 * @param max {@code true} for the upper bounds, {@code false} for the lower bounds
+	 * @return for each set of terms, the best or worst score over its unions with sets of
+	 *         remaining terms
+	 */
+	private static double[] bornes(double[] scores, int t, long restants, boolean max) {
+		double[] bornes = scores.clone();
 
-		for (Document doc : documents.values()) {
-			for (String mot : motReq) {
-				if (doc.existsFreqProb(mot)) {
-					this.listeDoc.add(doc);
+		for (int r = 0; r < t; r++) {
+			int bit = 1 << r;
+			if ((restants & bit) == 0) {
+				continue;
+			}
+			for (int m = 0; m < bornes.length; m++) {
+				if ((m & bit) == 0) {
+					bornes[m] = max ? Math.max(bornes[m], bornes[m | bit]) : Math.min(bornes[m], bornes[m | bit]);
 				}
 			}
 		}
-
-		return listeDoc;
+		return bornes;
 	}
 
 	/**
-	 * Calculates the probabilistic frequency vector for a given document according to a query.
+	 * Returns the score that {@code k} accumulators are sure to reach.
 	 *
-	 * @param a document to calculate vector for
-	 * @param requete query containing search terms
-	 * @return array representing the probabilistic frequency vector
+	 * @param min the lower bound of the final score of each set of terms
+	 * @param compte the number of accumulators of each set of terms
+	 * @param k the number of documents to return
+	 * @return the {@code k}-th best lower bound of the accumulators
 	 */
-	public double[] caculeVecteurDoc(Document a, Query requete){
-		double[] vecteur = new double[this.VectorRequete.length];
-
-		String textReq = (requete.getTextRequete()).toLowerCase();
-		String[] motReq = textReq.split(" ");
+	private static double seuil(double[] min, int[] compte, int k) {
+		Integer[] masques = new Integer[min.length];
+		int n = 0;
+		for (int m = 0; m < min.length; m++) {
+			if (compte[m] > 0) {
+				masques[n++] = m;
+			}
+		}
+		Arrays.sort(masques, 0, n, (a, b) -> Double.compare(min[b], min[a]));
 
-		int i = 0;
+		int cumul = 0;
+		for (int i = 0; i < n; i++) {
+			cumul += compte[masques[i]];
+			if (cumul >= k) {
+				return min[masques[i]];
+			}
+		}
+		return Double.NEGATIVE_INFINITY;
+	}
 
-		for (String mot : motReq) {
+	/**
+	 * Returns the best score of a document containing only terms not read yet.
+	 *
+	 * @param scores the score of every set of terms
+	 * @param restants the bit mask of the terms not read yet
+	 * @return the best score over the non-empty sets of remaining terms
+	 */
+	private static double maxNouveau(double[] scores, long restants) {
+		double max = Double.NEGATIVE_INFINITY;
+		int r = (int) restants;
 
-			if (a.get1FreqProb(mot) != null) {
-				vecteur[i] = a.get1FreqProb(mot);
-			}
-			else {
-				vecteur[i] = 0.0;
-			}
-			i++;
+		for (int m = r; m != 0; m = (m - 1) & r) {
+			max = Math.max(max, scores[m]);
 		}
+		return max;
+	}
+
+	/**
+	 * Looks up the term IDs of the search terms of a query.
+	 *
+	 * @param requete query containing search terms
+	 * @return the ID of each term, {@link TermDictionary#NOT_FOUND} for unknown terms
+	 */
+	private int[] termIds(Query requete){
+		int[] ids = new int[requete.getTermes().size()];
 
-		return vecteur;
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = index.getTermId(requete.getTermes().get(i));
+		}
+		return ids;
 	}
 
 	/**
@@ -0,0 +1,48 @@
+/**
+ * Search engine profiling every query it searches ({@link QueryProfile}), and logging the ones
+ * slower than the threshold of a {@link SlowQueryLog} with their profile.
+ * <p>
+ * Profiling a query costs the time of a few allocations; the terms of a query are only described
+ * once it is logged. A query already profiled, by an explicit {@link QueryProfile#explain}, is
+ * searched as is.
+ */
+public class ProfilingSearchEngine implements SearchEngine {
+
+    private final SearchEngine engine;
+
+    private final SearchType type;
+
+    private final Index index;
+
+    private final SlowQueryLog log;
+
+    /**
+     * Constructs an engine profiling the searches of another.
+     *
+     * @param engine the engine searching the queries
+     * @param type the model of this engine
+     * @param index the index searched by the engine
+     * @param log the log of the slow queries
+     */
+    public ProfilingSearchEngine(SearchEngine engine, SearchType type, Index index, SlowQueryLog log) {
+        this.engine = engine;
+        this.type = type;
+        this.index = index;
+        this.log = log;
+    }
+
+    @Override
+    public TopDocs search(Query q, int k) {
+        if (q.getProfile() != null) {
+            return engine.search(q, k);
+        }
+        QueryProfile profile = QueryProfile.explain(engine, type, index, q, k);
+        log.log(profile);
+        return profile.getResults();
+    }
+
+    @Override
+    public void displayResults(TopDocs results, Index index) {
+        engine.displayResults(results, index);
+    }
+}
@@ -1,4 +1,4 @@
-import java.util.Objects;
+import java.util.List;
 import java.util.TreeMap;
 
 /**
@@ -6,33 +6,70 @@ import java.util.TreeMap;
  */
 public class Query {
 
+	/** Tokenizer keeping stop words, so that operators remain visible to the boolean engine. */
+	private static final Tokenizer TOUS_LES_TOKENS = new Tokenizer(null);
+
 	private String textQuery;
+	private List<String> tokens;
+	private List<String> termes;
 	private TreeMap<String,Integer> occurrences;
 	private TreeMap<String,Double> frequences;
 	private String operator;
 
+	/** Time spent tokenizing the text, in nanoseconds. */
+	private final long parseNanos;
+
+	/** Profile filled by the search of the query, or {@code null}. */
+	private QueryProfile profile;
+
 	/**
 	 * Constructs a Query object from the input text.
-	 * Converts text to lowercase and initializes term occurrences and frequencies.
-	 * Ignores the logical operators "or", "and", and "not" when counting terms.
+	 * Tokenizes the text with the same {@link Tokenizer} as the indexation, and initializes
+	 * term occurrences and frequencies. Stop words, including the logical operators
+	 * "or", "and" and "not", are ignored when counting terms.
 	 *
 	 * @param text the raw query text
 	 */
 	public Query (String text){
+		long debut = System.nanoTime();
 		textQuery = text.toLowerCase();
 
 		occurrences = new TreeMap<String,Integer>();
 		frequences = new TreeMap<String,Double>();
 
-		String[] ligne= text.split(" ");
+		tokens = TOUS_LES_TOKENS.tokenize(text);
+		termes = Tokenizer.getDefault().tokenize(text);
 
-		for(String mot: ligne){
-			// Filter out logical operators from term occurrences
-			if(!mot.equals("or") && !mot.equals("and") && !mot.equals("not")){
-				occurrences.put(mot, 1);
-				frequences.put(mot, (double) (occurrences.get(mot) / occurrences.size()));
-			}
+		for(String mot: termes){
+			occurrences.put(mot, 1);
+			frequences.put(mot, (double) (occurrences.get(mot) / occurrences.size()));
 		}
+		parseNanos = System.nanoTime() - debut;
+	}
+
+	/**
+	 * Returns the time spent tokenizing the text of the query, counted in the parse phase of
+	 * its search (see {@link SearchMetrics}).
+	 * @return the time, in nanoseconds
+	 */
+	public long getParseNanos(){
+		return this.parseNanos;
+	}
+
+	/**
+	 * Returns the profile that the search of the query fills, if it is explained.
+	 * @return the profile, or {@code null}
+	 */
+	public QueryProfile getProfile(){
+		return this.profile;
+	}
+
+	/**
+	 * Attaches a profile to the query, filled by its search (see {@link QueryProfile}).
+	 * @param profile the profile, or {@code null}
+	 */
+	public void setProfile(QueryProfile profile){
+		this.profile = profile;
 	}
 
 	/**
@@ -43,6 +80,22 @@ public class Query {
 		return this.textQuery;
 	}
 
+	/**
+	 * Returns every token of the query, lowercased, including stop words and operators.
+	 * @return the tokens, in query order
+	 */
+	public List<String> getTokens(){
+		return this.tokens;
+	}
+
+	/**
+	 * Returns the search terms of the query: its tokens without stop words and operators.
+	 * @return the terms, in query order
+	 */
+	public List<String> getTermes(){
+		return this.termes;
+	}
+
 	/**
 	 * Returns the operator associated with the query.
 	 * (Note: operator field is declared but not set in current code.)
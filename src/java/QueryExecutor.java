@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs queries concurrently against one engine, on a fixed pool of threads sharing its index.
+ * <p>
+ * Engines keep no state between searches (see {@link SearchEngine}), so the workers share the
+ * engine and the index without any lock; each query is searched by a single worker.
+ */
+public class QueryExecutor implements AutoCloseable {
+
+    /** The engine searched by every worker. */
+    private final SearchEngine engine;
+
+    /** Workers searching the queries. */
+    private final ExecutorService pool;
+
+    /** Number of workers. */
+    private final int nbThreads;
+
+    /**
+     * Constructs an executor and starts its workers.
+     *
+     * @param engine the engine to search
+     * @param nbThreads the number of queries searched at the same time, at least 1
+     */
+    public QueryExecutor(SearchEngine engine, int nbThreads) {
+        if (nbThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required: " + nbThreads);
+        }
+        this.engine = engine;
+        this.nbThreads = nbThreads;
+        this.pool = Executors.newFixedThreadPool(nbThreads);
+    }
+
+    /**
+     * Submits a query, searched as soon as a worker is free.
+     *
+     * @param requete the query, not shared with other searches
+     * @param k the maximum number of documents to return
+     * @return the pending result of the search
+     */
+    public Future<TopDocs> submit(Query requete, int k) {
+        return pool.submit(() -> engine.search(requete, k));
+    }
+
+    /**
+     * Searches queries concurrently and waits for all of them.
+     *
+     * @param requetes the queries, each one searched once
+     * @param k the maximum number of documents to return per query
+     * @return the result of each query, in the order of the queries
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     * @throws IllegalArgumentException if a query is invalid for the engine
+     */
+    public List<TopDocs> searchAll(List<Query> requetes, int k) throws InterruptedException {
+        List<Callable<TopDocs>> taches = new ArrayList<>(requetes.size());
+        for (Query requete : requetes) {
+            taches.add(() -> engine.search(requete, k));
+        }
+
+        List<TopDocs> resultats = new ArrayList<>(requetes.size());
+        for (Future<TopDocs> f : pool.invokeAll(taches)) {
+            try {
+                resultats.add(f.get());
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Concurrent search failed", e.getCause());
+            }
+        }
+        return resultats;
+    }
+
+    /** @return the number of queries searched at the same time */
+    public int getNbThreads() {
+        return nbThreads;
+    }
+
+    /**
+     * Stops the workers once the submitted queries are searched. If the calling thread is
+     * interrupted while waiting, the workers are stopped at once and the interrupt status of the
+     * thread is restored.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Profile of the search of a query, to explain where its time goes: the plan chosen by the
+ * engine, the length of the postings of each term, the number of postings read and of documents
+ * scored, the caches hit, and the time spent in each {@linkplain SearchMetrics.Phase phase}.
+ * <p>
+ * A query is profiled by {@link #explain}, which attaches a profile to the {@link Query} before
+ * searching it: the engine then fills it through its {@link SearchMetrics.Timer} and
+ * {@link #setPlan(String)}. The profiles of the slow queries are kept by a {@link SlowQueryLog}.
+ */
+public class QueryProfile {
+
+    /** The model of the query. */
+    private final SearchType type;
+
+    /** The query. */
+    private final Query requete;
+
+    /** The number of documents asked for. */
+    private final int k;
+
+    /** The index searched, to describe the terms of the query. */
+    private final Index index;
+
+    /** The evaluation chosen by the engine, or {@code null} if the engine did not run. */
+    private String plan;
+
+    /** {@code null} without a result cache, else whether the result was read from it. */
+    private Boolean resultCacheHit;
+
+    /** Time spent in each phase, in nanoseconds, -1 if not reached; {@code null} if the engine did not run. */
+    private long[] phases;
+
+    private long postingsRead;
+    private long docsScored;
+    private long clauseHits;
+    private long clauseMisses;
+
+    /** Time of the whole search, tokenization included, in nanoseconds. */
+    private long totalNanos;
+
+    /** The result of the search. */
+    private TopDocs resultats;
+
+    private QueryProfile(SearchType type, Query requete, int k, Index index) {
+        this.type = type;
+        this.requete = requete;
+        this.k = k;
+        this.index = index;
+    }
+
+    /**
+     * Searches a query and profiles its search.
+     *
+     * @param engine the engine of the model of the query
+     * @param type the model of the query
+     * @param index the index searched by the engine
+     * @param requete the query
+     * @param k the number of documents to return
+     * @return the profile of the search, holding its result
+     */
+    public static QueryProfile explain(SearchEngine engine, SearchType type, Index index, Query requete, int k) {
+        QueryProfile profile = new QueryProfile(type, requete, k, index);
+        requete.setProfile(profile);
+
+        long debut = System.nanoTime();
+        try {
+            profile.resultats = engine.search(requete, k);
+        }
+        finally {
+            profile.totalNanos = System.nanoTime() - debut + requete.getParseNanos();
+            requete.setProfile(null);
+        }
+        return profile;
+    }
+
+    /**
+     * Describes the evaluation chosen by the engine.
+     *
+     * @param plan the plan, such as the parsed boolean query or the pruning used
+     */
+    public void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * Records whether the result was read from a {@link ResultCache}.
+     *
+     * @param hit {@code true} for a hit, {@code false} for a miss
+     */
+    void setResultCacheHit(boolean hit) {
+        this.resultCacheHit = hit;
+    }
+
+    /**
+     * Records the phases and counters of the search, when the engine ends it.
+     */
+    void setSearch(long[] phases, long postingsRead, long docsScored, long clauseHits, long clauseMisses) {
+        this.phases = phases.clone();
+        this.postingsRead = postingsRead;
+        this.docsScored = docsScored;
+        this.clauseHits = clauseHits;
+        this.clauseMisses = clauseMisses;
+    }
+
+    /** @return the result of the search */
+    public TopDocs getResults() {
+        return resultats;
+    }
+
+    /** @return the time of the whole search, tokenization included, in nanoseconds */
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /** @return the evaluation chosen by the engine, or {@code null} if the result was cached */
+    public String getPlan() {
+        return plan;
+    }
+
+    /** @return the number of postings decoded */
+    public long getPostingsRead() {
+        return postingsRead;
+    }
+
+    /** @return the number of documents scored */
+    public long getDocsScored() {
+        return docsScored;
+    }
+
+    /**
+     * Returns the time spent in a phase.
+     *
+     * @param phase the phase
+     * @return the time, in nanoseconds, or -1 if the search did not reach the phase
+     */
+    public long getPhaseNanos(SearchMetrics.Phase phase) {
+        return phases == null ? -1 : phases[phase.ordinal()];
+    }
+
+    /**
+     * Describes the distinct terms of the query: their ID and the length of their postings.
+     */
+    private List<String[]> termes() {
+        List<String[]> termes = new ArrayList<>();
+        for (String terme : new LinkedHashSet<>(requete.getTermes())) {
+            int id = index.getTermId(terme);
+            if (id == TermDictionary.NOT_FOUND) {
+                termes.add(new String[] {terme, null, "0", "false"});
+            }
+            else {
+                int taille = index.getKeyword(id).size();
+                boolean bitmap = type == SearchType.BOOLEAN && (long) taille * BooleanQuery.BITMAP_DENSITY >= index.getDocuments().size();
+                termes.add(new String[] {terme, String.valueOf(id), String.valueOf(taille), String.valueOf(bitmap)});
+            }
+        }
+        return termes;
+    }
+
+    /**
+     * Appends the profile as a JSON object; times are in microseconds.
+     *
+     * @param json the JSON text being written
+     */
+    public void json(StringBuilder json) {
+        json.append("{\"model\":");
+        Json.string(json, type.name().toLowerCase(Locale.ROOT));
+        json.append(",\"query\":");
+        Json.string(json, requete.getTextRequete());
+        json.append(",\"k\":").append(k);
+        json.append(",\"plan\":");
+        Json.string(json, plan);
+
+        json.append(",\"terms\":[");
+        List<String[]> termes = termes();
+        for (int i = 0; i < termes.size(); i++) {
+            String[] t = termes.get(i);
+            json.append(i == 0 ? "" : ",").append("{\"term\":");
+            Json.string(json, t[0]);
+            json.append(",\"id\":").append(t[1]).append(",\"postings\":").append(t[2]).append(",\"bitmap\":").append(t[3]).append('}');
+        }
+        json.append(']');
+
+        json.append(",\"resultCacheHit\":").append(resultCacheHit);
+        json.append(",\"clauseCacheHits\":").append(clauseHits);
+        json.append(",\"clauseCacheMisses\":").append(clauseMisses);
+        json.append(",\"postingsRead\":").append(postingsRead);
+        json.append(",\"docsScored\":").append(docsScored);
+        if (resultats != null) {
+            json.append(",\"totalHits\":").append(resultats.getTotalHits());
+            json.append(",\"totalHitsExact\":").append(resultats.isTotalHitsExact());
+        }
+        json.append(",\"totalUs\":").append(String.format(Locale.ROOT, "%.1f", totalNanos / 1e3));
+
+        json.append(",\"phasesUs\":{");
+        boolean premier = true;
+        for (SearchMetrics.Phase phase : SearchMetrics.Phase.values()) {
+            long nanos = phase == SearchMetrics.Phase.PARSE && phases == null ? requete.getParseNanos() : getPhaseNanos(phase);
+            if (nanos >= 0) {
+                json.append(premier ? "" : ",");
+                Json.string(json, phase.label());
+                json.append(':').append(String.format(Locale.ROOT, "%.1f", nanos / 1e3));
+                premier = false;
+            }
+        }
+        json.append("}}");
+    }
+
+    /**
+     * Describes the profile over a few lines of text.
+     */
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format(Locale.ROOT, "Query: %s (%s, k=%d)%n", requete.getTextRequete(), type.name().toLowerCase(Locale.ROOT), k));
+        s.append("Plan: ").append(plan == null ? "none, result read from the cache" : plan).append(System.lineSeparator());
+
+        s.append("Terms:").append(System.lineSeparator());
+        for (String[] t : termes()) {
+            if (t[1] == null) {
+                s.append(String.format(Locale.ROOT, "  %-20s not indexed%n", t[0]));
+            }
+            else {
+                s.append(String.format(Locale.ROOT, "  %-20s id %-8s %,10d postings%s%n", t[0], t[1], Long.parseLong(t[2]),
+                        Boolean.parseBoolean(t[3]) ? " (bitmap)" : ""));
+            }
+        }
+
+        s.append("Caches: result ").append(resultCacheHit == null ? "none" : resultCacheHit ? "hit" : "miss");
+        s.append(String.format(Locale.ROOT, ", clauses %d hit(s) %d miss(es)%n", clauseHits, clauseMisses));
+        s.append(String.format(Locale.ROOT, "Documents: %,d postings read, %,d scored", postingsRead, docsScored));
+        if (resultats != null) {
+            s.append(String.format(Locale.ROOT, ", %s%,d matching", resultats.isTotalHitsExact() ? "" : "at least ", resultats.getTotalHits()));
+        }
+        s.append(System.lineSeparator());
+
+        s.append(String.format(Locale.ROOT, "Time: %.1f µs", totalNanos / 1e3));
+        String separateur = " (";
+        for (SearchMetrics.Phase phase : SearchMetrics.Phase.values()) {
+            long nanos = phase == SearchMetrics.Phase.PARSE && phases == null ? requete.getParseNanos() : getPhaseNanos(phase);
+            if (nanos >= 0 && phase != SearchMetrics.Phase.SEARCH) {
+                s.append(separateur).append(String.format(Locale.ROOT, "%s %.1f µs", phase.label(), nanos / 1e3));
+                separateur = ", ";
+            }
+        }
+        return s.append(separateur.equals(", ") ? ")" : "").toString();
+    }
+}
@@ -0,0 +1,424 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded cache of search results, shared by the engines of every model (see
+ * {@link CachingSearchEngine}).
+ * <p>
+ * A result is keyed by the model, the normalized text of the query (lowercased, blanks
+ * collapsed) and {@code k}. The cache holds at most a budget of bytes, estimated from the size of
+ * the results, with the W-TinyLFU policy: new results enter a small LRU window
+ * ({@value #WINDOW_PERCENT}% of the budget); a result leaving the window is admitted into the
+ * main space only if it was asked for more often than the result it would evict, as estimated by
+ * a count-min sketch of the recent queries. The main space is a segmented LRU: a result asked for
+ * again is promoted from probation to the protected segment ({@value #PROTECTED_PERCENT}% of the
+ * main space). Queries asked only once thus never evict the results of frequent queries.
+ * <p>
+ * Results are only valid for one generation of the index ({@link Index#getGeneration()}): once
+ * the index changes, the whole cache is dropped. The cache is thread-safe; the results are
+ * computed outside of its lock.
+ */
+public class ResultCache {
+
+    /** Share of the budget held by the window, in percent. */
+    static final int WINDOW_PERCENT = 1;
+
+    /** Share of the main space held by the protected segment, in percent. */
+    static final int PROTECTED_PERCENT = 80;
+
+    /** Estimated size of an entry without its query text and documents, in bytes. */
+    static final int ENTRY_OVERHEAD = 200;
+
+    /** Estimated size of a retrieved document in a result, in bytes. */
+    static final int SCORED_DOC_SIZE = 40;
+
+    /** Estimated size of an entry, to size the frequency sketch. */
+    private static final int AVERAGE_ENTRY_SIZE = 1024;
+
+    /** The index whose results are cached. */
+    private final Index index;
+
+    /** Budget of the cache, in bytes. */
+    private final long budget;
+
+    /** Budget of the window, in bytes. */
+    private final long windowBudget;
+
+    /** Budget of the protected segment, in bytes. */
+    private final long protectedBudget;
+
+    /** Frequency of the recent queries, cached or not. */
+    private final FrequencySketch sketch;
+
+    private final Map<Key, Entry> entries = new HashMap<>();
+
+    /** LRU lists of the window, of the probation and protected segments; most recent first. */
+    private final Segment window = new Segment();
+    private final Segment probation = new Segment();
+    private final Segment protege = new Segment();
+
+    /** Generation of the index the cached results were computed at. */
+    private long generation;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param index the index whose results are cached
+     * @param budget the size of the cache, in bytes
+     */
+    public ResultCache(Index index, long budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("The budget of the cache must be positive: " + budget);
+        }
+        this.index = index;
+        this.budget = budget;
+        this.windowBudget = Math.max(1, budget * WINDOW_PERCENT / 100);
+        this.protectedBudget = (budget - windowBudget) * PROTECTED_PERCENT / 100;
+        this.sketch = new FrequencySketch((int) Math.min(1 << 24, Math.max(64, budget / AVERAGE_ENTRY_SIZE)));
+        this.generation = index.getGeneration();
+    }
+
+    /**
+     * Normalizes the text of a query for the keys of the cache.
+     *
+     * @param texte the text of the query
+     * @return the text, lowercased, its blanks collapsed
+     */
+    static String normalize(String texte) {
+        return texte.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the cached result of a query, and records that it was asked for.
+     *
+     * @param type the model of the query
+     * @param texte the text of the query
+     * @param k the number of documents asked for
+     * @return the result, or {@code null} if it is not cached
+     */
+    public synchronized TopDocs get(SearchType type, String texte, int k) {
+        checkGeneration();
+        Key key = new Key(type, normalize(texte), k);
+        sketch.increment(key.hash);
+
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+
+        hits++;
+        if (e.segment == probation) {
+            // Asked for again: promoted, demoting the oldest protected results if needed
+            probation.remove(e);
+            protege.addFirst(e);
+            while (protege.bytes > protectedBudget && protege.last != e) {
+                Entry ancien = protege.last;
+                protege.remove(ancien);
+                probation.addFirst(ancien);
+            }
+        }
+        else {
+            e.segment.moveToFront(e);
+        }
+        return e.resultat;
+    }
+
+    /**
+     * Offers the result of a query to the cache.
+     *
+     * @param type the model of the query
+     * @param texte the text of the query
+     * @param k the number of documents asked for
+     * @param resultat the result
+     * @param generation the generation of the index the result was computed at; the result is
+     *        ignored if the index changed since
+     */
+    public synchronized void put(SearchType type, String texte, int k, TopDocs resultat, long generation) {
+        checkGeneration();
+        if (generation != this.generation) {
+            return;
+        }
+
+        String normalise = normalize(texte);
+        Key key = new Key(type, normalise, k);
+        long taille = ENTRY_OVERHEAD + 2L * normalise.length() + (long) SCORED_DOC_SIZE * resultat.getScoreDocs().size();
+        if (taille > budget - windowBudget) {
+            return;
+        }
+
+        Entry e = entries.get(key);
+        if (e != null) {
+            e.segment.bytes += taille - e.taille;
+            e.taille = taille;
+            e.resultat = resultat;
+            e.segment.moveToFront(e);
+        }
+        else {
+            e = new Entry(key, resultat, taille);
+            entries.put(key, e);
+            window.addFirst(e);
+        }
+        evict();
+    }
+
+    /**
+     * Moves the results leaving the window to the main space, or drops them, until the window
+     * and the main space are within their budgets.
+     */
+    private void evict() {
+        while (window.bytes > windowBudget) {
+            Entry candidat = window.last;
+            window.remove(candidat);
+
+            boolean admis = true;
+            while (probation.bytes + protege.bytes + candidat.taille > budget - windowBudget) {
+                Entry victime = probation.last != null ? probation.last : protege.last;
+                if (sketch.frequency(candidat.key.hash) <= sketch.frequency(victime.key.hash)) {
+                    admis = false;
+                    break;
+                }
+                victime.segment.remove(victime);
+                entries.remove(victime.key);
+                evictions++;
+            }
+
+            if (admis) {
+                probation.addFirst(candidat);
+            }
+            else {
+                entries.remove(candidat.key);
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Drops every result if the index changed since they were computed.
+     */
+    private void checkGeneration() {
+        long courante = index.getGeneration();
+        if (courante != generation) {
+            invalidations += entries.size();
+            clearEntries();
+            generation = courante;
+        }
+    }
+
+    /**
+     * Drops every cached result; the counters are kept.
+     */
+    public synchronized void clear() {
+        clearEntries();
+    }
+
+    private void clearEntries() {
+        entries.clear();
+        window.clear();
+        probation.clear();
+        protege.clear();
+    }
+
+    /** @return the generation of the index, to be given to {@link #put} with a result computed from now */
+    public long generation() {
+        return index.getGeneration();
+    }
+
+    /** @return a snapshot of the counters and of the size of the cache */
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, invalidations, entries.size(),
+                window.bytes + probation.bytes + protege.bytes, budget);
+    }
+
+    /**
+     * Counters of a cache, at some point in time.
+     */
+    public static class Stats {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final int entries;
+        private final long bytes;
+        private final long budget;
+
+        Stats(long hits, long misses, long evictions, long invalidations, int entries, long bytes, long budget) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.budget = budget;
+        }
+
+        /** @return the number of queries answered from the cache */
+        public long getHits() {
+            return hits;
+        }
+
+        /** @return the number of queries not found in the cache */
+        public long getMisses() {
+            return misses;
+        }
+
+        /** @return the number of results dropped to stay within the budget, or not admitted */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /** @return the number of results dropped because the index changed */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /** @return the number of cached results */
+        public int getEntries() {
+            return entries;
+        }
+
+        /** @return the estimated size of the cached results, in bytes */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /** @return the budget of the cache, in bytes */
+        public long getBudget() {
+            return budget;
+        }
+
+        /** @return the share of the queries answered from the cache, between 0 and 1 */
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "hits=%d misses=%d hitRate=%.3f evictions=%d invalidations=%d entries=%d bytes=%d/%d",
+                    hits, misses, getHitRate(), evictions, invalidations, entries, bytes, budget);
+        }
+    }
+
+    /**
+     * Key of a result: model, normalized text of the query and number of documents.
+     */
+    private static final class Key {
+
+        private final SearchType type;
+        private final String texte;
+        private final int k;
+
+        /** Spread hash code, also used by the frequency sketch. */
+        private final int hash;
+
+        Key(SearchType type, String texte, int k) {
+            this.type = type;
+            this.texte = texte;
+            this.k = k;
+            int h = Objects.hash(type, texte, k) * 0x9E3779B9;
+            this.hash = h ^ (h >>> 16);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key autre = (Key) o;
+            return k == autre.k && type == autre.type && texte.equals(autre.texte);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A cached result, linked into the list of its segment.
+     */
+    private static final class Entry {
+
+        private final Key key;
+        private TopDocs resultat;
+        private long taille;
+
+        private Segment segment;
+        private Entry previous;
+        private Entry next;
+
+        Entry(Key key, TopDocs resultat, long taille) {
+            this.key = key;
+            this.resultat = resultat;
+            this.taille = taille;
+        }
+    }
+
+    /**
+     * Doubly linked LRU list of entries, with their total size.
+     */
+    private static final class Segment {
+
+        /** Most recently used entry. */
+        private Entry first;
+
+        /** Least recently used entry, the next to leave. */
+        private Entry last;
+
+        private long bytes;
+
+        void addFirst(Entry e) {
+            e.segment = this;
+            e.previous = null;
+            e.next = first;
+            if (first != null) {
+                first.previous = e;
+            }
+            first = e;
+            if (last == null) {
+                last = e;
+            }
+            bytes += e.taille;
+        }
+
+        void remove(Entry e) {
+            if (e.previous != null) {
+                e.previous.next = e.next;
+            }
+            else {
+                first = e.next;
+            }
+            if (e.next != null) {
+                e.next.previous = e.previous;
+            }
+            else {
+                last = e.previous;
+            }
+            e.previous = null;
+            e.next = null;
+            e.segment = null;
+            bytes -= e.taille;
+        }
+
+        void moveToFront(Entry e) {
+            if (first != e) {
+                remove(e);
+                addFirst(e);
+            }
+        }
+
+        void clear() {
+            first = null;
+            last = null;
+            bytes = 0;
+        }
+    }
+}
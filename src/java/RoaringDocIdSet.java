@@ -0,0 +1,688 @@
+import java.util.Arrays;
+
+/**
+ * Immutable compressed set of document IDs, in the style of roaring bitmaps.
+ * <p>
+ * The IDs are split by their 16 high bits into chunks of 65536 IDs, and each chunk is stored in
+ * the smallest of three containers: a sorted array of the 16 low bits (2 bytes per ID, up to
+ * {@value #ARRAY_MAX} IDs), a bitmap of 1024 words (8 KB whatever the number of IDs), or a list
+ * of runs of consecutive IDs (4 bytes per run). A set of most of the corpus then costs about one
+ * bit per document instead of a boxed {@code Integer} and a tree or hash node per ID.
+ * <p>
+ * Intersection, union and difference work container by container and return new sets; sets
+ * and containers are never modified once built, so they can be shared between queries and
+ * threads, and kept as cached filters.
+ */
+public final class RoaringDocIdSet {
+
+    /** Maximum number of IDs of an array container. */
+    static final int ARRAY_MAX = 4096;
+
+    /** Number of 64-bit words of a bitmap container. */
+    private static final int WORDS = 1024;
+
+    /** The empty set. */
+    private static final RoaringDocIdSet EMPTY = new RoaringDocIdSet(new char[0], new Container[0], 0);
+
+    /** High 16 bits of the IDs of each container, in ascending order. */
+    private final char[] keys;
+
+    /** Containers of the low 16 bits, by position in {@link #keys}. */
+    private final Container[] containers;
+
+    /** Number of IDs. */
+    private final int cardinality;
+
+    private RoaringDocIdSet(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            n += containers[i].cardinality();
+        }
+        this.cardinality = n;
+    }
+
+    /**
+     * Returns the set of the documents of an iterator.
+     *
+     * @param it the iterator, positioned before its first document
+     * @return the set
+     */
+    public static RoaringDocIdSet of(DocIdIterator it) {
+        Builder builder = new Builder();
+        for (int doc = it.nextDoc(); doc != DocIdIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+            builder.add(doc);
+        }
+        return builder.build();
+    }
+
+    /** @return the number of IDs of the set */
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * @param doc a document ID
+     * @return whether the set contains the ID
+     */
+    public boolean contains(int doc) {
+        int i = Arrays.binarySearch(keys, (char) (doc >>> 16));
+        return i >= 0 && containers[i].contains(doc & 0xFFFF);
+    }
+
+    /** @return an approximation of the memory used by the set, in bytes */
+    public long sizeInBytes() {
+        long n = 16 + 2L * keys.length + 4L * containers.length;
+        for (Container c : containers) {
+            n += c.sizeInBytes();
+        }
+        return n;
+    }
+
+    /** @return an iterator over the IDs of the set, in ascending order */
+    public SetIterator iterator() {
+        return new SetIterator(this);
+    }
+
+    /**
+     * Returns the intersection of this set with another one.
+     *
+     * @param other the other set
+     * @return the IDs in both sets
+     */
+    public RoaringDocIdSet and(RoaringDocIdSet other) {
+        int n = Math.min(keys.length, other.keys.length);
+        char[] k = new char[n];
+        Container[] c = new Container[n];
+        int size = 0;
+
+        for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            }
+            else if (keys[i] > other.keys[j]) {
+                j++;
+            }
+            else {
+                Container r = containers[i].and(other.containers[j]);
+                if (r != null) {
+                    k[size] = keys[i];
+                    c[size++] = r;
+                }
+                i++;
+                j++;
+            }
+        }
+        return create(k, c, size);
+    }
+
+    /**
+     * Returns the union of this set with another one.
+     *
+     * @param other the other set
+     * @return the IDs in either set
+     */
+    public RoaringDocIdSet or(RoaringDocIdSet other) {
+        int n = keys.length + other.keys.length;
+        char[] k = new char[n];
+        Container[] c = new Container[n];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || i < keys.length && keys[i] < other.keys[j]) {
+                k[size] = keys[i];
+                c[size++] = containers[i++];
+            }
+            else if (i == keys.length || keys[i] > other.keys[j]) {
+                k[size] = other.keys[j];
+                c[size++] = other.containers[j++];
+            }
+            else {
+                k[size] = keys[i];
+                c[size++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return create(k, c, size);
+    }
+
+    /**
+     * Returns the difference of this set and another one.
+     *
+     * @param other the set of the IDs to remove
+     * @return the IDs of this set that are not in the other one
+     */
+    public RoaringDocIdSet andNot(RoaringDocIdSet other) {
+        char[] k = new char[keys.length];
+        Container[] c = new Container[keys.length];
+        int size = 0;
+        int j = 0;
+
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+
+            Container r = j < other.keys.length && other.keys[j] == keys[i] ? containers[i].andNot(other.containers[j]) : containers[i];
+            if (r != null) {
+                k[size] = keys[i];
+                c[size++] = r;
+            }
+        }
+        return create(k, c, size);
+    }
+
+    /**
+     * Creates a set from the first {@code size} containers.
+     */
+    private static RoaringDocIdSet create(char[] keys, Container[] containers, int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        if (size < keys.length) {
+            keys = Arrays.copyOf(keys, size);
+            containers = Arrays.copyOf(containers, size);
+        }
+        return new RoaringDocIdSet(keys, containers, size);
+    }
+
+    /**
+     * Builds a set from IDs added in ascending order.
+     */
+    public static class Builder {
+
+        /** Bits of the chunk being filled. */
+        private final long[] words = new long[WORDS];
+
+        private char[] keys = new char[4];
+        private Container[] containers = new Container[4];
+        private int size;
+
+        /** High 16 bits of the chunk being filled, or -1. */
+        private int key = -1;
+
+        /** Number of IDs in the chunk being filled. */
+        private int count;
+
+        /** Last ID added, or -1. */
+        private int last = -1;
+
+        /**
+         * Adds an ID.
+         *
+         * @param doc the ID, greater than every ID already added
+         */
+        public void add(int doc) {
+            if (doc <= last) {
+                throw new IllegalArgumentException("IDs must be added in ascending order: " + doc + " after " + last);
+            }
+            if (doc >>> 16 != key) {
+                flush();
+                key = doc >>> 16;
+            }
+            words[(doc & 0xFFFF) >>> 6] |= 1L << doc;
+            count++;
+            last = doc;
+        }
+
+        /**
+         * Builds the set. The builder must not be used afterwards.
+         *
+         * @return the set of the IDs added
+         */
+        public RoaringDocIdSet build() {
+            flush();
+            return create(keys, containers, size);
+        }
+
+        /**
+         * Stores the chunk being filled in its container.
+         */
+        private void flush() {
+            if (count == 0) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                containers = Arrays.copyOf(containers, size * 2);
+            }
+            keys[size] = (char) key;
+            containers[size++] = Container.of(words, count);
+            Arrays.fill(words, 0);
+            count = 0;
+        }
+    }
+
+    /**
+     * Iterator over the IDs of a set.
+     */
+    public static class SetIterator extends DocIdIterator {
+
+        private final RoaringDocIdSet set;
+
+        /** Position of the current container. */
+        private int i;
+
+        /** Current document ID. */
+        private int doc;
+
+        private SetIterator(RoaringDocIdSet set) {
+            this.set = set;
+            this.doc = -1;
+        }
+
+        /** @return the set iterated */
+        public RoaringDocIdSet getSet() {
+            return set;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            return doc == NO_MORE_DOCS ? doc : advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) {
+            if (doc >= target) {
+                return doc;
+            }
+
+            char[] keys = set.keys;
+            int cle = target >>> 16;
+            while (i < keys.length && keys[i] < cle) {
+                i++;
+            }
+
+            int from = target & 0xFFFF;
+            while (i < keys.length) {
+                int v = set.containers[i].next(keys[i] == cle ? from : 0);
+                if (v >= 0) {
+                    return doc = keys[i] << 16 | v;
+                }
+                i++;
+            }
+            return doc = NO_MORE_DOCS;
+        }
+
+        @Override
+        public long cost() {
+            return set.cardinality;
+        }
+    }
+
+    /**
+     * Low 16 bits of the IDs of a chunk.
+     */
+    private abstract static class Container {
+
+        /** @return the number of values */
+        abstract int cardinality();
+
+        /** @return whether the container holds a value */
+        abstract boolean contains(int v);
+
+        /** @return the smallest value greater than or equal to {@code from}, or -1 */
+        abstract int next(int from);
+
+        /** @return a new bitmap of the values */
+        abstract long[] toWords();
+
+        /** @return the memory used by the values, in bytes */
+        abstract int sizeInBytes();
+
+        /** @return the values in both containers, or {@code null} if there is none */
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] w = toWords();
+            long[] o = other.toWords();
+            for (int i = 0; i < WORDS; i++) {
+                w[i] &= o[i];
+            }
+            return of(w, count(w));
+        }
+
+        /** @return the values in either container */
+        Container or(Container other) {
+            long[] w = toWords();
+            long[] o = other.toWords();
+            for (int i = 0; i < WORDS; i++) {
+                w[i] |= o[i];
+            }
+            return of(w, count(w));
+        }
+
+        /** @return the values of this container not in the other one, or {@code null} if there is none */
+        Container andNot(Container other) {
+            long[] w = toWords();
+            long[] o = other.toWords();
+            for (int i = 0; i < WORDS; i++) {
+                w[i] &= ~o[i];
+            }
+            return of(w, count(w));
+        }
+
+        /**
+         * Returns the smallest container holding the values of a bitmap.
+         *
+         * @param w the bitmap, which may be reused by the caller afterwards
+         * @param cardinality the number of bits set
+         * @return the container, or {@code null} if the bitmap is empty
+         */
+        static Container of(long[] w, int cardinality) {
+            if (cardinality == 0) {
+                return null;
+            }
+
+            // A run starts at every set bit whose previous bit is clear
+            int runs = 0;
+            long precedent = 0;
+            for (long mot : w) {
+                runs += Long.bitCount(mot & ~(mot << 1 | precedent >>> 63));
+                precedent = mot;
+            }
+
+            if (4 * runs < Math.min(2 * cardinality, 8 * WORDS)) {
+                return RunContainer.of(w, runs, cardinality);
+            }
+            if (cardinality <= ARRAY_MAX) {
+                return ArrayContainer.of(w, cardinality);
+            }
+            return new BitmapContainer(w.clone(), cardinality);
+        }
+
+        /** @return the number of bits set in a bitmap */
+        static int count(long[] w) {
+            int n = 0;
+            for (long mot : w) {
+                n += Long.bitCount(mot);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Sorted array of values.
+     */
+    private static final class ArrayContainer extends Container {
+
+        private final char[] values;
+
+        private ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        static ArrayContainer of(long[] w, int cardinality) {
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < WORDS; i++) {
+                for (long mot = w[i]; mot != 0; mot &= mot - 1) {
+                    values[n++] = (char) (i << 6 | Long.numberOfTrailingZeros(mot));
+                }
+            }
+            return new ArrayContainer(values);
+        }
+
+        @Override
+        int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        boolean contains(int v) {
+            return Arrays.binarySearch(values, (char) v) >= 0;
+        }
+
+        @Override
+        int next(int from) {
+            int i = Arrays.binarySearch(values, (char) from);
+            if (i < 0) {
+                i = -i - 1;
+            }
+            return i < values.length ? values[i] : -1;
+        }
+
+        @Override
+        long[] toWords() {
+            long[] w = new long[WORDS];
+            for (char v : values) {
+                w[v >>> 6] |= 1L << v;
+            }
+            return w;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 2 * values.length;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] r = new char[values.length];
+            int n = 0;
+
+            if (other instanceof ArrayContainer) {
+                char[] o = ((ArrayContainer) other).values;
+                for (int i = 0, j = 0; i < values.length && j < o.length; ) {
+                    if (values[i] < o[j]) {
+                        i++;
+                    }
+                    else if (values[i] > o[j]) {
+                        j++;
+                    }
+                    else {
+                        r[n++] = values[i++];
+                        j++;
+                    }
+                }
+            }
+            else {
+                for (char v : values) {
+                    if (other.contains(v)) {
+                        r[n++] = v;
+                    }
+                }
+            }
+            return n == 0 ? null : new ArrayContainer(Arrays.copyOf(r, n));
+        }
+
+        @Override
+        Container or(Container other) {
+            if (!(other instanceof ArrayContainer) || values.length + other.cardinality() > ARRAY_MAX) {
+                return super.or(other);
+            }
+
+            char[] o = ((ArrayContainer) other).values;
+            char[] r = new char[values.length + o.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < values.length && j < o.length) {
+                if (values[i] < o[j]) {
+                    r[n++] = values[i++];
+                }
+                else if (values[i] > o[j]) {
+                    r[n++] = o[j++];
+                }
+                else {
+                    r[n++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < values.length) {
+                r[n++] = values[i++];
+            }
+            while (j < o.length) {
+                r[n++] = o[j++];
+            }
+            return new ArrayContainer(Arrays.copyOf(r, n));
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] r = new char[values.length];
+            int n = 0;
+            for (char v : values) {
+                if (!other.contains(v)) {
+                    r[n++] = v;
+                }
+            }
+            return n == 0 ? null : new ArrayContainer(Arrays.copyOf(r, n));
+        }
+    }
+
+    /**
+     * Bitmap of the 65536 possible values.
+     */
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words;
+        private final int cardinality;
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(int v) {
+            return (words[v >>> 6] & 1L << v) != 0;
+        }
+
+        @Override
+        int next(int from) {
+            int i = from >>> 6;
+            long mot = words[i] & -1L << from;
+
+            while (mot == 0) {
+                if (++i == WORDS) {
+                    return -1;
+                }
+                mot = words[i];
+            }
+            return i << 6 | Long.numberOfTrailingZeros(mot);
+        }
+
+        @Override
+        long[] toWords() {
+            return words.clone();
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 8 * WORDS;
+        }
+    }
+
+    /**
+     * Runs of consecutive values, each stored as its first value and its length minus one.
+     */
+    private static final class RunContainer extends Container {
+
+        private final char[] starts;
+        private final char[] lengths;
+        private final int cardinality;
+
+        private RunContainer(char[] starts, char[] lengths, int cardinality) {
+            this.starts = starts;
+            this.lengths = lengths;
+            this.cardinality = cardinality;
+        }
+
+        static RunContainer of(long[] w, int runs, int cardinality) {
+            char[] starts = new char[runs];
+            char[] lengths = new char[runs];
+            int n = 0;
+            int v = nextSet(w, 0);
+
+            while (v >= 0) {
+                int fin = nextClear(w, v);
+                starts[n] = (char) v;
+                lengths[n++] = (char) (fin - v - 1);
+                v = fin < 65536 ? nextSet(w, fin) : -1;
+            }
+            return new RunContainer(starts, lengths, cardinality);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(int v) {
+            int i = run(v);
+            return i >= 0 && v <= starts[i] + lengths[i];
+        }
+
+        @Override
+        int next(int from) {
+            int i = run(from);
+            if (i >= 0 && from <= starts[i] + lengths[i]) {
+                return from;
+            }
+            return i + 1 < starts.length ? starts[i + 1] : -1;
+        }
+
+        @Override
+        long[] toWords() {
+            long[] w = new long[WORDS];
+            for (int i = 0; i < starts.length; i++) {
+                for (int v = starts[i], fin = starts[i] + lengths[i]; v <= fin; v++) {
+                    w[v >>> 6] |= 1L << v;
+                }
+            }
+            return w;
+        }
+
+        @Override
+        int sizeInBytes() {
+            return 4 * starts.length;
+        }
+
+        /** @return the position of the last run starting at or before {@code v}, or -1 */
+        private int run(int v) {
+            int i = Arrays.binarySearch(starts, (char) v);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        /** @return the first set bit at or after {@code from}, or -1 */
+        private static int nextSet(long[] w, int from) {
+            int i = from >>> 6;
+            long mot = w[i] & -1L << from;
+            while (mot == 0) {
+                if (++i == WORDS) {
+                    return -1;
+                }
+                mot = w[i];
+            }
+            return i << 6 | Long.numberOfTrailingZeros(mot);
+        }
+
+        /** @return the first clear bit at or after {@code from}, or 65536 */
+        private static int nextClear(long[] w, int from) {
+            int i = from >>> 6;
+            long mot = ~w[i] & -1L << from;
+            while (mot == 0) {
+                if (++i == WORDS) {
+                    return 65536;
+                }
+                mot = ~w[i];
+            }
+            return i << 6 | Long.numberOfTrailingZeros(mot);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * A document retrieved by a search engine, with its score for the query.
+ */
+public final class ScoredDoc {
+
+    /** ID of the document. */
+    private final int docId;
+
+    /** Score of the document for the query. */
+    private final double score;
+
+    /**
+     * Constructs a scored document.
+     *
+     * @param docId the ID of the document
+     * @param score the score of the document for the query
+     */
+    public ScoredDoc(int docId, double score) {
+        this.docId = docId;
+        this.score = score;
+    }
+
+    /** @return the ID of the document */
+    public int getDocId() {
+        return docId;
+    }
+
+    /** @return the score of the document for the query */
+    public double getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return docId + ":" + score;
+    }
+}
@@ -1,37 +1,51 @@
-import java.util.Set;
-import java.util.TreeSet;
-
 /**
  * Common interface for all search engine implementations.
+ * <p>
+ * An engine is immutable once constructed: the state of a search (cursors, accumulators and
+ * collector) only lives in the {@link #search(Query, int)} call and in its {@link Query}, and
+ * its caches ({@link ResultCache}, {@link ClauseCache}) are thread-safe, so one engine and its
+ * index can serve any number of threads at the same time (see {@link QueryExecutor}).
  */
 public interface SearchEngine {
 
     /**
-     * Executes a search query and returns a sorted set of matching documents.
+     * Executes a search query and returns the {@code k} best matching documents.
+     * Every matching document is scored once, and only the best ones are kept.
      *
      * @param q the query object containing the search text
-     * @return a TreeSet of Documents matching the query
+     * @param k the maximum number of documents to return
+     * @return the best documents, by decreasing score, and the number of matching documents
      */
-    TreeSet<Document> search(Query q);
+    TopDocs search(Query q, int k);
 
     /**
      * Displays the search results to the standard output.
      * Prints a message if no results are found.
      *
-     * @param results a set of Documents to display
+     * @param results the result of a search
+     * @param index the index holding the documents
      */
-    default void displayResults(Set<Document> results) {
-        if (results.isEmpty()) {
+    default void displayResults(TopDocs results, Index index) {
+        if (results.getTotalHits() == 0) {
             System.out.println("Aucun résultat trouvé.");
         }
         else {
-            for (Document d : results) {
-                System.out.println(d.getDate() + " - " + d.getTitle());
+            long debut = System.nanoTime();
+            Document[] docs = new Document[results.getScoreDocs().size()];
+            for (int i = 0; i < docs.length; i++) {
+                docs[i] = index.getDocument(results.getScoreDocs().get(i).getDocId());
+            }
+            SearchMetrics.getDefault().record(SearchMetrics.Phase.FETCH, System.nanoTime() - debut);
+
+            for (int i = 0; i < docs.length; i++) {
+                ScoredDoc sd = results.getScoreDocs().get(i);
+                Document d = docs[i];
+                System.out.printf("%s - %s (%.4f)%n", d.getDate(), d.getTitle(), sd.getScore());
                 System.out.println(d.getText());
                 System.out.println();
             }
-            System.out.printf("%d résultat(s) trouvé(s)%n", results.size());
+            System.out.printf("%s%d résultat(s) trouvé(s), %d affiché(s)%n", results.isTotalHitsExact() ? "" : "Au moins ",
+                    results.getTotalHits(), results.getScoreDocs().size());
         }
     }
 }
-
@@ -0,0 +1,377 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Latencies and counters of the query path, shared by every engine and thread.
+ * <p>
+ * The time of each search is split into {@linkplain Phase phases}, each recorded into a
+ * {@link LatencyHistogram}, along with the number of documents scored and of postings decoded.
+ * An engine times its search with a {@link Timer}: the time between two laps is added to a phase,
+ * and each phase reached is recorded once when the search ends. The stored fields of the results
+ * are timed by their readers ({@link #record(Phase, long)}).
+ * <p>
+ * Recording costs two clock reads per phase and a few atomic increments per search, a few
+ * hundred nanoseconds, so the metrics are enabled by default. They are exposed over JMX once
+ * {@link #register()} is called, as a text dump ({@link #dump()}) and by {@link SearchServer}.
+ */
+public class SearchMetrics implements SearchMetricsMXBean {
+
+    /** Name of the MBean of the metrics. */
+    public static final String OBJECT_NAME = "SearchEngine:type=SearchMetrics";
+
+    /**
+     * Phases of a search.
+     */
+    public enum Phase {
+        /** Tokenization of the query, and parsing of a boolean query. */
+        PARSE,
+        /** Lookup of the query terms in the dictionary. */
+        LOOKUP,
+        /** Opening and reading of the postings, and evaluation of a boolean plan. */
+        POSTINGS,
+        /**
+         * Scoring of the candidate documents; for the vector model, which reads the postings
+         * document by document, the postings read while scoring.
+         */
+        SCORING,
+        /** Ranking of the kept documents. */
+        RANKING,
+        /** Reading of the stored fields of the results. */
+        FETCH,
+        /** Whole evaluation of a query by an engine, tokenization excluded. */
+        SEARCH;
+
+        /** @return the name of the phase, lowercased */
+        public String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final SearchMetrics DEFAULT = new SearchMetrics();
+
+    /** Postings decoded by each thread. */
+    private static final ThreadLocal<Reads> READS = ThreadLocal.withInitial(Reads::new);
+
+    private final Map<Phase, LatencyHistogram> histograms = new EnumMap<>(Phase.class);
+
+    private final LongAdder queries = new LongAdder();
+
+    private final LongAdder candidates = new LongAdder();
+
+    private final LongAdder postings = new LongAdder();
+
+    private volatile boolean enabled = true;
+
+    /**
+     * Constructs empty metrics; the engines record into {@link #getDefault()}.
+     */
+    public SearchMetrics() {
+        for (Phase phase : Phase.values()) {
+            histograms.put(phase, new LatencyHistogram());
+        }
+    }
+
+    /** @return the metrics the engines record into */
+    public static SearchMetrics getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the counters of the current thread: the postings decoded by the
+     * {@link PostingsCursor} it creates, and its reads of the {@link ClauseCache}.
+     *
+     * @return the counters of the current thread
+     */
+    static Reads reads() {
+        return READS.get();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts timing the search of a query, its tokenization counted in {@link Phase#PARSE}. A
+     * profiled query is timed even while the metrics are disabled.
+     *
+     * @param requete the query searched
+     * @return the timer of the search, to be used by the searching thread only
+     */
+    public Timer start(Query requete) {
+        if (enabled) {
+            return new Timer(this, requete);
+        }
+        return requete.getProfile() != null ? new Timer(null, requete) : Timer.DISABLED;
+    }
+
+    /**
+     * Records the latency of a phase timed outside of a search, such as {@link Phase#FETCH}.
+     *
+     * @param phase the phase
+     * @param nanos its latency, in nanoseconds
+     */
+    public void record(Phase phase, long nanos) {
+        if (enabled) {
+            histograms.get(phase).record(nanos);
+        }
+    }
+
+    /**
+     * @param phase a phase
+     * @return the histogram of its latencies
+     */
+    public LatencyHistogram getHistogram(Phase phase) {
+        return histograms.get(phase);
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    @Override
+    public long getCandidatesScored() {
+        return candidates.sum();
+    }
+
+    @Override
+    public long getPostingsRead() {
+        return postings.sum();
+    }
+
+    @Override
+    public PhaseStats[] getPhases() {
+        PhaseStats[] stats = new PhaseStats[Phase.values().length];
+        for (Phase phase : Phase.values()) {
+            stats[phase.ordinal()] = new PhaseStats(phase.label(), histograms.get(phase));
+        }
+        return stats;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram h : histograms.values()) {
+            h.reset();
+        }
+        queries.reset();
+        candidates.reset();
+        postings.reset();
+    }
+
+    /**
+     * Writes the latencies of every phase and the counters as a text table.
+     */
+    @Override
+    public String dump() {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s %10s%n", "phase (µs)", "count", "mean", "p50", "p99", "p999", "max"));
+        for (PhaseStats p : getPhases()) {
+            s.append(String.format(Locale.ROOT, "%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f%n", p.getName(), p.getCount(),
+                    p.getMeanMicros(), p.getP50Micros(), p.getP99Micros(), p.getP999Micros(), p.getMaxMicros()));
+        }
+        long n = getQueries();
+        s.append(String.format(Locale.ROOT, "queries=%d candidatesScored=%d (%.1f/query) postingsRead=%d (%.1f/query)",
+                n, getCandidatesScored(), n == 0 ? 0.0 : (double) getCandidatesScored() / n,
+                getPostingsRead(), n == 0 ? 0.0 : (double) getPostingsRead() / n));
+        return s.toString();
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server, as {@value #OBJECT_NAME}; does nothing
+     * if they are already registered.
+     *
+     * @throws JMException if the MBean cannot be registered
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        }
+        catch (InstanceAlreadyExistsException e) {
+            // Already exposed
+        }
+    }
+
+    /**
+     * Counters of the reads of a thread; only read and written by this thread.
+     */
+    static final class Reads {
+
+        /** Number of postings decoded. */
+        long postings;
+
+        /** Number of boolean clauses read from a {@link ClauseCache}. */
+        long clauseHits;
+
+        /** Number of boolean clauses not found in a {@link ClauseCache}. */
+        long clauseMisses;
+    }
+
+    /**
+     * Latencies of a phase, in microseconds, at some point in time.
+     */
+    public static class PhaseStats {
+
+        private final String name;
+        private final long count;
+        private final double mean;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long max;
+
+        PhaseStats(String name, LatencyHistogram h) {
+            this.name = name;
+            this.count = h.getCount();
+            this.mean = h.getMean();
+            this.p50 = h.percentile(0.50);
+            this.p99 = h.percentile(0.99);
+            this.p999 = h.percentile(0.999);
+            this.max = h.getMax();
+        }
+
+        /** @return the name of the phase */
+        public String getName() {
+            return name;
+        }
+
+        /** @return the number of recorded latencies */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return the mean latency */
+        public double getMeanMicros() {
+            return mean / 1e3;
+        }
+
+        /** @return the median latency */
+        public double getP50Micros() {
+            return p50 / 1e3;
+        }
+
+        /** @return the 99th percentile of the latencies */
+        public double getP99Micros() {
+            return p99 / 1e3;
+        }
+
+        /** @return the 99.9th percentile of the latencies */
+        public double getP999Micros() {
+            return p999 / 1e3;
+        }
+
+        /** @return the highest latency */
+        public double getMaxMicros() {
+            return max / 1e3;
+        }
+    }
+
+    /**
+     * Timer of one search: the time between two laps is added to the phase of the second lap,
+     * and {@link #stop(int)} records every phase reached, into the metrics and into the
+     * {@link QueryProfile} of the query if it is profiled.
+     */
+    public static final class Timer {
+
+        /** Timer of the searches while the metrics are disabled and the query is not profiled. */
+        static final Timer DISABLED = new Timer(null, null);
+
+        /** The metrics recorded into, or {@code null} if they are disabled. */
+        private final SearchMetrics metrics;
+
+        /** The profile of the query, or {@code null}. */
+        private final QueryProfile profile;
+
+        /** Time spent in each phase, in nanoseconds; -1 for the phases not reached. */
+        private final long[] phases = new long[Phase.values().length];
+
+        private final long debut;
+
+        private long dernier;
+
+        /** Counters of the thread when the search started. */
+        private final long postings;
+        private final long clauseHits;
+        private final long clauseMisses;
+
+        private Timer(SearchMetrics metrics, Query requete) {
+            this.metrics = metrics;
+            this.profile = requete == null ? null : requete.getProfile();
+            Arrays.fill(phases, -1);
+            if (metrics == null && profile == null) {
+                this.debut = 0;
+                this.postings = 0;
+                this.clauseHits = 0;
+                this.clauseMisses = 0;
+                return;
+            }
+            if (requete.getParseNanos() > 0) {
+                phases[Phase.PARSE.ordinal()] = requete.getParseNanos();
+            }
+            Reads reads = reads();
+            this.postings = reads.postings;
+            this.clauseHits = reads.clauseHits;
+            this.clauseMisses = reads.clauseMisses;
+            this.debut = System.nanoTime();
+            this.dernier = debut;
+        }
+
+        /**
+         * Adds the time since the previous lap, or since the start, to a phase.
+         *
+         * @param phase the phase that just ended
+         */
+        public void lap(Phase phase) {
+            if (this == DISABLED) {
+                return;
+            }
+            long maintenant = System.nanoTime();
+            int i = phase.ordinal();
+            phases[i] = Math.max(phases[i], 0) + maintenant - dernier;
+            dernier = maintenant;
+        }
+
+        /**
+         * Ends the search, and records its phases and counters.
+         *
+         * @param candidats the number of documents scored
+         */
+        public void stop(int candidats) {
+            if (this == DISABLED) {
+                return;
+            }
+            phases[Phase.SEARCH.ordinal()] = System.nanoTime() - debut;
+            Reads reads = reads();
+            long lus = reads.postings - postings;
+
+            if (metrics != null) {
+                for (Phase phase : Phase.values()) {
+                    if (phases[phase.ordinal()] >= 0) {
+                        metrics.histograms.get(phase).record(phases[phase.ordinal()]);
+                    }
+                }
+                metrics.queries.increment();
+                metrics.candidates.add(candidats);
+                metrics.postings.add(lus);
+            }
+            if (profile != null) {
+                profile.setSearch(phases, lus, candidats, reads.clauseHits - clauseHits, reads.clauseMisses - clauseMisses);
+            }
+        }
+    }
+}
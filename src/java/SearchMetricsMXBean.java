@@ -0,0 +1,35 @@
+/**
+ * JMX view of the {@link SearchMetrics} of the query path.
+ */
+public interface SearchMetricsMXBean {
+
+    /** @return the number of queries searched by the engines */
+    long getQueries();
+
+    /** @return the number of documents scored */
+    long getCandidatesScored();
+
+    /** @return the number of postings decoded */
+    long getPostingsRead();
+
+    /** @return the latencies of each phase of the searches */
+    SearchMetrics.PhaseStats[] getPhases();
+
+    /** @return whether the searches are recorded */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables the recording; the recorded values are kept.
+     *
+     * @param enabled {@code false} to stop recording
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Forgets every recorded latency and counter.
+     */
+    void reset();
+
+    /** @return the latencies of every phase and the counters, as a text table */
+    String dump();
+}
@@ -0,0 +1,451 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local HTTP/JSON search server, built on the HTTP server of the JDK.
+ * <p>
+ * A search is a {@code GET /search?model=vector&k=10&q=pool+parking} request: {@code model} is
+ * {@code boolean}, {@code vector} or {@code probabilistic} (or their code, 1 to 3; boolean by
+ * default), {@code k} the number of documents returned ({@value #DEFAULT_K} by default). The
+ * response holds the number of matching documents and the ranked documents, with their ID,
+ * score, date, title and a snippet of their text around the first query term:
+ * <pre>
+ * {"model":"vector","query":"pool parking","totalHits":473,"totalHitsExact":false,
+ *  "results":[{"id":302,"score":1.0,"date":"…","title":"…","snippet":"…"}, …]}
+ * </pre>
+ * Invalid parameters or queries are answered with status 400 and an {@code error} message.
+ * {@code GET /explain}, with the same parameters, searches the query and answers with its
+ * {@link QueryProfile}: plan, postings of each term, documents scored, caches hit and time of
+ * each phase.
+ * <p>
+ * Each request is handled on its own virtual thread when the JDK provides them, on a pooled
+ * platform thread otherwise. The three engines are created once and shared by every request
+ * (see {@link SearchEngine}). At most {@code maxConcurrent} searches run at the same time:
+ * beyond, requests are answered at once with status 503 rather than queued. {@link #stop(int)}
+ * stops accepting connections and lets the running searches finish.
+ * <p>
+ * The server has no authentication: it listens on the loopback address unless another address
+ * is given, so that it is only reachable from the same machine.
+ * <p>
+ * With a {@link ResultCache}, the queries already searched are answered from it. {@code GET /stats}
+ * gives the {@link SearchMetrics} of the searches, with the latencies of each phase in
+ * microseconds, and the counters of the cache ({@code null} without a cache):
+ * <pre>
+ * {"search":{"queries":188,"candidatesScored":90412,"postingsRead":131870,
+ *  "phases":{"parse":{"count":188,"meanUs":12.4,"p50Us":8.1,"p99Us":61.2,"p999Us":75.3,"maxUs":75.3}, …}},
+ *  "cache":{"hits":812,"misses":188,"hitRate":0.812,"evictions":0,"invalidations":0,
+ *  "entries":188,"bytes":102400,"budget":67108864}}
+ * </pre>
+ */
+public class SearchServer {
+
+    /** Number of documents returned when {@code k} is not given. */
+    static final int DEFAULT_K = 10;
+
+    /** Highest number of documents a request can ask for. */
+    static final int MAX_K = 1000;
+
+    /** Default number of searches running at the same time. */
+    static final int DEFAULT_MAX_CONCURRENT = 64;
+
+    /** Number of characters of the text of a document shown in its snippet. */
+    static final int SNIPPET_LENGTH = 200;
+
+    private final HttpServer server;
+
+    /** Threads the requests are handled on. */
+    private final ExecutorService executor;
+
+    /** Permits of the searches running at the same time. */
+    private final Semaphore permis;
+
+    /** The engine of each model, shared by every request. */
+    private final Map<SearchType, SearchEngine> engines;
+
+    /** The index searched, to read the documents found. */
+    private final Index index;
+
+    /** The cache of the results, or {@code null}. */
+    private final ResultCache cache;
+
+    /**
+     * Constructs a server bound to a local port; it does not accept requests before
+     * {@link #start()}.
+     *
+     * @param index the index to search
+     * @param port the port to listen to, 0 for any free port
+     * @param maxConcurrent the number of searches running at the same time, at least 1
+     * @throws IOException if the port cannot be bound
+     */
+    public SearchServer(Index index, int port, int maxConcurrent) throws IOException {
+        this(index, port, maxConcurrent, null);
+    }
+
+    /**
+     * Constructs a server bound to a local port, answering from a cache the queries already
+     * searched; it does not accept requests before {@link #start()}.
+     *
+     * @param index the index to search
+     * @param port the port to listen to, 0 for any free port
+     * @param maxConcurrent the number of searches running at the same time, at least 1
+     * @param cache the cache of the results, or {@code null} for no cache
+     * @throws IOException if the port cannot be bound
+     */
+    public SearchServer(Index index, int port, int maxConcurrent, ResultCache cache) throws IOException {
+        this(index, port, maxConcurrent, cache, null);
+    }
+
+    /**
+     * Constructs a server bound to a local port, answering from a cache the queries already
+     * searched and logging the slow queries; it does not accept requests before {@link #start()}.
+     *
+     * @param index the index to search
+     * @param port the port to listen to, 0 for any free port
+     * @param maxConcurrent the number of searches running at the same time, at least 1
+     * @param cache the cache of the results, or {@code null} for no cache
+     * @param log the log of the slow queries, or {@code null} for no log
+     * @throws IOException if the port cannot be bound
+     */
+    public SearchServer(Index index, int port, int maxConcurrent, ResultCache cache, SlowQueryLog log) throws IOException {
+        this(index, InetAddress.getLoopbackAddress(), port, maxConcurrent, cache, log);
+    }
+
+    /**
+     * Constructs a server bound to a port of an address, answering from a cache the queries
+     * already searched and logging the slow queries; it does not accept requests before
+     * {@link #start()}.
+     *
+     * @param index the index to search
+     * @param address the address to listen on: the loopback address keeps the server local,
+     *        the wildcard address opens it to every network interface
+     * @param port the port to listen to, 0 for any free port
+     * @param maxConcurrent the number of searches running at the same time, at least 1
+     * @param cache the cache of the results, or {@code null} for no cache
+     * @param log the log of the slow queries, or {@code null} for no log
+     * @throws IOException if the port cannot be bound
+     */
+    public SearchServer(Index index, InetAddress address, int port, int maxConcurrent, ResultCache cache, SlowQueryLog log)
+            throws IOException {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("At least one concurrent search is required: " + maxConcurrent);
+        }
+        this.index = index;
+        this.cache = cache;
+        this.permis = new Semaphore(maxConcurrent);
+        this.engines = new EnumMap<>(SearchType.class);
+        for (SearchType type : SearchType.values()) {
+            engines.put(type, type.newEngine(index, cache, log));
+        }
+
+        this.executor = newExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.setExecutor(executor);
+        server.createContext("/search", exchange -> handleSearch(exchange, false));
+        server.createContext("/explain", exchange -> handleSearch(exchange, true));
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /** @return the port the server listens to */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server: no connection is accepted any more, and the requests being handled are
+     * given some time to finish.
+     *
+     * @param delai the number of seconds the running requests are waited for
+     */
+    public void stop(int delai) {
+        server.stop(delai);
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(delai, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns an executor running each task on a new virtual thread if the JDK has them
+     * (Java 21 and later), or a pool of platform threads otherwise.
+     */
+    private static ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Answers a search request, or a request for the profile of a search.
+     *
+     * @param explain {@code true} to answer with the {@link QueryProfile} of the search
+     */
+    private void handleSearch(HttpExchange exchange, boolean explain) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                send(exchange, 405, error("Method not allowed: " + exchange.getRequestMethod()));
+                return;
+            }
+            if (!permis.tryAcquire()) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, error("Too many concurrent searches"));
+                return;
+            }
+
+            try {
+                Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+                String texte = params.get("q");
+                if (texte == null || texte.isBlank()) {
+                    throw new IllegalArgumentException("Missing query parameter \"q\"");
+                }
+                SearchType type = params.containsKey("model") ? SearchType.fromName(params.get("model")) : SearchType.BOOLEAN;
+                int k = k(params.get("k"));
+
+                Query requete = new Query(texte);
+                if (explain) {
+                    StringBuilder json = new StringBuilder(1024);
+                    QueryProfile.explain(engines.get(type), type, index, requete, k).json(json);
+                    send(exchange, 200, json.toString());
+                }
+                else {
+                    TopDocs resultats = engines.get(type).search(requete, k);
+                    send(exchange, 200, json(type, texte, requete.getTermes(), resultats));
+                }
+            }
+            catch (IllegalArgumentException e) {
+                send(exchange, 400, error(e.getMessage()));
+            }
+            finally {
+                permis.release();
+            }
+        }
+    }
+
+    /**
+     * Answers a request for the metrics of the searches and the counters of the cache.
+     */
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                send(exchange, 405, error("Method not allowed: " + exchange.getRequestMethod()));
+                return;
+            }
+
+            StringBuilder json = new StringBuilder("{\"search\":");
+            metrics(json, SearchMetrics.getDefault());
+            json.append(",\"cache\":");
+            if (cache == null) {
+                json.append("null");
+            }
+            else {
+                ResultCache.Stats stats = cache.getStats();
+                json.append("{\"hits\":").append(stats.getHits());
+                json.append(",\"misses\":").append(stats.getMisses());
+                json.append(",\"hitRate\":").append(String.format(Locale.ROOT, "%.4f", stats.getHitRate()));
+                json.append(",\"evictions\":").append(stats.getEvictions());
+                json.append(",\"invalidations\":").append(stats.getInvalidations());
+                json.append(",\"entries\":").append(stats.getEntries());
+                json.append(",\"bytes\":").append(stats.getBytes());
+                json.append(",\"budget\":").append(stats.getBudget()).append('}');
+            }
+            send(exchange, 200, json.append('}').toString());
+        }
+    }
+
+    /**
+     * Appends the counters and the latencies of each phase of the searches, in microseconds.
+     */
+    private static void metrics(StringBuilder json, SearchMetrics metrics) {
+        json.append("{\"queries\":").append(metrics.getQueries());
+        json.append(",\"candidatesScored\":").append(metrics.getCandidatesScored());
+        json.append(",\"postingsRead\":").append(metrics.getPostingsRead());
+        json.append(",\"phases\":{");
+        SearchMetrics.PhaseStats[] phases = metrics.getPhases();
+        for (int i = 0; i < phases.length; i++) {
+            SearchMetrics.PhaseStats p = phases[i];
+            json.append(i == 0 ? "" : ",");
+            Json.string(json, p.getName());
+            json.append(String.format(Locale.ROOT, ":{\"count\":%d,\"meanUs\":%.1f,\"p50Us\":%.1f,\"p99Us\":%.1f,\"p999Us\":%.1f,\"maxUs\":%.1f}",
+                    p.getCount(), p.getMeanMicros(), p.getP50Micros(), p.getP99Micros(), p.getP999Micros(), p.getMaxMicros()));
+        }
+        json.append("}}");
+    }
+
+    /**
+     * Reads the number of documents asked for.
+     */
+    private static int k(String valeur) {
+        if (valeur == null) {
+            return DEFAULT_K;
+        }
+        try {
+            int k = Integer.parseInt(valeur);
+            if (k >= 1 && k <= MAX_K) {
+                return k;
+            }
+        }
+        catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Parameter \"k\" must be between 1 and " + MAX_K + ": " + valeur);
+    }
+
+    /**
+     * Decodes the parameters of the query string of a request.
+     *
+     * @param raw the encoded query string, or {@code null}
+     * @return the value of each parameter, the last one if a parameter is repeated
+     */
+    static Map<String, String> parameters(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null) {
+            return params;
+        }
+
+        for (String paire : raw.split("&")) {
+            if (paire.isEmpty()) {
+                continue;
+            }
+            int egal = paire.indexOf('=');
+            String nom = egal < 0 ? paire : paire.substring(0, egal);
+            String valeur = egal < 0 ? "" : paire.substring(egal + 1);
+            params.put(URLDecoder.decode(nom, StandardCharsets.UTF_8), URLDecoder.decode(valeur, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * Writes the JSON response of a search.
+     */
+    private String json(SearchType type, String texte, List<String> termes, TopDocs resultats) {
+        StringBuilder json = new StringBuilder(256 + 384 * resultats.getScoreDocs().size());
+        json.append("{\"model\":");
+        Json.string(json, type.name().toLowerCase(Locale.ROOT));
+        json.append(",\"query\":");
+        Json.string(json, texte);
+        json.append(",\"totalHits\":").append(resultats.getTotalHits());
+        json.append(",\"totalHitsExact\":").append(resultats.isTotalHitsExact());
+        json.append(",\"results\":[");
+
+        long debut = System.nanoTime();
+        Document[] docs = new Document[resultats.getScoreDocs().size()];
+        for (int i = 0; i < docs.length; i++) {
+            docs[i] = index.getDocument(resultats.getScoreDocs().get(i).getDocId());
+        }
+        SearchMetrics.getDefault().record(SearchMetrics.Phase.FETCH, System.nanoTime() - debut);
+
+        for (int i = 0; i < docs.length; i++) {
+            ScoredDoc sd = resultats.getScoreDocs().get(i);
+            Document doc = docs[i];
+            if (i > 0) {
+                json.append(',');
+            }
+
+            json.append("{\"id\":").append(sd.getDocId());
+            json.append(",\"score\":").append(Double.isFinite(sd.getScore()) ? sd.getScore() : 0.0);
+            json.append(",\"date\":");
+            Json.string(json, doc.getDate());
+            json.append(",\"title\":");
+            Json.string(json, doc.getTitle());
+            json.append(",\"snippet\":");
+            Json.string(json, snippet(doc.getText(), termes));
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    /**
+     * Returns an excerpt of a text around the first occurrence of a query term, cut at spaces.
+     *
+     * @param texte the text of a document
+     * @param termes the terms of the query, lowercased
+     * @return at most {@value #SNIPPET_LENGTH} characters of the text, with ellipses where it
+     *         is cut
+     */
+    static String snippet(String texte, List<String> termes) {
+        if (texte == null) {
+            return "";
+        }
+        if (texte.length() <= SNIPPET_LENGTH) {
+            return texte;
+        }
+
+        String minuscules = texte.toLowerCase(Locale.ROOT);
+        int premier = -1;
+        for (String terme : termes) {
+            int i = minuscules.indexOf(terme);
+            if (i >= 0 && (premier < 0 || i < premier)) {
+                premier = i;
+            }
+        }
+
+        // The first term a quarter into the excerpt
+        int debut = Math.max(0, Math.min(premier - SNIPPET_LENGTH / 4, texte.length() - SNIPPET_LENGTH));
+        int fin = debut + SNIPPET_LENGTH;
+        if (debut > 0) {
+            int espace = texte.indexOf(' ', debut);
+            if (espace >= 0 && espace < premier) {
+                debut = espace + 1;
+            }
+        }
+        if (fin < texte.length()) {
+            int espace = texte.lastIndexOf(' ', fin);
+            fin = espace > debut ? espace : fin;
+        }
+        return (debut > 0 ? "…" : "") + texte.substring(debut, fin) + (fin < texte.length() ? "…" : "");
+    }
+
+    /**
+     * Writes the JSON body of an error.
+     */
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        Json.string(json, message);
+        return json.append('}').toString();
+    }
+
+    /**
+     * Sends a JSON response.
+     */
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] corps = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, corps.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(corps);
+        }
+    }
+}
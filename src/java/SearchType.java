@@ -42,4 +42,66 @@ enum SearchType {
         }
         return result;
     }
+
+    /**
+     * Returns the SearchType with a given name, such as {@code "vector"}, or a given code.
+     *
+     * @param name the name of the search type, in any case, or its code
+     * @return the corresponding SearchType enum
+     * @throws IllegalArgumentException if no search type has this name or code
+     */
+    public static SearchType fromName(String name) {
+        for (SearchType type : values()) {
+            if (type.name().equalsIgnoreCase(name) || String.valueOf(type.code).equals(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown model: " + name);
+    }
+
+    /**
+     * Constructs a search engine of this type over an index.
+     *
+     * @param index the index to search
+     * @return the search engine
+     */
+    public SearchEngine newEngine(Index index) {
+        switch (this) {
+            case VECTOR:
+                return new VectorSearchEngine(index);
+            case PROBABILISTIC:
+                return new ProbabilisticSearchEngine(index);
+            case BOOLEAN:
+            default:
+                return new BooleanSearchEngine(index);
+        }
+    }
+
+    /**
+     * Constructs a search engine of this type over an index, answering from a cache the
+     * queries already searched.
+     *
+     * @param index the index to search
+     * @param cache the cache of the results, shared by the engines of every type, or
+     *        {@code null} for no cache
+     * @return the search engine
+     */
+    public SearchEngine newEngine(Index index, ResultCache cache) {
+        SearchEngine engine = newEngine(index);
+        return cache == null ? engine : new CachingSearchEngine(engine, this, cache);
+    }
+
+    /**
+     * Constructs a search engine of this type over an index, answering from a cache the
+     * queries already searched, and logging the slow queries with their profile.
+     *
+     * @param index the index to search
+     * @param cache the cache of the results, or {@code null} for no cache
+     * @param log the log of the slow queries, or {@code null} for no log
+     * @return the search engine
+     */
+    public SearchEngine newEngine(Index index, ResultCache cache, SlowQueryLog log) {
+        SearchEngine engine = newEngine(index, cache);
+        return log == null ? engine : new ProfilingSearchEngine(engine, this, index, log);
+    }
 }
@@ -0,0 +1,657 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * The {@code Segment} class represents an immutable on-disk piece of the index, written when the
+ * streaming indexer reaches its RAM budget. A segment is made of three files, {@code .voc},
+ * {@code .docs} and {@code .fwd}, and of a fourth one, {@code .pos}, when the positions of the
+ * terms are recorded:
+ * <ul>
+ *     <li>{@code <prefix>.voc}: the terms in sorted order, each followed by its postings
+ *     (document ID, occurrences, frequency) in ascending document order;</li>
+ *     <li>{@code <prefix>.docs}: the documents in ascending ID order, with their metadata
+ *     and text. Their per-term statistics are rebuilt from the postings;</li>
+ *     <li>{@code <prefix>.pos}: the positions of every posting of the {@code .voc} file, in the
+ *     same order, as many as its occurrences. A segment without this file has no positions;</li>
+ *     <li>{@code <prefix>.fwd}: the number of documents, then the terms of each document of the
+ *     {@code .docs} file, in the same order, with their occurrences and frequency. This forward
+ *     index lets {@link Index#save(Segment)} write the index files from the segment without
+ *     inverting its postings in memory. Segments written before it was introduced have none.</li>
+ * </ul>
+ * Segments cover disjoint, increasing ranges of document IDs, so a k-way merge on the terms
+ * only has to concatenate postings in segment order.
+ */
+public class Segment {
+
+    /** Marker written before each term or document record. */
+    private static final byte RECORD = 1;
+
+    /** Marker written after the last record of a file. */
+    private static final byte END = 0;
+
+    /** Size of the I/O buffers used to read and write segment files. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Common path prefix of the files of the segment. */
+    private final String prefix;
+
+    /**
+     * Constructs a handle on an existing segment.
+     *
+     * @param prefix the common path prefix of the {@code .voc}, {@code .docs}, {@code .fwd} and
+     *        optional {@code .pos} files
+     */
+    public Segment(String prefix) {
+        this.prefix = prefix;
+    }
+
+    /** @return the path of the vocabulary file of the segment */
+    public String getVocPath() {
+        return prefix + ".voc";
+    }
+
+    /** @return the path of the documents file of the segment */
+    public String getDocsPath() {
+        return prefix + ".docs";
+    }
+
+    /** @return the path of the positions file of the segment */
+    public String getPositionsPath() {
+        return prefix + ".pos";
+    }
+
+    /** @return the path of the forward index file of the segment */
+    public String getForwardPath() {
+        return prefix + ".fwd";
+    }
+
+    /** @return whether the segment holds the positions of its postings */
+    public boolean hasPositions() {
+        return new File(getPositionsPath()).exists();
+    }
+
+    /**
+     * Writes the content of an in-memory partial index as a new segment, with the positions of
+     * its postings if they all have some.
+     *
+     * @param partial the partial index to flush, whose document IDs are global
+     * @param prefix the common path prefix of the files to create
+     * @return the written segment
+     * @throws IOException if an I/O error occurs
+     */
+    public static Segment write(PartialIndex partial, String prefix) throws IOException {
+        Segment segment = new Segment(prefix);
+        new File(segment.getPositionsPath()).delete();
+
+        try (DataOutputStream out = openOutput(segment.getVocPath());
+                DataOutputStream positions = partial.hasPositions() ? openOutput(segment.getPositionsPath()) : null) {
+            for (Map.Entry<String, PartialIndex.Postings> e : partial.getPostings().entrySet()) {
+                PartialIndex.Postings p = e.getValue();
+
+                out.writeByte(RECORD);
+                writeString(out, e.getKey());
+                out.writeInt(p.size());
+
+                for (int i = 0; i < p.size(); i++) {
+                    out.writeInt(p.getDoc(i));
+                    out.writeInt(p.getOccurrence(i));
+                    out.writeDouble(p.getFrequence(i));
+                }
+
+                if (positions != null) {
+                    int[] pos = p.getPositions();
+                    int n = 0;
+                    for (int i = 0; i < p.size(); i++) {
+                        n += p.getOccurrence(i);
+                    }
+                    for (int i = 0; i < n; i++) {
+                        positions.writeInt(pos[i]);
+                    }
+                }
+            }
+            out.writeByte(END);
+        }
+
+        try (DataOutputStream out = openOutput(segment.getDocsPath())) {
+            for (Document doc : partial.getDocuments().values()) {
+                out.writeByte(RECORD);
+                writeDocument(out, doc);
+            }
+            out.writeByte(END);
+        }
+
+        writeForward(partial, segment.getForwardPath());
+        return segment;
+    }
+
+    /**
+     * Writes the forward index of a partial index: its postings, by document.
+     */
+    private static void writeForward(PartialIndex partial, String path) throws IOException {
+        int[] ids = new int[partial.size()];
+        int n = 0;
+        for (int id : partial.getDocuments().keySet()) {
+            ids[n++] = id;
+        }
+
+        // Postings counted, then placed by document, in the order of the terms
+        int[] debuts = new int[ids.length + 1];
+        for (PartialIndex.Postings p : partial.getPostings().values()) {
+            for (int i = 0; i < p.size(); i++) {
+                debuts[Arrays.binarySearch(ids, p.getDoc(i)) + 1]++;
+            }
+        }
+        for (int d = 0; d < ids.length; d++) {
+            debuts[d + 1] += debuts[d];
+        }
+
+        String[] termes = new String[debuts[ids.length]];
+        int[] occurrences = new int[termes.length];
+        double[] frequences = new double[termes.length];
+        int[] suivants = Arrays.copyOf(debuts, ids.length);
+        for (Map.Entry<String, PartialIndex.Postings> e : partial.getPostings().entrySet()) {
+            PartialIndex.Postings p = e.getValue();
+
+            for (int i = 0; i < p.size(); i++) {
+                int j = suivants[Arrays.binarySearch(ids, p.getDoc(i))]++;
+                termes[j] = e.getKey();
+                occurrences[j] = p.getOccurrence(i);
+                frequences[j] = p.getFrequence(i);
+            }
+        }
+
+        try (DataOutputStream out = openOutput(path)) {
+            out.writeInt(ids.length);
+            for (int d = 0; d < ids.length; d++) {
+                out.writeByte(RECORD);
+                out.writeInt(ids[d]);
+                out.writeInt(debuts[d + 1] - debuts[d]);
+
+                for (int j = debuts[d]; j < debuts[d + 1]; j++) {
+                    writeString(out, termes[j]);
+                    out.writeInt(occurrences[j]);
+                    out.writeDouble(frequences[j]);
+                }
+            }
+            out.writeByte(END);
+        }
+    }
+
+    /**
+     * Merges several segments into a single one with a k-way merge on their sorted terms.
+     * Only one term record per input segment is held in memory at a time.
+     * The input segments must be given in ascending order of document IDs. The merged segment
+     * holds the positions of the postings, and the forward index of the documents, if every input
+     * segment does.
+     *
+     * @param segments the segments to merge
+     * @param prefix the common path prefix of the merged segment files
+     * @return the merged segment
+     * @throws IOException if an I/O error occurs
+     */
+    public static Segment merge(List<Segment> segments, String prefix) throws IOException {
+        Segment merged = new Segment(prefix);
+        List<TermReader> readers = new ArrayList<>();
+        new File(merged.getPositionsPath()).delete();
+        new File(merged.getForwardPath()).delete();
+
+        boolean avecPositions = true;
+        boolean avecForward = true;
+        for (Segment segment : segments) {
+            avecPositions &= segment.hasPositions();
+            avecForward &= new File(segment.getForwardPath()).exists();
+        }
+
+        // Priority on the term, then on the segment order to keep postings sorted by document ID
+        PriorityQueue<TermReader> heap = new PriorityQueue<>((a, b) -> {
+            int result = a.term.compareTo(b.term);
+
+            if (result == 0) {
+                result = Integer.compare(a.rank, b.rank);
+            }
+            return result;
+        });
+
+        try (DataOutputStream out = openOutput(merged.getVocPath());
+                DataOutputStream positions = avecPositions ? openOutput(merged.getPositionsPath()) : null) {
+            for (int i = 0; i < segments.size(); i++) {
+                TermReader reader = new TermReader(segments.get(i), i);
+                readers.add(reader);
+
+                if (reader.next()) {
+                    heap.add(reader);
+                }
+            }
+
+            List<TermReader> courants = new ArrayList<>();
+
+            while (!heap.isEmpty()) {
+                String term = heap.peek().term;
+                int df = 0;
+
+                courants.clear();
+                while (!heap.isEmpty() && heap.peek().term.equals(term)) {
+                    TermReader reader = heap.poll();
+                    courants.add(reader);
+                    df += reader.df;
+                }
+
+                out.writeByte(RECORD);
+                writeString(out, term);
+                out.writeInt(df);
+
+                for (TermReader reader : courants) {
+                    reader.copyPostings(out, positions);
+
+                    if (reader.next()) {
+                        heap.add(reader);
+                    }
+                }
+            }
+            out.writeByte(END);
+        }
+        finally {
+            for (TermReader reader : readers) {
+                reader.close();
+            }
+        }
+
+        // Document ranges are disjoint and increasing: documents are simply concatenated
+        try (DataOutputStream out = openOutput(merged.getDocsPath())) {
+            for (Segment segment : segments) {
+                try (DataInputStream in = openInput(segment.getDocsPath())) {
+                    while (in.readByte() == RECORD) {
+                        out.writeByte(RECORD);
+                        writeDocument(out, readDocument(in));
+                    }
+                }
+            }
+            out.writeByte(END);
+        }
+
+        if (avecForward) {
+            mergeForward(segments, merged.getForwardPath());
+        }
+        return merged;
+    }
+
+    /**
+     * Concatenates the forward indexes of segments, like their documents.
+     */
+    private static void mergeForward(List<Segment> segments, String path) throws IOException {
+        int nbDocuments = 0;
+        for (Segment segment : segments) {
+            try (DataInputStream in = openInput(segment.getForwardPath())) {
+                nbDocuments += in.readInt();
+            }
+        }
+
+        try (DataOutputStream out = openOutput(path)) {
+            out.writeInt(nbDocuments);
+            for (Segment segment : segments) {
+                try (DataInputStream in = openInput(segment.getForwardPath())) {
+                    in.readInt();
+                    while (in.readByte() == RECORD) {
+                        out.writeByte(RECORD);
+                        out.writeInt(in.readInt());
+                        int n = in.readInt();
+                        out.writeInt(n);
+
+                        for (int j = 0; j < n; j++) {
+                            writeString(out, readString(in));
+                            out.writeInt(in.readInt());
+                            out.writeDouble(in.readDouble());
+                        }
+                    }
+                }
+            }
+            out.writeByte(END);
+        }
+    }
+
+    /**
+     * Reads the whole content of the segment into a partial index, with global document IDs.
+     *
+     * @return the partial index
+     * @throws IOException if an I/O error occurs
+     */
+    public PartialIndex read() throws IOException {
+        PartialIndex partial = new PartialIndex();
+
+        try (DataInputStream in = openInput(getDocsPath())) {
+            while (in.readByte() == RECORD) {
+                partial.addDocument(readDocument(in));
+            }
+        }
+
+        try (DataInputStream in = openInput(getVocPath());
+                DataInputStream positions = hasPositions() ? openInput(getPositionsPath()) : null) {
+            int[] pos = new int[8];
+
+            while (in.readByte() == RECORD) {
+                String term = readString(in);
+                int df = in.readInt();
+
+                for (int i = 0; i < df; i++) {
+                    int doc = in.readInt();
+                    int occurrence = in.readInt();
+                    double frequence = in.readDouble();
+
+                    if (positions == null) {
+                        partial.addPosting(term, doc, occurrence, frequence);
+                    }
+                    else {
+                        if (occurrence > pos.length) {
+                            pos = new int[Math.max(occurrence, 2 * pos.length)];
+                        }
+                        for (int j = 0; j < occurrence; j++) {
+                            pos[j] = positions.readInt();
+                        }
+                        partial.addPosting(term, doc, occurrence, frequence, pos);
+                    }
+                }
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * Opens a sequential reader over the terms of the segment, with their postings and positions.
+     *
+     * @return the reader, before the first term
+     * @throws IOException if the segment cannot be opened
+     */
+    TermReader terms() throws IOException {
+        return new TermReader(this, 0);
+    }
+
+    /**
+     * Opens a sequential reader over the documents of the segment, with their forward index.
+     *
+     * @return the reader, before the first document
+     * @throws IOException if the segment cannot be opened, or has no forward index
+     */
+    DocumentReader documents() throws IOException {
+        if (!new File(getForwardPath()).exists()) {
+            throw new FileNotFoundException("Segment without forward index: " + prefix);
+        }
+        return new DocumentReader(this);
+    }
+
+    /**
+     * Loads the whole content of the segment into an in-memory index, then computes the model
+     * weights of every term. Postings of terms already present in the index are added to the
+     * existing keywords. The positions of the segment are kept if the index is empty, or if it
+     * has positions too.
+     *
+     * @param index the index to fill
+     * @throws IOException if an I/O error occurs
+     */
+    public void loadInto(Index index) throws IOException {
+        PartialIndex partial = read();
+        if (partial.hasPositions() && index.getPositions() == null && index.getDocuments().isEmpty()) {
+            index.setPositions(new Positions());
+        }
+        partial.mergeInto(index, 0);
+        index.computeWeights();
+    }
+
+    /**
+     * Deletes the files of the segment.
+     */
+    public void delete() {
+        new File(getVocPath()).delete();
+        new File(getDocsPath()).delete();
+        new File(getPositionsPath()).delete();
+        new File(getForwardPath()).delete();
+    }
+
+    /**
+     * Sequential reader over the term records of a {@code .voc} file, and over the positions of
+     * their postings, used by the k-way merge and to write the index files from a segment.
+     */
+    static class TermReader implements Closeable {
+
+        /** Underlying input stream. */
+        private final DataInputStream in;
+
+        /** Input stream of the positions of the segment, or {@code null} if it has none. */
+        private final DataInputStream positions;
+
+        /** Position of the segment in the merge, used to break ties between equal terms. */
+        private final int rank;
+
+        /** Current term. */
+        private String term;
+
+        /** Document frequency of the current term in this segment. */
+        private int df;
+
+        TermReader(Segment segment, int rank) throws IOException {
+            this.in = openInput(segment.getVocPath());
+            this.positions = segment.hasPositions() ? openInput(segment.getPositionsPath()) : null;
+            this.rank = rank;
+        }
+
+        /**
+         * Moves to the next term record. The postings of the current term must have been consumed.
+         *
+         * @return {@code false} when the end of the file is reached
+         * @throws IOException if an I/O error occurs
+         */
+        boolean next() throws IOException {
+            if (in.readByte() != RECORD) {
+                return false;
+            }
+            term = readString(in);
+            df = in.readInt();
+            return true;
+        }
+
+        /** @return the current term */
+        String getTerm() {
+            return term;
+        }
+
+        /** @return the document frequency of the current term */
+        int getDf() {
+            return df;
+        }
+
+        /**
+         * Reads the postings of the current term into a keyword, and their positions.
+         *
+         * @param keyword the keyword to append the postings to
+         * @param termPositions the positions to append to, or {@code null} to skip them
+         * @throws IOException if an I/O error occurs
+         */
+        void readPostings(Keyword keyword, TermPositions termPositions) throws IOException {
+            int[] occurrences = new int[df];
+            for (int i = 0; i < df; i++) {
+                int doc = in.readInt();
+                occurrences[i] = in.readInt();
+                keyword.add(doc, occurrences[i], in.readDouble());
+            }
+
+            if (positions != null) {
+                int[] pos = new int[8];
+                for (int i = 0; i < df; i++) {
+                    if (occurrences[i] > pos.length) {
+                        pos = new int[Math.max(occurrences[i], 2 * pos.length)];
+                    }
+                    for (int j = 0; j < occurrences[i]; j++) {
+                        pos[j] = positions.readInt();
+                    }
+                    if (termPositions != null) {
+                        termPositions.add(pos, 0, occurrences[i]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Moves past the postings of the current term, and their positions.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        void skipPostings() throws IOException {
+            int nbPositions = 0;
+            for (int i = 0; i < df; i++) {
+                in.readInt();
+                nbPositions += in.readInt();
+                in.readDouble();
+            }
+            if (positions != null) {
+                positions.skipNBytes(4L * nbPositions);
+            }
+        }
+
+        /**
+         * Copies the postings of the current term to an output stream, and their positions.
+         *
+         * @param out the stream to write to
+         * @param outPositions the stream to write the positions to, or {@code null} to skip them
+         * @throws IOException if an I/O error occurs
+         */
+        void copyPostings(DataOutputStream out, DataOutputStream outPositions) throws IOException {
+            int nbPositions = 0;
+            for (int i = 0; i < df; i++) {
+                out.writeInt(in.readInt());
+                int occurrence = in.readInt();
+                out.writeInt(occurrence);
+                out.writeDouble(in.readDouble());
+                nbPositions += occurrence;
+            }
+
+            if (positions != null) {
+                for (int i = 0; i < nbPositions; i++) {
+                    int position = positions.readInt();
+                    if (outPositions != null) {
+                        outPositions.writeInt(position);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+            if (positions != null) {
+                positions.close();
+            }
+        }
+    }
+
+    /**
+     * Sequential reader over the documents of a {@code .docs} file and over their forward index,
+     * used to write the index files from a segment.
+     */
+    static class DocumentReader implements Closeable {
+
+        /** Input stream of the documents. */
+        private final DataInputStream docs;
+
+        /** Input stream of the forward index. */
+        private final DataInputStream forward;
+
+        /** Number of documents of the segment. */
+        private final int size;
+
+        DocumentReader(Segment segment) throws IOException {
+            this.docs = openInput(segment.getDocsPath());
+            this.forward = openInput(segment.getForwardPath());
+            this.size = forward.readInt();
+        }
+
+        /** @return the number of documents of the segment */
+        int size() {
+            return size;
+        }
+
+        /**
+         * Reads the next document, with its stored fields and its forward index.
+         *
+         * @param dictionary the dictionary giving the ID of the terms of the segment
+         * @return the document, or {@code null} when the end of the segment is reached
+         * @throws IOException if an I/O error occurs
+         */
+        Document next(TermDictionary dictionary) throws IOException {
+            if (docs.readByte() != RECORD) {
+                return null;
+            }
+            Document doc = readDocument(docs);
+
+            if (forward.readByte() != RECORD || forward.readInt() != doc.getId()) {
+                throw new IOException("Forward index out of step with the documents at document " + doc.getId());
+            }
+            int n = forward.readInt();
+            for (int j = 0; j < n; j++) {
+                int termId = dictionary.getId(readString(forward));
+                doc.add1Occur(termId, forward.readInt());
+                doc.add1Freq(termId, forward.readDouble());
+            }
+            doc.trim();
+            return doc;
+        }
+
+        @Override
+        public void close() throws IOException {
+            docs.close();
+            forward.close();
+        }
+    }
+
+    private static DataOutputStream openOutput(String path) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), BUFFER_SIZE));
+    }
+
+    private static DataInputStream openInput(String path) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(path), BUFFER_SIZE));
+    }
+
+    private static void writeDocument(DataOutputStream out, Document doc) throws IOException {
+        out.writeInt(doc.getId());
+        writeString(out, doc.getDate());
+        writeString(out, doc.getTitle());
+        writeString(out, doc.getText());
+    }
+
+    private static Document readDocument(DataInputStream in) throws IOException {
+        Document doc = new Document(in.readInt());
+        doc.setDate(readString(in));
+        doc.setTitle(readString(in));
+        doc.setText(readString(in));
+        return doc;
+    }
+
+    /**
+     * Writes a nullable string as its UTF-8 length followed by its bytes
+     * ({@code DataOutputStream.writeUTF} is limited to 64 KB).
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        }
+        else {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Log of the queries slower than a threshold, with their {@link QueryProfile}, one JSON object
+ * per line appended to a file:
+ * <pre>
+ * {"time":"2026-10-17T09:12:44.120Z","thresholdMs":50,"profile":{"model":"probabilistic",
+ *  "query":"room service","plan":"…","terms":[…],"postingsRead":16112,"docsScored":13941,
+ *  "totalUs":71234.5,"phasesUs":{…}}}
+ * </pre>
+ * The queries are profiled by a {@link ProfilingSearchEngine}. The log is thread-safe; each line
+ * is flushed as it is written.
+ */
+public class SlowQueryLog implements Closeable {
+
+    /** Threshold from which a query is logged, in nanoseconds. */
+    private final long seuil;
+
+    private final BufferedWriter out;
+
+    /** Number of queries logged. */
+    private long count;
+
+    /**
+     * Opens a log, appending to its file.
+     *
+     * @param fichier the file of the log, created if it does not exist
+     * @param seuilMillis the threshold from which a query is logged, in milliseconds
+     * @throws IOException if the file cannot be opened
+     */
+    public SlowQueryLog(Path fichier, long seuilMillis) throws IOException {
+        if (seuilMillis < 0) {
+            throw new IllegalArgumentException("The threshold must not be negative: " + seuilMillis);
+        }
+        this.seuil = seuilMillis * 1_000_000;
+        this.out = Files.newBufferedWriter(fichier, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /** @return the threshold from which a query is logged, in nanoseconds */
+    public long getThresholdNanos() {
+        return seuil;
+    }
+
+    /**
+     * Logs a query if it is slower than the threshold.
+     *
+     * @param profile the profile of its search
+     * @return {@code true} if it was logged
+     */
+    public boolean log(QueryProfile profile) {
+        if (profile.getTotalNanos() < seuil) {
+            return false;
+        }
+
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\"time\":");
+        Json.string(json, Instant.now().toString());
+        json.append(",\"thresholdMs\":").append(seuil / 1_000_000);
+        json.append(",\"profile\":");
+        profile.json(json);
+        json.append('}');
+
+        synchronized (this) {
+            try {
+                out.write(json.toString());
+                out.newLine();
+                out.flush();
+                count++;
+            }
+            catch (IOException e) {
+                System.err.println("Cannot write the slow query log: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    /** @return the number of queries logged */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
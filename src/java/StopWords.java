@@ -0,0 +1,125 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable set of stop words backed by an open-addressing hash table of {@code char[]}.
+ * Lookups take a slice of a character buffer, so a token can be tested in constant time
+ * without creating a {@code String} for it. Hashes are computed like {@link String#hashCode()},
+ * which lets the tokenizer compute them while it scans the token.
+ */
+public class StopWords {
+
+    /** Path to the default stop words file. */
+    static final String pathStopWords = "../resources/stopwords.txt";
+
+    /** Shared instance loaded from the default file. */
+    private static StopWords defaultInstance;
+
+    /** Hash table of the stop words, {@code null} for empty slots. */
+    private final char[][] table;
+
+    /** Hash of each slot of the table. */
+    private final int[] hashes;
+
+    /** Mask used to map a hash to a slot, the table length being a power of two. */
+    private final int mask;
+
+    /**
+     * Constructs a stop word set from a list of words.
+     *
+     * @param words the stop words, expected in lowercase
+     */
+    public StopWords(List<String> words) {
+        int capacity = Integer.highestOneBit(Math.max(4, words.size() * 4) - 1) << 1;
+        table = new char[capacity][];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+
+        for (String word : words) {
+            char[] chars = word.toCharArray();
+            int hash = word.hashCode();
+            int slot = mix(hash) & mask;
+
+            while (table[slot] != null && !equals(table[slot], chars, 0, chars.length)) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = chars;
+            hashes[slot] = hash;
+        }
+    }
+
+    /**
+     * Returns the stop words loaded from {@code stopwords.txt}, loading them on first use.
+     * If the file cannot be opened, prints an error message and returns an empty set.
+     *
+     * @return the shared stop word set
+     */
+    public static synchronized StopWords getDefault() {
+        if (defaultInstance == null) {
+            List<String> words = new ArrayList<>();
+
+            try (BufferedReader bf = new BufferedReader(new InputStreamReader(new FileInputStream(pathStopWords), StandardCharsets.UTF_8))) {
+                String ligne;
+                while ((ligne = bf.readLine()) != null) {
+                    if (!ligne.isBlank()) {
+                        words.add(ligne.trim().toLowerCase());
+                    }
+                }
+            }
+            catch (IOException e) {
+                System.out.println("Error opening stopwords file");
+            }
+            defaultInstance = new StopWords(words);
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Tests whether a word is a stop word.
+     *
+     * @param word the word, in lowercase
+     * @return {@code true} if the word is a stop word
+     */
+    public boolean contains(String word) {
+        return contains(word.toCharArray(), 0, word.length(), word.hashCode());
+    }
+
+    /**
+     * Tests whether a slice of a character buffer is a stop word.
+     *
+     * @param buffer the buffer holding the word, in lowercase
+     * @param offset the index of the first character of the word
+     * @param length the length of the word
+     * @param hash the hash of the word, as computed by {@link String#hashCode()}
+     * @return {@code true} if the word is a stop word
+     */
+    public boolean contains(char[] buffer, int offset, int length, int hash) {
+        int slot = mix(hash) & mask;
+
+        while (table[slot] != null) {
+            if (hashes[slot] == hash && equals(table[slot], buffer, offset, length)) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(char[] word, char[] buffer, int offset, int length) {
+        if (word.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word[i] != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
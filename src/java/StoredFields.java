@@ -0,0 +1,144 @@
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Stores the fields that are only needed to display a document (date, title and text) in a
+ * file of their own, so that they do not stay resident with the scoring data.
+ * <p>
+ * The file has the header and checksum footer of every index file (see {@link IndexOutput}).
+ * Each record is written as the three fields, each one as its UTF-8 length followed by its
+ * bytes (-1 for a missing field). A {@link Document} only keeps the offset of its record and
+ * reads it on demand with a positional read, which is safe from several threads. Since the
+ * file is only read partially, opening it checks the header but not the checksum.
+ */
+public class StoredFields implements Closeable {
+
+    /** Name of the content of the file, in its header. */
+    static final String CODEC = "stored";
+
+    /** Version of the format of the file. */
+    static final int VERSION = 1;
+
+    /** Index of the date in a record. */
+    static final int DATE = 0;
+
+    /** Index of the title in a record. */
+    static final int TITLE = 1;
+
+    /** Index of the text in a record. */
+    static final int TEXT = 2;
+
+    /** Channel of the stored fields file. */
+    private final FileChannel channel;
+
+    /**
+     * Opens a stored fields file for reading.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file cannot be opened
+     */
+    public StoredFields(String path) throws IOException {
+        try (IndexInput in = new IndexInput(path)) {
+            in.checkHeader(CODEC, VERSION);
+        }
+        channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Writes the stored fields of documents to a file, then points every document to its record
+     * in the new file and releases its in-memory fields. The file is written next to its final
+     * path and renamed once complete, so documents may still read their fields from the file
+     * being replaced while it is written.
+     *
+     * @param documents the documents, in the order of their records
+     * @param path the path of the file
+     * @return the new file, open for reading
+     * @throws IOException if an I/O error occurs
+     */
+    public static StoredFields write(Collection<Document> documents, String path) throws IOException {
+        File file = new File(path);
+        File temp = new File(path + ".tmp");
+        long[] offsets = new long[documents.size()];
+        int i = 0;
+
+        try (IndexOutput out = new IndexOutput(temp.toPath())) {
+            out.writeHeader(CODEC, VERSION);
+
+            for (Document doc : documents) {
+                offsets[i++] = out.getFilePointer();
+                writeRecord(out, doc);
+            }
+            out.writeFooter();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        StoredFields fields = new StoredFields(path);
+        i = 0;
+        for (Document doc : documents) {
+            doc.setStoredFields(fields, offsets[i++]);
+        }
+        return fields;
+    }
+
+    /**
+     * Writes the record of a document: its date, title and text.
+     *
+     * @param out the stored fields file, after its header
+     * @param doc the document, whose fields are still in memory
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeRecord(IndexOutput out, Document doc) throws IOException {
+        out.writeString(doc.getDate());
+        out.writeString(doc.getTitle());
+        out.writeString(doc.getText());
+    }
+
+    /**
+     * Reads the record at an offset.
+     *
+     * @param offset the offset of the record
+     * @return the date, title and text of the record, indexed by {@link #DATE}, {@link #TITLE}
+     *         and {@link #TEXT}
+     * @throws IOException if an I/O error occurs
+     */
+    public String[] read(long offset) throws IOException {
+        String[] record = new String[3];
+        ByteBuffer length = ByteBuffer.allocate(4);
+
+        for (int i = 0; i < record.length; i++) {
+            readFully(length.clear(), offset);
+            offset += 4;
+            int n = length.getInt(0);
+
+            if (n >= 0) {
+                ByteBuffer bytes = ByteBuffer.allocate(n);
+                readFully(bytes, offset);
+                offset += n;
+                record[i] = new String(bytes.array(), StandardCharsets.UTF_8);
+            }
+        }
+        return record;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Truncated stored fields record at " + position);
+            }
+        }
+    }
+}
@@ -0,0 +1,425 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * Compact dictionary mapping every term of the vocabulary to a dense integer ID.
+ * <p>
+ * Terms are kept sorted by their UTF-8 bytes in a front-coded block array: each block of
+ * {@value #BLOCK_SIZE} terms starts with a full term, and every following term only stores
+ * the length of the prefix it shares with the previous term and its remaining suffix.
+ * An exact lookup is a binary search on the first term of each block followed by a scan of
+ * at most one block; a range lookup returns the IDs of a contiguous run of sorted terms.
+ * <p>
+ * IDs are assigned in insertion order, not in sort order, so that adding terms never changes
+ * the ID of an existing term. A dictionary is immutable; {@link #withTerms(Collection)}
+ * builds a new one.
+ * <p>
+ * The encoded terms and the tables are held in buffers, so that a dictionary can be read in
+ * place from a memory-mapped index file (see {@link #map(ByteBuffer)}).
+ */
+public class TermDictionary {
+
+    /** Value returned by {@link #getId(String)} when the term is not in the dictionary. */
+    public static final int NOT_FOUND = -1;
+
+    /** Number of terms per front-coded block. */
+    private static final int BLOCK_SIZE = 16;
+
+    /** Front-coded terms: for each term, varint shared prefix length, varint suffix length, suffix bytes. */
+    private final ByteBuffer data;
+
+    /** Offset in {@link #data} of the first term of each block. */
+    private final IntBuffer blockOffsets;
+
+    /** ID of the term at each sorted position. */
+    private final IntBuffer ids;
+
+    /** Sorted position of the term of each ID. */
+    private final IntBuffer positions;
+
+    /**
+     * Constructs an empty dictionary.
+     */
+    public TermDictionary() {
+        this(new ArrayList<>(), new int[0]);
+    }
+
+    /**
+     * Builds a dictionary from terms sorted by UTF-8 bytes and their IDs.
+     *
+     * @param sorted the UTF-8 bytes of the terms, sorted and without duplicates
+     * @param sortedIds the ID of each term
+     */
+    private TermDictionary(List<byte[]> sorted, int[] sortedIds) {
+        int n = sorted.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] blocks = new int[(n + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        int[] sortedPositions = new int[n];
+
+        byte[] precedent = new byte[0];
+        for (int i = 0; i < n; i++) {
+            byte[] term = sorted.get(i);
+            int prefixe = 0;
+
+            if (i % BLOCK_SIZE == 0) {
+                blocks[i / BLOCK_SIZE] = out.size();
+            }
+            else {
+                int max = Math.min(precedent.length, term.length);
+                while (prefixe < max && precedent[prefixe] == term[prefixe]) {
+                    prefixe++;
+                }
+            }
+
+            writeVarint(out, prefixe);
+            writeVarint(out, term.length - prefixe);
+            out.write(term, prefixe, term.length - prefixe);
+
+            sortedPositions[sortedIds[i]] = i;
+            precedent = term;
+        }
+        data = ByteBuffer.wrap(out.toByteArray());
+        blockOffsets = IntBuffer.wrap(blocks);
+        ids = IntBuffer.wrap(sortedIds);
+        positions = IntBuffer.wrap(sortedPositions);
+    }
+
+    /**
+     * Builds a dictionary over its encoded buffers.
+     */
+    private TermDictionary(ByteBuffer data, IntBuffer blockOffsets, IntBuffer ids, IntBuffer positions) {
+        this.data = data;
+        this.blockOffsets = blockOffsets;
+        this.ids = ids;
+        this.positions = positions;
+    }
+
+    /**
+     * Writes the dictionary section of an index file: the encoded terms, then the block
+     * offsets, the IDs and the positions tables, each preceded by its length.
+     *
+     * @param out the file to write to
+     * @throws IOException if an I/O error occurs
+     */
+    void write(IndexOutput out) throws IOException {
+        byte[] bytes = new byte[data.limit()];
+        data.get(0, bytes);
+        out.writeInt(bytes.length);
+        out.writeBytes(bytes, 0, bytes.length);
+
+        for (IntBuffer table : new IntBuffer[] {blockOffsets, ids, positions}) {
+            int[] values = new int[table.limit()];
+            table.get(0, values);
+            out.writeInt(values.length);
+            out.writeInts(values, values.length);
+        }
+    }
+
+    /**
+     * Reads the dictionary section of an index file into memory.
+     *
+     * @param in the file to read from
+     * @return the dictionary
+     * @throws IOException if an I/O error occurs
+     */
+    static TermDictionary read(IndexInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readBytes(bytes, 0, bytes.length);
+        IntBuffer blocks = IntBuffer.wrap(in.readInts(in.readInt()));
+        IntBuffer termIds = IntBuffer.wrap(in.readInts(in.readInt()));
+        IntBuffer termPositions = IntBuffer.wrap(in.readInts(in.readInt()));
+        return new TermDictionary(ByteBuffer.wrap(bytes), blocks, termIds, termPositions);
+    }
+
+    /**
+     * Opens the dictionary section of a memory-mapped index file in place: nothing is copied,
+     * lookups read the mapped bytes.
+     *
+     * @param buffer the mapped file, positioned at the start of the section; its position is
+     *               moved past the section
+     * @return the dictionary
+     */
+    static TermDictionary map(ByteBuffer buffer) {
+        ByteBuffer bytes = slice(buffer, buffer.getInt());
+        IntBuffer blocks = slice(buffer, 4 * buffer.getInt()).asIntBuffer();
+        IntBuffer termIds = slice(buffer, 4 * buffer.getInt()).asIntBuffer();
+        IntBuffer termPositions = slice(buffer, 4 * buffer.getInt()).asIntBuffer();
+        return new TermDictionary(bytes, blocks, termIds, termPositions);
+    }
+
+    /**
+     * Returns the next {@code length} bytes of a buffer as a new buffer, and skips them.
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        ByteBuffer slice = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /** @return the number of terms in the dictionary */
+    public int size() {
+        return ids.limit();
+    }
+
+    /**
+     * Returns the ID of a term.
+     *
+     * @param term the term to look up
+     * @return the ID of the term, or {@link #NOT_FOUND}
+     */
+    public int getId(String term) {
+        int position = find(term.getBytes(StandardCharsets.UTF_8));
+        return position >= 0 ? ids.get(position) : NOT_FOUND;
+    }
+
+    /**
+     * Returns the term of an ID.
+     *
+     * @param id the term ID
+     * @return the term
+     */
+    public String getTerm(int id) {
+        int position = positions.get(id);
+        byte[] term = new byte[16];
+        int[] cursor = {blockOffsets.get(position / BLOCK_SIZE)};
+        int length = 0;
+
+        for (int i = position - position % BLOCK_SIZE; i <= position; i++) {
+            int prefixe = readVarint(cursor);
+            int suffixe = readVarint(cursor);
+
+            if (prefixe + suffixe > term.length) {
+                term = Arrays.copyOf(term, Math.max(prefixe + suffixe, term.length * 2));
+            }
+            data.get(cursor[0], term, prefixe, suffixe);
+            cursor[0] += suffixe;
+            length = prefixe + suffixe;
+        }
+        return new String(term, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the IDs of the terms greater than or equal to {@code from} and strictly lower
+     * than {@code to}, in term order.
+     *
+     * @param from the lower bound, inclusive
+     * @param to the upper bound, exclusive
+     * @return the IDs of the terms in the range
+     */
+    public int[] getIdsInRange(String from, String to) {
+        int debut = lowerBound(from.getBytes(StandardCharsets.UTF_8));
+        int fin = lowerBound(to.getBytes(StandardCharsets.UTF_8));
+        return idsBetween(debut, fin);
+    }
+
+    /**
+     * Returns the IDs of the terms starting with a prefix, in term order.
+     *
+     * @param prefix the prefix
+     * @return the IDs of the matching terms
+     */
+    public int[] getIdsWithPrefix(String prefix) {
+        byte[] debut = prefix.getBytes(StandardCharsets.UTF_8);
+        int from = lowerBound(debut);
+        int to = from;
+
+        while (to < size() && startsWith(termBytes(to), debut)) {
+            to++;
+        }
+        return idsBetween(from, to);
+    }
+
+    /**
+     * Returns a dictionary containing the terms of this one plus new terms.
+     * Existing terms keep their ID; new terms get the next free IDs, in the given order.
+     *
+     * @param nouveaux the terms to add; terms already present are ignored
+     * @return the new dictionary
+     */
+    public TermDictionary withTerms(Collection<String> nouveaux) {
+        List<byte[]> termes = decodeAll();
+        List<Integer> termIds = new ArrayList<>(size() + nouveaux.size());
+
+        for (int i = 0; i < size(); i++) {
+            termIds.add(ids.get(i));
+        }
+
+        int next = size();
+        for (String term : new LinkedHashSet<>(nouveaux)) {
+            if (getId(term) == NOT_FOUND) {
+                termes.add(term.getBytes(StandardCharsets.UTF_8));
+                termIds.add(next++);
+            }
+        }
+
+        Integer[] ordre = new Integer[termes.size()];
+        for (int i = 0; i < ordre.length; i++) {
+            ordre[i] = i;
+        }
+        Arrays.sort(ordre, (a, b) -> Arrays.compareUnsigned(termes.get(a), termes.get(b)));
+
+        List<byte[]> sorted = new ArrayList<>(ordre.length);
+        int[] sortedIds = new int[ordre.length];
+        for (int i = 0; i < ordre.length; i++) {
+            sorted.add(termes.get(ordre[i]));
+            sortedIds[i] = termIds.get(ordre[i]);
+        }
+        return new TermDictionary(sorted, sortedIds);
+    }
+
+    /**
+     * Finds the sorted position of a term.
+     *
+     * @return the position, or -1 if the term is absent
+     */
+    private int find(byte[] term) {
+        int position = search(term);
+        return position >= 0 ? position : -1;
+    }
+
+    /**
+     * Returns the sorted position of the first term greater than or equal to {@code term}.
+     */
+    private int lowerBound(byte[] term) {
+        int position = search(term);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Searches the sorted position of a term: a binary search on the first term of each
+     * block, then a scan of the block.
+     *
+     * @return the position of the term if it is present, otherwise {@code (-(insertion point) - 1)}
+     */
+    private int search(byte[] term) {
+        if (size() == 0) {
+            return -1;
+        }
+
+        // Last block whose first term is lower than or equal to the term
+        int lo = 0;
+        int hi = blockOffsets.limit() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (compareAt(blockOffsets.get(mid), term) <= 0) {
+                lo = mid;
+            }
+            else {
+                hi = mid - 1;
+            }
+        }
+
+        int position = lo * BLOCK_SIZE;
+        int fin = Math.min(position + BLOCK_SIZE, size());
+        int[] cursor = {blockOffsets.get(lo)};
+        byte[] courant = new byte[Math.max(16, term.length)];
+
+        for (; position < fin; position++) {
+            int prefixe = readVarint(cursor);
+            int suffixe = readVarint(cursor);
+
+            if (prefixe + suffixe > courant.length) {
+                courant = Arrays.copyOf(courant, Math.max(prefixe + suffixe, courant.length * 2));
+            }
+            data.get(cursor[0], courant, prefixe, suffixe);
+            cursor[0] += suffixe;
+
+            int cmp = Arrays.compareUnsigned(courant, 0, prefixe + suffixe, term, 0, term.length);
+            if (cmp == 0) {
+                return position;
+            }
+            if (cmp > 0) {
+                return -position - 1;
+            }
+        }
+        return -position - 1;
+    }
+
+    /**
+     * Decodes the UTF-8 bytes of every term, in sorted order.
+     */
+    private List<byte[]> decodeAll() {
+        List<byte[]> termes = new ArrayList<>(size());
+        int[] cursor = {0};
+        byte[] precedent = new byte[0];
+
+        for (int i = 0; i < size(); i++) {
+            int prefixe = readVarint(cursor);
+            int suffixe = readVarint(cursor);
+            byte[] term = new byte[prefixe + suffixe];
+
+            System.arraycopy(precedent, 0, term, 0, prefixe);
+            data.get(cursor[0], term, prefixe, suffixe);
+            cursor[0] += suffixe;
+            termes.add(term);
+            precedent = term;
+        }
+        return termes;
+    }
+
+    /**
+     * Compares the full term stored at the start of a block with a term.
+     */
+    private int compareAt(int offset, byte[] term) {
+        int[] cursor = {offset};
+        readVarint(cursor);
+        int length = readVarint(cursor);
+
+        for (int i = 0; i < Math.min(length, term.length); i++) {
+            int cmp = Byte.compareUnsigned(data.get(cursor[0] + i), term[i]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, term.length);
+    }
+
+    /**
+     * Decodes the UTF-8 bytes of the term at a sorted position.
+     */
+    private byte[] termBytes(int position) {
+        return getTerm(ids.get(position)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the IDs of the terms between two sorted positions.
+     */
+    private int[] idsBetween(int from, int to) {
+        int[] range = new int[Math.max(0, to - from)];
+        ids.get(from, range);
+        return range;
+    }
+
+    private static boolean startsWith(byte[] term, byte[] prefix) {
+        return term.length >= prefix.length && Arrays.equals(term, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private int readVarint(int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+            b = data.get(cursor[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
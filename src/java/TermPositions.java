@@ -0,0 +1,169 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Positions of a term in the documents of its postings: the positional stream of a
+ * {@link Keyword}, kept apart from it so that an index can be built, saved and searched without
+ * positions (see {@link Positions}).
+ * <p>
+ * The positions of a posting are stored in the order of the postings of the keyword, as
+ * variable-length deltas from the previous position in the document, the first one from 0.
+ * Their number is not stored: it is the number of occurrences of the posting, read from the
+ * keyword. The offset of the positions of every {@value #SKIP_INTERVAL}-th posting is kept in a
+ * skip entry: a {@link PositionsCursor} following a {@link PostingsCursor} that skipped postings
+ * jumps to the block of the posting, then only counts the bytes ending a delta up to it, without
+ * decoding.
+ */
+public class TermPositions {
+
+    /** Number of postings between two skip entries. */
+    static final int SKIP_INTERVAL = 16;
+
+    /** Number of postings whose positions were appended. */
+    private int size;
+
+    /** Positions encoded as variable-length deltas. */
+    byte[] data;
+
+    /** Number of bytes used in {@link #data}. */
+    private int length;
+
+    /** Offset in {@link #data} of the positions of every {@value #SKIP_INTERVAL}-th posting. */
+    int[] skipOffsets;
+
+    /**
+     * Constructs the positions of a term without any posting.
+     */
+    public TermPositions() {
+        data = new byte[8];
+        skipOffsets = new int[1];
+    }
+
+    /**
+     * Appends the positions of the next posting of the keyword.
+     *
+     * @param positions the positions of the term in the document, in ascending order
+     * @param from the index in {@code positions} of the first position
+     * @param count the number of positions, which is the number of occurrences of the posting
+     */
+    public void add(int[] positions, int from, int count) {
+        if (size % SKIP_INTERVAL == 0) {
+            int skip = size / SKIP_INTERVAL;
+
+            if (skip == skipOffsets.length) {
+                skipOffsets = Arrays.copyOf(skipOffsets, Math.max(1, skip * 2));
+            }
+            skipOffsets[skip] = length;
+        }
+
+        if (length + 5L * count > data.length) {
+            data = Arrays.copyOf(data, (int) Math.max(data.length * 2L, length + 5L * count));
+        }
+
+        int precedente = 0;
+        for (int i = from; i < from + count; i++) {
+            int delta = positions[i] - precedente;
+            while ((delta & ~0x7F) != 0) {
+                data[length++] = (byte) ((delta & 0x7F) | 0x80);
+                delta >>>= 7;
+            }
+            data[length++] = (byte) delta;
+            precedente = positions[i];
+        }
+        size++;
+    }
+
+    /**
+     * Removes the positions of the postings of a set of documents. The positions are rebuilt,
+     * following the postings of the keyword, which must not have been removed from it yet.
+     *
+     * @param keyword the keyword of the term, still holding the postings of the documents
+     * @param idDocs the IDs of the documents
+     */
+    public void remove(Keyword keyword, RoaringDocIdSet idDocs) {
+        TermPositions copie = new TermPositions();
+        PostingsCursor c = keyword.cursor();
+        PositionsCursor lecteur = cursor(keyword);
+        int[] positions = new int[8];
+
+        while (c.nextDoc() != PostingsCursor.NO_MORE_DOCS) {
+            if (!idDocs.contains(c.docID())) {
+                int n = lecteur.read(c.index());
+                if (n > positions.length) {
+                    positions = new int[Math.max(n, 2 * positions.length)];
+                }
+                for (int i = 0; i < n; i++) {
+                    positions[i] = lecteur.position(i);
+                }
+                copie.add(positions, 0, n);
+            }
+        }
+
+        if (copie.size != size) {
+            copie.trim();
+            size = copie.size;
+            data = copie.data;
+            length = copie.length;
+            skipOffsets = copie.skipOffsets;
+        }
+    }
+
+    /**
+     * Shrinks the internal arrays to their used size, once the positions are complete.
+     */
+    public void trim() {
+        data = Arrays.copyOf(data, length);
+        skipOffsets = Arrays.copyOf(skipOffsets, (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL);
+    }
+
+    /**
+     * Writes the positions to an index file.
+     *
+     * @param out the file to write to
+     * @throws IOException if an I/O error occurs
+     */
+    void write(IndexOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeInt(length);
+        out.writeBytes(data, 0, length);
+        out.writeInts(skipOffsets, (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL);
+    }
+
+    /**
+     * Reads the positions written by {@link #write(IndexOutput)}.
+     *
+     * @param in the file to read from
+     * @return the positions of the term
+     * @throws IOException if an I/O error occurs
+     */
+    static TermPositions read(IndexInput in) throws IOException {
+        TermPositions p = new TermPositions();
+        p.size = in.readInt();
+        p.length = in.readInt();
+        p.data = new byte[p.length];
+        in.readBytes(p.data, 0, p.length);
+        p.skipOffsets = in.readInts((p.size + SKIP_INTERVAL - 1) / SKIP_INTERVAL);
+        return p;
+    }
+
+    /**
+     * Returns a new cursor over the positions, reading the number of positions of each posting
+     * from the keyword of the term.
+     *
+     * @param keyword the keyword of the term, whose postings the positions follow
+     * @return the cursor
+     */
+    public PositionsCursor cursor(Keyword keyword) {
+        return new PositionsCursor(this, keyword);
+    }
+
+    /** @return the number of postings whose positions are stored */
+    public int size() {
+        return size;
+    }
+
+    /** @return the size of the encoded positions and of their skip entries, in bytes */
+    public long sizeInBytes() {
+        return length + 4L * ((size + SKIP_INTERVAL - 1) / SKIP_INTERVAL);
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Model weights of every term, computed once when the index is built and saved with it, so that
+ * the search engines do not recompute them over the whole corpus when they start.
+ * <p>
+ * For each term ID it keeps the document frequency {@code df}, the IDF of the vector model,
+ * {@code ln(N / (df + 1)) + 1}, and the term weight of the binary independence model (BIR),
+ * {@code ln(pi (1 - qi) / ((1 - pi) qi))} with {@code qi = df / N}. The TF-IDF impact of a
+ * posting is its frequency multiplied by the IDF of the term: it is not stored per posting,
+ * since adding documents changes {@code N} and therefore every impact.
+ * <p>
+ * Both weights only depend on {@code df} and {@code N}: after an incremental update, the
+ * document frequency of the modified terms is read again, then the weights of every term are
+ * recomputed from the table, without reading any posting.
+ */
+public class TermWeights {
+
+    /** Probability that a term occurs in a relevant document, in the BIR model. */
+    static final double PI = 0.1;
+
+    /** Number of documents of the index. */
+    private final int nbDocuments;
+
+    /** Document frequency of each term. */
+    private final IntBuffer df;
+
+    /** IDF of each term. */
+    private final FloatBuffer idf;
+
+    /** BIR weight of each term. */
+    private final FloatBuffer bir;
+
+    private TermWeights(int nbDocuments, IntBuffer df, FloatBuffer idf, FloatBuffer bir) {
+        this.nbDocuments = nbDocuments;
+        this.df = df;
+        this.idf = idf;
+        this.bir = bir;
+    }
+
+    /**
+     * Computes the weights of every term, in parallel.
+     *
+     * @param keywords the keywords, indexed by term ID
+     * @param nbDocuments the number of documents of the index
+     * @return the weights
+     */
+    public static TermWeights compute(List<Keyword> keywords, int nbDocuments) {
+        int[] frequences = new int[keywords.size()];
+        IntStream.range(0, frequences.length).parallel().forEach(t -> frequences[t] = keywords.get(t).size());
+        return fromDf(frequences, nbDocuments);
+    }
+
+    /**
+     * Returns the weights after documents were added or removed: the document frequency of the
+     * modified terms, and of the terms added since, is read from their keywords, then every
+     * weight is recomputed from the document frequencies.
+     *
+     * @param keywords the keywords, indexed by term ID
+     * @param modified the IDs of the terms whose postings changed
+     * @param nbDocuments the new number of documents of the index
+     * @return the new weights
+     */
+    public TermWeights update(List<Keyword> keywords, Collection<Integer> modified, int nbDocuments) {
+        int[] frequences = new int[keywords.size()];
+        int anciens = df.limit();
+
+        df.get(0, frequences, 0, anciens);
+        for (int t = anciens; t < frequences.length; t++) {
+            frequences[t] = keywords.get(t).size();
+        }
+        for (int t : modified) {
+            frequences[t] = keywords.get(t).size();
+        }
+        return fromDf(frequences, nbDocuments);
+    }
+
+    /**
+     * Computes the weights of every term from the document frequencies.
+     *
+     * @param frequences the document frequency of each term, by term ID
+     * @param nbDocuments the number of documents of the index
+     * @return the weights
+     */
+    static TermWeights fromDf(int[] frequences, int nbDocuments) {
+        float[] idfs = new float[frequences.length];
+        float[] birs = new float[frequences.length];
+
+        IntStream.range(0, frequences.length).parallel().forEach(t -> {
+            idfs[t] = (float) (Math.log((double) nbDocuments / (frequences[t] + 1)) + 1.0);
+
+            double qi = (double) frequences[t] / nbDocuments;
+            birs[t] = (float) Math.log((PI * (1 - qi)) / ((1 - PI) * qi));
+        });
+        return new TermWeights(nbDocuments, IntBuffer.wrap(frequences), FloatBuffer.wrap(idfs), FloatBuffer.wrap(birs));
+    }
+
+    /** @return the number of documents the weights were computed for */
+    public int getNbDocuments() {
+        return nbDocuments;
+    }
+
+    /**
+     * @param termId the term ID
+     * @return the number of documents containing the term
+     */
+    public int getDf(int termId) {
+        return df.get(termId);
+    }
+
+    /**
+     * @param termId the term ID
+     * @return the IDF of the term
+     */
+    public float getIdf(int termId) {
+        return idf.get(termId);
+    }
+
+    /**
+     * @param termId the term ID
+     * @return the BIR weight of the term
+     */
+    public float getBir(int termId) {
+        return bir.get(termId);
+    }
+
+    /**
+     * Writes the weights section of an index file.
+     *
+     * @param out the file to write to
+     * @throws IOException if an I/O error occurs
+     */
+    void write(IndexOutput out) throws IOException {
+        int n = df.limit();
+        int[] frequences = new int[n];
+        float[] idfs = new float[n];
+        float[] birs = new float[n];
+
+        df.get(0, frequences);
+        idf.get(0, idfs);
+        bir.get(0, birs);
+
+        out.writeInt(nbDocuments);
+        out.writeInt(n);
+        out.writeInts(frequences, n);
+        out.writeFloats(idfs, n);
+        out.writeFloats(birs, n);
+    }
+
+    /**
+     * Reads the weights section of an index file into memory.
+     *
+     * @param in the file to read from
+     * @return the weights
+     * @throws IOException if an I/O error occurs
+     */
+    static TermWeights read(IndexInput in) throws IOException {
+        int nbDocuments = in.readInt();
+        int n = in.readInt();
+        IntBuffer frequences = IntBuffer.wrap(in.readInts(n));
+        FloatBuffer idfs = FloatBuffer.wrap(in.readFloats(n));
+        FloatBuffer birs = FloatBuffer.wrap(in.readFloats(n));
+        return new TermWeights(nbDocuments, frequences, idfs, birs);
+    }
+
+    /**
+     * Opens the weights section of a memory-mapped index file in place.
+     *
+     * @param buffer the mapped file, positioned at the start of the section; its position is
+     *               moved past the section
+     * @return the weights
+     */
+    static TermWeights map(ByteBuffer buffer) {
+        int nbDocuments = buffer.getInt();
+        int n = buffer.getInt();
+        int debut = buffer.position();
+
+        IntBuffer frequences = buffer.slice(debut, 4 * n).asIntBuffer();
+        FloatBuffer idfs = buffer.slice(debut + 4 * n, 4 * n).asFloatBuffer();
+        FloatBuffer birs = buffer.slice(debut + 8 * n, 4 * n).asFloatBuffer();
+        buffer.position(debut + 12 * n);
+        return new TermWeights(nbDocuments, frequences, idfs, birs);
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tokenizer shared by the indexation and the queries.
+ * <p>
+ * A token is a run of letters, digits and apostrophes; every other character is a separator,
+ * and apostrophes at the ends of a token are dropped. The text is scanned once: each character
+ * is lowercased into a small reusable buffer while the hash of the token is computed, so a stop
+ * word is rejected without creating any {@code String}. Only emitted terms are allocated.
+ * <p>
+ * Instances are immutable and may be shared between threads.
+ */
+public class Tokenizer {
+
+    /** Shared tokenizer using the default stop words. */
+    private static Tokenizer defaultInstance;
+
+    /**
+     * Receives the terms emitted by the tokenizer.
+     */
+    @FunctionalInterface
+    public interface TermConsumer {
+        /**
+         * Called for each emitted term, in text order.
+         *
+         * @param term the lowercased term
+         */
+        void accept(String term);
+    }
+
+    /**
+     * Receives the terms emitted by the tokenizer with their position.
+     */
+    @FunctionalInterface
+    public interface PositionConsumer {
+        /**
+         * Called for each emitted term, in text order.
+         *
+         * @param term the lowercased term
+         * @param position the number of tokens before the term, stop words included
+         */
+        void accept(String term, int position);
+    }
+
+    /** Stop words to skip, or {@code null} to keep every token. */
+    private final StopWords stopWords;
+
+    /**
+     * Constructs a tokenizer.
+     *
+     * @param stopWords the stop words to skip, or {@code null} to keep every token
+     */
+    public Tokenizer(StopWords stopWords) {
+        this.stopWords = stopWords;
+    }
+
+    /**
+     * Returns a tokenizer skipping the default stop words.
+     *
+     * @return the shared tokenizer
+     */
+    public static synchronized Tokenizer getDefault() {
+        if (defaultInstance == null) {
+            defaultInstance = new Tokenizer(StopWords.getDefault());
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Tokenizes a text into a list of terms.
+     *
+     * @param text the text to tokenize
+     * @return the terms, in text order
+     */
+    public List<String> tokenize(CharSequence text) {
+        List<String> termes = new ArrayList<>();
+        tokenize(text, termes::add);
+        return termes;
+    }
+
+    /**
+     * Tokenizes a text and sends every term to a consumer.
+     *
+     * @param text the text to tokenize
+     * @param consumer the consumer of the terms
+     */
+    public void tokenize(CharSequence text, TermConsumer consumer) {
+        tokenizeWithPositions(text, (term, position) -> consumer.accept(term));
+    }
+
+    /**
+     * Tokenizes a text and sends every term to a consumer, with its position.
+     *
+     * @param text the text to tokenize
+     * @param consumer the consumer of the terms and their positions
+     */
+    public void tokenizeWithPositions(CharSequence text, PositionConsumer consumer) {
+        char[] token = new char[32];
+        int length = 0;
+        int hash = 0;
+        int position = 0;
+        int n = text.length();
+
+        for (int i = 0; i <= n; i++) {
+            char c = i < n ? text.charAt(i) : ' ';
+
+            if (Character.isLetterOrDigit(c) || c == '\'' || c == '’') {
+                if (c == '’') {
+                    c = '\'';
+                }
+                else if (c < 128) {
+                    if (c >= 'A' && c <= 'Z') {
+                        c += 'a' - 'A';
+                    }
+                }
+                else {
+                    c = Character.toLowerCase(c);
+                }
+
+                if (length == token.length) {
+                    char[] plusGrand = new char[length * 2];
+                    System.arraycopy(token, 0, plusGrand, 0, length);
+                    token = plusGrand;
+                }
+                token[length++] = c;
+                hash = 31 * hash + c;
+            }
+            else if (length > 0) {
+                if (emit(token, length, hash, position, consumer)) {
+                    position++;
+                }
+                length = 0;
+                hash = 0;
+            }
+        }
+    }
+
+    /**
+     * Trims the apostrophes at the ends of a token, filters stop words and emits the term.
+     *
+     * @return {@code false} if the token was only made of apostrophes, and takes no position
+     */
+    private boolean emit(char[] token, int length, int hash, int position, PositionConsumer consumer) {
+        int debut = 0;
+        int fin = length;
+
+        if (token[0] == '\'' || token[length - 1] == '\'') {
+            while (debut < fin && token[debut] == '\'') {
+                debut++;
+            }
+            while (fin > debut && token[fin - 1] == '\'') {
+                fin--;
+            }
+            if (debut == fin) {
+                return false;
+            }
+
+            hash = 0;
+            for (int i = debut; i < fin; i++) {
+                hash = 31 * hash + token[i];
+            }
+        }
+
+        if (stopWords == null || !stopWords.contains(token, debut, fin - debut, hash)) {
+            consumer.accept(new String(token, debut, fin - debut), position);
+        }
+        return true;
+    }
+}
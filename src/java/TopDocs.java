@@ -0,0 +1,59 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a search: the best documents for the query, ranked by decreasing score, and the
+ * number of documents that matched it. When the engine skipped documents that could not reach
+ * the best ones (dynamic pruning), the number of matches is only a lower bound.
+ * <p>
+ * A result is immutable, so that it can be cached and handed to any number of callers.
+ */
+public class TopDocs {
+
+    /** Number of documents matching the query, retrieved or not. */
+    private final int totalHits;
+
+    /** Whether {@link #totalHits} is exact, rather than a lower bound. */
+    private final boolean totalHitsExact;
+
+    /** Retrieved documents, by decreasing score, then ascending ID. */
+    private final List<ScoredDoc> scoreDocs;
+
+    /**
+     * Constructs the result of a search.
+     *
+     * @param totalHits the number of documents matching the query
+     * @param scoreDocs the retrieved documents, ranked
+     */
+    public TopDocs(int totalHits, List<ScoredDoc> scoreDocs) {
+        this(totalHits, true, scoreDocs);
+    }
+
+    /**
+     * Constructs the result of a search.
+     *
+     * @param totalHits the number of documents matching the query, or a lower bound
+     * @param totalHitsExact whether the number of documents is exact
+     * @param scoreDocs the retrieved documents, ranked
+     */
+    public TopDocs(int totalHits, boolean totalHitsExact, List<ScoredDoc> scoreDocs) {
+        this.totalHits = totalHits;
+        this.totalHitsExact = totalHitsExact;
+        this.scoreDocs = Collections.unmodifiableList(scoreDocs);
+    }
+
+    /** @return the number of documents matching the query, retrieved or not */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /** @return whether {@link #getTotalHits()} is exact, rather than a lower bound */
+    public boolean isTotalHitsExact() {
+        return totalHitsExact;
+    }
+
+    /** @return the retrieved documents, by decreasing score, then ascending ID */
+    public List<ScoredDoc> getScoreDocs() {
+        return scoreDocs;
+    }
+}
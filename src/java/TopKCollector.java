@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the {@code k} best documents of a search in a bounded min-heap.
+ * <p>
+ * Each matching document is scored once by the engine and offered with {@link #collect(int, double)}:
+ * it replaces the worst document of the heap if it is better, so ranking {@code n} matches costs
+ * {@code O(n log k)} and {@code O(k)} memory. A document is better than another one if its score
+ * is higher or, for equal scores, if its ID is lower, so that the ranking is a total order and no
+ * document is lost to a tie.
+ * <p>
+ * The heap is held in parallel primitive arrays, grown up to {@code k} as documents arrive.
+ */
+public class TopKCollector {
+
+    /** Maximum number of documents kept. */
+    private final int k;
+
+    /** IDs of the documents of the heap; the worst one is at the root. */
+    private int[] docs;
+
+    /** Scores of the documents of the heap. */
+    private double[] scores;
+
+    /** Number of documents in the heap. */
+    private int size;
+
+    /** Number of documents collected. */
+    private int totalHits;
+
+    /** Whether matching documents were skipped without being collected. */
+    private boolean pruned;
+
+    /**
+     * Constructs a collector.
+     *
+     * @param k the maximum number of documents kept, at least 1
+     */
+    public TopKCollector(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        this.k = k;
+        int capacity = Math.min(k, 64);
+        this.docs = new int[capacity];
+        this.scores = new double[capacity];
+    }
+
+    /**
+     * Offers a matching document.
+     *
+     * @param doc the ID of the document
+     * @param score the score of the document
+     */
+    public void collect(int doc, double score) {
+        totalHits++;
+
+        if (size < k) {
+            if (size == docs.length) {
+                int capacity = (int) Math.min(k, 2L * size);
+                docs = Arrays.copyOf(docs, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            docs[size] = doc;
+            scores[size] = score;
+            siftUp(size++);
+        }
+        else if (worse(docs[0], scores[0], doc, score)) {
+            docs[0] = doc;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns the lowest score a document needs to enter the top {@code k}, once it is full.
+     *
+     * @return the score of the worst document kept, or negative infinity while fewer than
+     *         {@code k} documents were collected
+     */
+    public double minCompetitiveScore() {
+        return size < k ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    /** @return the number of documents collected */
+    public int getTotalHits() {
+        return totalHits;
+    }
+
+    /**
+     * Records that the engine skipped matching documents that could not enter the top
+     * {@code k}: the number of documents collected is then a lower bound of the matches.
+     */
+    public void setPruned() {
+        pruned = true;
+    }
+
+    /**
+     * Returns the documents kept, ranked. The collector must not be used afterwards.
+     *
+     * @return the best documents, by decreasing score, then ascending ID
+     */
+    public TopDocs topDocs() {
+        ScoredDoc[] classement = new ScoredDoc[size];
+
+        for (int i = size - 1; i >= 0; i--) {
+            classement[i] = new ScoredDoc(docs[0], scores[0]);
+            size--;
+            docs[0] = docs[size];
+            scores[0] = scores[size];
+            siftDown(0);
+        }
+        List<ScoredDoc> liste = new ArrayList<>(Arrays.asList(classement));
+        return new TopDocs(totalHits, !pruned, liste);
+    }
+
+    /**
+     * @return whether the first document ranks below the second one
+     */
+    private static boolean worse(int docA, double scoreA, int docB, double scoreB) {
+        int c = Double.compare(scoreA, scoreB);
+        return c < 0 || c == 0 && docA > docB;
+    }
+
+    private void siftUp(int i) {
+        int doc = docs[i];
+        double score = scores[i];
+
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!worse(doc, score, docs[parent], scores[parent])) {
+                break;
+            }
+            docs[i] = docs[parent];
+            scores[i] = scores[parent];
+            i = parent;
+        }
+        docs[i] = doc;
+        scores[i] = score;
+    }
+
+    private void siftDown(int i) {
+        int doc = docs[i];
+        double score = scores[i];
+
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && worse(docs[child + 1], scores[child + 1], docs[child], scores[child])) {
+                child++;
+            }
+            if (!worse(docs[child], scores[child], doc, score)) {
+                break;
+            }
+            docs[i] = docs[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        docs[i] = doc;
+        scores[i] = score;
+    }
+}
@@ -1,110 +1,210 @@
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
 
 public class VectorSearchEngine implements SearchEngine {
 
-    private final Map<String, Keyword> keywords;
-    private final Map<Integer, Document> documents;
-    private final Map<Document, Double> cosineCache;
+    /**
+     * Margin added to the bound of a document before comparing it with the threshold, so that
+     * the rounding of the cosine similarity never makes a pruned document better than its bound.
+     */
+    private static final double EPSILON = 1e-9;
+
+    private final Index index;
+
+    /** Whether the documents that cannot enter the results are skipped (WAND). */
+    private final boolean elagage;
 
     /**
-     * Precomputes the TF–IDF values and stores them in Document and Keyword objects.
+     * Constructs a vector space search engine over an index. The IDF of the terms is read from
+     * the {@link TermWeights} of the index; the TF–IDF of a term in a document is its frequency
+     * multiplied by its IDF.
      *
-     * @param keywords map of terms to Keyword objects
-     * @param documents map of document IDs to Document objects
+     * @param index the index holding the term dictionary, the keywords and the documents
      */
-    public VectorSearchEngine(Map<String, Keyword> keywords, Map<Integer, Document> documents) {
-        this.keywords    = keywords;
-        this.documents   = documents;
-        this.cosineCache = new HashMap<>();
-        preprocessTfIdf();
+    public VectorSearchEngine(Index index) {
+        this(index, true);
     }
 
     /**
-     * Calculates TF–IDF for each term and document, then stores
-     * these values inside Document and Keyword TFIDF frequency maps.
+     * Constructs a vector space search engine over an index, choosing whether the documents
+     * that cannot enter the results are skipped, or every document containing a query term is
+     * scored.
+     *
+     * @param index the index holding the term dictionary, the keywords and the documents
+     * @param elagage {@code true} to prune the evaluation (WAND)
      */
-    private void preprocessTfIdf() {
-        int N = documents.size();
-        for (Keyword kw : keywords.values()) {
-            String term = kw.getTerm();
-            int df = kw.getOccurrences().size();
-            double idf = Math.log((double) N / (df + 1)) + 1.0;
-
-            for (Integer docId : kw.getOccurrences().keySet()) {
-                Document doc = documents.get(docId);
-                double tf = doc.get1Freq(term);
-                double tfidf = tf * idf;
-
-                // store in Document and Keyword
-                doc.add1TFIDFFreq(term, tfidf);
-                kw.add1TFIDFFreq(docId, tfidf);
-            }
-        }
+    public VectorSearchEngine(Index index, boolean elagage) {
+        this.index = index;
+        this.elagage = elagage;
     }
 
     /**
      * Performs a vector space model search for the given query.
-     * Builds the query vector, identifies relevant documents,
-     * computes cosine similarities, and returns documents sorted by similarity.
+     * Builds the query vector, then walks the postings of the query terms together, document
+     * by document: the TF–IDF vector of each document containing a term is read from the
+     * postings positioned on it, its cosine similarity with the query is computed once, and
+     * the {@code k} most similar documents are kept.
+     * <p>
+     * The evaluation is pruned with WAND. The query vector holds the IDF of the terms and the
+     * vector of a document their TF–IDF, so a document containing a set of query terms is at
+     * best collinear with the query restricted to these terms: its score is at most the norm
+     * of the IDF of these terms over the norm of the query, whatever their frequencies. Once
+     * {@code k} documents are kept, the cursors sorted by document give the pivot, the first
+     * document whose terms may reach the {@code k}-th score; the cursors before it are advanced
+     * to it, skipping whole blocks of their postings, and only the documents that may enter
+     * the results are scored.
      *
      * @param requete the search query
-     * @return a sorted set of documents relevant to the query
+     * @param k the maximum number of documents to return
+     * @return the documents most similar to the query
      */
     @Override
-    public TreeSet<Document> search(Query requete) {
-        String[] terms = requete.getTextRequete()
-                .toLowerCase()
-                .split("\\s+");
+    public TopDocs search(Query requete, int k) {
+        SearchMetrics.Timer timer = SearchMetrics.getDefault().start(requete);
+        String[] terms = requete.getTermes().toArray(new String[0]);
+        int[] termIds = new int[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termIds[i] = index.getTermId(terms[i]);
+        }
+        timer.lap(SearchMetrics.Phase.LOOKUP);
+
+        PostingsCursor[] cursors = new PostingsCursor[terms.length];
+        double[] idf = new double[terms.length];
 
         double[] vecReq = new double[terms.length];
         TreeMap<String, Double> requeteTFIDF = new TreeMap<>();
 
-        Set<Document> docsAComparer = new HashSet<>();
-
-        // 1) Construct the query vector and collect relevant documents
+        // 1) Construct the query vector and position a cursor on the postings of each term
         for (int i = 0; i < terms.length; i++) {
             String t = terms[i];
-            Keyword kw = keywords.get(t);
+            int termId = termIds[i];
 
             double poids = 0.0;
-            if (kw != null) {
-                int df = kw.getTFIDFFrequences().size();
-                poids = Math.log((double) documents.size() / (df + 1)) + 1.0;
-                requeteTFIDF.put(t, poids);
-
-                // Collect documents containing this term
-                docsAComparer.addAll(kw.getTFIDFFrequences().keySet().stream().map(id -> documents.get(id)).collect(Collectors.toSet()));
-            }
-            else {
-                requeteTFIDF.put(t, 0.0);
+            if (termId != TermDictionary.NOT_FOUND) {
+                poids = index.getWeights().getIdf(termId);
+                cursors[i] = index.getKeyword(termId).cursor();
+                cursors[i].nextDoc();
             }
-
+            requeteTFIDF.put(t, poids);
+            idf[i] = poids;
             vecReq[i] = poids;
         }
 
         // Save query frequencies
         requete.setFrequences(requeteTFIDF);
+        timer.lap(SearchMetrics.Phase.POSTINGS);
+        if (requete.getProfile() != null) {
+            int indexes = 0;
+            for (PostingsCursor c : cursors) {
+                indexes += c == null ? 0 : 1;
+            }
+            requete.getProfile().setPlan((elagage ? "WAND" : "exhaustive") + ", document at a time over " + indexes + " indexed term(s)");
+        }
+
+        // 2) Score each document containing a query term once, in ascending ID order
+        TopKCollector resultats = new TopKCollector(k);
+        double[] vecDoc = new double[terms.length];
+
+        if (elagage) {
+            wand(cursors, idf, vecReq, vecDoc, resultats);
+        }
+        else {
+            for (int doc = PostingsCursor.minDoc(cursors); doc != PostingsCursor.NO_MORE_DOCS; doc = PostingsCursor.minDoc(cursors)) {
+                resultats.collect(doc, score(doc, cursors, idf, vecReq, vecDoc));
+            }
+        }
+        timer.lap(SearchMetrics.Phase.SCORING);
 
-        // 2) Compute cosine similarity for relevant documents only
-        cosineCache.clear();
-        for (Document doc : docsAComparer) {
-            double[] vecDoc = new double[terms.length];
-            TreeMap<String, Double> tfidfDoc = doc.getTFIDFFrequences();
+        TopDocs topDocs = resultats.topDocs();
+        timer.lap(SearchMetrics.Phase.RANKING);
+        timer.stop(resultats.getTotalHits());
+        return topDocs;
+    }
 
-            for (int j = 0; j < terms.length; j++) {
-                vecDoc[j] = tfidfDoc.getOrDefault(terms[j], 0.0);
+    /**
+     * Scores the documents that may enter the results, skipping the others (WAND).
+     *
+     * @param cursors the cursor of each query term, {@code null} if the term is not indexed
+     * @param idf the IDF of each query term
+     * @param vecReq the query vector
+     * @param vecDoc a buffer for the vector of a document
+     * @param resultats the collector of the results
+     */
+    private static void wand(PostingsCursor[] cursors, double[] idf, double[] vecReq, double[] vecDoc, TopKCollector resultats) {
+        int[] ordre = new int[cursors.length];
+        int t = 0;
+        double normeReq = 0.0;
+        for (int j = 0; j < cursors.length; j++) {
+            if (cursors[j] != null) {
+                ordre[t++] = j;
+            }
+            normeReq += vecReq[j] * vecReq[j];
+        }
+        normeReq = Math.sqrt(normeReq);
+
+        while (true) {
+            // Indexed terms by the current document of their cursor
+            for (int p = 1; p < t; p++) {
+                int j = ordre[p];
+                int q = p;
+                for (; q > 0 && cursors[ordre[q - 1]].docID() > cursors[j].docID(); q--) {
+                    ordre[q] = ordre[q - 1];
+                }
+                ordre[q] = j;
             }
 
-            double cos = cosineSimilarity(vecReq, vecDoc);
-            cosineCache.put(doc, cos);
+            // Pivot: the first term whose document may reach the threshold with the terms before it
+            double theta = resultats.minCompetitiveScore();
+            double carres = 0.0;
+            int pivot = -1;
+            for (int p = 0; p < t && cursors[ordre[p]].docID() != PostingsCursor.NO_MORE_DOCS; p++) {
+                carres += idf[ordre[p]] * idf[ordre[p]];
+                if (Math.sqrt(carres) / normeReq + EPSILON > theta) {
+                    pivot = p;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                return;
+            }
+
+            int doc = cursors[ordre[pivot]].docID();
+            if (cursors[ordre[0]].docID() == doc) {
+                resultats.collect(doc, score(doc, cursors, idf, vecReq, vecDoc));
+            }
+            else {
+                // The documents before the pivot only hold terms that cannot reach the threshold
+                resultats.setPruned();
+                for (int p = 0; p < pivot; p++) {
+                    cursors[ordre[p]].advance(doc);
+                }
+            }
         }
+    }
 
-        // 3) Sort results using ComparatorScalaire based on cosine similarity
-        TreeSet<Document> sorted = new TreeSet<>(new ComparatorScalaire(cosineCache));
-        sorted.addAll(docsAComparer); // only relevant documents
+    /**
+     * Computes the cosine similarity of a document with the query, from the cursors positioned
+     * on it, and moves these cursors to their next document.
+     *
+     * @param doc the ID of the document, the smallest document of the cursors
+     * @param cursors the cursor of each query term, {@code null} if the term is not indexed
+     * @param idf the IDF of each query term
+     * @param vecReq the query vector
+     * @param vecDoc a buffer for the vector of the document
+     * @return the score of the document
+     */
+    private static double score(int doc, PostingsCursor[] cursors, double[] idf, double[] vecReq, double[] vecDoc) {
+        for (int j = 0; j < cursors.length; j++) {
+            PostingsCursor c = cursors[j];
 
-        return sorted;
+            if (c != null && c.docID() == doc) {
+                vecDoc[j] = c.frequence() * idf[j];
+                c.nextDoc();
+            }
+            else {
+                vecDoc[j] = 0.0;
+            }
+        }
+        return cosineSimilarity(vecReq, vecDoc);
     }
 
     /**
@@ -0,0 +1,456 @@
+import benchmarks.Workloads;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Implementation of the {@link Workloads} of the benchmarks, in the default package of the
+ * engine.
+ */
+public class JmhWorkloads implements Workloads {
+
+	/** Number of the most frequent terms, the common ones. */
+	static final int NB_COMMUNS = 50;
+
+	/** Lowest document frequency of a rare term. */
+	static final int DF_RARE_MIN = 10;
+
+	/** Highest document frequency of a rare term. */
+	static final int DF_RARE_MAX = 50;
+
+	/** Lowest document frequency of the terms of the replayed requests. */
+	static final int DF_REPLAY_MIN = 5;
+
+	@Override
+	public List<String> corpusTexts() throws IOException {
+		File[] fichiers = new File(Main.CORPUS).listFiles();
+		if (fichiers == null) {
+			throw new IOException("Corpus not found: " + new File(Main.CORPUS).getAbsolutePath());
+		}
+		Arrays.sort(fichiers);
+		List<String> textes = new ArrayList<>();
+
+		for (File file : fichiers) {
+			try (CorpusReader reader = new CorpusReader(file)) {
+				while (reader.next()) {
+					textes.add(reader.getText());
+				}
+			}
+		}
+		return textes;
+	}
+
+	@Override
+	public long readCorpus(boolean mapped) throws IOException {
+		File[] fichiers = new File(Main.CORPUS).listFiles();
+		if (fichiers == null) {
+			throw new IOException("Corpus not found: " + new File(Main.CORPUS).getAbsolutePath());
+		}
+		Arrays.sort(fichiers);
+		long n = 0;
+
+		for (File file : fichiers) {
+			if (mapped) {
+				try (CorpusReader reader = new CorpusReader(file)) {
+					while (reader.next()) {
+						String titre = reader.getTitle();
+						n += reader.getDate().length() + (titre == null ? 0 : titre.length()) + reader.getText().length() > 0 ? 1 : 0;
+					}
+				}
+			}
+			else {
+				try (BufferedReader bf = new BufferedReader(new InputStreamReader(new FileInputStream(file), CorpusReader.CHARSET))) {
+					String ligne;
+					while ((ligne = bf.readLine()) != null) {
+						String[] phrase = ligne.split("\t");
+						n += phrase[0].length() + (phrase.length == 2 ? phrase[1].length() : phrase[1].length() + phrase[2].length()) > 0 ? 1 : 0;
+					}
+				}
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public long tokenize(List<String> texts) {
+		Tokenizer tokenizer = Tokenizer.getDefault();
+		long[] n = new long[1];
+		for (String texte : texts) {
+			tokenizer.tokenize(texte, terme -> n[0]++);
+		}
+		return n[0];
+	}
+
+	@Override
+	public List<String> stopWords() throws IOException {
+		return Files.readAllLines(Paths.get(StopWords.pathStopWords), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public long tokenizeBySplit(List<String> texts, List<String> stopWords) {
+		long n = 0;
+		for (String texte : texts) {
+			for (String s : texte.split(" ")) {
+				s.toLowerCase();
+				if (!stopWords.contains(s)) {
+					n++;
+				}
+			}
+		}
+		return n;
+	}
+
+	@Override
+	public Closeable index(int threads) {
+		Indexation indexation = new Indexation();
+		indexation.indexer(Main.CORPUS, threads);
+		return indexation.getIndex();
+	}
+
+	@Override
+	public Closeable load() throws IOException {
+		return Index.load();
+	}
+
+	@Override
+	public Closeable open() throws IOException {
+		return Index.open();
+	}
+
+	@Override
+	public void save(Closeable index, File directory) {
+		((Index) index).saveTo(directory);
+	}
+
+	@Override
+	public String[] queries(Closeable index, int terms, boolean common, int count, long seed) {
+		Index idx = (Index) index;
+		List<String> candidats = new ArrayList<>();
+
+		if (common) {
+			List<Integer> ids = new ArrayList<>();
+			for (int id = 0; id < idx.getKeywords().size(); id++) {
+				ids.add(id);
+			}
+			ids.sort(Comparator.comparingInt((Integer id) -> idx.getKeyword(id).size()).reversed().thenComparing(id -> id));
+			for (int id : ids.subList(0, NB_COMMUNS)) {
+				candidats.add(idx.getDictionary().getTerm(id));
+			}
+		}
+		else {
+			for (int id = 0; id < idx.getKeywords().size(); id++) {
+				int df = idx.getKeyword(id).size();
+				if (df >= DF_RARE_MIN && df <= DF_RARE_MAX) {
+					candidats.add(idx.getDictionary().getTerm(id));
+				}
+			}
+		}
+
+		Random random = new Random(seed);
+		String[] requetes = new String[count];
+		for (int i = 0; i < count; i++) {
+			Collections.shuffle(candidats, random);
+			requetes[i] = String.join(" ", candidats.subList(0, terms));
+		}
+		return requetes;
+	}
+
+	@Override
+	public Supplier<Object> searches(Closeable index, String model, String[] queries, int k) {
+		SearchEngine engine = SearchType.fromName(model).newEngine((Index) index);
+		int[] suivante = new int[1];
+
+		return () -> {
+			String texte = queries[suivante[0]];
+			suivante[0] = (suivante[0] + 1) % queries.length;
+			return engine.search(new Query(texte), k);
+		};
+	}
+
+	@Override
+	public Supplier<Object> cachedSearches(Closeable index, long budget, int distinct, int requests, double zipf, long seed, int k) {
+		Index idx = (Index) index;
+		List<String> termes = new ArrayList<>();
+		for (int id = 0; id < idx.getKeywords().size(); id++) {
+			if (idx.getKeyword(id).size() >= DF_REPLAY_MIN) {
+				termes.add(idx.getDictionary().getTerm(id));
+			}
+		}
+
+		// Distinct queries, joined by boolean operators for the boolean model
+		Random random = new Random(seed);
+		String[] textes = new String[distinct];
+		SearchType[] types = new SearchType[distinct];
+		for (int q = 0; q < distinct; q++) {
+			types[q] = SearchType.values()[q % SearchType.values().length];
+			int n = 1 + random.nextInt(3);
+			StringBuilder texte = new StringBuilder();
+			for (int i = 0; i < n; i++) {
+				if (i > 0) {
+					texte.append(types[q] != SearchType.BOOLEAN ? " " : random.nextBoolean() ? " and " : " or ");
+				}
+				texte.append(termes.get(random.nextInt(termes.size())));
+			}
+			textes[q] = texte.toString();
+		}
+
+		// Sequence of the requests, by rank of popularity
+		double[] cumul = new double[distinct];
+		double somme = 0;
+		for (int r = 0; r < distinct; r++) {
+			somme += 1 / Math.pow(r + 1, zipf);
+			cumul[r] = somme;
+		}
+		int[] sequence = new int[requests];
+		for (int i = 0; i < requests; i++) {
+			int r = Arrays.binarySearch(cumul, random.nextDouble() * somme);
+			sequence[i] = Math.min(r < 0 ? -r - 1 : r, distinct - 1);
+		}
+
+		if (budget > 0) {
+			SearchEngine[] sans = engines(idx, null);
+			SearchEngine[] avec = engines(idx, new ResultCache(idx, budget));
+			for (int q = 0; q < distinct; q++) {
+				TopDocs attendu = sans[types[q].ordinal()].search(new Query(textes[q]), k);
+				for (int fois = 0; fois < 2; fois++) {
+					if (!memesDocuments(attendu, avec[types[q].ordinal()].search(new Query(textes[q]), k))) {
+						throw new IllegalStateException("Different results for \"" + textes[q] + "\" (" + types[q] + ") with a cache");
+					}
+				}
+			}
+		}
+
+		SearchEngine[] engines = engines(idx, budget > 0 ? new ResultCache(idx, budget) : null);
+		int[] suivante = new int[1];
+
+		return () -> {
+			int q = sequence[suivante[0]];
+			suivante[0] = (suivante[0] + 1) % sequence.length;
+			return engines[types[q].ordinal()].search(new Query(textes[q]), k);
+		};
+	}
+
+	@Override
+	public String[] booleanQueries(Closeable index, String[] templates, int count, long seed) {
+		Index idx = (Index) index;
+		List<String> termes = new ArrayList<>();
+		for (int id = 0; id < idx.getKeywords().size(); id++) {
+			if (idx.getKeyword(id).size() * 100L >= idx.getDocuments().size()) {
+				termes.add(idx.getDictionary().getTerm(id));
+			}
+		}
+
+		Random random = new Random(seed);
+		String[] requetes = new String[count];
+		for (int i = 0; i < count; i++) {
+			requetes[i] = String.format(templates[i % templates.length], termes.get(random.nextInt(termes.size())));
+		}
+		return requetes;
+	}
+
+	@Override
+	public Supplier<Object> evaluations(Closeable index, String[] queries, boolean cache) {
+		Index idx = (Index) index;
+		ClauseCache clauses = cache ? new ClauseCache(idx, ClauseCache.DEFAULT_BUDGET) : null;
+		int[] suivante = new int[1];
+
+		return () -> {
+			DocIdIterator it = BooleanQueryParser.parse(queries[suivante[0]]).resolve(idx).iterator(idx, clauses);
+			suivante[0] = (suivante[0] + 1) % queries.length;
+			long n = 0;
+			while (it.nextDoc() != DocIdIterator.NO_MORE_DOCS) {
+				n++;
+			}
+			return n;
+		};
+	}
+
+	@Override
+	public Supplier<Object> booleanSearches(Closeable index, String[] queries, boolean cache, int k) {
+		Index idx = (Index) index;
+		BooleanSearchEngine engine = new BooleanSearchEngine(idx, cache ? new ClauseCache(idx, ClauseCache.DEFAULT_BUDGET) : null);
+		if (cache) {
+			BooleanSearchEngine sans = new BooleanSearchEngine(idx, null);
+			for (String texte : queries) {
+				if (!memesDocuments(sans.search(new Query(texte), k), engine.search(new Query(texte), k))) {
+					throw new IllegalStateException("Different results for \"" + texte + "\" with a cache");
+				}
+			}
+		}
+		int[] suivante = new int[1];
+
+		return () -> {
+			String texte = queries[suivante[0]];
+			suivante[0] = (suivante[0] + 1) % queries.length;
+			return engine.search(new Query(texte), k);
+		};
+	}
+
+	@Override
+	public void setMetricsEnabled(boolean enabled) {
+		SearchMetrics.getDefault().setEnabled(enabled);
+	}
+
+	@Override
+	public String[] phrases(Closeable index, int count, long seed) {
+		Index idx = (Index) index;
+		if (idx.getPositions() == null) {
+			throw new IllegalStateException("The index has no positions: build it with Main --positions");
+		}
+
+		Random random = new Random(seed);
+		List<Integer> ids = new ArrayList<>(idx.getDocuments().keySet());
+		String[] phrases = new String[count];
+		for (int i = 0; i < count; ) {
+			List<String> termes = Tokenizer.getDefault().tokenize(idx.getDocument(ids.get(random.nextInt(ids.size()))).getText());
+			int longueur = 2 + random.nextInt(2);
+			if (termes.size() >= longueur) {
+				int debut = random.nextInt(termes.size() - longueur + 1);
+				phrases[i++] = String.join(" ", termes.subList(debut, debut + longueur));
+			}
+		}
+		return phrases;
+	}
+
+	@Override
+	public Supplier<Object> setOperation(Closeable index, String term1, String term2, String operator, boolean bitmaps) {
+		Index idx = (Index) index;
+		Keyword k1 = idx.getKeyword(term1);
+		Keyword k2 = idx.getKeyword(term2);
+		if (k1 == null || k2 == null) {
+			throw new IllegalArgumentException("Term not found in the index: " + (k1 == null ? term1 : term2));
+		}
+
+		if (bitmaps) {
+			RoaringDocIdSet b1 = k1.docIdSet();
+			RoaringDocIdSet b2 = k2.docIdSet();
+			switch (operator) {
+				case "and":
+					return () -> b1.and(b2).cardinality();
+				case "or":
+					return () -> b1.or(b2).cardinality();
+				default:
+					return () -> b1.andNot(b2).cardinality();
+			}
+		}
+
+		return () -> {
+			Set<Integer> docMot1 = docIds(k1);
+			Set<Integer> docMot2 = docIds(k2);
+			Set<Integer> listeId = new TreeSet<>(docMot1);
+
+			switch (operator) {
+				case "and":
+					listeId.retainAll(docMot2);
+					break;
+				case "or":
+					listeId.addAll(docMot2);
+					break;
+				default:
+					listeId.removeAll(docMot2);
+			}
+			return listeId.size();
+		};
+	}
+
+	@Override
+	public Supplier<Object> vectorSearches(Closeable index, boolean pruning, String[] queries, int k) {
+		Index idx = (Index) index;
+		VectorSearchEngine engine = new VectorSearchEngine(idx, pruning);
+		if (pruning) {
+			VectorSearchEngine exhaustif = new VectorSearchEngine(idx, false);
+			for (String texte : queries) {
+				if (!memeClassement(exhaustif.search(new Query(texte), k), engine.search(new Query(texte), k))) {
+					throw new IllegalStateException("Different rankings for \"" + texte + "\" with pruning");
+				}
+			}
+		}
+		int[] suivante = new int[1];
+
+		return () -> {
+			String texte = queries[suivante[0]];
+			suivante[0] = (suivante[0] + 1) % queries.length;
+			return engine.search(new Query(texte), k);
+		};
+	}
+
+	@Override
+	public AutoCloseable executor(Closeable index, String model, int threads) {
+		return new QueryExecutor(SearchType.fromName(model).newEngine((Index) index), threads);
+	}
+
+	@Override
+	public Callable<Object> searchAll(AutoCloseable executor, String[] queries, int k) {
+		List<Query> requetes = new ArrayList<>(queries.length);
+		for (String texte : queries) {
+			requetes.add(new Query(texte));
+		}
+		return () -> ((QueryExecutor) executor).searchAll(requetes, k);
+	}
+
+	/**
+	 * Returns the IDs of the documents of a keyword, as the former boolean engine collected them.
+	 */
+	private static Set<Integer> docIds(Keyword k) {
+		Set<Integer> ids = new HashSet<>();
+		PostingsCursor c = k.cursor();
+
+		while (c.nextDoc() != PostingsCursor.NO_MORE_DOCS) {
+			ids.add(c.docID());
+		}
+		return ids;
+	}
+
+	/**
+	 * Constructs an engine of each type over an index, behind a cache of their results.
+	 */
+	private static SearchEngine[] engines(Index index, ResultCache cache) {
+		SearchEngine[] engines = new SearchEngine[SearchType.values().length];
+		for (SearchType type : SearchType.values()) {
+			engines[type.ordinal()] = type.newEngine(index, cache);
+		}
+		return engines;
+	}
+
+	/**
+	 * Returns whether two searches returned the same documents with the same scores.
+	 */
+	private static boolean memesDocuments(TopDocs a, TopDocs b) {
+		return a.getTotalHits() == b.getTotalHits() && memeClassement(a, b);
+	}
+
+	/**
+	 * Returns whether two searches ranked the same documents with the same scores, whatever the
+	 * number of documents they scored.
+	 */
+	private static boolean memeClassement(TopDocs a, TopDocs b) {
+		if (a.getScoreDocs().size() != b.getScoreDocs().size()) {
+			return false;
+		}
+		for (int i = 0; i < a.getScoreDocs().size(); i++) {
+			if (a.getScoreDocs().get(i).getDocId() != b.getScoreDocs().get(i).getDocId()
+					|| a.getScoreDocs().get(i).getScore() != b.getScoreDocs().get(i).getScore()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,30 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of the benchmarks jar: runs JMH with its usual options, and writes the results
+ * as JSON to {@value #RESULT_FILE} unless another format or file is given, so that every run
+ * can be kept and compared over time.
+ */
+public class BenchmarkMain {
+
+	/** File the results are written to by default. */
+	static final String RESULT_FILE = "jmh-result.json";
+
+	public static void main(String[] args) throws Exception {
+		List<String> options = new ArrayList<>(Arrays.asList(args));
+
+		if (!options.contains("-rf")) {
+			options.add("-rf");
+			options.add("json");
+		}
+		if (!options.contains("-rff")) {
+			options.add("-rff");
+			options.add(RESULT_FILE);
+		}
+		org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+	}
+}
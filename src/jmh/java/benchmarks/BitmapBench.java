@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Time of the set algebra between the documents of two terms, from frequent to rare, on the
+ * compressed bitmaps of the keywords, and with the former evaluation of the boolean engine
+ * ({@code HashSet} of the postings of each term copied into a {@code TreeSet<Integer>}, then
+ * {@code retainAll}, {@code addAll} or {@code removeAll}) as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class BitmapBench {
+
+	/** The two terms, separated by a space. */
+	@Param({"hotel room", "great staff", "breakfast pool", "pool parking"})
+	public String terms;
+
+	@Param({"and", "or", "not"})
+	public String operator;
+
+	private Closeable index;
+
+	private Supplier<Object> bitmaps;
+
+	private Supplier<Object> collections;
+
+	@Setup
+	public void setup() throws IOException {
+		Workloads workloads = Workloads.get();
+		index = workloads.load();
+		String[] paire = terms.split(" ");
+		bitmaps = workloads.setOperation(index, paire[0], paire[1], operator, true);
+		collections = workloads.setOperation(index, paire[0], paire[1], operator, false);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+	}
+
+	/** @return the number of documents of the operation */
+	@Benchmark
+	public Object bitmaps() {
+		return bitmaps.get();
+	}
+
+	/** @return the number of documents of the operation, by the former evaluation */
+	@Benchmark
+	public Object collections() {
+		return collections.get();
+	}
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of a top-{@value #K} search by the three engines behind a result cache of several
+ * budgets, or without a cache, on a replayed workload of skewed popularity: the requests ask for
+ * {@value #NB_DISTINCTES} distinct queries following a Zipf distribution of exponent
+ * {@value #ZIPF}, so that a few of them are asked for very often and most of them rarely. Every
+ * budget replays the same sequence of {@value #NB_REQUETES} requests, the cache filling up
+ * during the warmup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class CacheBench {
+
+	/** Number of documents returned. */
+	static final int K = 10;
+
+	/** Number of distinct queries, over the three models. */
+	static final int NB_DISTINCTES = 3000;
+
+	/** Number of requests of the replayed sequence. */
+	static final int NB_REQUETES = 30000;
+
+	/** Exponent of the Zipf distribution of the requests. */
+	static final double ZIPF = 0.9;
+
+	/** Seed of the draw of the queries and of the requests. */
+	static final long SEED = 42;
+
+	/** Budget of the cache in KB, 0 for no cache. */
+	@Param({"0", "256", "1024", "4096"})
+	public int budget;
+
+	private Closeable index;
+
+	private Supplier<Object> recherches;
+
+	@Setup
+	public void setup() throws IOException {
+		Workloads workloads = Workloads.get();
+		index = workloads.load();
+		recherches = workloads.cachedSearches(index, budget * 1024L, NB_DISTINCTES, NB_REQUETES, ZIPF, SEED, K);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+	}
+
+	/** @return the results of the next request */
+	@Benchmark
+	public Object search() {
+		return recherches.get();
+	}
+}
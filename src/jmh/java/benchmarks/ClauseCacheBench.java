@@ -0,0 +1,90 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of the boolean engine with and without a cache of the documents of its
+ * sub-expressions, on {@value #NB_REQUETES} queries sharing a few frequent sub-expressions
+ * ({@code not smoking}, {@code (pool or spa or gym)} …) combined with a random term found in at
+ * least 1% of the documents. Both the evaluation of the plans alone (iterating over the matching
+ * documents) and the whole top-{@value #K} search (weighting and ranking them) are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ClauseCacheBench {
+
+	/** Number of documents returned. */
+	static final int K = 10;
+
+	/** Number of queries, searched in turn. */
+	static final int NB_REQUETES = 5000;
+
+	/** Seed of the draw of the terms of the queries. */
+	static final long SEED = 42;
+
+	/** Sub-expressions shared by the queries, {@code %s} being a random term. */
+	static final String[] MODELES = {
+			"%s and not smoking",
+			"(pool or spa or gym) and %s",
+			"%s and (parking or valet or garage)",
+			"not (noisy or dirty or rude) and %s",
+			"breakfast and %s",
+			"%s or (rooftop and view)",
+	};
+
+	/** Whether the sub-expressions are cached. */
+	@Param({"false", "true"})
+	public boolean cache;
+
+	private Closeable index;
+
+	private Supplier<Object> evaluations;
+
+	private Supplier<Object> recherches;
+
+	@Setup
+	public void setup() throws IOException {
+		Workloads workloads = Workloads.get();
+		index = workloads.load();
+		String[] requetes = workloads.booleanQueries(index, MODELES, NB_REQUETES, SEED);
+		evaluations = workloads.evaluations(index, requetes, cache);
+		recherches = workloads.booleanSearches(index, requetes, cache, K);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+	}
+
+	/** @return the number of documents matching the next query */
+	@Benchmark
+	public Object evaluate() {
+		return evaluations.get();
+	}
+
+	/** @return the results of the next query */
+	@Benchmark
+	public Object search() {
+		return recherches.get();
+	}
+}
@@ -0,0 +1,48 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read every record of the corpus with the memory-mapped reader of the indexation, and
+ * with the former path ({@code BufferedReader.readLine()} and {@code split("\t")}) as a
+ * baseline. Both decode the date, title and text of each record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CorpusBench {
+
+	private Workloads workloads;
+
+	@Setup
+	public void setup() {
+		workloads = Workloads.get();
+	}
+
+	/** @return the number of records of the corpus */
+	@Benchmark
+	public long corpusReader() throws IOException {
+		return workloads.readCorpus(true);
+	}
+
+	/** @return the number of records of the corpus, by the former path */
+	@Benchmark
+	public long bufferedReader() throws IOException {
+		return workloads.readCorpus(false);
+	}
+}
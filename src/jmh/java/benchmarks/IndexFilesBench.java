@@ -0,0 +1,81 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to load the index files ({@code Index.load}), to open them in place ({@code Index.open})
+ * and to save a loaded index. The index is saved to a temporary directory, deleted once the
+ * benchmark is over, so the index files of {@code src/resources} are only read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class IndexFilesBench {
+
+	private Workloads workloads;
+
+	/** Index saved by {@link #save()}. */
+	private Closeable index;
+
+	/** Directory the index is saved to. */
+	private File dossier;
+
+	@Setup
+	public void setup() throws IOException {
+		workloads = Workloads.get();
+		index = workloads.load();
+		dossier = Files.createTempDirectory("index-bench").toFile();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+		File[] fichiers = dossier.listFiles();
+		if (fichiers != null) {
+			for (File fichier : fichiers) {
+				Files.delete(fichier.toPath());
+			}
+		}
+		Files.delete(dossier.toPath());
+	}
+
+	/** @return the loaded index */
+	@Benchmark
+	public Closeable load() throws IOException {
+		try (Closeable lu = workloads.load()) {
+			return lu;
+		}
+	}
+
+	/** @return the opened index */
+	@Benchmark
+	public Closeable open() throws IOException {
+		try (Closeable ouvert = workloads.open()) {
+			return ouvert;
+		}
+	}
+
+	@Benchmark
+	public void save() {
+		workloads.save(index, dossier);
+	}
+}
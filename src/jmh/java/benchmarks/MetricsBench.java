@@ -0,0 +1,90 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Overhead of the search metrics: latency of a top-{@value #K} search for each engine with the
+ * recording of the metrics disabled and enabled, on a few fixed queries searched in turn. The
+ * boolean engine searches without a cache of its sub-expressions, so that every query is
+ * evaluated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class MetricsBench {
+
+	/** Number of documents returned. */
+	static final int K = 10;
+
+	/** Queries searched by the vector and probabilistic engines. */
+	static final String[] REQUETES = {
+			"room service",
+			"pool parking",
+			"breakfast included",
+			"rooftop bar view lake",
+			"noisy air conditioning",
+			"valet",
+	};
+
+	/** Queries searched by the boolean engine. */
+	static final String[] REQUETES_BOOLEENNES = {
+			"pool and parking",
+			"breakfast or pool",
+			"(room or suite) and view not noisy",
+			"valet and not smoking",
+	};
+
+	@Param({"boolean", "vector", "probabilistic"})
+	public String model;
+
+	/** Whether the searches are recorded into the metrics. */
+	@Param({"false", "true"})
+	public boolean metrics;
+
+	private Workloads workloads;
+
+	private Closeable index;
+
+	private Supplier<Object> recherches;
+
+	@Setup
+	public void setup() throws IOException {
+		workloads = Workloads.get();
+		index = workloads.load();
+		recherches = "boolean".equals(model)
+				? workloads.booleanSearches(index, REQUETES_BOOLEENNES, false, K)
+				: workloads.searches(index, model, REQUETES, K);
+		workloads.setMetricsEnabled(metrics);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		workloads.setMetricsEnabled(true);
+		index.close();
+	}
+
+	/** @return the results of the next query */
+	@Benchmark
+	public Object search() {
+		return recherches.get();
+	}
+}
@@ -0,0 +1,83 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Time to evaluate phrase and proximity queries against the plain conjunction of their terms,
+ * on {@value #NB_REQUETES} runs of two or three consecutive terms picked at random in the text
+ * of the documents. Only the plans are evaluated (iterating over the matching documents), since
+ * weighting and ranking them is the same for all three. The index must be built with
+ * {@code --positions}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class PhraseBench {
+
+	/** Number of queries, evaluated in turn. */
+	static final int NB_REQUETES = 2000;
+
+	/** Distance of the proximity queries. */
+	static final int DISTANCE = 3;
+
+	/** Seed of the draw of the runs of terms. */
+	static final long SEED = 42;
+
+	/** Form of the queries: the terms joined by {@code and}, quoted, or quoted with a distance. */
+	@Param({"conjunction", "phrase", "proximity"})
+	public String query;
+
+	private Closeable index;
+
+	private Supplier<Object> evaluations;
+
+	@Setup
+	public void setup() throws IOException {
+		Workloads workloads = Workloads.get();
+		index = workloads.load();
+		String[] requetes = workloads.phrases(index, NB_REQUETES, SEED);
+		for (int i = 0; i < requetes.length; i++) {
+			switch (query) {
+				case "conjunction":
+					requetes[i] = requetes[i].replace(" ", " and ");
+					break;
+				case "phrase":
+					requetes[i] = "\"" + requetes[i] + "\"";
+					break;
+				default:
+					requetes[i] = "\"" + requetes[i] + "\"~" + DISTANCE;
+			}
+		}
+		evaluations = workloads.evaluations(index, requetes, false);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+	}
+
+	/** @return the number of documents matching the next query */
+	@Benchmark
+	public Object evaluate() {
+		return evaluations.get();
+	}
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of a top-{@value #K} search for each engine, by query shape: 1, 3 or 10 terms, all
+ * rare (in 10 to 50 documents) or all common (among the 50 most frequent terms). The
+ * {@value #NB_REQUETES} queries of a shape are drawn once from the terms of the index with a
+ * fixed seed, and searched in turn; their terms are separated by spaces, which the boolean
+ * engine reads as a conjunction.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class SearchBench {
+
+	/** Number of documents returned. */
+	static final int K = 10;
+
+	/** Number of queries of a shape, searched in turn. */
+	static final int NB_REQUETES = 16;
+
+	/** Seed of the draw of the queries. */
+	static final long SEED = 42;
+
+	@Param({"boolean", "vector", "probabilistic"})
+	public String model;
+
+	@Param({"1", "3", "10"})
+	public int terms;
+
+	@Param({"rare", "common"})
+	public String frequency;
+
+	private Closeable index;
+
+	private Supplier<Object> recherches;
+
+	@Setup
+	public void setup() throws IOException {
+		Workloads workloads = Workloads.get();
+		index = workloads.load();
+		String[] requetes = workloads.queries(index, terms, "common".equals(frequency), NB_REQUETES, SEED);
+		recherches = workloads.searches(index, model, requetes, K);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+	}
+
+	/** @return the results of the next query */
+	@Benchmark
+	public Object search() {
+		return recherches.get();
+	}
+}
@@ -0,0 +1,102 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of each engine as the number of threads searching one shared index grows: batches
+ * of {@value #NB_REQUETES} top-{@value #K} queries are spread over the threads of a
+ * {@code QueryExecutor}, and the score is the number of queries searched per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ThroughputBench {
+
+	/** Number of documents returned per query. */
+	static final int K = 10;
+
+	/** Number of queries of a batch. */
+	static final int NB_REQUETES = 5000;
+
+	/** Queries searched in turn by the vector and probabilistic engines. */
+	static final String[] REQUETES = {
+			"room service",
+			"pool parking",
+			"breakfast included",
+			"hotel room",
+			"great location friendly staff",
+			"clean comfortable bed",
+			"rooftop bar view lake",
+			"noisy air conditioning",
+	};
+
+	/** Queries searched in turn by the boolean engine. */
+	static final String[] REQUETES_BOOLEENNES = {
+			"pool and parking",
+			"breakfast or pool",
+			"pool not parking",
+			"(room or suite) and view not noisy",
+			"great and location and staff",
+			"clean and comfortable and bed",
+	};
+
+	@Param({"boolean", "vector", "probabilistic"})
+	public String model;
+
+	/** Number of searching threads. */
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private Closeable index;
+
+	private AutoCloseable executor;
+
+	private Callable<Object> lot;
+
+	@Setup
+	public void setup() throws IOException {
+		Workloads workloads = Workloads.get();
+		index = workloads.load();
+		executor = workloads.executor(index, model, threads);
+
+		String[] textes = "boolean".equals(model) ? REQUETES_BOOLEENNES : REQUETES;
+		String[] requetes = new String[NB_REQUETES];
+		for (int i = 0; i < NB_REQUETES; i++) {
+			requetes[i] = textes[i % textes.length];
+		}
+		lot = workloads.searchAll(executor, requetes, K);
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		executor.close();
+		index.close();
+	}
+
+	/** @return the results of the batch */
+	@Benchmark
+	@OperationsPerInvocation(NB_REQUETES)
+	public Object searchAll() throws Exception {
+		return lot.call();
+	}
+}
@@ -0,0 +1,57 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to tokenize the review texts of the whole corpus with the tokenizer of the indexation
+ * (stop words skipped), and with the former path of the indexation ({@code split(" ")},
+ * {@code toLowerCase()} and a linear scan of a list of stop words) as a baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenizerBench {
+
+	private Workloads workloads;
+
+	/** Review texts of the corpus. */
+	private List<String> textes;
+
+	/** Stop words of the former path. */
+	private List<String> stopWords;
+
+	@Setup
+	public void setup() throws IOException {
+		workloads = Workloads.get();
+		textes = workloads.corpusTexts();
+		stopWords = workloads.stopWords();
+	}
+
+	/** @return the number of terms of the corpus */
+	@Benchmark
+	public long tokenize() {
+		return workloads.tokenize(textes);
+	}
+
+	/** @return the number of terms of the corpus, by the former path */
+	@Benchmark
+	public long tokenizeBySplit() {
+		return workloads.tokenizeBySplit(textes, stopWords);
+	}
+}
@@ -0,0 +1,73 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Latency of a top-{@value #K} search by the vector engine with WAND dynamic pruning, and with
+ * exhaustive scoring of every document containing a query term as a baseline, for a few queries
+ * of frequent and rare terms. The rankings of both evaluations are checked to be identical.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class WandBench {
+
+	/** Number of documents returned. */
+	static final int K = 10;
+
+	@Param({
+			"room service",
+			"pool parking",
+			"breakfast included",
+			"hotel room",
+			"great location friendly staff",
+			"clean comfortable bed",
+			"rooftop bar view lake",
+	})
+	public String query;
+
+	/** Whether the engine prunes with WAND. */
+	@Param({"false", "true"})
+	public boolean pruning;
+
+	private Closeable index;
+
+	private Supplier<Object> recherches;
+
+	@Setup
+	public void setup() throws IOException {
+		Workloads workloads = Workloads.get();
+		index = workloads.load();
+		recherches = workloads.vectorSearches(index, pruning, new String[] {query}, K);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		index.close();
+	}
+
+	/** @return the results of the query */
+	@Benchmark
+	public Object search() {
+		return recherches.get();
+	}
+}
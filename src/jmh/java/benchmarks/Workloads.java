@@ -0,0 +1,253 @@
+package benchmarks;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * Operations of the search engine measured by the benchmarks.
+ * <p>
+ * The engine is written in the default package, which a named package cannot refer to, while
+ * JMH requires its benchmarks to be in a named package: the operations are implemented by
+ * {@code JmhWorkloads}, in the default package, and reached through this interface. The
+ * index is passed around as a {@link Closeable}.
+ */
+public interface Workloads {
+
+	/**
+	 * Returns the implementation of the operations.
+	 *
+	 * @return the operations
+	 */
+	static Workloads get() {
+		try {
+			return (Workloads) Class.forName("JmhWorkloads").getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("JmhWorkloads not found on the class path", e);
+		}
+	}
+
+	/**
+	 * Reads the review texts of the corpus.
+	 *
+	 * @return the texts of every review
+	 * @throws IOException if the corpus cannot be read
+	 */
+	List<String> corpusTexts() throws IOException;
+
+	/**
+	 * Reads every record of the corpus, decoding its date, title and text.
+	 *
+	 * @param mapped {@code true} to read the files with the memory-mapped reader of the
+	 *        indexation, {@code false} with a {@code BufferedReader} and {@code split("\t")}
+	 * @return the number of records
+	 * @throws IOException if the corpus cannot be read
+	 */
+	long readCorpus(boolean mapped) throws IOException;
+
+	/**
+	 * Tokenizes texts with the tokenizer of the indexation.
+	 *
+	 * @param texts the texts
+	 * @return the number of terms
+	 */
+	long tokenize(List<String> texts);
+
+	/**
+	 * Reads the stop words of the indexation.
+	 *
+	 * @return the stop words
+	 * @throws IOException if the stop words cannot be read
+	 */
+	List<String> stopWords() throws IOException;
+
+	/**
+	 * Tokenizes texts the way of the former indexation: {@code split(" ")}, {@code toLowerCase()}
+	 * and a linear scan of a list of stop words.
+	 *
+	 * @param texts the texts
+	 * @param stopWords the stop words
+	 * @return the number of terms
+	 */
+	long tokenizeBySplit(List<String> texts, List<String> stopWords);
+
+	/**
+	 * Indexes the corpus in memory.
+	 *
+	 * @param threads the number of indexing threads
+	 * @return the index built
+	 */
+	Closeable index(int threads);
+
+	/**
+	 * Loads the index files.
+	 *
+	 * @return the loaded index
+	 * @throws IOException if the files cannot be read
+	 */
+	Closeable load() throws IOException;
+
+	/**
+	 * Opens the index files in place, memory-mapped.
+	 *
+	 * @return the opened index
+	 * @throws IOException if the files cannot be opened
+	 */
+	Closeable open() throws IOException;
+
+	/**
+	 * Saves an index to index files in a directory, leaving the index files of
+	 * {@code src/resources} untouched.
+	 *
+	 * @param index an index returned by this interface
+	 * @param directory the directory of the files
+	 */
+	void save(Closeable index, File directory);
+
+	/**
+	 * Draws queries of terms of the index.
+	 *
+	 * @param index an index returned by this interface
+	 * @param terms the number of terms of each query
+	 * @param common {@code true} for the most frequent terms, {@code false} for rare terms
+	 * @param count the number of queries
+	 * @param seed the seed of the draw
+	 * @return the text of each query, its terms separated by spaces
+	 */
+	String[] queries(Closeable index, int terms, boolean common, int count, long seed);
+
+	/**
+	 * Returns a search of queries in turn by an engine.
+	 *
+	 * @param index an index returned by this interface
+	 * @param model the model of the engine: {@code boolean}, {@code vector} or {@code probabilistic}
+	 * @param queries the texts of the queries
+	 * @param k the number of documents returned
+	 * @return a function searching the next query and returning its results
+	 */
+	Supplier<Object> searches(Closeable index, String model, String[] queries, int k);
+
+	/**
+	 * Returns a replay of requests of skewed popularity by the three engines behind a result
+	 * cache: distinct queries of one to three terms are drawn for the three models, then a
+	 * sequence of requests asking for the query of rank {@code r} with a probability
+	 * proportional to {@code 1 / r^zipf}, replayed in turn. The results of the engines behind a
+	 * cache are checked once against the engines without a cache.
+	 *
+	 * @param index an index returned by this interface
+	 * @param budget the budget of the cache in bytes, or 0 for no cache
+	 * @param distinct the number of distinct queries
+	 * @param requests the number of requests of the sequence
+	 * @param zipf the exponent of the Zipf distribution
+	 * @param seed the seed of the draw
+	 * @param k the number of documents returned
+	 * @return a function searching the next request and returning its results
+	 */
+	Supplier<Object> cachedSearches(Closeable index, long budget, int distinct, int requests, double zipf, long seed, int k);
+
+	/**
+	 * Fills boolean query templates in turn with a random term found in at least 1% of the
+	 * documents.
+	 *
+	 * @param index an index returned by this interface
+	 * @param templates the templates, {@code %s} standing for the term
+	 * @param count the number of queries
+	 * @param seed the seed of the draw
+	 * @return the text of each query
+	 */
+	String[] booleanQueries(Closeable index, String[] templates, int count, long seed);
+
+	/**
+	 * Returns an evaluation of boolean queries in turn: the plan of each query is compiled and
+	 * iterated over its matching documents, without weighting or ranking them.
+	 *
+	 * @param index an index returned by this interface
+	 * @param queries the texts of the queries, in the boolean query language
+	 * @param cache whether the plans read and fill a cache of the documents of their
+	 *        sub-expressions, shared by the queries
+	 * @return a function evaluating the next query and returning its number of matching documents
+	 */
+	Supplier<Object> evaluations(Closeable index, String[] queries, boolean cache);
+
+	/**
+	 * Returns a search of queries in turn by the boolean engine, with or without a cache of the
+	 * documents of the sub-expressions. The results of the engine with a cache are checked once
+	 * against the engine without a cache.
+	 *
+	 * @param index an index returned by this interface
+	 * @param queries the texts of the queries, in the boolean query language
+	 * @param cache whether the engine has a cache of the documents of the sub-expressions
+	 * @param k the number of documents returned
+	 * @return a function searching the next query and returning its results
+	 */
+	Supplier<Object> booleanSearches(Closeable index, String[] queries, boolean cache, int k);
+
+	/**
+	 * Enables or disables the recording of the latency of the searches into the metrics of the
+	 * engines.
+	 *
+	 * @param enabled whether the searches are recorded
+	 */
+	void setMetricsEnabled(boolean enabled);
+
+	/**
+	 * Picks runs of two or three consecutive terms in the text of random documents.
+	 *
+	 * @param index an index returned by this interface, with positions
+	 * @param count the number of runs
+	 * @param seed the seed of the draw
+	 * @return the terms of each run, separated by spaces
+	 * @throws IllegalStateException if the index has no positions
+	 */
+	String[] phrases(Closeable index, int count, long seed);
+
+	/**
+	 * Returns an operation of set algebra between the documents of two terms.
+	 *
+	 * @param index an index returned by this interface
+	 * @param term1 the first term
+	 * @param term2 the second term
+	 * @param operator {@code and}, {@code or} or {@code not}
+	 * @param bitmaps {@code true} to operate on the compressed bitmaps of the keywords, built
+	 *        once, {@code false} on a {@code HashSet} of the postings of each term copied into a
+	 *        {@code TreeSet}, as the former boolean engine
+	 * @return a function evaluating the operation and returning the number of documents
+	 */
+	Supplier<Object> setOperation(Closeable index, String term1, String term2, String operator, boolean bitmaps);
+
+	/**
+	 * Returns a search of queries in turn by the vector engine, with or without dynamic pruning.
+	 * The rankings of the engine with pruning are checked once against exhaustive scoring.
+	 *
+	 * @param index an index returned by this interface
+	 * @param pruning whether the engine skips the documents that cannot enter the top-k
+	 * @param queries the texts of the queries
+	 * @param k the number of documents returned
+	 * @return a function searching the next query and returning its results
+	 */
+	Supplier<Object> vectorSearches(Closeable index, boolean pruning, String[] queries, int k);
+
+	/**
+	 * Starts a pool of threads searching an index with an engine.
+	 *
+	 * @param index an index returned by this interface
+	 * @param model the model of the engine: {@code boolean}, {@code vector} or {@code probabilistic}
+	 * @param threads the number of threads
+	 * @return the pool, to close once done
+	 */
+	AutoCloseable executor(Closeable index, String model, int threads);
+
+	/**
+	 * Returns a search of a batch of queries spread over the threads of a pool.
+	 *
+	 * @param executor a pool returned by this interface
+	 * @param queries the texts of the queries of the batch
+	 * @param k the number of documents returned per query
+	 * @return a function searching the batch and returning the results of every query
+	 */
+	Callable<Object> searchAll(AutoCloseable executor, String[] queries, int k);
+}